@@ -57,6 +57,30 @@ JNIEXPORT jdouble JNICALL Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix1D_na
 JNIEXPORT void JNICALL Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix1D_native_1vector_1set
   (JNIEnv *, jclass, jlong, jint, jdouble);
 
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_SparseDoubleMatrix1D
+ * Method:    native_pooled_vector_create
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix1D_native_1pooled_1vector_1create
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_SparseDoubleMatrix1D
+ * Method:    native_pooled_vector_free
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix1D_native_1pooled_1vector_1free
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_SparseDoubleMatrix1D
+ * Method:    native_pooled_vector_fill
+ * Signature: (J[I[DI)V
+ */
+JNIEXPORT void JNICALL Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix1D_native_1pooled_1vector_1fill
+  (JNIEnv *, jclass, jlong, jintArray, jdoubleArray, jint);
+
 #ifdef __cplusplus
 }
 #endif
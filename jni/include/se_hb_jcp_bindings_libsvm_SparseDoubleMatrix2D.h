@@ -17,6 +17,22 @@ extern "C" {
 JNIEXPORT jlong JNICALL Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix2D_native_1matrix_1create
   (JNIEnv *, jclass, jint, jint);
 
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_SparseDoubleMatrix2D
+ * Method:    native_matrix_create_sharing
+ * Signature: (JII)J
+ */
+JNIEXPORT jlong JNICALL Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix2D_native_1matrix_1create_1sharing
+  (JNIEnv *, jclass, jlong, jint, jint);
+
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_SparseDoubleMatrix2D
+ * Method:    native_matrix_create_from_csr
+ * Signature: (I[I[I[D)J
+ */
+JNIEXPORT jlong JNICALL Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix2D_native_1matrix_1create_1from_1csr
+  (JNIEnv *, jclass, jint, jintArray, jintArray, jdoubleArray);
+
 /*
  * Class:     se_hb_jcp_bindings_libsvm_SparseDoubleMatrix2D
  * Method:    native_matrix_free
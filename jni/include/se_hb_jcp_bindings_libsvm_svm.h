@@ -25,6 +25,14 @@ JNIEXPORT jlong JNICALL Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1train
 JNIEXPORT jlong JNICALL Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1train_1fast
   (JNIEnv *, jclass, jobject, jlong, jdoubleArray);
 
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_svm
+ * Method:    native_svm_train_precomputed
+ * Signature: (Lse/hb/jcp/bindings/libsvm/svm_parameter;JJI[I[D)J
+ */
+JNIEXPORT jlong JNICALL Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1train_1precomputed
+  (JNIEnv *, jclass, jobject, jlong, jlong, jint, jintArray, jdoubleArray);
+
 /*
  * Class:     se_hb_jcp_bindings_libsvm_svm
  * Method:    native_svm_cross_validation
@@ -89,6 +97,14 @@ JNIEXPORT jdouble JNICALL Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1get_1s
 JNIEXPORT jdouble JNICALL Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1predict_1values
   (JNIEnv *, jclass, jlong, jobjectArray, jdoubleArray);
 
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_svm
+ * Method:    native_svm_predict_values_fast
+ * Signature: (JJ[D)D
+ */
+JNIEXPORT jdouble JNICALL Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1predict_1values_1fast
+  (JNIEnv *, jclass, jlong, jlong, jdoubleArray);
+
 /*
  * Class:     se_hb_jcp_bindings_libsvm_svm
  * Method:    native_svm_predict
@@ -121,6 +137,22 @@ JNIEXPORT jdouble JNICALL Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1predic
 JNIEXPORT jdouble JNICALL Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1predict_1probability_1fast
   (JNIEnv *, jclass, jlong, jlong, jdoubleArray);
 
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_svm
+ * Method:    native_svm_predict_batch
+ * Signature: (JJII[D)V
+ */
+JNIEXPORT void JNICALL Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1predict_1batch
+  (JNIEnv *, jclass, jlong, jlong, jint, jint, jdoubleArray);
+
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_svm
+ * Method:    native_svm_predict_probability_batch
+ * Signature: (JJII[D[D)V
+ */
+JNIEXPORT void JNICALL Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1predict_1probability_1batch
+  (JNIEnv *, jclass, jlong, jlong, jint, jint, jdoubleArray, jdoubleArray);
+
 /*
  * Class:     se_hb_jcp_bindings_libsvm_svm
  * Method:    native_svm_save_model
@@ -169,6 +201,14 @@ JNIEXPORT jint JNICALL Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1check_1pr
 JNIEXPORT jdouble JNICALL Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1distance_1from_1separating_1plane
   (JNIEnv *, jclass, jlong, jlong, jlong);
 
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_svm
+ * Method:    native_svm_distance_from_separating_plane_batch
+ * Signature: (JJJII[D)V
+ */
+JNIEXPORT void JNICALL Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1distance_1from_1separating_1plane_1batch
+  (JNIEnv *, jclass, jlong, jlong, jlong, jint, jint, jdoubleArray);
+
 #ifdef __cplusplus
 }
 #endif
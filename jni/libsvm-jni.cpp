@@ -22,8 +22,10 @@
 #include "se_hb_jcp_bindings_libsvm_svm_parameter.h"
 #include "se_hb_jcp_bindings_libsvm_SparseDoubleMatrix1D.h"
 #include "se_hb_jcp_bindings_libsvm_SparseDoubleMatrix2D.h"
+#include "se_hb_jcp_bindings_libsvm_KernelMatrix.h"
 #include <iostream>
 
+#include <cmath>
 #include <cstdlib>
 #include <cstring>
 #include <svm.h>
@@ -42,6 +44,10 @@ static struct svm_parameter* svm_parameter_from_java(JNIEnv* env,
                                                      jobject jparam);
 static void free_svm_parameter(struct svm_parameter* param);
 static void   compute_w(struct svm_model* model, double w[]);
+static double kernel_function(const struct svm_node*      x,
+                              const struct svm_node*      y,
+                              const struct svm_parameter* param);
+static double dot(const struct svm_node* x, const struct svm_node* y);
 static double compute_b(struct svm_model* model);
 static void print_func(const char* str);
 
@@ -70,6 +76,22 @@ static jfieldID svm_parameter__p_FID;
 static jfieldID svm_parameter__shrinking_FID;
 static jfieldID svm_parameter__probability_FID;
 
+/* Precomputed kernel matrices. */
+struct kernel_matrix
+{
+    int     rows;
+    double* values; // rows x rows, row-major.
+};
+
+/* Growable svm_node arrays for pooled temporary vectors. As nodes is the
+   first member a pooled_vector* can be used as the svm_node** of a vector.
+   The nodes are owned by the pooled vector and are not reference counted. */
+struct pooled_vector
+{
+    struct svm_node* nodes;
+    int              capacity;
+};
+
 /* Reference counters for svm_node arrays. */
 static cerc::reference_counting<svm_node> instance_rc;
 
@@ -218,6 +240,124 @@ Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1train_1fast
     return (long)model;
 }
 
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_svm
+ * Method:    native_svm_train_precomputed
+ * Signature: (Lse/hb/jcp/bindings/libsvm/svm_parameter;JJI[I[D)J
+ */
+JNIEXPORT jlong JNICALL
+Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1train_1precomputed
+   (JNIEnv*      env,
+    jclass       jsvm,
+    jobject      jparam,
+    jlong        jkernel_ptr,
+    jlong        jx_ptr,
+    jint         x_rows,
+    jintArray    jrows,
+    jdoubleArray jy)
+{
+    struct svm_parameter* param = svm_parameter_from_java(env, jparam);
+    struct kernel_matrix* kernel = (struct kernel_matrix*)jkernel_ptr;
+    struct svm_node** x = (struct svm_node**)jx_ptr;
+    struct svm_problem problem;
+    problem.l = env->GetArrayLength(jrows);
+    problem.y = env->GetDoubleArrayElements(jy, NULL);
+    jint* rows = env->GetIntArrayElements(jrows, NULL);
+
+    if (env->ExceptionOccurred()) {
+        std::cerr
+            << "Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1train_1precomputed(): "
+            << "Java exception at argument conversion."
+            << std::endl;
+        if (rows) {
+            env->ReleaseIntArrayElements(jrows, rows, JNI_ABORT);
+        }
+        if (problem.y) {
+            env->ReleaseDoubleArrayElements(jy, problem.y, JNI_ABORT);
+        }
+        free_svm_parameter(param);
+        return 0;
+    }
+
+    // Compute the kernel values involving the instances after those in
+    // the kernel matrix.
+    const int n = kernel->rows;
+    const int m = x_rows;
+    double* extra = (double*)std::malloc((size_t)(m - n) * m * sizeof(double));
+    for (int i = n; i < m; i++) {
+        for (int j = 0; j <= i; j++) {
+            double value = kernel_function(x[i], x[j], param);
+            extra[(size_t)(i - n) * m + j] = value;
+            if (j >= n) {
+                extra[(size_t)(j - n) * m + i] = value;
+            }
+        }
+    }
+
+    // Set up the PRECOMPUTED kernel rows of the selected instances:
+    // element 0 holds the 1-based serial number of the instance and
+    // element j the kernel value for instance j.
+    // NOTE: libsvm looks up the kernel value for instance j directly at
+    //       element j of a row, so the rows must be dense. They take
+    //       16 * l * (m + 2) bytes in addition to the 8 * (m - n) * m
+    //       bytes of extra kernel values; see KernelMatrix.MAX_ROWS.
+    problem.x =
+        (struct svm_node**)std::malloc(problem.l * sizeof(struct svm_node*));
+    struct svm_node* nodes =
+        (struct svm_node*)std::malloc((size_t)problem.l * (m + 2) *
+                                      sizeof(struct svm_node));
+    for (int r = 0; r < problem.l; r++) {
+        const int i = rows[r];
+        struct svm_node* row = nodes + (size_t)r * (m + 2);
+        row[0].index = 0;
+        row[0].value = i + 1;
+        for (int j = 0; j < m; j++) {
+            row[j + 1].index = j + 1;
+            if (i < n && j < n) {
+                row[j + 1].value = kernel->values[(size_t)i * n + j];
+            } else if (i >= n) {
+                row[j + 1].value = extra[(size_t)(i - n) * m + j];
+            } else {
+                row[j + 1].value = extra[(size_t)(j - n) * m + i];
+            }
+        }
+        row[m + 1].index = -1;
+        row[m + 1].value = 0.0;
+        problem.x[r] = row;
+    }
+
+    const int kernel_type = param->kernel_type;
+    param->kernel_type = PRECOMPUTED;
+    struct svm_model* model = svm_train(&problem, param);
+
+    // Replace the kernel rows of the support vectors with the instances
+    // and restore the kernel type. The model is then identical to one
+    // trained on the instances.
+    for (int s = 0; s < model->l; s++) {
+        const int i = rows[model->sv_indices[s] - 1];
+        model->sv_indices[s] = i + 1;
+        model->SV[s] = x[i];
+        instance_rc.inc(model->SV[s]);
+    }
+    model->param.kernel_type = kernel_type;
+
+    std::free(nodes);
+    std::free(problem.x);
+    std::free(extra);
+    env->ReleaseIntArrayElements(jrows, rows, JNI_ABORT);
+    env->ReleaseDoubleArrayElements(jy, problem.y, JNI_ABORT);
+    problem.y = NULL;
+    free_svm_parameter(param);
+    if (env->ExceptionOccurred()) {
+        std::cerr
+            << "Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1train_1precomputed(): "
+            << "Java exception." << std::endl;
+        return 0;
+    }
+
+    return (jlong)model;
+}
+
 /*
  * Class:     se_hb_jcp_bindings_libsvm_svm
  * Method:    native_svm_cross_validation
@@ -380,6 +520,37 @@ Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1predict_1values
 }
 
 
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_svm
+ * Method:    native_svm_predict_values_fast
+ * Signature: (JJ[D)D
+ */
+JNIEXPORT jdouble JNICALL
+Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1predict_1values_1fast
+    (JNIEnv*       env,
+     jclass        jsvm,
+     jlong         jmodel_ptr,
+     jlong         jinstance_ptr,
+     jdoubleArray  jdec_values)
+{
+    struct svm_model* model = (struct svm_model*)jmodel_ptr;
+    struct svm_node * instance = *(struct svm_node **)jinstance_ptr;
+    jdouble* jdec_values_elems = env->GetDoubleArrayElements(jdec_values, NULL);
+    if (env->ExceptionOccurred()) {
+        std::cerr
+            << "Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1predict_1values_1fast(): "
+            << "Java exception at argument conversion."
+            << std::endl;
+        return 0.0;
+    }
+
+    double result = svm_predict_values(model, instance, jdec_values_elems);
+
+    env->ReleaseDoubleArrayElements(jdec_values, jdec_values_elems, 0);
+
+    return result;
+}
+
 /*
  * Class:     se_hb_jcp_bindings_libsvm_svm
  * Method:    native_svm_predict
@@ -500,6 +671,88 @@ Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1predict_1probability_1fast
     return result;
 }
 
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_svm
+ * Method:    native_svm_predict_batch
+ * Signature: (JJII[D)V
+ */
+JNIEXPORT void JNICALL
+Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1predict_1batch
+    (JNIEnv*      env,
+     jclass       jsvm,
+     jlong        jmodel_ptr,
+     jlong        jx_ptr,
+     jint         first,
+     jint         last,
+     jdoubleArray jpredictions)
+{
+    struct svm_model* model = (struct svm_model*)jmodel_ptr;
+    struct svm_node** x = (struct svm_node**)jx_ptr;
+    if (last <= first) {
+        return;
+    }
+    // The predictions are collected in native memory and copied to the
+    // Java array region in one go, so concurrent calls for disjoint row
+    // intervals do not interfere.
+    double* predictions = (double*)std::malloc(sizeof(double)*(last - first));
+    for (int i = first; i < last; i++) {
+        predictions[i - first] = svm_predict(model, x[i]);
+    }
+    env->SetDoubleArrayRegion(jpredictions, first, last - first, predictions);
+    std::free(predictions);
+    if (env->ExceptionOccurred()) {
+        std::cerr
+            << "Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1predict_1batch():"
+            << " Java exception at result conversion."
+            << std::endl;
+    }
+}
+
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_svm
+ * Method:    native_svm_predict_probability_batch
+ * Signature: (JJII[D[D)V
+ */
+JNIEXPORT void JNICALL
+Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1predict_1probability_1batch
+    (JNIEnv*      env,
+     jclass       jsvm,
+     jlong        jmodel_ptr,
+     jlong        jx_ptr,
+     jint         first,
+     jint         last,
+     jdoubleArray jpredictions,
+     jdoubleArray jprob_estimates)
+{
+    struct svm_model* model = (struct svm_model*)jmodel_ptr;
+    struct svm_node** x = (struct svm_node**)jx_ptr;
+    if (last <= first) {
+        return;
+    }
+    int nr_class = svm_get_nr_class(model);
+    double* predictions = (double*)std::malloc(sizeof(double)*(last - first));
+    double* prob_estimates =
+        (double*)std::malloc(sizeof(double)*(last - first)*nr_class);
+    for (int i = first; i < last; i++) {
+        predictions[i - first] =
+            svm_predict_probability(model,
+                                    x[i],
+                                    prob_estimates + (i - first)*nr_class);
+    }
+    env->SetDoubleArrayRegion(jpredictions, first, last - first, predictions);
+    env->SetDoubleArrayRegion(jprob_estimates,
+                              first*nr_class, (last - first)*nr_class,
+                              prob_estimates);
+    std::free(predictions);
+    std::free(prob_estimates);
+    if (env->ExceptionOccurred()) {
+        std::cerr
+            << "Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1predict_1probability_1batch():"
+            << " Java exception at result conversion."
+            << std::endl;
+    }
+}
+
 /*
  * Class:     se_hb_jcp_bindings_libsvm_svm
  * Method:    native_svm_check_parameter
@@ -652,6 +905,59 @@ Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1distance_1from_1separating_1plan
     return distance;
 }
 
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_svm
+ * Method:    native_svm_distance_from_separating_plane_batch
+ * Signature: (JJJII[D)V
+ */
+JNIEXPORT void JNICALL
+Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1distance_1from_1separating_1plane_1batch
+    (JNIEnv*      env,
+     jclass       jsvm,
+     jlong        jmodel_ptr,
+     jlong        jx_ptr,
+     jlong        attribute_count,
+     jint         first,
+     jint         last,
+     jdoubleArray jdistances)
+{
+    struct svm_model* model = (struct svm_model*)jmodel_ptr;
+    struct svm_node** x = (struct svm_node**)jx_ptr;
+    if (last <= first) {
+        return;
+    }
+
+    // FIXME: This is only valid for 1-class SVM and 2-class SVM with
+    //        classes -1.0 and 1.0.
+    // The hyperplane is computed once for all the instances.
+    double* w = (double*)std::calloc(sizeof(double), attribute_count);
+    compute_w(model, w);
+    double b = compute_b(model);
+
+    double* distances = (double*)std::malloc(sizeof(double)*(last - first));
+    for (int r = first; r < last; r++) {
+        double distance = b;
+        if (model->nr_class == 2) {
+            struct svm_node* instance = x[r];
+            for (int i = 0; instance[i].index >= 0; i++) {
+                distance += w[instance[i].index] * instance[i].value;
+            }
+        } else {
+            // Not implemented.
+        }
+        distances[r - first] = distance;
+    }
+    env->SetDoubleArrayRegion(jdistances, first, last - first, distances);
+    std::free(distances);
+    std::free(w);
+    if (env->ExceptionOccurred()) {
+        std::cerr
+            << "Java_se_hb_jcp_bindings_libsvm_svm_native_1svm_1distance_1from_1separating_1plane_1batch():"
+            << " Java exception at result conversion."
+            << std::endl;
+    }
+}
+
 /******************************************************************************/
 /* libsvm Java interface class initialization functions. */
 
@@ -921,6 +1227,81 @@ Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix1D_native_1vector_1set
     instance_rc.dec(old);
 }
 
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_SparseDoubleMatrix1D
+ * Method:    native_pooled_vector_create
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL
+Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix1D_native_1pooled_1vector_1create
+    (JNIEnv* env,
+     jclass  jSDM1D)
+{
+    // Allocate one svm_node and mark it as EOL.
+    struct pooled_vector* v =
+        (struct pooled_vector*)std::malloc(sizeof(struct pooled_vector));
+    v->capacity = 1;
+    v->nodes = (struct svm_node*)std::malloc(1 * sizeof(struct svm_node));
+    v->nodes[0].index = -1;
+    return (jlong)v;
+}
+
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_SparseDoubleMatrix1D
+ * Method:    native_pooled_vector_free
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL
+Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix1D_native_1pooled_1vector_1free
+    (JNIEnv* env,
+     jclass  jSDM1D,
+     jlong   jptr)
+{
+    struct pooled_vector* v = (struct pooled_vector*)jptr;
+    std::free(v->nodes);
+    std::free(v);
+}
+
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_SparseDoubleMatrix1D
+ * Method:    native_pooled_vector_fill
+ * Signature: (J[I[DI)V
+ */
+JNIEXPORT void JNICALL
+Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix1D_native_1pooled_1vector_1fill
+    (JNIEnv*      env,
+     jclass       jSDM1D,
+     jlong        jptr,
+     jintArray    jindices,
+     jdoubleArray jvalues,
+     jint         length)
+{
+    struct pooled_vector* v = (struct pooled_vector*)jptr;
+    if (v->capacity < length + 1) {
+        // Grow geometrically so that the array is soon large enough for
+        // any instance.
+        int capacity = 2 * v->capacity;
+        if (capacity < length + 1) {
+            capacity = length + 1;
+        }
+        std::free(v->nodes);
+        v->nodes =
+            (struct svm_node*)std::malloc(capacity * sizeof(struct svm_node));
+        v->capacity = capacity;
+    }
+    jint*    indices = env->GetIntArrayElements(jindices, NULL);
+    jdouble* values = env->GetDoubleArrayElements(jvalues, NULL);
+    int i;
+    for (i = 0; i < length; i++) {
+        v->nodes[i].index = indices[i];
+        v->nodes[i].value = values[i];
+    }
+    v->nodes[i].index = -1;
+    v->nodes[i].value = 0.0;
+    env->ReleaseDoubleArrayElements(jvalues, values, JNI_ABORT);
+    env->ReleaseIntArrayElements(jindices, indices, JNI_ABORT);
+}
+
 /*
  * Class:     se_hb_jcp_bindings_libsvm_SparseDoubleMatrix2D
  * Method:    native_matrix_create
@@ -950,6 +1331,90 @@ Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix2D_native_1matrix_1create
     return (jlong)m;
 }
 
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_SparseDoubleMatrix2D
+ * Method:    native_matrix_create_sharing
+ * Signature: (JII)J
+ */
+JNIEXPORT jlong JNICALL
+Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix2D_native_1matrix_1create_1sharing
+    (JNIEnv* env,
+     jclass  jSDM2D,
+     jlong   base_jptr,
+     jint    base_rows,
+     jint    rows)
+{
+    struct svm_node** base = (struct svm_node**)base_jptr;
+    struct svm_node** m =
+        (struct svm_node**)std::malloc(rows * sizeof(struct svm_node*));
+    for (int i = 0; i < base_rows; i++) {
+        // Share the row with the base matrix.
+        m[i] = base[i];
+        instance_rc.inc(m[i]);
+    }
+    for (int i = base_rows; i < rows; i++) {
+        // Allocate one svm_node for each extra row.
+        m[i] = (struct svm_node*)std::malloc(1 * sizeof(struct svm_node));
+        instance_rc.inc(m[i]);
+        // Mark it as EOL.
+        m[i][0].index = -1;
+    }
+#ifdef DEBUG
+    std::cerr << "Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix2D_native_1matrix_1create_1sharing(): "
+              << "Created " << rows << " row matrix at "
+              << (jlong)m << " sharing " << base_rows << " rows with "
+              << base_jptr << "." << std::endl;
+#endif
+    return (jlong)m;
+}
+
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_SparseDoubleMatrix2D
+ * Method:    native_matrix_create_from_csr
+ * Signature: (I[I[I[D)J
+ */
+JNIEXPORT jlong JNICALL
+Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix2D_native_1matrix_1create_1from_1csr
+    (JNIEnv*      env,
+     jclass       jSDM2D,
+     jint         rows,
+     jintArray    jrow_pointers,
+     jintArray    jindices,
+     jdoubleArray jvalues)
+{
+    jint*    row_pointers = env->GetIntArrayElements(jrow_pointers, NULL);
+    jint*    indices = env->GetIntArrayElements(jindices, NULL);
+    jdouble* values = env->GetDoubleArrayElements(jvalues, NULL);
+    struct svm_node** m =
+        (struct svm_node**)std::malloc(rows * sizeof(struct svm_node*));
+
+    for (int r = 0; r < rows; r++) {
+        int first  = row_pointers[r];
+        int length = row_pointers[r + 1] - first;
+        // Allocate one svm_node for each element and one for the EOL mark.
+        m[r] =
+            (struct svm_node*)std::malloc((length + 1) *
+                                          sizeof(struct svm_node));
+        instance_rc.inc(m[r]);
+        for (int i = 0; i < length; i++) {
+            m[r][i].index = indices[first + i];
+            m[r][i].value = values[first + i];
+        }
+        m[r][length].index = -1;
+        m[r][length].value = 0.0;
+    }
+
+    env->ReleaseDoubleArrayElements(jvalues, values, JNI_ABORT);
+    env->ReleaseIntArrayElements(jindices, indices, JNI_ABORT);
+    env->ReleaseIntArrayElements(jrow_pointers, row_pointers, JNI_ABORT);
+#ifdef DEBUG
+    std::cerr << "Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix2D_native_1matrix_1create_1from_1csr(): "
+              << "Created " << rows << " row matrix at "
+              << (jlong)m << "." << std::endl;
+#endif
+    return (jlong)m;
+}
+
 /*
  * Class:     se_hb_jcp_bindings_libsvm_SparseDoubleMatrix2D
  * Method:    native_matrix_free
@@ -1086,6 +1551,70 @@ Java_se_hb_jcp_bindings_libsvm_SparseDoubleMatrix2D_native_1matrix_1set_1row
     return (jlong)&m[row];
 }
 
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_KernelMatrix
+ * Method:    native_kernel_matrix_create
+ * Signature: (Lse/hb/jcp/bindings/libsvm/svm_parameter;JI)J
+ */
+JNIEXPORT jlong JNICALL
+Java_se_hb_jcp_bindings_libsvm_KernelMatrix_native_1kernel_1matrix_1create
+    (JNIEnv* env,
+     jclass  jKM,
+     jobject jparam,
+     jlong   jx_ptr,
+     jint    rows)
+{
+    struct svm_parameter* param = svm_parameter_from_java(env, jparam);
+    if (env->ExceptionOccurred()) {
+        std::cerr
+            << "Java_se_hb_jcp_bindings_libsvm_KernelMatrix_native_1kernel_1matrix_1create(): "
+            << "Java exception at argument conversion."
+            << std::endl;
+        return 0;
+    }
+    struct svm_node** x = (struct svm_node**)jx_ptr;
+
+    struct kernel_matrix* kernel =
+        (struct kernel_matrix*)std::malloc(sizeof(struct kernel_matrix));
+    kernel->rows = rows;
+    kernel->values =
+        (double*)std::malloc((size_t)rows * rows * sizeof(double));
+    for (int i = 0; i < rows; i++) {
+        for (int j = 0; j <= i; j++) {
+            double value = kernel_function(x[i], x[j], param);
+            kernel->values[(size_t)i * rows + j] = value;
+            kernel->values[(size_t)j * rows + i] = value;
+        }
+    }
+    free_svm_parameter(param);
+#ifdef DEBUG
+    std::cerr << "Java_se_hb_jcp_bindings_libsvm_KernelMatrix_native_1kernel_1matrix_1create(): "
+              << "Created " << rows << " x " << rows << " kernel matrix at "
+              << (jlong)kernel << "." << std::endl;
+#endif
+    return (jlong)kernel;
+}
+
+/*
+ * Class:     se_hb_jcp_bindings_libsvm_KernelMatrix
+ * Method:    native_kernel_matrix_free
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL
+Java_se_hb_jcp_bindings_libsvm_KernelMatrix_native_1kernel_1matrix_1free
+    (JNIEnv* env,
+     jclass  jKM,
+     jlong   jptr)
+{
+    struct kernel_matrix* kernel = (struct kernel_matrix*)jptr;
+    std::free(kernel->values);
+    std::free(kernel);
+#ifdef DEBUG
+    std::cerr << "Java_se_hb_jcp_bindings_libsvm_KernelMatrix_native_1kernel_1matrix_1free(): "
+              << "Freed kernel matrix at " << jptr << "." << std::endl;
+#endif
+}
+
 #ifdef __cplusplus
 }
 #endif
@@ -1277,6 +1806,67 @@ static double compute_b(struct svm_model* model)
     return sign * -model->rho[0];
 }
 
+// Computes the kernel value for two instances as libsvm does.
+static double kernel_function(const struct svm_node*      x,
+                              const struct svm_node*      y,
+                              const struct svm_parameter* param)
+{
+    switch (param->kernel_type) {
+    case LINEAR:
+        return dot(x, y);
+    case POLY:
+        return std::pow(param->gamma * dot(x, y) + param->coef0,
+                        param->degree);
+    case RBF:
+        {
+            double sum = 0.0;
+            while (x->index != -1 && y->index != -1) {
+                if (x->index == y->index) {
+                    double d = x->value - y->value;
+                    sum += d * d;
+                    ++x;
+                    ++y;
+                } else if (x->index > y->index) {
+                    sum += y->value * y->value;
+                    ++y;
+                } else {
+                    sum += x->value * x->value;
+                    ++x;
+                }
+            }
+            for (; x->index != -1; ++x) {
+                sum += x->value * x->value;
+            }
+            for (; y->index != -1; ++y) {
+                sum += y->value * y->value;
+            }
+            return std::exp(-param->gamma * sum);
+        }
+    case SIGMOID:
+        return std::tanh(param->gamma * dot(x, y) + param->coef0);
+    default:
+        // PRECOMPUTED kernels cannot be computed here.
+        return 0.0;
+    }
+}
+
+static double dot(const struct svm_node* x, const struct svm_node* y)
+{
+    double sum = 0.0;
+    while (x->index != -1 && y->index != -1) {
+        if (x->index == y->index) {
+            sum += x->value * y->value;
+            ++x;
+            ++y;
+        } else if (x->index > y->index) {
+            ++y;
+        } else {
+            ++x;
+        }
+    }
+    return sum;
+}
+
 static void print_func(const char* str)
 {
 }
@@ -19,6 +19,7 @@ package se.hb.jcp.bindings.jliblinear;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.File;
+import java.lang.reflect.Field;
 
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
@@ -28,16 +29,30 @@ import org.json.JSONObject;
 import de.bwaldvogel.liblinear.*;
 
 import se.hb.jcp.ml.ClassifierBase;
+import se.hb.jcp.ml.CompiledLinearModel;
 import se.hb.jcp.ml.IClassifier;
+import se.hb.jcp.ml.ISVMClassifier;
+import se.hb.jcp.ml.IWarmStartClassifier;
+import se.hb.jcp.util.ParallelizedAction;
 
 public class LinearClassifier
     extends ClassifierBase
-    implements java.io.Serializable
+    implements ISVMClassifier,
+               IWarmStartClassifier,
+               java.io.Serializable
 {
     private static final SparseDoubleMatrix1D _storageTemplate =
         new SparseDoubleMatrix1D(0);
+    // liblinear 2.11 has no public setter for the initial solution.
+    private static final Field _initialSolutionField =
+        findInitialSolutionField();
     protected JSONObject _jsonParameters;
     protected Model _model;
+    // The trained classifier seeding the next fit, if any.
+    private transient LinearClassifier _seed;
+    // The model as a compiled linear model. Created on first use.
+    // Not serialized.
+    private transient volatile CompiledLinearModel _linearModel;
 
     public LinearClassifier()
     {
@@ -52,6 +67,14 @@ public class LinearClassifier
     protected void internalFit(DoubleMatrix2D x, double[] y)
     {
         Parameter parameters = readParameters();
+        LinearClassifier seed = _seed;
+        _seed = null;
+        if (seed != null && seed._model.getNrClass() == 2) {
+            // Start from the weights of the seed model. liblinear only uses
+            // an initial solution for two classes and the primal solvers.
+            setInitialSolution(parameters,
+                               seed._model.getFeatureWeights().clone());
+        }
 
         SparseDoubleMatrix2D tmp_x;
         if (x instanceof SparseDoubleMatrix2D) {
@@ -68,6 +91,7 @@ public class LinearClassifier
         problem.y = y;
 
         _model = Linear.train(problem, parameters);
+        _linearModel = null;
 
     }
 
@@ -78,6 +102,39 @@ public class LinearClassifier
         return clone;
     }
 
+    /**
+     * Returns whether the parameter settings of this classifier support
+     * warm-started training. This is the case for the primal solvers
+     * L2R_LR and L2R_L2LOSS_SVC.
+     *
+     * @return <tt>true</tt> if warm-started training is supported or <tt>false</tt> otherwise.
+     */
+    public boolean isWarmStartSupported()
+    {
+        SolverType type = readParameters().getSolverType();
+        return _initialSolutionField != null &&
+               (type == SolverType.L2R_LR || type == SolverType.L2R_L2LOSS_SVC);
+    }
+
+    /**
+     * Trains and returns a copy of this classifier using the supplied data
+     * with the weights of this classifier as the initial solution.
+     *
+     * @param x             the attributes of the instances.
+     * @param y             the targets of the instances.
+     * @return a new <tt>IClassifier</tt> instance trained with the supplied data and using the same algorithm and parameter settings as the parent instance.
+     */
+    public IClassifier fitNewWarmStart(DoubleMatrix2D x, double[] y)
+    {
+        LinearClassifier clone = new LinearClassifier(_jsonParameters);
+        if (isWarmStartSupported() && _model != null &&
+            getAttributeCount() == x.columns()) {
+            clone._seed = this;
+        }
+        clone.fit(x, y);
+        return clone;
+    }
+
     public double predict(DoubleMatrix1D instance)
     {
         SparseDoubleMatrix1D tmp_instance;
@@ -88,14 +145,174 @@ public class LinearClassifier
             tmp_instance.assign(instance);
         }
 
+        if (isLinearPredictionSupported()) {
+            return toPrediction(score(getLinearModel(), tmp_instance.nodes));
+        }
         return Linear.predict(_model, tmp_instance.nodes);
     }
 
+    /**
+     * Returns the signed distance between the separating hyperplane and the
+     * instance. The distance is positive on the side of the class 1.0.
+     *
+     * @return the signed distance between the separating hyperplane and the instance.
+     */
+    public double distanceFromSeparatingPlane(DoubleMatrix1D instance)
+    {
+        checkSeparatingPlane();
+        if (instance instanceof SparseDoubleMatrix1D) {
+            return score(getLinearModel(),
+                         ((SparseDoubleMatrix1D)instance).nodes);
+        } else {
+            return getLinearModel().score(instance);
+        }
+    }
+
+    /**
+     * Computes the signed distance between the separating hyperplane and
+     * each of the supplied instances.
+     *
+     * @param x          the instances.
+     * @param distances  an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the signed distances in.
+     */
+    public void distanceFromSeparatingPlane(DoubleMatrix2D x,
+                                            double[] distances)
+    {
+        checkSeparatingPlane();
+        PredictAction all =
+            new PredictAction(asSparseDoubleMatrix2D(x), distances,
+                              getLinearModel(), true, 0, x.rows());
+        all.start();
+    }
+
+    /**
+     * Predicts the targets for the supplied instances. The instances are
+     * passed to liblinear directly from the rows of the matrix.
+     *
+     * @param x             the instances.
+     * @param predictions   an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the predicted targets in.
+     */
+    @Override
+    public void predict(DoubleMatrix2D x, double[] predictions)
+    {
+        PredictAction all =
+            new PredictAction(asSparseDoubleMatrix2D(x), predictions,
+                              isLinearPredictionSupported()
+                              ? getLinearModel() : null,
+                              false, 0, x.rows());
+        all.start();
+    }
+
     public DoubleMatrix1D nativeStorageTemplate()
     {
         return _storageTemplate;
     }
 
+    private SparseDoubleMatrix2D asSparseDoubleMatrix2D(DoubleMatrix2D x)
+    {
+        if (x instanceof SparseDoubleMatrix2D) {
+            return (SparseDoubleMatrix2D)x;
+        } else {
+            SparseDoubleMatrix2D tmp_x =
+                new SparseDoubleMatrix2D(x.rows(), x.columns());
+            tmp_x.assign(x);
+            return tmp_x;
+        }
+    }
+
+    /**
+     * Returns the decision function of the model as a compiled linear
+     * model oriented such that positive scores are on the side of the class
+     * 1.0. It is computed on first use.
+     * The bias feature of liblinear is not used as JCP trains without it.
+     *
+     * @return the decision function.
+     */
+    private CompiledLinearModel getLinearModel()
+    {
+        CompiledLinearModel linearModel = _linearModel;
+        if (linearModel == null) {
+            int n = _model.getNrFeature();
+            double sign = orientation();
+            double[] w = new double[n];
+            double[] featureWeights = _model.getFeatureWeights();
+            for (int i = 0; i < n; i++) {
+                w[i] = sign * featureWeights[i];
+            }
+            linearModel = new CompiledLinearModel(w, 0.0);
+            _linearModel = linearModel;
+        }
+        return linearModel;
+    }
+
+    /**
+     * Returns whether predictions can be made from a single decision
+     * function. This is the case for regression and two-class
+     * classification except for the MCSVM_CS solver.
+     *
+     * @return <tt>true</tt> if predictions can be made from a single decision function or <tt>false</tt> otherwise.
+     */
+    private boolean isLinearPredictionSupported()
+    {
+        return _model.getSolverType().isSupportVectorRegression() ||
+               (_model.getNrClass() == 2 &&
+                _model.getSolverType() != SolverType.MCSVM_CS);
+    }
+
+    private void checkSeparatingPlane()
+    {
+        // FIXME: This is only valid for 2-class problems.
+        if (_model.getSolverType().isSupportVectorRegression() ||
+            !isLinearPredictionSupported()) {
+            throw new UnsupportedOperationException("Not implemented");
+        }
+    }
+
+    private double orientation()
+    {
+        // Regression models have no labels.
+        if (_model.getSolverType().isSupportVectorRegression()) {
+            return 1.0;
+        }
+        return _model.getLabels()[0] == -1 ? -1.0 : 1.0;
+    }
+
+    /**
+     * Returns the prediction liblinear would make for an instance given
+     * the score of the compiled decision function.
+     *
+     * @param score     the score of the compiled decision function.
+     * @return the prediction.
+     */
+    private double toPrediction(double score)
+    {
+        if (_model.getSolverType().isSupportVectorRegression()) {
+            return score;
+        }
+        int[] labels = _model.getLabels();
+        double decisionValue = orientation() * score;
+        return decisionValue > 0.0 ? labels[0] : labels[1];
+    }
+
+    /**
+     * Computes the score of a linear model for an instance in the
+     * liblinear format over its non-zero attributes.
+     *
+     * @param linearModel  the linear model.
+     * @param nodes        the instance.
+     * @return the score of the instance.
+     */
+    private static double score(CompiledLinearModel linearModel,
+                                Feature[] nodes)
+    {
+        double score = linearModel.getBias();
+        for (int i = 0; i < nodes.length; i++) {
+            score += linearModel.weight(nodes[i].getIndex() - 1) *
+                     nodes[i].getValue();
+        }
+        return score;
+    }
+
     private Parameter readParameters()
     {
         // Default parameters.
@@ -147,6 +364,27 @@ public class LinearClassifier
         return parameters;
     }
 
+    private static Field findInitialSolutionField()
+    {
+        try {
+            Field field = Parameter.class.getDeclaredField("init_sol");
+            field.setAccessible(true);
+            return field;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static void setInitialSolution(Parameter parameters,
+                                           double[] weights)
+    {
+        try {
+            _initialSolutionField.set(parameters, weights);
+        } catch (IllegalAccessException e) {
+            // Train from scratch.
+        }
+    }
+
     private void writeObject(ObjectOutputStream oos)
         throws java.io.IOException
     {
@@ -193,4 +431,50 @@ public class LinearClassifier
             _model = Linear.loadModel(file);
         }
     }
+
+    /**
+     * Predicts the targets of or computes the signed distances for a range
+     * of instances. The predictions are made from the compiled decision
+     * function if one is given.
+     */
+    class PredictAction extends ParallelizedAction
+    {
+        SparseDoubleMatrix2D _x;
+        double[] _results;
+        CompiledLinearModel _linearModel;
+        boolean _distance;
+
+        public PredictAction(SparseDoubleMatrix2D x,
+                             double[] results,
+                             CompiledLinearModel linearModel,
+                             boolean distance,
+                             int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _results = results;
+            _linearModel = linearModel;
+            _distance = distance;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            Feature[] nodes = _x.rows[i];
+            if (_linearModel == null) {
+                _results[i] = Linear.predict(_model, nodes);
+            } else if (_distance) {
+                _results[i] = score(_linearModel, nodes);
+            } else {
+                _results[i] = toPrediction(score(_linearModel, nodes));
+            }
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new PredictAction(_x, _results, _linearModel, _distance,
+                                     first, last);
+        }
+    }
 }
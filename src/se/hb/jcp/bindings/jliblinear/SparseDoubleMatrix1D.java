@@ -43,6 +43,13 @@ public class SparseDoubleMatrix1D extends cern.colt.matrix.DoubleMatrix1D
      */
     Feature[] nodes;
 
+    /**
+     * The matrix this vector is a row view of, or null. The row of the
+     * matrix is kept in sync when the nodes are replaced.
+     */
+    private SparseDoubleMatrix2D _matrix;
+    private int _row;
+
     /**
      * Constructs a matrix with a copy of the given values.
      * The values are copied. So subsequent changes in <tt>values</tt>
@@ -101,6 +108,13 @@ public class SparseDoubleMatrix1D extends cern.colt.matrix.DoubleMatrix1D
         this.nodes = nodes;
     }
 
+    SparseDoubleMatrix1D(SparseDoubleMatrix2D matrix, int row)
+    {
+        this(matrix.columns(), matrix.rows[row]);
+        _matrix = matrix;
+        _row    = row;
+    }
+
     /**
      * Replaces all cell values of the receiver with the values of
      * another matrix.  Both matrices must have the same size.
@@ -122,6 +136,7 @@ public class SparseDoubleMatrix1D extends cern.colt.matrix.DoubleMatrix1D
         if (other instanceof SparseDoubleMatrix1D) {
             // FIXME: Should this be a deep copy?
             this.nodes = ((SparseDoubleMatrix1D)other).nodes;
+            updateMatrixRow();
             return this;
         } else {
             IntArrayList indexList = new IntArrayList();
@@ -132,6 +147,7 @@ public class SparseDoubleMatrix1D extends cern.colt.matrix.DoubleMatrix1D
                 nodes[i] =
                     new FeatureNode(indexList.get(i)+1, valueList.get(i));
             }
+            updateMatrixRow();
             return this;
         }
     }
@@ -227,6 +243,30 @@ public class SparseDoubleMatrix1D extends cern.colt.matrix.DoubleMatrix1D
             for (; i < old.length; i++) {
                 nodes[i + 1] = old[i];
             }
+            updateMatrixRow();
+        }
+    }
+
+    /**
+     * Fills the coordinates and values of cells having non-zero values into
+     * the specified lists. The cost is proportional to the number of
+     * non-zero cells rather than to the size of the matrix.
+     *
+     * @param indexList  the list to be filled with indexes, can have any size.
+     * @param valueList  the list to be filled with values, can have any size.
+     */
+    @Override
+    public void getNonZeros(IntArrayList indexList, DoubleArrayList valueList)
+    {
+        indexList.clear();
+        valueList.clear();
+        indexList.ensureCapacity(nodes.length);
+        valueList.ensureCapacity(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i].getValue() != 0.0) {
+                indexList.add(nodes[i].getIndex() - 1);
+                valueList.add(nodes[i].getValue());
+            }
         }
     }
 
@@ -241,4 +281,13 @@ public class SparseDoubleMatrix1D extends cern.colt.matrix.DoubleMatrix1D
         // FIXME: If needed.
         throw new UnsupportedOperationException("Not implemented");
     }
+
+    // Keeps the row of the matrix this vector is a view of, if any, in sync
+    // after the nodes have been replaced.
+    private void updateMatrixRow()
+    {
+        if (_matrix != null) {
+            _matrix.rows[_row] = nodes;
+        }
+    }
 }
@@ -20,9 +20,16 @@ package se.hb.jcp.bindings.jliblinear;
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
+import java.util.Arrays;
+
 import de.bwaldvogel.liblinear.Feature;
 import de.bwaldvogel.liblinear.FeatureNode;
 
+import se.hb.jcp.util.CSRMatrices;
+import se.hb.jcp.util.IBulkRowMatrix2D;
+import se.hb.jcp.util.IRowSelectingMatrix2D;
+import se.hb.jcp.util.IRowSharingMatrix2D;
+
 /**
  * Class for sparse 2-d matrices holding <tt>double</tt> elements in
  * the sparse format expected by the Java library liblinear. See the
@@ -33,6 +40,9 @@ import de.bwaldvogel.liblinear.FeatureNode;
 // TODO: Make sure to adhere to colt's conventions.
 
 public class SparseDoubleMatrix2D extends cern.colt.matrix.DoubleMatrix2D
+    implements IRowSharingMatrix2D,
+               IRowSelectingMatrix2D,
+               IBulkRowMatrix2D
 {
     /**
      * Internal array of array of Feature nodes as the Java implementation of
@@ -65,6 +75,65 @@ public class SparseDoubleMatrix2D extends cern.colt.matrix.DoubleMatrix2D
         }
     }
 
+    /**
+     * Constructs a matrix sharing the rows of another matrix followed by
+     * a number of extra rows which are initially <tt>0</tt>.
+     * @param base the matrix whose rows are shared.
+     * @param extraRows the number of extra rows.
+     */
+    private SparseDoubleMatrix2D(SparseDoubleMatrix2D base, int extraRows)
+    {
+        int n = base.rows();
+        setUp(n + extraRows, base.columns());
+        this.rows = Arrays.copyOf(base.rows, n + extraRows);
+        for (int r = n; r < n + extraRows; r++) {
+            this.rows[r] = new Feature[0];
+        }
+    }
+
+    /**
+     * Constructs a matrix sharing the selected rows of another matrix.
+     * @param base the matrix whose rows are shared.
+     * @param selectedRows the indices of the selected rows.
+     */
+    private SparseDoubleMatrix2D(SparseDoubleMatrix2D base, int[] selectedRows)
+    {
+        setUp(selectedRows.length, base.columns());
+        this.rows = new Feature[selectedRows.length][];
+        for (int r = 0; r < selectedRows.length; r++) {
+            this.rows[r] = base.rows[selectedRows[r]];
+        }
+    }
+
+    /**
+     * Constructs a matrix with the contents given in compressed sparse row
+     * (CSR) format. See <tt>IBulkRowMatrix2D</tt>.
+     * @param rows the number of rows the matrix shall have.
+     * @param columns the number of columns the matrix shall have.
+     * @param rowPointers the start of each row followed by the end of the last row.
+     * @param indices the column indices of the elements.
+     * @param values the values of the elements.
+     * @throws IllegalArgumentException if the arrays are inconsistent.
+     */
+    public SparseDoubleMatrix2D(int      rows,
+                                int      columns,
+                                int[]    rowPointers,
+                                int[]    indices,
+                                double[] values)
+    {
+        CSRMatrices.check(rows, columns, rowPointers, indices, values);
+        setUp(rows, columns);
+        this.rows = new Feature[rows][];
+        for (int r = 0; r < rows; r++) {
+            int first = rowPointers[r];
+            Feature[] row = new Feature[rowPointers[r + 1] - first];
+            for (int i = first; i < rowPointers[r + 1]; i++) {
+                row[i - first] = new FeatureNode(indices[i] + 1, values[i]);
+            }
+            this.rows[r] = row;
+        }
+    }
+
     /**
      * Construct and returns a new empty matrix <i>of the same dynamic type</i>
      * as the receiver, having the specified number of rows and columns.
@@ -103,6 +172,56 @@ public class SparseDoubleMatrix2D extends cern.colt.matrix.DoubleMatrix2D
         return new SparseDoubleMatrix1D(size);
     }
 
+    /**
+     * Constructs and returns a new matrix of the same dynamic type as the
+     * receiver with <tt>rows() + extraRows</tt> rows. The first
+     * <tt>rows()</tt> rows share the node arrays of the receiver.
+     *
+     * @param extraRows  the number of extra rows.
+     * @return a new matrix sharing the rows of the receiver.
+     */
+    @Override
+    public DoubleMatrix2D likeSharingRows(int extraRows)
+    {
+        return new SparseDoubleMatrix2D(this, extraRows);
+    }
+
+    /**
+     * Constructs and returns a new matrix of the same dynamic type as the
+     * receiver consisting of the selected rows of the receiver. The rows
+     * share the node arrays of the receiver.
+     *
+     * @param selectedRows  the indices of the selected rows.
+     * @return a new matrix sharing the selected rows of the receiver.
+     */
+    @Override
+    public DoubleMatrix2D likeSelectingRows(int[] selectedRows)
+    {
+        for (int r = 0; r < selectedRows.length; r++) {
+            checkRow(selectedRows[r]);
+        }
+        return new SparseDoubleMatrix2D(this, selectedRows);
+    }
+
+    /**
+     * Constructs and returns a new matrix of the same dynamic type as the
+     * receiver with the contents given in compressed sparse row (CSR)
+     * format.
+     *
+     * @param columns      the number of columns the matrix shall have.
+     * @param rowPointers  the start of each row followed by the end of the last row.
+     * @param indices      the column indices of the elements.
+     * @param values       the values of the elements.
+     * @return a new matrix with <tt>rowPointers.length - 1</tt> rows.
+     */
+    @Override
+    public DoubleMatrix2D likeFromCSR(int columns, int[] rowPointers,
+                                      int[] indices, double[] values)
+    {
+        return new SparseDoubleMatrix2D(rowPointers.length - 1, columns,
+                                        rowPointers, indices, values);
+    }
+
     /**
      * Construct and returns a new 1-d matrix <i>of the corresponding dynamic
      * type</i>, sharing the same cells.
@@ -187,7 +306,7 @@ public class SparseDoubleMatrix2D extends cern.colt.matrix.DoubleMatrix2D
     {
         checkRow(row);
         if (_rowViews[row] == null) {
-            _rowViews[row] = new SparseDoubleMatrix1D(columns, rows[row]);
+            _rowViews[row] = new SparseDoubleMatrix1D(this, row);
         }
         return _rowViews[row];
     }
@@ -199,6 +318,7 @@ public class SparseDoubleMatrix2D extends cern.colt.matrix.DoubleMatrix2D
      * @param indices  the indices to be filled in the new row.
      * @param values   the values to be filled into the new row.
      */
+    @Override
     public void setRow(int      row,
                        int[]    indices,
                        double[] values)
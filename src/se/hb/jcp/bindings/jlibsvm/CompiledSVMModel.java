@@ -0,0 +1,529 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.bindings.jlibsvm;
+
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+
+/**
+ * A prediction engine for a trained Java libsvm model. The support vectors
+ * are flattened into primitive CSR arrays, with the squared norms
+ * precomputed for the RBF kernel, and the instances are evaluated against
+ * all support vectors in blocks: the block of instances is scattered into
+ * an interleaved dense buffer so that each support vector element is
+ * multiplied with the corresponding element of all instances in the block
+ * in one contiguous inner loop.
+ *
+ * The predictions, decision values and probability estimates are the
+ * same as those of libsvm up to rounding. The LINEAR, POLY, RBF and
+ * SIGMOID kernels are supported. The support vector values can optionally
+ * be stored in single precision to halve the memory traffic at some loss
+ * of accuracy.
+ *
+ * The engine is immutable and can be used by several threads
+ * concurrently.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+class CompiledSVMModel
+{
+    // The maximum number of instances evaluated together.
+    private static final int MAX_BLOCK_SIZE = 16;
+    // The maximum size in bytes of the scatter buffer for a block.
+    private static final int MAX_BUFFER_BYTES = 1 << 22;
+    // The bounds for the pairwise probability estimates used by libsvm.
+    private static final double MIN_PROBABILITY = 1e-7;
+
+    private final int _svmType;
+    private final int _kernelType;
+    private final int _degree;
+    private final double _gamma;
+    private final double _coef0;
+
+    private final int _nrClass;
+    private final int[] _label;
+    private final int[] _start;
+    private final int[] _count;
+    private final double[][] _svCoef;
+    private final double[] _rho;
+    private final double[] _probA;
+    private final double[] _probB;
+
+    // The support vectors in CSR format.
+    private final int _l;
+    private final int _dimension;
+    private final int[] _svPointers;
+    private final int[] _svIndices;
+    private final double[] _svValues;
+    private final float[] _svValuesFloat;
+    private final double[] _svSquaredNorms;
+
+    private final int _blockSize;
+    private final ThreadLocal<Workspace> _workspace =
+        new ThreadLocal<Workspace>() {
+            @Override
+            protected Workspace initialValue()
+            {
+                return new Workspace();
+            }
+        };
+
+    /**
+     * Returns whether the supplied model can be compiled.
+     *
+     * @param model    the trained model.
+     * @return <tt>true</tt> if the model can be compiled or <tt>false</tt> otherwise.
+     */
+    static boolean isSupported(svm_model model)
+    {
+        int type = model.param.kernel_type;
+        return type == svm_parameter.LINEAR || type == svm_parameter.POLY ||
+               type == svm_parameter.RBF    || type == svm_parameter.SIGMOID;
+    }
+
+    /**
+     * Compiles a trained model.
+     *
+     * @param model            the trained model.
+     * @param singlePrecision  a boolean indicating whether the support vector values should be stored in single precision.
+     */
+    CompiledSVMModel(svm_model model, boolean singlePrecision)
+    {
+        if (!isSupported(model)) {
+            throw new IllegalArgumentException
+                          ("Unsupported kernel type " +
+                           model.param.kernel_type + ".");
+        }
+        _svmType    = model.param.svm_type;
+        _kernelType = model.param.kernel_type;
+        _degree     = model.param.degree;
+        _gamma      = model.param.gamma;
+        _coef0      = model.param.coef0;
+
+        _nrClass = model.nr_class;
+        _label   = model.label;
+        _svCoef  = model.sv_coef;
+        _rho     = model.rho;
+        _probA   = model.probA;
+        _probB   = model.probB;
+        if (model.nSV != null) {
+            _count = model.nSV;
+            _start = new int[_nrClass];
+            for (int i = 1; i < _nrClass; i++) {
+                _start[i] = _start[i - 1] + _count[i - 1];
+            }
+        } else {
+            _count = null;
+            _start = null;
+        }
+
+        _l = model.l;
+        int nnz = 0;
+        int dimension = 0;
+        for (int j = 0; j < _l; j++) {
+            for (svm_node node : model.SV[j]) {
+                nnz++;
+                dimension = Math.max(dimension, node.index + 1);
+            }
+        }
+        _dimension = dimension;
+        _svPointers = new int[_l + 1];
+        _svIndices = new int[nnz];
+        _svValues = singlePrecision ? null : new double[nnz];
+        _svValuesFloat = singlePrecision ? new float[nnz] : null;
+        _svSquaredNorms = new double[_l];
+        int k = 0;
+        for (int j = 0; j < _l; j++) {
+            double squaredNorm = 0.0;
+            for (svm_node node : model.SV[j]) {
+                _svIndices[k] = node.index;
+                if (singlePrecision) {
+                    _svValuesFloat[k] = (float)node.value;
+                    squaredNorm += _svValuesFloat[k] * _svValuesFloat[k];
+                } else {
+                    _svValues[k] = node.value;
+                    squaredNorm += node.value * node.value;
+                }
+                k++;
+            }
+            _svPointers[j + 1] = k;
+            _svSquaredNorms[j] = squaredNorm;
+        }
+        _blockSize =
+            Math.max(1, Math.min(MAX_BLOCK_SIZE,
+                                 MAX_BUFFER_BYTES /
+                                 (8 * Math.max(1, _dimension))));
+    }
+
+    /**
+     * Returns whether this model gives probability estimates.
+     *
+     * @return <tt>true</tt> if the model gives probability estimates or <tt>false</tt> otherwise.
+     */
+    boolean hasProbabilityEstimates()
+    {
+        return (_svmType == svm_parameter.C_SVC ||
+                _svmType == svm_parameter.NU_SVC) &&
+               _probA != null && _probB != null;
+    }
+
+    /**
+     * Predicts the target for an instance as svm_predict.
+     *
+     * @param x    the instance.
+     * @return the predicted target.
+     */
+    double predict(svm_node[] x)
+    {
+        double[] result = new double[1];
+        predict(new svm_node[][] { x }, 0, 1, result, null);
+        return result[0];
+    }
+
+    /**
+     * Predicts the target and computes the probability estimates for an
+     * instance as svm_predict_probability.
+     *
+     * @param x               the instance.
+     * @param probabilities   an initialized <tt>double[]</tt> array to store the probability estimates in.
+     * @return the predicted target.
+     */
+    double predictProbability(svm_node[] x, double[] probabilities)
+    {
+        double[] result = new double[1];
+        predict(new svm_node[][] { x }, 0, 1, result,
+                hasProbabilityEstimates() ? probabilities : null);
+        return result[0];
+    }
+
+    /**
+     * Predicts the targets and, optionally, computes the probability
+     * estimates for a range of instances. The probability estimates are
+     * only computed if the model has them; otherwise the predictions are
+     * made as by svm_predict.
+     *
+     * @param x              the instances.
+     * @param first          the first instance.
+     * @param last           the index after the last instance.
+     * @param predictions    an initialized <tt>double[]</tt> array to store the predicted target of instance i in position i.
+     * @param probabilities  an initialized <tt>double[]</tt> array to store the probability estimates of instance i from position (i - first) * nr_class; or null.
+     */
+    void predict(svm_node[][] x, int first, int last,
+                 double[] predictions, double[] probabilities)
+    {
+        Workspace ws = _workspace.get();
+        boolean probability = probabilities != null && hasProbabilityEstimates();
+        for (int i = first; i < last; i += _blockSize) {
+            int count = Math.min(_blockSize, last - i);
+            computeKernelValues(x, i, count, ws);
+            for (int b = 0; b < count; b++) {
+                int offset = b * _l;
+                if (probability) {
+                    predictions[i + b] =
+                        predictProbability(ws.kernel, offset, ws,
+                                           probabilities,
+                                           (i + b - first) * _nrClass);
+                } else {
+                    predictions[i + b] =
+                        predictValues(ws.kernel, offset, ws.decisionValues,
+                                      ws.votes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the kernel values between a block of instances and all
+     * support vectors.
+     */
+    private void computeKernelValues(svm_node[][] x, int first, int count,
+                                     Workspace ws)
+    {
+        double[] buffer = ws.buffer;
+        double[] dot = ws.dot;
+        double[] kernel = ws.kernel;
+        int bs = _blockSize;
+        // Scatter the instances into the interleaved buffer.
+        for (int b = 0; b < count; b++) {
+            double squaredNorm = 0.0;
+            for (svm_node node : x[first + b]) {
+                if (node.index < _dimension) {
+                    buffer[node.index * bs + b] = node.value;
+                }
+                squaredNorm += node.value * node.value;
+            }
+            ws.squaredNorms[b] = squaredNorm;
+        }
+        for (int j = 0; j < _l; j++) {
+            for (int b = 0; b < count; b++) {
+                dot[b] = 0.0;
+            }
+            int end = _svPointers[j + 1];
+            if (_svValues != null) {
+                for (int k = _svPointers[j]; k < end; k++) {
+                    double value = _svValues[k];
+                    int base = _svIndices[k] * bs;
+                    for (int b = 0; b < count; b++) {
+                        dot[b] += value * buffer[base + b];
+                    }
+                }
+            } else {
+                for (int k = _svPointers[j]; k < end; k++) {
+                    double value = _svValuesFloat[k];
+                    int base = _svIndices[k] * bs;
+                    for (int b = 0; b < count; b++) {
+                        dot[b] += value * buffer[base + b];
+                    }
+                }
+            }
+            for (int b = 0; b < count; b++) {
+                kernel[b * _l + j] = kernel(dot[b], ws.squaredNorms[b],
+                                            _svSquaredNorms[j]);
+            }
+        }
+        // Clear the buffer for the next block.
+        for (int b = 0; b < count; b++) {
+            for (svm_node node : x[first + b]) {
+                if (node.index < _dimension) {
+                    buffer[node.index * bs + b] = 0.0;
+                }
+            }
+        }
+    }
+
+    private double kernel(double dot, double squaredNormX, double squaredNormSV)
+    {
+        switch (_kernelType) {
+        case svm_parameter.LINEAR:
+            return dot;
+        case svm_parameter.POLY:
+            return powi(_gamma * dot + _coef0, _degree);
+        case svm_parameter.RBF:
+            return Math.exp(-_gamma *
+                            Math.max(0.0,
+                                     squaredNormX + squaredNormSV - 2 * dot));
+        default: // svm_parameter.SIGMOID
+            return Math.tanh(_gamma * dot + _coef0);
+        }
+    }
+
+    private static double powi(double base, int times)
+    {
+        // As libsvm.
+        double tmp = base;
+        double ret = 1.0;
+        for (int t = times; t > 0; t /= 2) {
+            if (t % 2 == 1) {
+                ret *= tmp;
+            }
+            tmp = tmp * tmp;
+        }
+        return ret;
+    }
+
+    /**
+     * Computes the decision values and the prediction for an instance from
+     * its kernel values as svm_predict_values.
+     */
+    private double predictValues(double[] kernel, int offset,
+                                 double[] decisionValues, int[] votes)
+    {
+        if (_svmType == svm_parameter.ONE_CLASS ||
+            _svmType == svm_parameter.EPSILON_SVR ||
+            _svmType == svm_parameter.NU_SVR) {
+            double[] coef = _svCoef[0];
+            double sum = 0.0;
+            for (int j = 0; j < _l; j++) {
+                sum += coef[j] * kernel[offset + j];
+            }
+            sum -= _rho[0];
+            decisionValues[0] = sum;
+            if (_svmType == svm_parameter.ONE_CLASS) {
+                return sum > 0 ? 1 : -1;
+            } else {
+                return sum;
+            }
+        }
+        for (int i = 0; i < _nrClass; i++) {
+            votes[i] = 0;
+        }
+        int p = 0;
+        for (int i = 0; i < _nrClass; i++) {
+            for (int j = i + 1; j < _nrClass; j++) {
+                double sum = 0.0;
+                int si = _start[i];
+                int sj = _start[j];
+                int ci = _count[i];
+                int cj = _count[j];
+                double[] coef1 = _svCoef[j - 1];
+                double[] coef2 = _svCoef[i];
+                for (int k = 0; k < ci; k++) {
+                    sum += coef1[si + k] * kernel[offset + si + k];
+                }
+                for (int k = 0; k < cj; k++) {
+                    sum += coef2[sj + k] * kernel[offset + sj + k];
+                }
+                sum -= _rho[p];
+                decisionValues[p] = sum;
+                if (sum > 0) {
+                    ++votes[i];
+                } else {
+                    ++votes[j];
+                }
+                p++;
+            }
+        }
+        int voteMaxIndex = 0;
+        for (int i = 1; i < _nrClass; i++) {
+            if (votes[i] > votes[voteMaxIndex]) {
+                voteMaxIndex = i;
+            }
+        }
+        return _label[voteMaxIndex];
+    }
+
+    /**
+     * Computes the probability estimates and the prediction for an instance
+     * from its kernel values as svm_predict_probability.
+     */
+    private double predictProbability(double[] kernel, int offset,
+                                      Workspace ws,
+                                      double[] probabilities, int position)
+    {
+        predictValues(kernel, offset, ws.decisionValues, ws.votes);
+        double[][] pairwise = ws.pairwise;
+        int k = 0;
+        for (int i = 0; i < _nrClass; i++) {
+            for (int j = i + 1; j < _nrClass; j++) {
+                pairwise[i][j] =
+                    Math.min(Math.max(sigmoidPredict(ws.decisionValues[k],
+                                                     _probA[k], _probB[k]),
+                                      MIN_PROBABILITY),
+                             1 - MIN_PROBABILITY);
+                pairwise[j][i] = 1 - pairwise[i][j];
+                k++;
+            }
+        }
+        if (_nrClass == 2) {
+            ws.probabilities[0] = pairwise[0][1];
+            ws.probabilities[1] = pairwise[1][0];
+        } else {
+            multiclassProbability(pairwise, ws);
+        }
+        int probMaxIndex = 0;
+        for (int i = 1; i < _nrClass; i++) {
+            if (ws.probabilities[i] > ws.probabilities[probMaxIndex]) {
+                probMaxIndex = i;
+            }
+        }
+        System.arraycopy(ws.probabilities, 0, probabilities, position,
+                         _nrClass);
+        return _label[probMaxIndex];
+    }
+
+    private static double sigmoidPredict(double decisionValue,
+                                         double a, double b)
+    {
+        double fApB = decisionValue * a + b;
+        // 1-p used later; avoid catastrophic cancellation.
+        if (fApB >= 0) {
+            return Math.exp(-fApB) / (1.0 + Math.exp(-fApB));
+        } else {
+            return 1.0 / (1 + Math.exp(fApB));
+        }
+    }
+
+    /**
+     * Couples the pairwise probability estimates into class probability
+     * estimates with method 2 of Wu, Lin and Weng, "Probability Estimates
+     * for Multi-class Classification by Pairwise Coupling", JMLR 2004,
+     * as libsvm.
+     */
+    private void multiclassProbability(double[][] r, Workspace ws)
+    {
+        int k = _nrClass;
+        double[] p = ws.probabilities;
+        double[][] q = ws.q;
+        double[] qp = ws.qp;
+        int maxIterations = Math.max(100, k);
+        double eps = 0.005 / k;
+
+        for (int t = 0; t < k; t++) {
+            p[t] = 1.0 / k;
+            q[t][t] = 0;
+            for (int j = 0; j < t; j++) {
+                q[t][t] += r[j][t] * r[j][t];
+                q[t][j] = q[j][t];
+            }
+            for (int j = t + 1; j < k; j++) {
+                q[t][t] += r[j][t] * r[j][t];
+                q[t][j] = -r[j][t] * r[t][j];
+            }
+        }
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            // Stopping condition, recalculate qp and pqp for numerical
+            // accuracy.
+            double pqp = 0;
+            for (int t = 0; t < k; t++) {
+                qp[t] = 0;
+                for (int j = 0; j < k; j++) {
+                    qp[t] += q[t][j] * p[j];
+                }
+                pqp += p[t] * qp[t];
+            }
+            double maxError = 0;
+            for (int t = 0; t < k; t++) {
+                double error = Math.abs(qp[t] - pqp);
+                if (error > maxError) {
+                    maxError = error;
+                }
+            }
+            if (maxError < eps) {
+                break;
+            }
+            for (int t = 0; t < k; t++) {
+                double diff = (-qp[t] + pqp) / q[t][t];
+                p[t] += diff;
+                pqp = (pqp + diff * (diff * q[t][t] + 2 * qp[t])) /
+                      (1 + diff) / (1 + diff);
+                for (int j = 0; j < k; j++) {
+                    qp[j] = (qp[j] + diff * q[t][j]) / (1 + diff);
+                    p[j] /= (1 + diff);
+                }
+            }
+        }
+    }
+
+    /**
+     * The per-thread buffers.
+     */
+    private class Workspace
+    {
+        final double[] buffer = new double[_dimension * _blockSize];
+        final double[] dot = new double[_blockSize];
+        final double[] squaredNorms = new double[_blockSize];
+        final double[] kernel = new double[_blockSize * _l];
+        final double[] decisionValues =
+            new double[Math.max(1, _nrClass * (_nrClass - 1) / 2)];
+        final int[] votes = new int[Math.max(1, _nrClass)];
+        final double[] probabilities = new double[Math.max(1, _nrClass)];
+        final double[][] pairwise = new double[_nrClass][_nrClass];
+        final double[][] q = new double[_nrClass][_nrClass];
+        final double[] qp = new double[_nrClass];
+    }
+}
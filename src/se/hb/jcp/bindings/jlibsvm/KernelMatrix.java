@@ -0,0 +1,216 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.bindings.jlibsvm;
+
+import java.util.Arrays;
+
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+
+/**
+ * Class for precomputed kernel (Gram) matrices of a set of instances in
+ * the format expected by the PRECOMPUTED kernel type of the Java version
+ * of libsvm. The matrix is computed once and extended with the kernel
+ * values of extra instances on demand, e.g. for transductive conformal
+ * prediction where the training set is extended with one test instance
+ * at a time.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class KernelMatrix
+{
+    // The estimated memory usage in bytes per matrix element.
+    private static final long BYTES_PER_ELEMENT = 16;
+
+    private final svm_parameter _parameters;
+    // The PRECOMPUTED kernel rows: element 0 holds the 1-based serial
+    // number of the instance and element j the kernel value for instance j.
+    private final svm_node[][] _rows;
+
+    /**
+     * Computes the kernel matrix for the first instances in x.
+     *
+     * @param parameters  the svm parameters specifying the kernel.
+     * @param x           the instances.
+     * @param rows        the number of instances to include.
+     */
+    public KernelMatrix(svm_parameter parameters, svm_node[][] x, int rows)
+    {
+        if (parameters.kernel_type == svm_parameter.PRECOMPUTED) {
+            throw new IllegalArgumentException
+                          ("The kernel is already precomputed.");
+        }
+        _parameters = parameters;
+        _rows = new svm_node[rows][rows + 1];
+        for (int i = 0; i < rows; i++) {
+            _rows[i][0] = serialNode(i);
+            for (int j = 0; j <= i; j++) {
+                // libsvm only reads the values of the kernel value nodes,
+                // so the symmetric elements share one node.
+                svm_node node = new svm_node();
+                node.index = j + 1;
+                node.value = kernel(x[i], x[j], parameters);
+                _rows[i][j + 1] = node;
+                _rows[j][i + 1] = node;
+            }
+        }
+    }
+
+    /**
+     * Returns whether a kernel matrix for the given number of instances
+     * is expected to fit comfortably in the available memory.
+     *
+     * @param rows  the number of instances.
+     * @return <tt>true</tt> if the matrix is expected to fit or <tt>false</tt> otherwise.
+     */
+    public static boolean isFeasible(int rows)
+    {
+        return BYTES_PER_ELEMENT * rows * rows <
+               Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /**
+     * Returns the number of instances in this kernel matrix.
+     *
+     * @return the number of instances.
+     */
+    public int rows()
+    {
+        return _rows.length;
+    }
+
+    /**
+     * Returns the PRECOMPUTED kernel rows for the instances in x. The
+     * first <tt>rows()</tt> instances of x must be the instances of this
+     * kernel matrix. Only the kernel values involving the extra instances
+     * are computed. The returned rows share the nodes of this matrix and
+     * must not be modified.
+     *
+     * @param x  the instances.
+     * @return the kernel rows of the instances.
+     */
+    public svm_node[][] extend(svm_node[][] x)
+    {
+        int n = _rows.length;
+        int m = x.length;
+        svm_node[][] kx = new svm_node[m][];
+        for (int i = 0; i < n; i++) {
+            kx[i] = Arrays.copyOf(_rows[i], m + 1);
+        }
+        for (int i = n; i < m; i++) {
+            kx[i] = new svm_node[m + 1];
+            kx[i][0] = serialNode(i);
+            for (int j = 0; j <= i; j++) {
+                svm_node node = new svm_node();
+                node.index = j + 1;
+                node.value = kernel(x[i], x[j], _parameters);
+                kx[i][j + 1] = node;
+                kx[j][i + 1] = node;
+            }
+        }
+        return kx;
+    }
+
+    /**
+     * Returns a copy of the svm parameters that uses the PRECOMPUTED kernel
+     * type.
+     *
+     * @return the svm parameters for training on the kernel rows.
+     */
+    public svm_parameter getPrecomputedParameters()
+    {
+        svm_parameter parameters = (svm_parameter)_parameters.clone();
+        parameters.kernel_type = svm_parameter.PRECOMPUTED;
+        return parameters;
+    }
+
+    /**
+     * Computes the kernel value for two instances as libsvm does.
+     *
+     * @param x           the first instance.
+     * @param y           the second instance.
+     * @param parameters  the svm parameters specifying the kernel.
+     * @return the kernel value.
+     */
+    public static double kernel(svm_node[] x, svm_node[] y,
+                                svm_parameter parameters)
+    {
+        switch (parameters.kernel_type) {
+        case svm_parameter.LINEAR:
+            return dot(x, y);
+        case svm_parameter.POLY:
+            return Math.pow(parameters.gamma * dot(x, y) + parameters.coef0,
+                            parameters.degree);
+        case svm_parameter.RBF:
+            {
+                double sum = 0.0;
+                int i = 0;
+                int j = 0;
+                while (i < x.length && j < y.length) {
+                    if (x[i].index == y[j].index) {
+                        double d = x[i++].value - y[j++].value;
+                        sum += d * d;
+                    } else if (x[i].index > y[j].index) {
+                        sum += y[j].value * y[j].value;
+                        j++;
+                    } else {
+                        sum += x[i].value * x[i].value;
+                        i++;
+                    }
+                }
+                for (; i < x.length; i++) {
+                    sum += x[i].value * x[i].value;
+                }
+                for (; j < y.length; j++) {
+                    sum += y[j].value * y[j].value;
+                }
+                return Math.exp(-parameters.gamma * sum);
+            }
+        case svm_parameter.SIGMOID:
+            return Math.tanh(parameters.gamma * dot(x, y) + parameters.coef0);
+        default:
+            throw new IllegalArgumentException
+                          ("Unsupported kernel type " +
+                           parameters.kernel_type + ".");
+        }
+    }
+
+    private static double dot(svm_node[] x, svm_node[] y)
+    {
+        double sum = 0.0;
+        int i = 0;
+        int j = 0;
+        while (i < x.length && j < y.length) {
+            if (x[i].index == y[j].index) {
+                sum += x[i++].value * y[j++].value;
+            } else if (x[i].index > y[j].index) {
+                j++;
+            } else {
+                i++;
+            }
+        }
+        return sum;
+    }
+
+    private static svm_node serialNode(int i)
+    {
+        svm_node node = new svm_node();
+        node.index = 0;
+        node.value = i + 1;
+        return node;
+    }
+}
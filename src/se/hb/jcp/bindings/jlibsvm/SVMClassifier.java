@@ -29,19 +29,47 @@ import libsvm.*;
 
 import se.hb.jcp.ml.IClassifier;
 import se.hb.jcp.ml.ISVMClassifier;
+import se.hb.jcp.ml.IWarmStartClassifier;
 import se.hb.jcp.ml.IClassProbabilityClassifier;
 import se.hb.jcp.ml.ClassifierBase;
+import se.hb.jcp.ml.CompiledLinearModel;
+import se.hb.jcp.util.ParallelizedAction;
 
 public class SVMClassifier
     extends ClassifierBase
     implements ISVMClassifier, //IClassProbabilityClassifier // FIXME: disabled.
+               IWarmStartClassifier,
                java.io.Serializable
 {
     private static final SparseDoubleMatrix1D _storageTemplate =
         new SparseDoubleMatrix1D(0);
+    // The maximum number of working set extensions for a warm start.
+    private static final int MAX_WARM_START_ROUNDS = 4;
+    // Instances within this distance outside the margin of a warm start
+    // seed are included in the initial working set.
+    private static final double WARM_START_SLACK = 0.25;
     protected svm_parameter _parameters;
     protected svm_model _model;
     AtomicReference<double[]> _cachedW = new AtomicReference<double[]>();
+    // The hyperplane as a compiled linear model. Created on first use.
+    // Not serialized.
+    private transient volatile CompiledLinearModel _linearModel;
+    // The model compiled for fast prediction. Created on first use.
+    // Not serialized.
+    private transient volatile CompiledSVMModel _compiledModel;
+    // Whether the compiled model stores the support vectors in single
+    // precision. Not serialized.
+    private transient boolean _singlePrecision;
+    // The number of training instances. Not serialized.
+    private transient int _trainingSize;
+    // The trained classifier seeding the next fit, if any.
+    private transient SVMClassifier _seed;
+    // The functional margins of the training instances. Created on first
+    // use as a warm start seed. Not serialized.
+    private transient volatile double[] _trainingMargins;
+    // The kernel matrix of the training instances. Created on first use as
+    // a warm start seed. Not serialized.
+    private transient volatile KernelMatrix _kernelMatrix;
 
     public SVMClassifier()
     {
@@ -157,6 +185,42 @@ public class SVMClassifier
             tmp_x = new SparseDoubleMatrix2D(x.rows(), x.columns());
             tmp_x.assign(x);
         }
+        _trainingSize = y.length;
+        _trainingMargins = null;
+        _cachedW.set(null);
+        _linearModel = null;
+        _compiledModel = null;
+        _kernelMatrix = null;
+        SVMClassifier seed = _seed;
+        _seed = null;
+        if (seed != null) {
+            // Only the kernel values involving the new instances need to
+            // be computed if the seed has a kernel matrix.
+            KernelMatrix kernel = seed.getKernelMatrix(tmp_x.rows);
+            svm_node[][] kx = null;
+            if (kernel != null) {
+                kx = kernel.extend(tmp_x.rows);
+            }
+            if (isWorkingSetSupported() && seed._model.sv_indices != null) {
+                _model = trainWarmStart(seed._model,
+                                        seed.getTrainingMargins(tmp_x.rows,
+                                                                y),
+                                        tmp_x.rows, kernel, kx, y);
+                if (_model != null) {
+                    return;
+                }
+            }
+            if (kx != null) {
+                svm_problem problem = new svm_problem();
+                problem.l = y.length;
+                problem.x = kx;
+                problem.y = y;
+                _model = svm.svm_train(problem,
+                                       kernel.getPrecomputedParameters());
+                restoreSupportVectors(_model, tmp_x.rows);
+                return;
+            }
+        }
         svm_problem problem = new svm_problem();
         problem.l = y.length;
         problem.x = tmp_x.rows;
@@ -168,10 +232,255 @@ public class SVMClassifier
     public IClassifier fitNew(DoubleMatrix2D x, double[] y)
     {
         SVMClassifier clone = new SVMClassifier(_parameters);
+        clone._singlePrecision = _singlePrecision;
         clone.fit(x, y);
         return clone;
     }
 
+    /**
+     * Returns whether the parameter settings of this classifier support
+     * warm-started training. This is the case unless the kernel is
+     * precomputed by the caller. A warm-started training reuses the kernel
+     * matrix of the seed and, for C-SVC without probability estimates, its
+     * support vectors.
+     *
+     * @return <tt>true</tt> if warm-started training is supported or <tt>false</tt> otherwise.
+     */
+    public boolean isWarmStartSupported()
+    {
+        return _parameters.kernel_type != svm_parameter.PRECOMPUTED;
+    }
+
+    /**
+     * Returns whether the parameter settings of this classifier allow
+     * training on a working set seeded by support vectors. This is the
+     * case for C-SVC without probability estimates as the solution is then
+     * determined by the support vectors alone.
+     *
+     * @return <tt>true</tt> if working set training is supported or <tt>false</tt> otherwise.
+     */
+    private boolean isWorkingSetSupported()
+    {
+        return _parameters.svm_type == svm_parameter.C_SVC &&
+               _parameters.probability == 0;
+    }
+
+    /**
+     * Trains and returns a copy of this classifier using the supplied data
+     * with the kernel matrix and, if supported, the support vectors of this
+     * classifier as the initial working set. The first rows of <tt>x</tt> and <tt>y</tt> must be the
+     * instances this classifier was trained on.
+     *
+     * @param x             the attributes of the instances.
+     * @param y             the targets of the instances.
+     * @return a new <tt>IClassifier</tt> instance trained with the supplied data and using the same algorithm and parameter settings as the parent instance.
+     */
+    public IClassifier fitNewWarmStart(DoubleMatrix2D x, double[] y)
+    {
+        SVMClassifier clone = new SVMClassifier(_parameters);
+        clone._singlePrecision = _singlePrecision;
+        if (isWarmStartSupported() && _model != null &&
+            _trainingSize > 0 && _trainingSize <= y.length) {
+            clone._seed = this;
+        }
+        clone.fit(x, y);
+        return clone;
+    }
+
+    /**
+     * Trains a model on a working set consisting of the support vectors of a
+     * seed model trained on the first instances of x, the instances close to
+     * the margin of the seed model and all instances after those. The working
+     * set is extended with the remaining instances that violate the
+     * optimality conditions of the new model until there are none. The
+     * support vectors of the seed are the non-zero part of its dual solution
+     * and the others have zero dual variables, so the result is an optimal
+     * solution for the whole training set.
+     *
+     * @param seed        the seed model.
+     * @param seedMargins the functional margins of the instances the seed model was trained on.
+     * @param x           the attributes of the instances.
+     * @param kernel      the kernel matrix of the seed model's instances; or null.
+     * @param kx          the precomputed kernel rows of the instances; or null.
+     * @param y           the targets of the instances.
+     * @return the trained model; or null if the working set did not converge.
+     */
+    private svm_model trainWarmStart(svm_model seed, double[] seedMargins,
+                                     svm_node[][] x,
+                                     KernelMatrix kernel, svm_node[][] kx,
+                                     double[] y)
+    {
+        // Train on the precomputed kernel rows if available.
+        svm_node[][] tx = x;
+        svm_parameter parameters = _parameters;
+        if (kx != null) {
+            tx = kx;
+            parameters = kernel.getPrecomputedParameters();
+        }
+        boolean[] inWorkingSet = new boolean[y.length];
+        for (int i = 0; i < seed.l; i++) {
+            inWorkingSet[seed.sv_indices[i] - 1] = true;
+        }
+        for (int i = 0; i < seedMargins.length; i++) {
+            if (seedMargins[i] < 1.0 + WARM_START_SLACK) {
+                inWorkingSet[i] = true;
+            }
+        }
+        for (int i = seedMargins.length; i < y.length; i++) {
+            inWorkingSet[i] = true;
+        }
+        for (int round = 0; round < MAX_WARM_START_ROUNDS; round++) {
+            int[] workingSet = new int[y.length];
+            int size = 0;
+            for (int i = 0; i < y.length; i++) {
+                if (inWorkingSet[i]) {
+                    workingSet[size++] = i;
+                }
+            }
+            svm_problem problem = new svm_problem();
+            problem.l = size;
+            problem.x = new svm_node[size][];
+            problem.y = new double[size];
+            for (int i = 0; i < size; i++) {
+                problem.x[i] = tx[workingSet[i]];
+                problem.y[i] = y[workingSet[i]];
+            }
+            svm_model model = svm.svm_train(problem, parameters);
+
+            boolean optimal = true;
+            double[] decisionValues =
+                new double[model.nr_class * (model.nr_class - 1) / 2];
+            for (int i = 0; i < y.length; i++) {
+                if (!inWorkingSet[i] &&
+                    functionalMargin(model, tx[i], y[i], decisionValues) <
+                    1.0 - _parameters.eps) {
+                    inWorkingSet[i] = true;
+                    optimal = false;
+                }
+            }
+            if (optimal) {
+                // Make the support vector indices refer to x.
+                for (int i = 0; i < model.l; i++) {
+                    model.sv_indices[i] =
+                        workingSet[model.sv_indices[i] - 1] + 1;
+                }
+                if (kx != null) {
+                    restoreSupportVectors(model, x);
+                }
+                return model;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the kernel rows of the support vectors of a model trained on
+     * a precomputed kernel with the instances and restores the kernel. The
+     * resulting model is identical to one trained on the instances.
+     *
+     * @param model     the model trained on the precomputed kernel rows.
+     * @param x         the attributes of the instances.
+     */
+    private void restoreSupportVectors(svm_model model, svm_node[][] x)
+    {
+        for (int i = 0; i < model.l; i++) {
+            model.SV[i] = x[model.sv_indices[i] - 1];
+        }
+        model.param = _parameters;
+    }
+
+    /**
+     * Returns the kernel matrix of the training instances of this
+     * classifier. It is computed on first use.
+     *
+     * @param x         the attributes of the instances, the first are the training instances.
+     * @return the kernel matrix; or null if it would be too large.
+     */
+    private KernelMatrix getKernelMatrix(svm_node[][] x)
+    {
+        if (!KernelMatrix.isFeasible(_trainingSize)) {
+            return null;
+        }
+        KernelMatrix kernel = _kernelMatrix;
+        if (kernel == null) {
+            synchronized (this) {
+                kernel = _kernelMatrix;
+                if (kernel == null) {
+                    kernel = new KernelMatrix(_parameters, x, _trainingSize);
+                    _kernelMatrix = kernel;
+                }
+            }
+        }
+        return kernel;
+    }
+
+    /**
+     * Returns the functional margins of the training instances of this
+     * classifier. They are computed on first use.
+     *
+     * @param x         the attributes of the instances, the first are the training instances.
+     * @param y         the targets of the instances, the first are the training targets.
+     * @return an <tt>double[]</tt> array containing the functional margins.
+     */
+    private double[] getTrainingMargins(svm_node[][] x, double[] y)
+    {
+        double[] margins = _trainingMargins;
+        if (margins == null) {
+            synchronized (this) {
+                margins = _trainingMargins;
+                if (margins == null) {
+                    margins = new double[_trainingSize];
+                    double[] decisionValues =
+                        new double[_model.nr_class * (_model.nr_class - 1) / 2];
+                    for (int i = 0; i < margins.length; i++) {
+                        margins[i] = functionalMargin(_model, x[i], y[i],
+                                                      decisionValues);
+                    }
+                    _trainingMargins = margins;
+                }
+            }
+        }
+        return margins;
+    }
+
+    /**
+     * Returns the smallest functional margin of an instance over the
+     * one-vs-one decision functions of its class. An instance with a
+     * margin of at least 1 - eps satisfies the optimality conditions with
+     * a zero dual variable.
+     *
+     * @param model          the model.
+     * @param x              the attributes of the instance.
+     * @param y              the target of the instance.
+     * @param decisionValues an <tt>double[]</tt> array for the decision values.
+     * @return the functional margin or negative infinity if the model does not know the class.
+     */
+    private static double functionalMargin(svm_model model, svm_node[] x,
+                                           double y, double[] decisionValues)
+    {
+        int k = 0;
+        while (k < model.nr_class && model.label[k] != (int)y) {
+            k++;
+        }
+        if (k == model.nr_class) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        svm.svm_predict_values(model, x, decisionValues);
+        double margin = Double.POSITIVE_INFINITY;
+        int p = 0;
+        for (int i = 0; i < model.nr_class; i++) {
+            for (int j = i + 1; j < model.nr_class; j++) {
+                if (i == k) {
+                    margin = Math.min(margin, decisionValues[p]);
+                } else if (j == k) {
+                    margin = Math.min(margin, -decisionValues[p]);
+                }
+                p++;
+            }
+        }
+        return margin;
+    }
+
     public double predict(DoubleMatrix1D instance)
     {
         SparseDoubleMatrix1D tmp_instance;
@@ -182,6 +491,13 @@ public class SVMClassifier
             tmp_instance.assign(instance);
         }
 
+        if (isLinearPredictionSupported()) {
+            return toPrediction(score(getLinearModel(), tmp_instance.nodes));
+        }
+        CompiledSVMModel compiledModel = getCompiledModel();
+        if (compiledModel != null) {
+            return compiledModel.predict(tmp_instance.nodes);
+        }
         return svm.svm_predict(_model, tmp_instance.nodes);
     }
 
@@ -196,9 +512,17 @@ public class SVMClassifier
             tmp_instance.assign(instance);
         }
 
-        double prediction = svm.svm_predict_probability(_model,
-                                                        tmp_instance.nodes,
-                                                        probabilityEstimates);
+        double prediction;
+        CompiledSVMModel compiledModel = getCompiledModel();
+        if (compiledModel != null) {
+            prediction =
+                compiledModel.predictProbability(tmp_instance.nodes,
+                                                 probabilityEstimates);
+        } else {
+            prediction = svm.svm_predict_probability(_model,
+                                                     tmp_instance.nodes,
+                                                     probabilityEstimates);
+        }
         // jlibsvm seem to use the reverse order of labels, so reverse
         // the array of probability estimates before returning them.
         // FIXME: Verify for more data sets. Use svm_model.label[c] and
@@ -225,24 +549,76 @@ public class SVMClassifier
     public double distanceFromSeparatingPlane(DoubleMatrix1D instance)
     {
         // FIXME: This is only valid for 2-class SVM and classes -1.0 and 1.0.
-        double[] w = getW();
-        double   b = computeB();
         if (_model.nr_class == 2) {
-            double distance = b;
-            for (int i = 0; i < instance.size(); i++) {
-                distance += w[i] * instance.get(i);
+            if (instance instanceof SparseDoubleMatrix1D) {
+                return score(getLinearModel(),
+                             ((SparseDoubleMatrix1D)instance).nodes);
+            } else {
+                return getLinearModel().score(instance);
             }
-            return distance;
         } else {
             throw new UnsupportedOperationException("Not implemented");
         }
     }
 
+    /**
+     * Predicts the targets for the supplied instances. The instances are
+     * passed to jlibsvm directly from the rows of the matrix.
+     *
+     * @param x             the instances.
+     * @param predictions   an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the predicted targets in.
+     */
+    @Override
+    public void predict(DoubleMatrix2D x, double[] predictions)
+    {
+        BatchAction all =
+            new BatchAction(asSparseDoubleMatrix2D(x), predictions,
+                            isLinearPredictionSupported()
+                            ? getLinearModel() : null,
+                            getCompiledModel(),
+                            false, 0, x.rows());
+        all.start();
+    }
+
+    /**
+     * Computes the signed distance between the separating hyperplane and
+     * each of the supplied instances. The hyperplane is computed once for
+     * all the instances.
+     *
+     * @param x          the instances.
+     * @param distances  an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the signed distances in.
+     */
+    @Override
+    public void distanceFromSeparatingPlane(DoubleMatrix2D x,
+                                            double[] distances)
+    {
+        // FIXME: This is only valid for 2-class SVM and classes -1.0 and 1.0.
+        if (_model.nr_class != 2) {
+            throw new UnsupportedOperationException("Not implemented");
+        }
+        BatchAction all =
+            new BatchAction(asSparseDoubleMatrix2D(x), distances,
+                            getLinearModel(), null, true, 0, x.rows());
+        all.start();
+    }
+
     public DoubleMatrix1D nativeStorageTemplate()
     {
         return _storageTemplate;
     }
 
+    private SparseDoubleMatrix2D asSparseDoubleMatrix2D(DoubleMatrix2D x)
+    {
+        if (x instanceof SparseDoubleMatrix2D) {
+            return (SparseDoubleMatrix2D)x;
+        } else {
+            SparseDoubleMatrix2D tmp_x =
+                new SparseDoubleMatrix2D(x.rows(), x.columns());
+            tmp_x.assign(x);
+            return tmp_x;
+        }
+    }
+
     /**
      * Returns the signed distance from the origin to the separating
      * hyperplane. See the libSVM FAQ #804,
@@ -260,6 +636,106 @@ public class SVMClassifier
         return sign * -_model.rho[0];
     }
 
+    /**
+     * Returns the separating hyperplane as a compiled linear model.
+     * It is computed on first use.
+     *
+     * @return the separating hyperplane.
+     */
+    private CompiledLinearModel getLinearModel()
+    {
+        CompiledLinearModel linearModel = _linearModel;
+        if (linearModel == null) {
+            linearModel = new CompiledLinearModel(getW(), computeB());
+            _linearModel = linearModel;
+        }
+        return linearModel;
+    }
+
+    /**
+     * Selects whether the support vectors of the model compiled for fast
+     * prediction are stored in single precision. This halves the memory
+     * traffic of the kernel evaluations at some loss of accuracy. The
+     * setting is not saved with the classifier.
+     *
+     * @param singlePrecision  a boolean indicating whether single precision should be used.
+     */
+    public void setSinglePrecisionPrediction(boolean singlePrecision)
+    {
+        _singlePrecision = singlePrecision;
+        _compiledModel = null;
+    }
+
+    /**
+     * Returns the model compiled for fast prediction. It is compiled on
+     * first use.
+     *
+     * @return the compiled model; or null if the kernel is not supported.
+     */
+    private CompiledSVMModel getCompiledModel()
+    {
+        CompiledSVMModel compiledModel = _compiledModel;
+        if (compiledModel == null && CompiledSVMModel.isSupported(_model)) {
+            compiledModel = new CompiledSVMModel(_model, _singlePrecision);
+            _compiledModel = compiledModel;
+        }
+        return compiledModel;
+    }
+
+    /**
+     * Returns whether predictions can be made from the separating
+     * hyperplane instead of the support vectors. This is the case for
+     * linear kernels except for multi-class SVM.
+     *
+     * @return <tt>true</tt> if predictions can be made from the hyperplane or <tt>false</tt> otherwise.
+     */
+    private boolean isLinearPredictionSupported()
+    {
+        return _parameters.kernel_type == svm_parameter.LINEAR &&
+               _model.nr_class == 2;
+    }
+
+    /**
+     * Returns the prediction libsvm would make for an instance given its
+     * signed distance from the separating hyperplane.
+     *
+     * @param distance  the signed distance from the hyperplane.
+     * @return the prediction.
+     */
+    private double toPrediction(double distance)
+    {
+        int type = _model.param.svm_type;
+        if (type == svm_parameter.EPSILON_SVR ||
+            type == svm_parameter.NU_SVR) {
+            return distance;
+        } else if (type == svm_parameter.ONE_CLASS) {
+            return distance > 0.0 ? 1.0 : -1.0;
+        } else {
+            // Undo the orientation of the hyperplane set by computeW().
+            double decisionValue =
+                _model.label[0] == -1.0 ? -distance : distance;
+            return decisionValue > 0.0 ? _model.label[0] : _model.label[1];
+        }
+    }
+
+    /**
+     * Computes the score of a linear model for an instance in the libsvm
+     * format over its non-zero attributes.
+     *
+     * @param linearModel  the linear model.
+     * @param nodes        the instance.
+     * @return the score of the instance.
+     */
+    private static double score(CompiledLinearModel linearModel,
+                                svm_node[] nodes)
+    {
+        double score = linearModel.getBias();
+        for (int i = 0; i < nodes.length; i++) {
+            score += linearModel.weight(nodes[i].index) * nodes[i].value;
+        }
+        return score;
+    }
+
     private double[] getW()
     {
         double[] w = _cachedW.get();
@@ -339,4 +815,64 @@ public class SVMClassifier
             }
         });
     }
+
+    /**
+     * Predicts the targets of or computes the signed distances for a range
+     * of instances. The predictions are made from the hyperplane if one is
+     * given and otherwise by the compiled model, if any, for the whole
+     * sub-interval at once.
+     */
+    class BatchAction extends ParallelizedAction
+    {
+        SparseDoubleMatrix2D _x;
+        double[] _results;
+        CompiledLinearModel _linearModel;
+        CompiledSVMModel _compiledModel;
+        boolean _distance;
+
+        public BatchAction(SparseDoubleMatrix2D x,
+                           double[] results,
+                           CompiledLinearModel linearModel,
+                           CompiledSVMModel compiledModel,
+                           boolean distance,
+                           int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _results = results;
+            _linearModel = linearModel;
+            _compiledModel = compiledModel;
+            _distance = distance;
+        }
+
+        @Override
+        protected void initialize(int first, int last)
+        {
+            if (_linearModel == null && _compiledModel != null) {
+                _compiledModel.predict(_x.rows, first, last, _results, null);
+            }
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            svm_node[] nodes = _x.rows[i];
+            if (_linearModel == null) {
+                if (_compiledModel == null) {
+                    _results[i] = svm.svm_predict(_model, nodes);
+                }
+            } else if (_distance) {
+                _results[i] = score(_linearModel, nodes);
+            } else {
+                _results[i] = toPrediction(score(_linearModel, nodes));
+            }
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new BatchAction(_x, _results, _linearModel,
+                                   _compiledModel, _distance, first, last);
+        }
+    }
 }
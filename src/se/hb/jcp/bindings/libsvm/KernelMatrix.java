@@ -0,0 +1,124 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.bindings.libsvm;
+
+/**
+ * Class for precomputed kernel (Gram) matrices of a set of instances for
+ * use with the PRECOMPUTED kernel type of the C library libsvm. The matrix
+ * is computed once and is extended with the kernel values of extra
+ * instances by <tt>svm.svm_train_precomputed()</tt>, e.g. for transductive
+ * conformal prediction where the training set is extended with one test
+ * instance at a time.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class KernelMatrix
+{
+    // The largest number of instances to precompute the kernel matrix for.
+    // The matrix of n instances takes 8 * n^2 bytes of native memory.
+    // Training on an extension to m instances temporarily needs another
+    // 16 * m^2 bytes for the dense PRECOMPUTED kernel rows libsvm requires
+    // and 8 * (m - n) * m bytes for the extra kernel values. A transductive
+    // conformal classifier trains one such model per label in parallel,
+    // so the peak is that times the number of labels, i.e. about 67 MB
+    // per label at this cap.
+    private static final int MAX_ROWS = 2048;
+
+    /**
+     * C-side pointer to the kernel matrix.
+     */
+    protected long Cptr;
+    private final int _rows;
+
+    /**
+     * Computes the kernel matrix for the first instances in x.
+     *
+     * @param parameters  the svm parameters specifying the kernel.
+     * @param x           the instances.
+     * @param rows        the number of instances to include.
+     */
+    public KernelMatrix(svm_parameter parameters, SparseDoubleMatrix2D x,
+                        int rows)
+    {
+        if (parameters.kernel_type == svm_parameter.PRECOMPUTED) {
+            throw new IllegalArgumentException
+                          ("The kernel is already precomputed.");
+        }
+        if (rows > x.rows()) {
+            throw new IllegalArgumentException
+                          ("There are fewer than " + rows + " instances.");
+        }
+        _rows = rows;
+        Cptr = native_kernel_matrix_create(parameters, x.Cptr, rows);
+    }
+
+    /**
+     * Returns whether a kernel matrix for the given number of instances
+     * is expected to fit comfortably in memory.
+     *
+     * @param rows  the number of instances.
+     * @return <tt>true</tt> if the matrix is expected to fit or <tt>false</tt> otherwise.
+     */
+    public static boolean isFeasible(int rows)
+    {
+        return rows <= MAX_ROWS;
+    }
+
+    /**
+     * Returns the number of instances in this kernel matrix.
+     *
+     * @return the number of instances.
+     */
+    public int rows()
+    {
+        return _rows;
+    }
+
+    protected void finalize() throws Throwable
+    {
+        if (Cptr != 0) {
+            native_kernel_matrix_free(Cptr);
+            Cptr = 0;
+        }
+    }
+
+    // Internal native functions.
+    private static native long native_kernel_matrix_create
+        (svm_parameter param,
+         long x_ptr,
+         int rows);
+    private static native void native_kernel_matrix_free(long ptr);
+
+    static {
+        // FIXME: It would have been better not to repeat this here and
+        //        keep it only in the svm class.
+        try {
+            System.loadLibrary("svm");
+        } catch (UnsatisfiedLinkError e) {
+            System.out.println
+                ("Could not load libsvm.");
+            System.exit(1);
+        }
+        try {
+            System.loadLibrary("svm-jni");
+        } catch (UnsatisfiedLinkError e) {
+            System.out.println
+                ("Could not load native JNI wrapper code for libsvm.");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.bindings.libsvm;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Releases the native storage owned by an object of this binding.
+ * The storage is released either explicitly, when the owner is closed,
+ * or by a daemon thread shortly after the owner has become unreachable.
+ * Unlike <tt>finalize()</tt> the latter does not keep the owner alive for
+ * an extra garbage collection cycle or depend on the finalizer thread
+ * keeping up.
+ *
+ * Subclasses must not refer to the owner, as that would keep it
+ * reachable, but only to the native pointers needed to release the storage.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+abstract class NativeReclaimer extends PhantomReference<Object>
+{
+    private static final ReferenceQueue<Object> _queue =
+        new ReferenceQueue<Object>();
+    // Keeps the reclaimers reachable until they have released the storage.
+    private static final Set<NativeReclaimer> _pending =
+        Collections.newSetFromMap
+            (new ConcurrentHashMap<NativeReclaimer, Boolean>());
+
+    /**
+     * Registers a reclaimer for the native storage of the owner.
+     *
+     * @param owner  the object owning the native storage.
+     */
+    NativeReclaimer(Object owner)
+    {
+        super(owner, _queue);
+        _pending.add(this);
+    }
+
+    /**
+     * Releases the native storage. Only the first call has any effect.
+     */
+    final void reclaim()
+    {
+        if (_pending.remove(this)) {
+            clear();
+            release();
+        }
+    }
+
+    /**
+     * Releases the native storage. Called at most once.
+     */
+    protected abstract void release();
+
+    static {
+        Thread reclaimer = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    while (true) {
+                        try {
+                            ((NativeReclaimer)_queue.remove()).reclaim();
+                        } catch (InterruptedException e) {
+                            // Ignore and continue.
+                        }
+                    }
+                }
+            }, "libsvm-native-reclaimer");
+        reclaimer.setDaemon(true);
+        reclaimer.start();
+    }
+}
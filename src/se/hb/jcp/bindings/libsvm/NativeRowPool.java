@@ -0,0 +1,71 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.bindings.libsvm;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+
+/**
+ * A per-thread pool of native instance rows for temporarily converting
+ * instances of other matrix types to the libsvm format, e.g. to predict
+ * them. The native rows are reused and only grow, so in the steady state
+ * converting an instance allocates no native memory and leaves nothing
+ * for the garbage collector to reclaim.
+ *
+ * A pooled row is only valid until the next call to <tt>copyOf()</tt> on
+ * the same thread and must only be read by the native functions.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+final class NativeRowPool
+{
+    private static final ThreadLocal<NativeRowPool> _pools =
+        new ThreadLocal<NativeRowPool>() {
+            @Override
+            protected NativeRowPool initialValue()
+            {
+                return new NativeRowPool();
+            }
+        };
+
+    private final SparseDoubleMatrix1D _row =
+        SparseDoubleMatrix1D.createPooled();
+    private final IntArrayList    _indices = new IntArrayList();
+    private final DoubleArrayList _values  = new DoubleArrayList();
+
+    private NativeRowPool()
+    {
+    }
+
+    /**
+     * Returns a pooled native copy of the instance.
+     *
+     * @param instance  the instance.
+     * @return a pooled <tt>SparseDoubleMatrix1D</tt> holding the instance.
+     */
+    static SparseDoubleMatrix1D copyOf(DoubleMatrix1D instance)
+    {
+        NativeRowPool pool = _pools.get();
+        instance.getNonZeros(pool._indices, pool._values);
+        pool._row.fillPooled(instance.size(),
+                             pool._indices.elements(),
+                             pool._values.elements(),
+                             pool._indices.size());
+        return pool._row;
+    }
+}
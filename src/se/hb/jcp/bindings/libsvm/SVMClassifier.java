@@ -16,6 +16,8 @@
 //
 package se.hb.jcp.bindings.libsvm;
 
+import java.util.Arrays;
+
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
@@ -24,18 +26,39 @@ import org.json.JSONObject;
 import se.hb.jcp.ml.IClassifier;
 import se.hb.jcp.ml.ISVMClassifier;
 import se.hb.jcp.ml.IClassProbabilityClassifier;
+import se.hb.jcp.ml.IWarmStartClassifier;
 import se.hb.jcp.ml.ClassifierBase;
+import se.hb.jcp.util.ParallelizedAction;
 
 public class SVMClassifier
     extends ClassifierBase
     implements ISVMClassifier,
                IClassProbabilityClassifier,
+               IWarmStartClassifier,
                java.io.Serializable
 {
     private static final SparseDoubleMatrix1D _storageTemplate =
         new SparseDoubleMatrix1D(0);
+    // The maximum number of working set extensions for a warm start.
+    private static final int MAX_WARM_START_ROUNDS = 4;
+    // Instances within this distance outside the margin of a warm start
+    // seed are included in the initial working set.
+    private static final double WARM_START_SLACK = 0.25;
     protected svm_parameter _parameters;
     protected svm_model _model;
+    // The 1-based indices of the support vectors in the training set.
+    // Not serialized.
+    private transient int[] _supportVectorIndices;
+    // The number of training instances. Not serialized.
+    private transient int _trainingSize;
+    // The trained classifier seeding the next fit, if any.
+    private transient SVMClassifier _seed;
+    // The functional margins of the training instances. Created on first
+    // use as a warm start seed. Not serialized.
+    private transient volatile double[] _trainingMargins;
+    // The kernel matrix of the training instances. Created on first use as
+    // a warm start seed. Not serialized.
+    private transient volatile KernelMatrix _kernelMatrix;
 
     public SVMClassifier()
     {
@@ -152,7 +175,44 @@ public class SVMClassifier
             tmp_x.assign(x);
         }
 
+        _trainingSize = y.length;
+        _trainingMargins = null;
+        _kernelMatrix = null;
+        SVMClassifier seed = _seed;
+        _seed = null;
+        if (seed != null) {
+            // Only the kernel values involving the new instances need to
+            // be computed if the seed has a kernel matrix.
+            KernelMatrix kernel = seed.getKernelMatrix(tmp_x);
+            if (isWorkingSetSupported() &&
+                seed._supportVectorIndices != null) {
+                _model = trainWarmStart(seed._supportVectorIndices,
+                                        seed.getTrainingMargins(tmp_x, y),
+                                        tmp_x, kernel, y);
+                if (_model != null) {
+                    return;
+                }
+            }
+            if (kernel != null) {
+                int[] rows = new int[y.length];
+                for (int i = 0; i < rows.length; i++) {
+                    rows[i] = i;
+                }
+                _model = svm.svm_train_precomputed(_parameters, kernel,
+                                                   tmp_x, rows, y);
+                if (isWorkingSetSupported()) {
+                    _supportVectorIndices =
+                        new int[svm.svm_get_nr_sv(_model)];
+                    svm.svm_get_sv_indices(_model, _supportVectorIndices);
+                }
+                return;
+            }
+        }
         _model = svm.svm_train(_parameters, tmp_x, y);
+        if (isWorkingSetSupported()) {
+            _supportVectorIndices = new int[svm.svm_get_nr_sv(_model)];
+            svm.svm_get_sv_indices(_model, _supportVectorIndices);
+        }
     }
 
     public IClassifier fitNew(DoubleMatrix2D x, double[] y)
@@ -162,16 +222,247 @@ public class SVMClassifier
         return clone;
     }
 
-    public double predict(DoubleMatrix1D instance)
+    /**
+     * Returns whether the parameter settings of this classifier support
+     * warm-started training. This is the case unless the kernel is
+     * precomputed by the caller. A warm-started training reuses the kernel
+     * matrix of the seed and, for C-SVC without probability estimates, its
+     * support vectors.
+     *
+     * @return <tt>true</tt> if warm-started training is supported or <tt>false</tt> otherwise.
+     */
+    public boolean isWarmStartSupported()
     {
-        SparseDoubleMatrix1D tmp_instance;
-        if (instance instanceof
-                se.hb.jcp.bindings.libsvm.SparseDoubleMatrix1D) {
-            tmp_instance = (SparseDoubleMatrix1D)instance;
-        } else {
-            tmp_instance = new SparseDoubleMatrix1D(instance.size());
-            tmp_instance.assign(instance);
+        return _parameters.kernel_type != svm_parameter.PRECOMPUTED;
+    }
+
+    /**
+     * Returns whether the parameter settings of this classifier allow
+     * training on a working set seeded by support vectors. This is the
+     * case for C-SVC without probability estimates as the solution is then
+     * determined by the support vectors alone.
+     *
+     * @return <tt>true</tt> if working set training is supported or <tt>false</tt> otherwise.
+     */
+    private boolean isWorkingSetSupported()
+    {
+        return _parameters.svm_type == svm_parameter.C_SVC &&
+               _parameters.probability == 0;
+    }
+
+    /**
+     * Trains and returns a copy of this classifier using the supplied data
+     * with the kernel matrix and, if supported, the support vectors of this
+     * classifier as the initial working set. The first rows of <tt>x</tt> and <tt>y</tt> must be the
+     * instances this classifier was trained on.
+     *
+     * @param x             the attributes of the instances.
+     * @param y             the targets of the instances.
+     * @return a new <tt>IClassifier</tt> instance trained with the supplied data and using the same algorithm and parameter settings as the parent instance.
+     */
+    public IClassifier fitNewWarmStart(DoubleMatrix2D x, double[] y)
+    {
+        SVMClassifier clone = new SVMClassifier(_parameters);
+        if (isWarmStartSupported() && _model != null &&
+            _trainingSize > 0 && _trainingSize <= y.length) {
+            clone._seed = this;
         }
+        clone.fit(x, y);
+        return clone;
+    }
+
+    /**
+     * Trains a model on a working set consisting of the support vectors of a
+     * seed model trained on the first instances of x, the instances close to
+     * the margin of the seed model and all instances after those. The working
+     * set is extended with the remaining instances that violate the
+     * optimality conditions of the new model until there are none. The
+     * support vectors of the seed are the non-zero part of its dual solution
+     * and the others have zero dual variables, so the result is an optimal
+     * solution for the whole training set.
+     *
+     * @param seedIndices  the 1-based indices of the support vectors of the seed model.
+     * @param seedMargins  the functional margins of the instances the seed model was trained on.
+     * @param x            the attributes of the instances.
+     * @param kernel       the kernel matrix of the seed model's instances; or null.
+     * @param y            the targets of the instances.
+     * @return the trained model; or null if the working set did not converge.
+     */
+    private svm_model trainWarmStart(int[] seedIndices, double[] seedMargins,
+                                     SparseDoubleMatrix2D x,
+                                     KernelMatrix kernel,
+                                     double[] y)
+    {
+        boolean[] inWorkingSet = new boolean[y.length];
+        for (int i = 0; i < seedIndices.length; i++) {
+            inWorkingSet[seedIndices[i] - 1] = true;
+        }
+        for (int i = 0; i < seedMargins.length; i++) {
+            if (seedMargins[i] < 1.0 + WARM_START_SLACK) {
+                inWorkingSet[i] = true;
+            }
+        }
+        for (int i = seedMargins.length; i < y.length; i++) {
+            inWorkingSet[i] = true;
+        }
+        for (int round = 0; round < MAX_WARM_START_ROUNDS; round++) {
+            int[] workingSet = new int[y.length];
+            int size = 0;
+            for (int i = 0; i < y.length; i++) {
+                if (inWorkingSet[i]) {
+                    workingSet[size++] = i;
+                }
+            }
+            double[] wy = new double[size];
+            for (int i = 0; i < size; i++) {
+                wy[i] = y[workingSet[i]];
+            }
+            svm_model model;
+            if (kernel != null) {
+                // The support vector indices of the model refer to x.
+                model = svm.svm_train_precomputed
+                            (_parameters, kernel, x,
+                             Arrays.copyOf(workingSet, size), wy);
+            } else {
+                SparseDoubleMatrix2D wx =
+                    new SparseDoubleMatrix2D(size, x.columns());
+                for (int i = 0; i < size; i++) {
+                    wx.getRow(i).assign(x.getRow(workingSet[i]));
+                }
+                model = svm.svm_train(_parameters, wx, wy);
+            }
+
+            int nrClass = svm.svm_get_nr_class(model);
+            int[] labels = new int[nrClass];
+            svm.svm_get_labels(model, labels);
+            boolean optimal = true;
+            double[] decisionValues = new double[nrClass * (nrClass - 1) / 2];
+            for (int i = 0; i < y.length; i++) {
+                if (!inWorkingSet[i] &&
+                    functionalMargin(model, labels, x.getRow(i), y[i],
+                                     decisionValues) <
+                    1.0 - _parameters.eps) {
+                    inWorkingSet[i] = true;
+                    optimal = false;
+                }
+            }
+            if (optimal) {
+                _supportVectorIndices = new int[svm.svm_get_nr_sv(model)];
+                svm.svm_get_sv_indices(model, _supportVectorIndices);
+                if (kernel == null) {
+                    // Make the support vector indices refer to x.
+                    for (int i = 0; i < _supportVectorIndices.length; i++) {
+                        _supportVectorIndices[i] =
+                            workingSet[_supportVectorIndices[i] - 1] + 1;
+                    }
+                }
+                return model;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the kernel matrix of the training instances of this
+     * classifier. It is computed on first use.
+     *
+     * @param x         the attributes of the instances, the first are the training instances.
+     * @return the kernel matrix; or null if it would be too large.
+     */
+    private KernelMatrix getKernelMatrix(SparseDoubleMatrix2D x)
+    {
+        if (!KernelMatrix.isFeasible(_trainingSize)) {
+            return null;
+        }
+        KernelMatrix kernel = _kernelMatrix;
+        if (kernel == null) {
+            synchronized (this) {
+                kernel = _kernelMatrix;
+                if (kernel == null) {
+                    kernel = new KernelMatrix(_parameters, x, _trainingSize);
+                    _kernelMatrix = kernel;
+                }
+            }
+        }
+        return kernel;
+    }
+
+    /**
+     * Returns the functional margins of the training instances of this
+     * classifier. They are computed on first use.
+     *
+     * @param x         the attributes of the instances, the first are the training instances.
+     * @param y         the targets of the instances, the first are the training targets.
+     * @return an <tt>double[]</tt> array containing the functional margins.
+     */
+    private double[] getTrainingMargins(SparseDoubleMatrix2D x, double[] y)
+    {
+        double[] margins = _trainingMargins;
+        if (margins == null) {
+            synchronized (this) {
+                margins = _trainingMargins;
+                if (margins == null) {
+                    int nrClass = svm.svm_get_nr_class(_model);
+                    int[] labels = new int[nrClass];
+                    svm.svm_get_labels(_model, labels);
+                    double[] decisionValues =
+                        new double[nrClass * (nrClass - 1) / 2];
+                    margins = new double[_trainingSize];
+                    for (int i = 0; i < margins.length; i++) {
+                        margins[i] = functionalMargin(_model, labels,
+                                                      x.getRow(i), y[i],
+                                                      decisionValues);
+                    }
+                    _trainingMargins = margins;
+                }
+            }
+        }
+        return margins;
+    }
+
+    /**
+     * Returns the smallest functional margin of an instance over the
+     * one-vs-one decision functions of its class. An instance with a
+     * margin of at least 1 - eps satisfies the optimality conditions with
+     * a zero dual variable.
+     *
+     * @param model          the model.
+     * @param labels         the class labels of the model.
+     * @param x              the attributes of the instance.
+     * @param y              the target of the instance.
+     * @param decisionValues an <tt>double[]</tt> array for the decision values.
+     * @return the functional margin or negative infinity if the model does not know the class.
+     */
+    private static double functionalMargin(svm_model model, int[] labels,
+                                           SparseDoubleMatrix1D x, double y,
+                                           double[] decisionValues)
+    {
+        int k = 0;
+        while (k < labels.length && labels[k] != (int)y) {
+            k++;
+        }
+        if (k == labels.length) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        svm.svm_predict_values(model, x, decisionValues);
+        double margin = Double.POSITIVE_INFINITY;
+        int p = 0;
+        for (int i = 0; i < labels.length; i++) {
+            for (int j = i + 1; j < labels.length; j++) {
+                if (i == k) {
+                    margin = Math.min(margin, decisionValues[p]);
+                } else if (j == k) {
+                    margin = Math.min(margin, -decisionValues[p]);
+                }
+                p++;
+            }
+        }
+        return margin;
+    }
+
+    public double predict(DoubleMatrix1D instance)
+    {
+        SparseDoubleMatrix1D tmp_instance = asSparseDoubleMatrix1D(instance);
 
         return svm.svm_predict(_model, tmp_instance);
     }
@@ -179,14 +470,7 @@ public class SVMClassifier
     public double predict(DoubleMatrix1D instance,
                           double[] probabilityEstimates)
     {
-        SparseDoubleMatrix1D tmp_instance;
-        if (instance instanceof
-                se.hb.jcp.bindings.libsvm.SparseDoubleMatrix1D) {
-            tmp_instance = (SparseDoubleMatrix1D)instance;
-        } else {
-            tmp_instance = new SparseDoubleMatrix1D(instance.size());
-            tmp_instance.assign(instance);
-        }
+        SparseDoubleMatrix1D tmp_instance = asSparseDoubleMatrix1D(instance);
 
         double prediction = svm.svm_predict_probability(_model,
                                                         tmp_instance,
@@ -213,19 +497,171 @@ public class SVMClassifier
      */
     public double distanceFromSeparatingPlane(DoubleMatrix1D instance)
     {
-        SparseDoubleMatrix1D tmp_instance;
-        if (instance instanceof
-                se.hb.jcp.bindings.libsvm.SparseDoubleMatrix1D) {
-            tmp_instance = (SparseDoubleMatrix1D)instance;
-        } else {
-            tmp_instance = new SparseDoubleMatrix1D(instance.size());
-            tmp_instance.assign(instance);
-        }
+        SparseDoubleMatrix1D tmp_instance = asSparseDoubleMatrix1D(instance);
         return svm.svm_distance_from_separating_plane(_model, tmp_instance);
     }
 
+    /**
+     * Predicts the targets for the supplied instances. Each block of
+     * instances is predicted in one native call.
+     *
+     * @param x             the instances.
+     * @param predictions   an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the predicted targets in.
+     */
+    @Override
+    public void predict(DoubleMatrix2D x, double[] predictions)
+    {
+        startBatch(BatchAction.PREDICT, x, predictions, null);
+    }
+
+    /**
+     * Predicts the targets and the target probabilities for the supplied
+     * instances. Each block of instances is predicted in one native call.
+     *
+     * @param x                      the instances.
+     * @param predictions            an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the predicted targets in.
+     * @param probabilityEstimates   an initialized <tt>double[]</tt> array with at least <tt>x.rows() * getLabels().length</tt> elements to store the predicted probabilities in.
+     */
+    @Override
+    public void predict(DoubleMatrix2D x,
+                        double[] predictions,
+                        double[] probabilityEstimates)
+    {
+        startBatch(BatchAction.PROBABILITY, x,
+                   predictions, probabilityEstimates);
+    }
+
+    /**
+     * Computes the signed distance between the separating hyperplane and
+     * each of the supplied instances. The hyperplane is computed once per
+     * native call for a block of instances.
+     *
+     * @param x          the instances.
+     * @param distances  an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the signed distances in.
+     */
+    @Override
+    public void distanceFromSeparatingPlane(DoubleMatrix2D x,
+                                            double[] distances)
+    {
+        startBatch(BatchAction.DISTANCE, x, distances, null);
+    }
+
     public DoubleMatrix1D nativeStorageTemplate()
     {
         return _storageTemplate;
     }
+
+    // Instances of other types are copied into a per-thread pooled native
+    // row, which is only valid until the next conversion on this thread.
+    private SparseDoubleMatrix1D asSparseDoubleMatrix1D(DoubleMatrix1D x)
+    {
+        if (x instanceof se.hb.jcp.bindings.libsvm.SparseDoubleMatrix1D) {
+            return (SparseDoubleMatrix1D)x;
+        } else {
+            return NativeRowPool.copyOf(x);
+        }
+    }
+
+    // Processes the instances in x in parallel batches. A temporary native
+    // copy of x is released as soon as all batches are done.
+    private void startBatch(int mode, DoubleMatrix2D x,
+                            double[] results, double[] probabilityEstimates)
+    {
+        SparseDoubleMatrix2D tmp_x = asSparseDoubleMatrix2D(x);
+        try {
+            BatchAction all =
+                new BatchAction(mode, tmp_x,
+                                results, probabilityEstimates, 0, x.rows());
+            all.start();
+        } finally {
+            if (tmp_x != x) {
+                tmp_x.close();
+            }
+        }
+    }
+
+    private SparseDoubleMatrix2D asSparseDoubleMatrix2D(DoubleMatrix2D x)
+    {
+        if (x instanceof se.hb.jcp.bindings.libsvm.SparseDoubleMatrix2D) {
+            return (SparseDoubleMatrix2D)x;
+        } else {
+            SparseDoubleMatrix2D tmp_x =
+                new SparseDoubleMatrix2D(x.rows(), x.columns());
+            tmp_x.assign(x);
+            return tmp_x;
+        }
+    }
+
+    /**
+     * Processes each sub-interval of instances with one native call in
+     * initialize(). compute(i) only post-processes the results of
+     * instance i.
+     */
+    class BatchAction extends ParallelizedAction
+    {
+        static final int PREDICT     = 0;
+        static final int PROBABILITY = 1;
+        static final int DISTANCE    = 2;
+
+        int _mode;
+        SparseDoubleMatrix2D _x;
+        double[] _results;
+        double[] _probabilityEstimates;
+
+        public BatchAction(int mode,
+                           SparseDoubleMatrix2D x,
+                           double[] results,
+                           double[] probabilityEstimates,
+                           int first, int last)
+        {
+            super(first, last);
+            _mode = mode;
+            _x = x;
+            _results = results;
+            _probabilityEstimates = probabilityEstimates;
+        }
+
+        @Override
+        protected void initialize(int first, int last)
+        {
+            switch (_mode) {
+            case PREDICT:
+                svm.svm_predict(_model, _x, first, last, _results);
+                break;
+            case PROBABILITY:
+                svm.svm_predict_probability(_model, _x, first, last,
+                                            _results, _probabilityEstimates);
+                break;
+            case DISTANCE:
+                svm.svm_distance_from_separating_plane(_model, _x,
+                                                       first, last,
+                                                       _results);
+                break;
+            }
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            if (_mode == PROBABILITY) {
+                // libsvm seems to use the opposite order of labels, so
+                // reverse the probability estimates as for single instances.
+                int k = svm.svm_get_nr_class(_model);
+                int l = i * k;
+                int r = l + k - 1;
+                for (; l < r; l++, r--) {
+                    double tmp = _probabilityEstimates[l];
+                    _probabilityEstimates[l] = _probabilityEstimates[r];
+                    _probabilityEstimates[r] = tmp;
+                }
+            }
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new BatchAction(_mode, _x, _results, _probabilityEstimates,
+                                   first, last);
+        }
+    }
 }
@@ -30,11 +30,15 @@ import java.io.ObjectOutputStream;
  * <tt>double</tt> elements in the sparse format expected by the C
  * library libsvm. See the documentation for libsvm for more details.
  *
+ * The native storage is released by <tt>close()</tt> or, failing that,
+ * some time after the matrix has become unreachable.
+ *
  * @author anders.gidenstam(at)hb.se
 */
 // TODO: Make sure to adhere to colt's conventions.
 
 public class SparseDoubleMatrix1D extends cern.colt.matrix.DoubleMatrix1D
+    implements AutoCloseable
 {
     /**
      * C-side pointer to a pointer to an array of svm_nodes storing the matrix
@@ -46,6 +50,10 @@ public class SparseDoubleMatrix1D extends cern.colt.matrix.DoubleMatrix1D
      * SparseDoubleMatrix2D row views.
      */
     protected SparseDoubleMatrix2D parent;
+    /**
+     * Releases the native storage. Null for views.
+     */
+    private NativeReclaimer reclaimer;
 
     /**
      * Constructs a matrix with a copy of the given values.
@@ -62,6 +70,7 @@ public class SparseDoubleMatrix1D extends cern.colt.matrix.DoubleMatrix1D
         }
         setUp(values.length);
         Cptr = native_vector_create_from(indices, values);
+        reclaimer = new VectorReclaimer(this, Cptr);
     }
 
     /**
@@ -80,6 +89,7 @@ public class SparseDoubleMatrix1D extends cern.colt.matrix.DoubleMatrix1D
     {
         setUp(columns);
         Cptr = native_vector_create_from(indices, values);
+        reclaimer = new VectorReclaimer(this, Cptr);
     }
 
     /**
@@ -93,6 +103,7 @@ public class SparseDoubleMatrix1D extends cern.colt.matrix.DoubleMatrix1D
     {
         setUp(columns);
         Cptr = native_vector_create(columns);
+        reclaimer = new VectorReclaimer(this, Cptr);
     }
 
     /**
@@ -117,6 +128,48 @@ public class SparseDoubleMatrix1D extends cern.colt.matrix.DoubleMatrix1D
         this.Cptr = Cptr;
     }
 
+    /**
+     * Constructs a vector on a new pooled native svm_node array.
+     * See <tt>NativeRowPool</tt>.
+     *
+     * @param columns  the number of columns the matrix shall have.
+     * @param Cptr     C-side pointer to a pooled svm_node array.
+     */
+    private SparseDoubleMatrix1D(int columns, long Cptr)
+    {
+        setUp(columns);
+        this.Cptr = Cptr;
+        reclaimer = new PooledVectorReclaimer(this, Cptr);
+    }
+
+    /**
+     * Creates a vector with a pooled native svm_node array, which is not
+     * reference counted and can be refilled without reallocation.
+     * A pooled vector must only be filled by <tt>fillPooled()</tt> and
+     * read by the native functions; it must never be assigned to or from
+     * another matrix.
+     *
+     * @return a new empty pooled vector.
+     */
+    static SparseDoubleMatrix1D createPooled()
+    {
+        return new SparseDoubleMatrix1D(0, native_pooled_vector_create());
+    }
+
+    /**
+     * Replaces the contents of a pooled vector.
+     *
+     * @param size     the number of columns the matrix shall have.
+     * @param indices  the indices of the non-zero elements in ascending order.
+     * @param values   the values of the non-zero elements.
+     * @param length   the number of non-zero elements.
+     */
+    void fillPooled(int size, int[] indices, double[] values, int length)
+    {
+        setUp(size);
+        native_pooled_vector_fill(Cptr, indices, values, length);
+    }
+
     /**
      * Replaces all cell values of the receiver with the values of
      * another matrix.  Both matrices must have the same size.
@@ -142,14 +195,17 @@ public class SparseDoubleMatrix1D extends cern.colt.matrix.DoubleMatrix1D
             IntArrayList indexList = new IntArrayList();
             DoubleArrayList valueList = new DoubleArrayList();
             other.getNonZeros(indexList, valueList);
-            // FIXME: This will leak the base pointer storage for the temporary
-            //        matrix.
-            native_vector_assign
-                (this.Cptr, native_vector_create_from(indexList.elements(),
-                                                      valueList.elements()));
+            indexList.trimToSize();
+            valueList.trimToSize();
+            long tmp = native_vector_create_from(indexList.elements(),
+                                                 valueList.elements());
+            native_vector_assign(this.Cptr, tmp);
+            // The svm_node array is now shared so this only releases the
+            // temporary's own storage.
+            native_vector_free(tmp);
             return this;
         }
-}
+    }
 
     /**
      * Construct and returns a new empty matrix <i>of the same dynamic
@@ -235,12 +291,19 @@ public class SparseDoubleMatrix1D extends cern.colt.matrix.DoubleMatrix1D
         throw new UnsupportedOperationException("Not implemented");
     }
 
-    protected void finalize() throws Throwable
+    /**
+     * Releases the native storage of this matrix. The matrix must not be
+     * used afterwards. Closing a row view has no effect; its storage
+     * belongs to the parent matrix.
+     */
+    @Override
+    public void close()
     {
-        if (Cptr != 0 && isNoView) {
-            native_vector_free(Cptr);
+        if (reclaimer != null && isNoView) {
+            reclaimer.reclaim();
+            reclaimer = null;
+            Cptr = 0;
         }
-        Cptr = 0;
     }
 
     private void writeObject(ObjectOutputStream oos)
@@ -257,6 +320,46 @@ public class SparseDoubleMatrix1D extends cern.colt.matrix.DoubleMatrix1D
         throw new UnsupportedOperationException("Not implemented");
     }
 
+    /**
+     * Releases the native storage of a vector.
+     */
+    private static class VectorReclaimer extends NativeReclaimer
+    {
+        private final long _ptr;
+
+        VectorReclaimer(SparseDoubleMatrix1D owner, long ptr)
+        {
+            super(owner);
+            _ptr = ptr;
+        }
+
+        @Override
+        protected void release()
+        {
+            native_vector_free(_ptr);
+        }
+    }
+
+    /**
+     * Releases the native storage of a pooled vector.
+     */
+    private static class PooledVectorReclaimer extends NativeReclaimer
+    {
+        private final long _ptr;
+
+        PooledVectorReclaimer(SparseDoubleMatrix1D owner, long ptr)
+        {
+            super(owner);
+            _ptr = ptr;
+        }
+
+        @Override
+        protected void release()
+        {
+            native_pooled_vector_free(_ptr);
+        }
+    }
+
     // Internal native functions.
     private static native long native_vector_create(int size);
     private static native void native_vector_free(long ptr);
@@ -269,6 +372,12 @@ public class SparseDoubleMatrix1D extends cern.colt.matrix.DoubleMatrix1D
     private static native void native_vector_set(long   ptr,
                                                  int    column,
                                                  double value);
+    private static native long native_pooled_vector_create();
+    private static native void native_pooled_vector_free(long ptr);
+    private static native void native_pooled_vector_fill(long     ptr,
+                                                         int[]    columns,
+                                                         double[] values,
+                                                         int      length);
 
     static {
         // FIXME: It would have been better not to repeat this here and
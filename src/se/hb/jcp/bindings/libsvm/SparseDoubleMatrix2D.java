@@ -23,16 +23,26 @@ import cern.colt.matrix.DoubleMatrix2D;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 
+import se.hb.jcp.util.CSRMatrices;
+import se.hb.jcp.util.IBulkRowMatrix2D;
+import se.hb.jcp.util.IRowSharingMatrix2D;
+
 /**
  * Class for sparse 2-d matrices holding <tt>double</tt> elements in
  * the sparse format expected by the C library libsvm. See the
  * documentation for libsvm for more details.
  *
+ * The native storage is released by <tt>close()</tt> or, failing that,
+ * some time after the matrix has become unreachable.
+ *
  * @author anders.gidenstam(at)hb.se
 */
 // TODO: Make sure to adhere to colt's conventions.
 
 public class SparseDoubleMatrix2D extends cern.colt.matrix.DoubleMatrix2D
+    implements IRowSharingMatrix2D,
+               IBulkRowMatrix2D,
+               AutoCloseable
 {
     /**
      * C-side pointer to an array of svm_node arrays storing the matrix
@@ -44,6 +54,10 @@ public class SparseDoubleMatrix2D extends cern.colt.matrix.DoubleMatrix2D
      * These are created and stored on demand.
      */
     protected SparseDoubleMatrix1D[] rowViews;
+    /**
+     * Releases the native storage.
+     */
+    private NativeReclaimer reclaimer;
 
     /**
      * Constructs a matrix with a given number of rows and columns.
@@ -58,6 +72,45 @@ public class SparseDoubleMatrix2D extends cern.colt.matrix.DoubleMatrix2D
     {
         setUp(rows, columns);
         Cptr = native_matrix_create(rows, columns);
+        reclaimer = new MatrixReclaimer(this, Cptr, rows);
+    }
+
+    /**
+     * Constructs a matrix sharing the rows of another matrix followed by
+     * a number of extra rows which are initially <tt>0</tt>.
+     * @param base the matrix whose rows are shared.
+     * @param extraRows the number of extra rows.
+     */
+    private SparseDoubleMatrix2D(SparseDoubleMatrix2D base, int extraRows)
+    {
+        setUp(base.rows() + extraRows, base.columns());
+        Cptr = native_matrix_create_sharing(base.Cptr, base.rows(),
+                                            base.rows() + extraRows);
+        reclaimer = new MatrixReclaimer(this, Cptr, rows);
+    }
+
+    /**
+     * Constructs a matrix with the contents given in compressed sparse row
+     * (CSR) format. See <tt>IBulkRowMatrix2D</tt>.
+     * The native rows are built in a single call.
+     * @param rows the number of rows the matrix shall have.
+     * @param columns the number of columns the matrix shall have.
+     * @param rowPointers the start of each row followed by the end of the last row.
+     * @param indices the column indices of the elements.
+     * @param values the values of the elements.
+     * @throws IllegalArgumentException if the arrays are inconsistent.
+     */
+    public SparseDoubleMatrix2D(int      rows,
+                                int      columns,
+                                int[]    rowPointers,
+                                int[]    indices,
+                                double[] values)
+    {
+        CSRMatrices.check(rows, columns, rowPointers, indices, values);
+        setUp(rows, columns);
+        Cptr = native_matrix_create_from_csr(rows, rowPointers,
+                                             indices, values);
+        reclaimer = new MatrixReclaimer(this, Cptr, rows);
     }
 
     /**
@@ -98,6 +151,40 @@ public class SparseDoubleMatrix2D extends cern.colt.matrix.DoubleMatrix2D
         return new SparseDoubleMatrix1D(size);
     }
 
+    /**
+     * Constructs and returns a new matrix of the same dynamic type as the
+     * receiver with <tt>rows() + extraRows</tt> rows. The first
+     * <tt>rows()</tt> rows share the reference counted native rows of the
+     * receiver.
+     *
+     * @param extraRows  the number of extra rows.
+     * @return a new matrix sharing the rows of the receiver.
+     */
+    @Override
+    public DoubleMatrix2D likeSharingRows(int extraRows)
+    {
+        return new SparseDoubleMatrix2D(this, extraRows);
+    }
+
+    /**
+     * Constructs and returns a new matrix of the same dynamic type as the
+     * receiver with the contents given in compressed sparse row (CSR)
+     * format.
+     *
+     * @param columns      the number of columns the matrix shall have.
+     * @param rowPointers  the start of each row followed by the end of the last row.
+     * @param indices      the column indices of the elements.
+     * @param values       the values of the elements.
+     * @return a new matrix with <tt>rowPointers.length - 1</tt> rows.
+     */
+    @Override
+    public DoubleMatrix2D likeFromCSR(int columns, int[] rowPointers,
+                                      int[] indices, double[] values)
+    {
+        return new SparseDoubleMatrix2D(rowPointers.length - 1, columns,
+                                        rowPointers, indices, values);
+    }
+
     /**
      * Construct and returns a new 1-d matrix <i>of the corresponding dynamic
      * type</i>, sharing the same cells.
@@ -215,6 +302,7 @@ public class SparseDoubleMatrix2D extends cern.colt.matrix.DoubleMatrix2D
      * @param indices  the indices to be filled in the new row.
      * @param values   the values to be filled into the new row.
      */
+    @Override
     public void setRow(int      row,
                        int[]    indices,
                        double[] values)
@@ -253,10 +341,17 @@ public class SparseDoubleMatrix2D extends cern.colt.matrix.DoubleMatrix2D
         rowViews = new SparseDoubleMatrix1D[rows];
     }
 
-    protected void finalize() throws Throwable
+    /**
+     * Releases the native storage of this matrix. The rows are reference
+     * counted, so rows shared with other matrices or trained models remain.
+     * Neither the matrix nor its row views must be used afterwards.
+     */
+    @Override
+    public void close()
     {
-        if (Cptr != 0 && isNoView) {
-            native_matrix_free(Cptr, rows);
+        if (reclaimer != null && isNoView) {
+            reclaimer.reclaim();
+            reclaimer = null;
             Cptr = 0;
         }
     }
@@ -275,8 +370,37 @@ public class SparseDoubleMatrix2D extends cern.colt.matrix.DoubleMatrix2D
         throw new UnsupportedOperationException("Not implemented");
     }
 
+    /**
+     * Releases the native storage of a matrix.
+     */
+    private static class MatrixReclaimer extends NativeReclaimer
+    {
+        private final long _ptr;
+        private final int  _rows;
+
+        MatrixReclaimer(SparseDoubleMatrix2D owner, long ptr, int rows)
+        {
+            super(owner);
+            _ptr  = ptr;
+            _rows = rows;
+        }
+
+        @Override
+        protected void release()
+        {
+            native_matrix_free(_ptr, _rows);
+        }
+    }
+
     // Internal native functions.
     private static native long native_matrix_create(int rows, int columns);
+    private static native long native_matrix_create_sharing(long basePtr,
+                                                            int baseRows,
+                                                            int rows);
+    private static native long native_matrix_create_from_csr(int rows,
+                                                             int[] rowPointers,
+                                                             int[] indices,
+                                                             double[] values);
     private static native void native_matrix_free(long ptr, int rows);
     private static native double native_matrix_get(long ptr,
                                                    int row, int column);
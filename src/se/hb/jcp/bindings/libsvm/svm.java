@@ -41,6 +41,38 @@ public class svm
         return new svm_model(native_svm_train_fast(param, x.Cptr, y));
     }
 
+    /**
+     * Trains a model on the selected instances using the kernel matrix of
+     * the first instances of x and the PRECOMPUTED kernel type. Only the
+     * kernel values involving the instances after those are computed.
+     * The support vectors and support vector indices of the resulting
+     * model refer to the rows of x and the model uses the kernel type of
+     * param, as if it was trained on the selected instances directly.
+     *
+     * @param param    the svm parameters.
+     * @param kernel   the kernel matrix of the first instances of x.
+     * @param x        the instances.
+     * @param rows     the indices of the instances to train on.
+     * @param y        the targets of the selected instances.
+     * @return the trained model.
+     */
+    public static svm_model svm_train_precomputed(svm_parameter param,
+                                                  KernelMatrix kernel,
+                                                  SparseDoubleMatrix2D x,
+                                                  int[] rows,
+                                                  double[] y)
+    {
+        if (DEBUG) {
+            System.err.println("svm_train(): precomputed kernel path.");
+        }
+        return new svm_model(native_svm_train_precomputed(param,
+                                                          kernel.Cptr,
+                                                          x.Cptr,
+                                                          x.rows(),
+                                                          rows,
+                                                          y));
+    }
+
     public static void svm_cross_validation(svm_problem prob,
                                             svm_parameter param,
                                             int nr_fold,
@@ -86,6 +118,13 @@ public class svm
         return native_svm_predict_values(model.Cptr, x, dec_values);
     }
 
+    public static double svm_predict_values(svm_model model,
+                                            SparseDoubleMatrix1D x,
+                                            double[] dec_values)
+    {
+        return native_svm_predict_values_fast(model.Cptr, x.Cptr, dec_values);
+    }
+
     public static double svm_predict(svm_model model, svm_node[] x)
     {
         return native_svm_predict(model.Cptr, x);
@@ -118,6 +157,25 @@ public class svm
                                                    prob_estimates);
     }
 
+    public static void svm_predict(svm_model model,
+                                   SparseDoubleMatrix2D x,
+                                   int first, int last,
+                                   double[] predictions)
+    {
+        native_svm_predict_batch(model.Cptr, x.Cptr, first, last,
+                                 predictions);
+    }
+
+    public static void svm_predict_probability(svm_model model,
+                                               SparseDoubleMatrix2D x,
+                                               int first, int last,
+                                               double[] predictions,
+                                               double[] prob_estimates)
+    {
+        native_svm_predict_probability_batch(model.Cptr, x.Cptr, first, last,
+                                             predictions, prob_estimates);
+    }
+
     public static void svm_save_model(String model_file_name,
                                       svm_model model) throws IOException
     {
@@ -188,12 +246,31 @@ public class svm
                                                          x.size());
     }
 
+    public static void svm_distance_from_separating_plane(svm_model model,
+                                                          SparseDoubleMatrix2D x,
+                                                          int first, int last,
+                                                          double[] distances)
+    {
+        native_svm_distance_from_separating_plane_batch(model.Cptr,
+                                                        x.Cptr,
+                                                        x.columns(),
+                                                        first, last,
+                                                        distances);
+    }
+
     // Internal native functions.
     private static native long native_svm_train(svm_problem prob,
                                                 svm_parameter param);
     private static native long native_svm_train_fast(svm_parameter param,
                                                      long x_ptr,
                                                      double[] y);
+    private static native long native_svm_train_precomputed
+        (svm_parameter param,
+         long kernel_ptr,
+         long x_ptr,
+         int x_rows,
+         int[] rows,
+         double[] y);
     private static native void native_svm_cross_validation(svm_problem prob,
                                                            svm_parameter param,
                                                            int nr_fold,
@@ -209,6 +286,10 @@ public class svm
     private static native double native_svm_predict_values(long model_ptr,
                                                            svm_node[] x,
                                                            double[] dec_values);
+    private static native double native_svm_predict_values_fast
+        (long model_ptr,
+         long x_ptr,
+         double[] dec_values);
     private static native double native_svm_predict(long model_ptr,
                                                     svm_node[] x);
     private static native double native_svm_predict_fast(long model_ptr,
@@ -221,6 +302,19 @@ public class svm
         (long model_ptr,
          long x_ptr,
          double[] prob_estimates);
+    private static native void native_svm_predict_batch
+        (long model_ptr,
+         long x_ptr,
+         int first,
+         int last,
+         double[] predictions);
+    private static native void native_svm_predict_probability_batch
+        (long model_ptr,
+         long x_ptr,
+         int first,
+         int last,
+         double[] predictions,
+         double[] prob_estimates);
     private static native int native_svm_save_model(String file_name,
                                                     long   model_ptr);
     private static native long native_svm_load_model(String file_name);
@@ -237,6 +331,13 @@ public class svm
         (long model_ptr,
          long x_ptr,
          long no_attributes);
+    private static native void native_svm_distance_from_separating_plane_batch
+        (long model_ptr,
+         long x_ptr,
+         long no_attributes,
+         int first,
+         int last,
+         double[] distances);
 
     static {
         try {
@@ -22,6 +22,7 @@ import java.io.ObjectOutputStream;
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
+import org.opencv.core.Mat;
 import org.opencv.core.TermCriteria;
 import org.opencv.ml.CvStatModel;
 
@@ -127,6 +128,28 @@ abstract class ClassifierBase
         return _storageTemplate;
     }
 
+    /**
+     * Predicts the targets for the supplied instances. The instances are
+     * passed to OpenCV as one matrix.
+     *
+     * @param x             the instances.
+     * @param predictions   an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the predicted targets in.
+     */
+    @Override
+    public void predict(DoubleMatrix2D x, double[] predictions)
+    {
+        predict(asDDM2D(x).asMat(), predictions);
+    }
+
+    /**
+     * Predicts the targets for the instances in the rows of an OpenCV
+     * matrix.
+     *
+     * @param samples       the instances.
+     * @param predictions   an initialized <tt>double[]</tt> array with at least <tt>samples.rows()</tt> elements to store the predicted targets in.
+     */
+    protected abstract void predict(Mat samples, double[] predictions);
+
     protected abstract CvStatModel getNewInstance();
 
     protected TermCriteria readTerminationCriteria()
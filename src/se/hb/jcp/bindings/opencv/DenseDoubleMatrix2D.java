@@ -25,6 +25,9 @@ import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfFloat;
 
+import se.hb.jcp.util.CSRMatrices;
+import se.hb.jcp.util.IBulkRowMatrix2D;
+
 /**
  * Class for dense 2-d matrices holding <tt>double</tt> elements in
  * <tt>double</tt> elements in the dense format used by OpenCV.
@@ -35,6 +38,7 @@ import org.opencv.core.MatOfFloat;
 // TODO: Make sure to adhere to colt's conventions.
 
 public class DenseDoubleMatrix2D extends cern.colt.matrix.DoubleMatrix2D
+    implements IBulkRowMatrix2D
 {
     /**
      * Inner OpenCV MatOfFloat.
@@ -58,6 +62,32 @@ public class DenseDoubleMatrix2D extends cern.colt.matrix.DoubleMatrix2D
         setUp(rows, columns);
     }
 
+    /**
+     * Constructs a matrix with the contents given in compressed sparse row
+     * (CSR) format. See <tt>IBulkRowMatrix2D</tt>.
+     * Each row is transferred to OpenCV in a single call.
+     * @param rows the number of rows the matrix shall have.
+     * @param columns the number of columns the matrix shall have.
+     * @param rowPointers the start of each row followed by the end of the last row.
+     * @param indices the column indices of the elements.
+     * @param values the values of the elements.
+     * @throws IllegalArgumentException if the arrays are inconsistent.
+     */
+    public DenseDoubleMatrix2D(int      rows,
+                               int      columns,
+                               int[]    rowPointers,
+                               int[]    indices,
+                               double[] values)
+    {
+        this(rows, columns);
+        CSRMatrices.check(rows, columns, rowPointers, indices, values);
+        float[] data = new float[columns];
+        for (int r = 0; r < rows; r++) {
+            putRow(r, data, rowPointers[r], rowPointers[r + 1],
+                   indices, values);
+        }
+    }
+
     /**
      * Construct and returns a new empty matrix <i>of the same dynamic type</i>
      * as the receiver, having the specified number of rows and columns.
@@ -79,6 +109,25 @@ public class DenseDoubleMatrix2D extends cern.colt.matrix.DoubleMatrix2D
         return new DenseDoubleMatrix2D(rows, columns);
     }
 
+    /**
+     * Constructs and returns a new matrix of the same dynamic type as the
+     * receiver with the contents given in compressed sparse row (CSR)
+     * format.
+     *
+     * @param columns      the number of columns the matrix shall have.
+     * @param rowPointers  the start of each row followed by the end of the last row.
+     * @param indices      the column indices of the elements.
+     * @param values       the values of the elements.
+     * @return a new matrix with <tt>rowPointers.length - 1</tt> rows.
+     */
+    @Override
+    public DoubleMatrix2D likeFromCSR(int columns, int[] rowPointers,
+                                      int[] indices, double[] values)
+    {
+        return new DenseDoubleMatrix2D(rowPointers.length - 1, columns,
+                                       rowPointers, indices, values);
+    }
+
     /**
      * Construct and returns a new 1-d matrix <i>of the corresponding dynamic
      * type</i>, entirelly independent of the receiver.
@@ -189,13 +238,37 @@ public class DenseDoubleMatrix2D extends cern.colt.matrix.DoubleMatrix2D
      * @param indices  the indices to be filled in the new row.
      * @param values   the values to be filled into the new row.
      */
-    /*
+    @Override
     public void setRow(int      row,
                        int[]    indices,
-                       double[] values) {
-        // FIXME: Verify row index and indices.
+                       double[] values)
+    {
+        checkRow(row);
+        CSRMatrices.check(1, columns, new int[] { 0, indices.length },
+                          indices, values);
+        putRow(row, new float[columns], 0, indices.length, indices, values);
+    }
+
+    /**
+     * Replaces one row of the matrix with the elements
+     * <tt>[first, last)</tt> of the given arrays.
+     *
+     * @param row      the row to replace.
+     * @param data     a buffer of <tt>columns()</tt> floats.
+     * @param first    the index of the first element.
+     * @param last     the index after the last element.
+     * @param indices  the column indices of the elements.
+     * @param values   the values of the elements.
+     */
+    private void putRow(int row, float[] data, int first, int last,
+                        int[] indices, double[] values)
+    {
+        java.util.Arrays.fill(data, 0.0f);
+        for (int i = first; i < last; i++) {
+            data[indices[i]] = (float)values[i];
+        }
+        _mat.put(row, 0, data);
     }
-    */
 
     /**
      * Return the inner OpenCV MatOfFloat matrix.
@@ -69,7 +69,8 @@ public class RandomForestClassifier
 
     public IClassifier fitNew(DoubleMatrix2D x, double[] y)
     {
-        RandomForestClassifier clone = new RandomForestClassifier();
+        RandomForestClassifier clone =
+            new RandomForestClassifier(_jsonParameters);
         clone.fit(x, y);
         return clone;
     }
@@ -79,6 +80,15 @@ public class RandomForestClassifier
         return ((CvRTrees)_model).predict(asDDM1D(instance).asMat());
     }
 
+    protected void predict(Mat samples, double[] predictions)
+    {
+        // CvRTrees has no batch prediction. The rows are headers sharing
+        // the data of the samples matrix.
+        for (int i = 0; i < samples.rows(); i++) {
+            predictions[i] = ((CvRTrees)_model).predict(samples.row(i));
+        }
+    }
+
     protected CvStatModel getNewInstance()
     {
         return new CvRTrees();
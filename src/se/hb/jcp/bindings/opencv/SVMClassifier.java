@@ -19,6 +19,7 @@ package se.hb.jcp.bindings.opencv;
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
+import org.opencv.core.Mat;
 import org.opencv.ml.CvStatModel;
 import org.opencv.ml.CvSVM;
 import org.opencv.ml.CvSVMParams;
@@ -67,6 +68,18 @@ public class SVMClassifier
         return ((CvSVM)_model).predict(asDDM1D(instance).asMat());
     }
 
+    protected void predict(Mat samples, double[] predictions)
+    {
+        Mat results = new Mat();
+        ((CvSVM)_model).predict_all(samples, results);
+        float[] values = new float[samples.rows()];
+        results.get(0, 0, values);
+        for (int i = 0; i < values.length; i++) {
+            predictions[i] = values[i];
+        }
+        results.release();
+    }
+
     protected CvStatModel getNewInstance()
     {
         return new CvSVM();
@@ -81,7 +81,6 @@ public class CCTools
                     (new OutputStreamWriter
                         (new FileOutputStream(jsonOutputFileName), "utf-8"));
             jsonOutput = new JSONWriter(jsonOutputBW);
-            jsonOutput.array();
         }
         BufferedWriter pValuesOutput = null;
         if (pValuesOutputFileName != null) {
@@ -112,9 +111,7 @@ public class CCTools
                            significanceLevel + ".");
 
         // Evaluation on the test set.
-        // FIXME? Each ConformalClassification will keep its predictor
-        //        alive. This might be a problem for TCC (but not seen so far).
-        ConformalClassification[] predictions = cc.predict(testSet.x);
+        ConformalClassificationBatch predictions = cc.predictBatch(testSet.x);
         long t3 = System.currentTimeMillis();
 
         int noPredictions = testSet.y.length;
@@ -132,11 +129,11 @@ public class CCTools
             new AggregatedObservedMeasures();
 
         // FIXME: Parallelize the computation of the performance measures.
-        for (int i = 0; i < predictions.length; i++){
+        for (int i = 0; i < predictions.size(); i++){
             int classIndex = classSet.headSet(testSet.y[i]).size();
             int predictionSize = 0;
             for (int c = 0; c < classes.length; c++) {
-                double pValue = predictions[i].getPValues().get(c);
+                double pValue = predictions.getPValue(i, c);
                 if (pValuesOutput != null) {
                     pValuesOutput.write("" + pValue + " ");
                 }
@@ -148,16 +145,6 @@ public class CCTools
                     }
                 }
             }
-            if (jsonOutput != null) {
-                if (debug) {
-                    IOTools.writeAsJSON(predictions[i],
-                                        testSet.x.viewRow(i),
-                                        testSet.y[i],
-                                        jsonOutput);
-                } else {
-                    IOTools.writeAsJSON(predictions[i], jsonOutput);
-                }
-            }
             if (pValuesOutput != null) {
                 pValuesOutput.newLine();
             }
@@ -169,20 +156,32 @@ public class CCTools
             predictionsForClass[classIndex]++;
             predictionsForClassAtSize[classIndex][predictionSize]++;
 
-            if (predictions[i].getPValues().get(classIndex) >=
-                significanceLevel) {
+            if (predictions.getPValue(i, classIndex) >= significanceLevel) {
                 correct++;
                 correctAtSize[predictionSize]++;
                 correctForClass[classIndex]++;
                 correctForClassAtSize[classIndex][predictionSize]++;
             }
-            priorMeasures.add(predictions[i]);
-            observedMeasures.add(predictions[i], testSet.y[i]);
         }
+        priorMeasures.add(predictions);
+        observedMeasures.add(predictions, testSet.y);
         long t4 = System.currentTimeMillis();
 
         if (jsonOutput != null) {
-            jsonOutput.endArray();
+            if (debug) {
+                jsonOutput.array();
+                int i = 0;
+                for (ConformalClassification prediction : predictions) {
+                    IOTools.writeAsJSON(prediction, cc,
+                                        testSet.x.viewRow(i),
+                                        testSet.y[i],
+                                        jsonOutput);
+                    i++;
+                }
+                jsonOutput.endArray();
+            } else {
+                IOTools.writeAsJSON(predictions, jsonOutput);
+            }
             jsonOutputBW.close();
         }
         if (pValuesOutput != null) {
@@ -252,8 +251,24 @@ public class CCTools
     {
         IConformalClassifier cc = null;
 
-        try (ObjectInputStream ois =
-                 new ObjectInputStream(new FileInputStream(filename))) {
+        // The model file is memory-mapped so that large training sets,
+        // e.g. of transductive models, are read without stream buffering.
+        try (java.nio.channels.FileChannel channel =
+                 new RandomAccessFile(filename, "r").getChannel()) {
+            InputStream input;
+            if (channel.size() <= Integer.MAX_VALUE) {
+                input =
+                    new se.hb.jcp.io.ByteBufferInputStream
+                            (channel.map(java.nio.channels.FileChannel.
+                                             MapMode.READ_ONLY,
+                                         0, channel.size()));
+            } else {
+                // Too large to map as a single buffer.
+                input = new BufferedInputStream
+                                (java.nio.channels.Channels.
+                                     newInputStream(channel));
+            }
+            ObjectInputStream ois = new ObjectInputStream(input);
             cc = (IConformalClassifier)ois.readObject();
         } catch (Exception e) {
             throw new IOException("Failed to load Conformal Classifier model" +
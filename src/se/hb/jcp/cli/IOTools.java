@@ -26,6 +26,9 @@ import org.json.JSONTokener;
 import org.json.JSONWriter;
 
 import se.hb.jcp.cp.ConformalClassification;
+import se.hb.jcp.cp.ConformalClassificationBatch;
+import se.hb.jcp.cp.IConformalClassifier;
+import se.hb.jcp.nc.IClassificationNonconformityFunction;
 
 /**
  * Utility functions for reading/writing data to/from JSON.
@@ -135,15 +138,49 @@ public class IOTools
      *     "nc-scores":{ ["&lt;label&gt;":&lt;nc-score&gt;]* }
      * }.
      *
+     * The conformal classifier is taken from the prediction. The rows of
+     * a <tt>ConformalClassificationBatch</tt> do not refer to their
+     * classifier; write those with the overload that takes the conformal
+     * classifier explicitly.
+     *
      * @param prediction    the prediction to write.
      * @param instance      the instance.
      * @param target        the instance target/label.
      * @param resultWriter  the JSON writer.
+     * @throws IllegalArgumentException if the prediction does not refer
+     *         to the conformal classifier that made it.
      */
     public static void writeAsJSON(ConformalClassification prediction,
                                    DoubleMatrix1D          instance,
                                    double                  target,
                                    JSONWriter              resultWriter)
+    {
+        if (prediction.getSource() == null) {
+            throw new IllegalArgumentException
+                          ("The prediction does not refer to the conformal " +
+                           "classifier that made it.");
+        }
+        writeAsJSON(prediction, prediction.getSource(), instance, target,
+                    resultWriter);
+    }
+
+    /**
+     * Write a <tt>ConformalClassification</tt> including internal state
+     * of the supplied conformal classifier as JSON to a JSON writer.
+     * The format is the same as for
+     * <tt>writeAsJSON(ConformalClassification, DoubleMatrix1D, double, JSONWriter)</tt>.
+     *
+     * @param prediction    the prediction to write.
+     * @param source        the conformal classifier that made the prediction.
+     * @param instance      the instance.
+     * @param target        the instance target/label.
+     * @param resultWriter  the JSON writer.
+     */
+    public static void writeAsJSON(ConformalClassification prediction,
+                                   IConformalClassifier    source,
+                                   DoubleMatrix1D          instance,
+                                   double                  target,
+                                   JSONWriter              resultWriter)
     {
         resultWriter.object();
         // Write the basic conformal classification.
@@ -152,22 +189,41 @@ public class IOTools
         resultWriter.key("true-label");
         resultWriter.value("" + target);
         // FIXME: The NC-function is not callable for TCC.
-        if (prediction.getSource() instanceof
-            se.hb.jcp.cp.InductiveConformalClassifier) {
+        if (source instanceof se.hb.jcp.cp.InductiveConformalClassifier) {
             resultWriter.key("nc-scores");
             resultWriter.object();
-            for (double label : prediction.getSource()
-                                    .getNonconformityFunction().getLabels()) {
-                resultWriter.key("" + label);
-                resultWriter.value(prediction.getSource().getNonconformityFunction()
-                                       .calculateNonConformityScore(instance,
-                                                                    label));
+            IClassificationNonconformityFunction nc =
+                source.getNonconformityFunction();
+            Double[] labels = nc.getLabels();
+            double[] ncScores = new double[labels.length];
+            nc.calculateNonConformityScores(instance, ncScores);
+            for (int i = 0; i < labels.length; i++) {
+                resultWriter.key("" + labels[i]);
+                resultWriter.value(ncScores[i]);
             }
             resultWriter.endObject();
         }
         resultWriter.endObject();
     }
 
+    /**
+     * Write a <tt>ConformalClassificationBatch</tt> as a JSON array of
+     * predictions to a JSON writer. Each prediction has the format of
+     * <tt>writeAsJSON(ConformalClassification, JSONWriter)</tt>.
+     *
+     * @param predictions   the predictions to write.
+     * @param resultWriter  the JSON writer.
+     */
+    public static void writeAsJSON(ConformalClassificationBatch predictions,
+                                   JSONWriter                   resultWriter)
+    {
+        resultWriter.array();
+        for (ConformalClassification prediction : predictions) {
+            writeAsJSON(prediction, resultWriter);
+        }
+        resultWriter.endArray();
+    }
+
     private static void writeAsJSON(DoubleMatrix1D instance,
                                     boolean        includeTarget,
                                     double         target,
@@ -196,7 +252,7 @@ public class IOTools
         resultWriter.key("p-values");
         resultWriter.object();
         for (int i = 0; i < prediction.getPValues().size(); i++) {
-            resultWriter.key("" + prediction.getSource().getLabels()[i]);
+            resultWriter.key("" + prediction.getLabels()[i]);
             resultWriter.value(prediction.getPValues().get(i));
         }
         resultWriter.endObject();
@@ -32,6 +32,8 @@ import org.json.JSONWriter;
 
 import se.hb.jcp.cp.ConformalClassification;
 import se.hb.jcp.cp.IConformalClassifier;
+import se.hb.jcp.cp.InductiveConformalClassifier;
+import se.hb.jcp.cp.NonconformityScoreCache;
 import se.hb.jcp.cp.measures.AggregatedPriorMeasures;
 import se.hb.jcp.util.FIFOParallelExecutor;
 
@@ -48,6 +50,8 @@ public class jcp_predict_filter
     ExecutorService _executor;
     String _modelFileName;
     BufferedWriter _pValuesOutputFile;
+    int _cacheEntries = 0;
+    long _cacheBytes = Long.MAX_VALUE;
 
     public jcp_predict_filter()
     {
@@ -92,6 +96,45 @@ public class jcp_predict_filter
                         printUsage();
                         System.exit(-1);
                     }
+                } else if (args[i].equals("-cache")) {
+                    if (++i < args.length) {
+                        try {
+                            _cacheEntries = Integer.parseInt(args[i]);
+                        } catch (NumberFormatException e) {
+                            System.err.println
+                                ("Error: Illegal number of entries '" +
+                                 args[i] + "' given to -cache.");
+                            System.err.println();
+                            printUsage();
+                            System.exit(-1);
+                        }
+                    } else {
+                        System.err.println
+                            ("Error: No number of entries given to -cache.");
+                        System.err.println();
+                        printUsage();
+                        System.exit(-1);
+                    }
+                } else if (args[i].equals("-cachemb")) {
+                    if (++i < args.length) {
+                        try {
+                            _cacheBytes =
+                                Long.parseLong(args[i]) * 1024L * 1024L;
+                        } catch (NumberFormatException e) {
+                            System.err.println
+                                ("Error: Illegal size '" + args[i] +
+                                 "' given to -cachemb.");
+                            System.err.println();
+                            printUsage();
+                            System.exit(-1);
+                        }
+                    } else {
+                        System.err.println
+                            ("Error: No size given to -cachemb.");
+                        System.err.println();
+                        printUsage();
+                        System.exit(-1);
+                    }
                 } else {
                     // The last unknown argument should be the dataset file.
                     _modelFileName = args[i];
@@ -116,12 +159,34 @@ public class jcp_predict_filter
             ("  -h                Print this message and exit.");
         System.out.println
             ("  -sp <file>        Save the predicted p-values in <file>.");
+        System.out.println
+            ("  -cache <entries>  Cache the non-conformity scores of up to " +
+             "<entries> instances");
+        System.out.println
+            ("                    to speed up repeated instances. " +
+             "Only for ICC models.");
+        System.out.println
+            ("  -cachemb <MB>     Limit the memory used by the cache to " +
+             "about <MB> MB.");
     }
 
     private void doClassification()
         throws IOException
     {
         IConformalClassifier cc = CCTools.loadModel(_modelFileName);
+        NonconformityScoreCache cache = null;
+        if (_cacheEntries > 0) {
+            if (cc instanceof InductiveConformalClassifier) {
+                cache = new NonconformityScoreCache(_cacheEntries,
+                                                    _cacheBytes);
+                ((InductiveConformalClassifier)cc).
+                    setNonconformityScoreCache(cache);
+            } else {
+                System.err.println("jcp_predict_filter: Warning: The " +
+                                   "non-conformity score cache is only " +
+                                   "supported for ICC models.");
+            }
+        }
         JSONTokener instanceReader = new JSONTokener(System.in);
         OutputStreamWriter osw     = new OutputStreamWriter(System.out);
         JSONWriter  resultWriter   = new JSONWriter(osw);
@@ -144,6 +209,7 @@ public class jcp_predict_filter
                         measures.add(prediction);
                     }
                 }
+                releaseInstance(instance);
             } else {
                 final FIFOParallelExecutor<ConformalClassification> queue =
                     new FIFOParallelExecutor<>(_executor);
@@ -167,6 +233,8 @@ public class jcp_predict_filter
                             // FIXME: What to do?
                             System.err.println("jcp_predict_filter: " + e);
                         }
+                    } else {
+                        releaseInstance(instance);
                     }
                 }
                 try {
@@ -202,6 +270,9 @@ public class jcp_predict_filter
         for (int i = 0; i < measures.size(); i++) {
             System.err.println("  " + measures.getMeasure(i).toString());
         }
+        if (cache != null) {
+            System.err.println(cache.toString());
+        }
     }
 
     private DoubleMatrix1D allocateInstance(IConformalClassifier cc)
@@ -211,6 +282,19 @@ public class jcp_predict_filter
         return instance;
     }
 
+    // Releases the native storage of an instance, if any, without waiting
+    // for the garbage collector.
+    private static void releaseInstance(DoubleMatrix1D instance)
+    {
+        if (instance instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable)instance).close();
+            } catch (Exception e) {
+                System.err.println("jcp_predict_filter: " + e);
+            }
+        }
+    }
+
     private static void writePrediction(ConformalClassification prediction,
                                         JSONWriter              jsonWriter,
                                         BufferedWriter          pValuesWriter)
@@ -242,7 +326,11 @@ public class jcp_predict_filter
         @Override
         public ConformalClassification call()
         {
-            return _cc.predict(_instance);
+            try {
+                return _cc.predict(_instance);
+            } finally {
+                releaseInstance(_instance);
+            }
         }
     }
 
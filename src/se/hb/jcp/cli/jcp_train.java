@@ -23,6 +23,8 @@ import java.io.ObjectOutputStream;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.SortedSet;
 
+import cern.colt.matrix.DoubleMatrix2D;
+
 import org.json.JSONObject;
 import org.json.JSONTokener;
 
@@ -51,12 +53,19 @@ public class jcp_train
     private DataSet _test;
     private boolean _useLCCC = false;
     private boolean _useTCC = false;
+    private int     _tccLocalSize = 0;
+    private int     _ccpFolds = 0;
+    private int     _acpMembers = 0;
+    private boolean _useSinglePrecisionStorage = false;
     private boolean _useCP = true;
     private boolean _useMPC = false;
     private boolean _validate = false;
     private double  _significanceLevel = 0.10;
     private double  _validationFraction = 0.5;
     private double  _calibrationFraction = 0.2;
+    // The maximum number of test instances used to compare local TCC
+    // with exact TCC.
+    private static final int LOCAL_DEVIATION_SAMPLE = 100;
 
     public jcp_train()
     {
@@ -73,6 +82,9 @@ public class jcp_train
         if (_useCP && _useTCC) {
             // Supports train and save and/or test.
             trainTCC(_dataSetFileName);
+        } else if (_useCP && (_ccpFolds > 0 || _acpMembers > 0)) {
+            // Supports train and save and/or test.
+            trainEnsembleCP(_dataSetFileName);
         } else if (_useCP) {
             // Supports train, calibrate and save and/or test.
           if (_calibrationSetFileName != null) {
@@ -209,6 +221,93 @@ public class jcp_train
                     _validate = true;
                 } else if (args[i].equals("-tcc")) {
                     _useTCC = true;
+                } else if (args[i].equals("-tcclocal")) {
+                    if (++i < args.length) {
+                        boolean ok = false;
+                        try {
+                            int k = Integer.parseInt(args[i]);
+                            if (0 < k) {
+                                _tccLocalSize = k;
+                                _useTCC = true;
+                                ok = true;
+                            }
+                        } catch (Exception e) {
+                            // Handled below as ok is false.
+                        }
+                        if (!ok) {
+                            System.err.println
+                                ("Error: Illegal local size '" +
+                                 args[i] +
+                                 "' given to -tcclocal.");
+                            System.err.println();
+                            printUsage();
+                            System.exit(-1);
+                        }
+                    } else {
+                        System.err.println
+                            ("Error: No local size given to -tcclocal.");
+                        System.err.println();
+                        printUsage();
+                        System.exit(-1);
+                    }
+                } else if (args[i].equals("-ccp")) {
+                    if (++i < args.length) {
+                        boolean ok = false;
+                        try {
+                            int k = Integer.parseInt(args[i]);
+                            if (2 <= k) {
+                                _ccpFolds = k;
+                                ok = true;
+                            }
+                        } catch (Exception e) {
+                            // Handled below as ok is false.
+                        }
+                        if (!ok) {
+                            System.err.println
+                                ("Error: Illegal number of folds '" +
+                                 args[i] +
+                                 "' given to -ccp.");
+                            System.err.println();
+                            printUsage();
+                            System.exit(-1);
+                        }
+                    } else {
+                        System.err.println
+                            ("Error: No number of folds given to -ccp.");
+                        System.err.println();
+                        printUsage();
+                        System.exit(-1);
+                    }
+                } else if (args[i].equals("-acp")) {
+                    if (++i < args.length) {
+                        boolean ok = false;
+                        try {
+                            int b = Integer.parseInt(args[i]);
+                            if (1 <= b) {
+                                _acpMembers = b;
+                                ok = true;
+                            }
+                        } catch (Exception e) {
+                            // Handled below as ok is false.
+                        }
+                        if (!ok) {
+                            System.err.println
+                                ("Error: Illegal number of members '" +
+                                 args[i] +
+                                 "' given to -acp.");
+                            System.err.println();
+                            printUsage();
+                            System.exit(-1);
+                        }
+                    } else {
+                        System.err.println
+                            ("Error: No number of members given to -acp.");
+                        System.err.println();
+                        printUsage();
+                        System.exit(-1);
+                    }
+                } else if (args[i].equals("-f32")) {
+                    _useSinglePrecisionStorage = true;
                 } else if (args[i].equals("-lccc")) {
                     _useLCCC = true;
                 } else if (args[i].equals("-mpc")) {
@@ -361,6 +460,23 @@ public class jcp_train
              "(default).");
         System.out.println
             ("  -tcc              Use transductive conformal classification.");
+        System.out.println
+            ("  -tcclocal <k>     Use approximate local transductive " +
+             "conformal classification");
+        System.out.println
+            ("                    trained on the <k> nearest training " +
+             "instances of each test instance.");
+        System.out.println
+            ("  -ccp <k>          Use cross-conformal classification with " +
+             "<k> folds.");
+        System.out.println
+            ("  -acp <b>          Use aggregated conformal classification " +
+             "with <b> ICC members");
+        System.out.println
+            ("                    trained on bootstrap samples.");
+        System.out.println
+            ("  -f32              Save the TCC training set with single " +
+             "precision attribute values.");
         System.out.println
             ("  -lccc             Use the label conditional extension to " +
              "conformal classification.");
@@ -535,6 +651,9 @@ public class jcp_train
                                                      _classifier),
                      classes, _useLCCC);
 
+        ((TransductiveConformalClassifier)tcc).setLocalSize(_tccLocalSize);
+        ((TransductiveConformalClassifier)tcc).
+            setSinglePrecisionStorage(_useSinglePrecisionStorage);
         ((TransductiveConformalClassifier)tcc).fit(_training.x, _training.y);
         if (_useMPC) {
             tcc = new se.hb.jcp.cp.ConformalMultiProbabilisticClassifier(tcc);
@@ -551,6 +670,9 @@ public class jcp_train
             long t5 = System.currentTimeMillis();
             System.out.println("Total Duration " + (double)(t5 - t1)/1000.0 +
                                " sec.");
+            if (_tccLocalSize > 0 && !_useMPC) {
+                reportLocalDeviations((TransductiveConformalClassifier)tcc);
+            }
         }
 
         if (_modelFileName != null) {
@@ -561,6 +683,108 @@ public class jcp_train
         }
     }
 
+  private void trainEnsembleCP(String dataSetFileName)
+        throws IOException
+    {
+        long t1 = System.currentTimeMillis();
+        _full = DataSetTools.loadDataSet(dataSetFileName);
+        SimpleEntry<double[],SortedSet<Double>> pair =
+            DataSetTools.extractClasses(_full);
+        double[] classes = pair.getKey();
+        long t2 = System.currentTimeMillis();
+        System.out.println("Duration " + (double)(t2 - t1)/1000.0 + " sec.");
+
+        if (!_useMPC) {
+            _calibrationFraction = 0.0;
+        }
+        if (_validate) {
+            splitDataset((1 - _validationFraction)*(1 - _calibrationFraction),
+                         (1 - _validationFraction)*_calibrationFraction);
+        } else {
+            splitDataset((1 - _calibrationFraction), _calibrationFraction);
+        }
+        long t3 = System.currentTimeMillis();
+        System.out.println("Duration " + (double)(t3 - t2)/1000.0 + " sec.");
+
+        System.out.println("Training and calibrating on " +
+                           _training.x.rows() + " instances in " +
+                           (_ccpFolds > 0
+                            ? _ccpFolds + " folds."
+                            : _acpMembers + " bootstrap samples."));
+        if (_useMPC) {
+            System.out.println("MPC calibration set " + _calibration.x.rows() +
+                               " instances.");
+        }
+
+        IClassificationNonconformityFunction nc =
+            ClassificationNonconformityFunctionFactory.getInstance().
+                createNonconformityFunction(_ncFunctionType,
+                                            classes,
+                                            _classifier);
+        IConformalClassifier ensemble;
+        if (_ccpFolds > 0) {
+            ensemble =
+                new CrossConformalClassifier(nc, classes, _ccpFolds, _useLCCC);
+            ((CrossConformalClassifier)ensemble).fit(_training.x,
+                                                     _training.y);
+        } else {
+            ensemble =
+                new AggregatedConformalClassifier(nc, classes, _acpMembers,
+                                                  _useLCCC);
+            ((AggregatedConformalClassifier)ensemble).fit(_training.x,
+                                                          _training.y);
+        }
+        if (_useMPC) {
+            ensemble =
+                new se.hb.jcp.cp.ConformalMultiProbabilisticClassifier
+                        (ensemble);
+            ((ConformalMultiProbabilisticClassifier)ensemble)
+                .calibrate(_calibration.x, _calibration.y);
+        }
+        long t4 = System.currentTimeMillis();
+        System.out.println("Training complete.");
+        System.out.println("Duration " + (double)(t4 - t3)/1000.0 + " sec.");
+
+        if (_validate) {
+            CCTools.runTest(ensemble, _test, null, null, null,
+                            _significanceLevel, false);
+            long t5 = System.currentTimeMillis();
+            System.out.println("Total Duration " + (double)(t5 - t1)/1000.0 +
+                               " sec.");
+        }
+
+        if (_modelFileName != null) {
+            System.out.println("Saving the model to '" +
+                               _modelFileName + "'...");
+            CCTools.saveModel(ensemble, _modelFileName);
+            System.out.println("... Done.");
+        }
+    }
+
+    private void reportLocalDeviations(TransductiveConformalClassifier tcc)
+    {
+        int n = Math.min(LOCAL_DEVIATION_SAMPLE, _test.x.rows());
+        DoubleMatrix2D sample = _test.x.like(n, _test.x.columns());
+        for (int i = 0; i < n; i++) {
+            sample.viewRow(i).assign(_test.x.viewRow(i));
+        }
+        DoubleMatrix2D deviations = tcc.calculateLocalDeviations(sample);
+        double sum = 0.0;
+        double max = 0.0;
+        for (int i = 0; i < deviations.rows(); i++) {
+            for (int j = 0; j < deviations.columns(); j++) {
+                double d = Math.abs(deviations.getQuick(i, j));
+                sum += d;
+                max = Math.max(max, d);
+            }
+        }
+        int size = deviations.rows() * deviations.columns();
+        System.out.println("Local TCC p-value deviation from exact TCC on " +
+                           n + " test instances: mean " +
+                           (size > 0 ? sum / size : 0.0) + ", max " + max +
+                           ".");
+    }
+
     private void trainPlainClassifier(String dataSetFileName)
         throws IOException
     {
@@ -0,0 +1,528 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.cp;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import se.hb.jcp.nc.IClassificationNonconformityFunction;
+import se.hb.jcp.util.ParallelizedAction;
+import se.hb.jcp.util.SharedRowsMatrix2D;
+
+/**
+ * Represents an instance of an aggregated conformal classification
+ * algorithm [Carlsson et al., Aggregated conformal prediction, 2014].
+ *
+ * The ensemble consists of inductive conformal classifiers, each trained
+ * and calibrated on its own partition of the training set: a bootstrap
+ * sample for training and the instances not in it for calibration or,
+ * optionally, a random split. The members share the rows of the training
+ * set when the matrix type supports that and are trained in parallel.
+ * The p-value of a label is the average of the p-values of the members.
+ * At prediction time the underlying models of all members are evaluated
+ * for an instance in one pass over the instances.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class AggregatedConformalClassifier
+    implements IConformalClassifier, java.io.Serializable
+{
+    private static final boolean PARALLEL = true;
+
+    private IClassificationNonconformityFunction _nc;
+    private double[] _targets;
+    private Double[] _classes;
+    private boolean _useLabelConditionalCP;
+    private int _members;
+    // The calibration fraction of the random splits; or 0 for bootstrap
+    // samples.
+    private double _calibrationFraction;
+    private InductiveConformalClassifier[] _ensemble;
+
+    /**
+      * Creates an aggregated conformal classifier using the supplied
+      * information.
+      *
+      * @param nc         the untrained non-conformity function to use.
+      * @param targets    the class labels.
+      * @param members    the number of members of the ensemble.
+      */
+    public AggregatedConformalClassifier
+               (IClassificationNonconformityFunction nc,
+                double[] targets,
+                int      members)
+    {
+        this(nc, targets, members, false);
+    }
+
+    /**
+      * Creates an aggregated conformal classifier using the supplied
+      * information.
+      *
+      * @param nc                     the untrained non-conformity function to use.
+      * @param targets                the class labels.
+      * @param members                the number of members of the ensemble.
+      * @param useLabelConditionalCP  a boolean indicating whether label conditional conformal prediction should be used.
+      */
+    public AggregatedConformalClassifier
+               (IClassificationNonconformityFunction nc,
+                double[] targets,
+                int      members,
+                boolean  useLabelConditionalCP)
+    {
+        if (members < 1) {
+            throw new IllegalArgumentException
+                          ("An aggregated conformal classifier needs at " +
+                           "least one member.");
+        }
+        _nc = nc;
+        _targets = targets.clone();
+        _useLabelConditionalCP = useLabelConditionalCP;
+        _members = members;
+        // The labels in the order used by the members.
+        SortedSet<Double> labels = new TreeSet<Double>();
+        for (int i = 0; i < targets.length; i++) {
+            labels.add(targets[i]);
+        }
+        _classes = labels.toArray(new Double[0]);
+    }
+
+    /**
+     * Selects random splits of the training set into training and
+     * calibration instances for the members instead of bootstrap samples.
+     * The setting takes effect at the next call to <tt>fit</tt>.
+     *
+     * @param calibrationFraction  the fraction of the training set to use for calibration (0.0 - 1.0); or 0 to use bootstrap samples.
+     */
+    public void setRandomSplits(double calibrationFraction)
+    {
+        if (calibrationFraction < 0.0 || calibrationFraction >= 1.0) {
+            throw new IllegalArgumentException
+                          ("The calibration fraction must be in [0, 1).");
+        }
+        _calibrationFraction = calibrationFraction;
+    }
+
+    /**
+     * Trains and calibrates the members of this conformal classifier using
+     * the supplied data.
+     *
+     * @param x             the attributes of the training instances.
+     * @param y             the targets of the training instances.
+     */
+    public void fit(DoubleMatrix2D x, double[] y)
+    {
+        fit(x, y, new Random());
+    }
+
+    /**
+     * Trains and calibrates the members of this conformal classifier using
+     * the supplied data and random source for the partitioning.
+     *
+     * @param x             the attributes of the training instances.
+     * @param y             the targets of the training instances.
+     * @param random        the random source for the partitioning.
+     */
+    public void fit(DoubleMatrix2D x, double[] y, Random random)
+    {
+        long[] seeds = new long[_members];
+        for (int b = 0; b < _members; b++) {
+            seeds[b] = random.nextLong();
+        }
+        InductiveConformalClassifier[] ensemble =
+            new InductiveConformalClassifier[_members];
+        FitMembersAction all =
+            new FitMembersAction(x, y, seeds, ensemble, 0, _members);
+        if (!PARALLEL) {
+            for (int b = 0; b < _members; b++) {
+                all.compute(b);
+            }
+        } else {
+            all.start();
+        }
+        _ensemble = ensemble;
+    }
+
+    /**
+     * Makes a prediction for each instance in x.
+     * The method is parallellized over the instances.
+     *
+     * @param x             the instances.
+     * @return an array containing a <tt>ConformalClassification</tt> for each instance.
+     */
+    @Override
+    public ConformalClassification[] predict(DoubleMatrix2D x)
+    {
+        int n = x.rows();
+        ConformalClassification[] predictions = new ConformalClassification[n];
+        DoubleMatrix2D pValues = predictPValues(x);
+        for (int i = 0; i < n; i++) {
+            predictions[i] = new ConformalClassification(this,
+                                                         pValues.viewRow(i));
+        }
+        return predictions;
+    }
+
+    /**
+     * Makes a prediction for each instance in x and returns them in a
+     * compact batch representation.
+     * The method is parallellized over the instances.
+     *
+     * @param x             the instances.
+     * @return a <tt>ConformalClassificationBatch</tt> containing the predictions.
+     */
+    @Override
+    public ConformalClassificationBatch predictBatch(DoubleMatrix2D x)
+    {
+        return new ConformalClassificationBatch(_classes,
+                                                calculatePValues(x));
+    }
+
+    /**
+     * Makes a prediction for the instance x.
+     *
+     * @param x             the instance.
+     * @return a prediction in the form of a <tt>ConformalClassification</tt>.
+     */
+    @Override
+    public ConformalClassification predict(DoubleMatrix1D x)
+    {
+        return new ConformalClassification(this, predictPValues(x));
+    }
+
+    /**
+     * Computes the predicted p-values for each target and instance in x.
+     * The method is parallellized over the instances.
+     *
+     * @param x             the instances.
+     * @return an <tt>DoubleMatrix2D</tt> containing the predicted p-values for each instance.
+     */
+    @Override
+    public DoubleMatrix2D predictPValues(DoubleMatrix2D x)
+    {
+        int k = _classes.length;
+        double[] pValues = calculatePValues(x);
+        DoubleMatrix2D response = new DenseDoubleMatrix2D(x.rows(), k);
+        for (int i = 0; i < x.rows(); i++) {
+            for (int c = 0; c < k; c++) {
+                response.setQuick(i, c, pValues[i * k + c]);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Computes the predicted p-values for the instance x.
+     *
+     * @param x    the instance.
+     * @return an <tt>DoubleMatrix1D</tt> containing the predicted p-values.
+     */
+    @Override
+    public DoubleMatrix1D predictPValues(DoubleMatrix1D x)
+    {
+        DoubleMatrix1D response = new DenseDoubleMatrix1D(_classes.length);
+        predictPValues(x, response);
+        return response;
+    }
+
+    /**
+     * Computes the predicted p-values for the instance x.
+     *
+     * @param x          the instance.
+     * @param pValues    an initialized <tt>DoubleMatrix1D</tt> to store the p-values.
+     */
+    @Override
+    public void predictPValues(DoubleMatrix1D x, DoubleMatrix1D pValues)
+    {
+        checkTrained();
+        int k = _classes.length;
+        double[] result = new double[k];
+        calculatePValues(x, result, 0, new double[k], new double[k]);
+        for (int c = 0; c < k; c++) {
+            pValues.set(c, result[c]);
+        }
+    }
+
+    /**
+     * Returns the untrained non-conformity function the members are
+     * created from.
+     *
+     * @return the associated <tt>IClassificationNonconformityFunction</tt>.
+     */
+    @Override
+    public IClassificationNonconformityFunction getNonconformityFunction()
+    {
+        return _nc;
+    }
+
+    /**
+     * Returns the members of the ensemble.
+     *
+     * @return the members; or null if this classifier has not been trained.
+     */
+    public InductiveConformalClassifier[] getMembers()
+    {
+        return _ensemble;
+    }
+
+    /**
+     * Returns whether this classifier has been trained and calibrated.
+     *
+     * @return <tt>true</tt> if the classifier has been trained and calibrated or <tt>false</tt> otherwise.
+     */
+    @Override
+    public boolean isTrained()
+    {
+        return _ensemble != null;
+    }
+
+    @Override
+    public int getAttributeCount()
+    {
+        if (_ensemble != null) {
+            return _ensemble[0].getAttributeCount();
+        } else {
+            return -1;
+        }
+    }
+
+    @Override
+    public Double[] getLabels()
+    {
+        return _classes;
+    }
+
+    @Override
+    public DoubleMatrix1D nativeStorageTemplate()
+    {
+        if (getNonconformityFunction() != null) {
+            return getNonconformityFunction().nativeStorageTemplate();
+        } else {
+            return new cern.colt.matrix.impl.SparseDoubleMatrix1D(0);
+        }
+    }
+
+    /**
+     * Computes the p-values for each target and instance in x.
+     * The method is parallellized over the instances.
+     *
+     * @param x    the instances.
+     * @return a <tt>double[]</tt> array with the p-values of instance <tt>i</tt> from position <tt>i * getLabels().length</tt>.
+     */
+    private double[] calculatePValues(DoubleMatrix2D x)
+    {
+        checkTrained();
+        int n = x.rows();
+        int k = _classes.length;
+        double[] pValues = new double[n * k];
+        PredictPValuesAction all =
+            new PredictPValuesAction(x, pValues, 0, n);
+        if (!PARALLEL) {
+            all.initialize(0, n);
+            for (int i = 0; i < n; i++) {
+                all.compute(i);
+            }
+        } else {
+            all.start();
+        }
+        return pValues;
+    }
+
+    /**
+     * Computes the aggregated p-values of the instance x by evaluating the
+     * non-conformity function of each member once.
+     *
+     * @param x              the instance.
+     * @param pValues        the array to store the p-values in.
+     * @param offset         the position of the first p-value.
+     * @param ncScores       an array used as scratch space for the non-conformity scores.
+     * @param memberPValues  an array used as scratch space for the p-values of a member.
+     */
+    private void calculatePValues(DoubleMatrix1D x, double[] pValues,
+                                  int offset, double[] ncScores,
+                                  double[] memberPValues)
+    {
+        int k = _classes.length;
+        for (int c = 0; c < k; c++) {
+            pValues[offset + c] = 0.0;
+        }
+        for (InductiveConformalClassifier member : _ensemble) {
+            member.getNonconformityFunction().
+                calculateNonConformityScores(x, ncScores);
+            member.calculatePValues(x, ncScores, memberPValues);
+            for (int c = 0; c < k; c++) {
+                pValues[offset + c] += memberPValues[c];
+            }
+        }
+        for (int c = 0; c < k; c++) {
+            pValues[offset + c] /= _ensemble.length;
+        }
+    }
+
+    private void checkTrained()
+    {
+        if (!isTrained()) {
+            throw new UnsupportedOperationException
+                          ("The aggregated conformal classifier must be " +
+                           "trained before it can make predictions.");
+        }
+    }
+
+    class FitMembersAction extends ParallelizedAction
+    {
+        DoubleMatrix2D _x;
+        double[] _y;
+        long[] _seeds;
+        InductiveConformalClassifier[] _ensemble;
+
+        public FitMembersAction(DoubleMatrix2D x, double[] y, long[] seeds,
+                                InductiveConformalClassifier[] ensemble,
+                                int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _y = y;
+            _seeds = seeds;
+            _ensemble = ensemble;
+        }
+
+        @Override
+        protected void compute(int b)
+        {
+            Random random = new Random(_seeds[b]);
+            int n = _x.rows();
+            int[] trainingRows;
+            int[] calibrationRows;
+            if (_calibrationFraction > 0.0) {
+                int[] permutation = new int[n];
+                for (int i = 0; i < n; i++) {
+                    permutation[i] = i;
+                }
+                for (int i = n - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    int tmp = permutation[i];
+                    permutation[i] = permutation[j];
+                    permutation[j] = tmp;
+                }
+                int m = (int)(_calibrationFraction * n);
+                trainingRows = Arrays.copyOfRange(permutation, m, n);
+                calibrationRows = Arrays.copyOf(permutation, m);
+            } else {
+                // A bootstrap sample for training and the out-of-bag
+                // instances for calibration.
+                trainingRows = new int[n];
+                boolean[] inBag = new boolean[n];
+                int m = n;
+                for (int j = 0; j < n; j++) {
+                    int i = random.nextInt(n);
+                    trainingRows[j] = i;
+                    if (!inBag[i]) {
+                        inBag[i] = true;
+                        m--;
+                    }
+                }
+                calibrationRows = new int[m];
+                m = 0;
+                for (int i = 0; i < n; i++) {
+                    if (!inBag[i]) {
+                        calibrationRows[m++] = i;
+                    }
+                }
+            }
+            if (trainingRows.length == 0 || calibrationRows.length == 0) {
+                throw new IllegalArgumentException
+                              ("The training set is too small to be " +
+                               "partitioned.");
+            }
+            IClassificationNonconformityFunction nc =
+                _nc.fitNew(SharedRowsMatrix2D.selectRows(_x, trainingRows),
+                           selectTargets(_y, trainingRows));
+            InductiveConformalClassifier member =
+                new InductiveConformalClassifier(nc, _targets,
+                                                 _useLabelConditionalCP);
+            member.calibrate(SharedRowsMatrix2D.selectRows(_x, calibrationRows),
+                             selectTargets(_y, calibrationRows));
+            _ensemble[b] = member;
+        }
+
+        private double[] selectTargets(double[] y, int[] rows)
+        {
+            double[] result = new double[rows.length];
+            for (int r = 0; r < rows.length; r++) {
+                result[r] = y[rows[r]];
+            }
+            return result;
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new FitMembersAction(_x, _y, _seeds, _ensemble,
+                                        first, last);
+        }
+    }
+
+    class PredictPValuesAction extends ParallelizedAction
+    {
+        DoubleMatrix2D _x;
+        double[] _pValues;
+        double[] _ncScores;
+        double[] _memberPValues;
+
+        public PredictPValuesAction(DoubleMatrix2D x, double[] pValues,
+                                    int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _pValues = pValues;
+        }
+
+        @Override
+        protected void initialize(int first, int last)
+        {
+            _ncScores = new double[_classes.length];
+            _memberPValues = new double[_classes.length];
+        }
+
+        @Override
+        protected void finalize(int first, int last)
+        {
+            _ncScores = null;
+            _memberPValues = null;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            calculatePValues(_x.viewRow(i), _pValues, i * _classes.length,
+                             _ncScores, _memberPValues);
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new PredictPValuesAction(_x, _pValues, first, last);
+        }
+    }
+}
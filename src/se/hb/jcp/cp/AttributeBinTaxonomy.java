@@ -0,0 +1,69 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.cp;
+
+import cern.colt.matrix.DoubleMatrix1D;
+
+import java.util.Arrays;
+
+/**
+ * A Mondrian taxonomy that categorizes instances by the value of one
+ * attribute. The bin thresholds t_0 &lt; t_1 &lt; ... &lt; t_(m-1) give
+ * m+1 categories where category b contains the instances with
+ * t_(b-1) &lt;= value &lt; t_b. The label is not used.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class AttributeBinTaxonomy implements IMondrianTaxonomy
+{
+    private int      _attribute;
+    private double[] _thresholds;
+
+    /**
+     * Creates an attribute bin taxonomy.
+     *
+     * @param attribute    the index of the attribute to categorize by.
+     * @param thresholds   the bin thresholds in ascending order.
+     */
+    public AttributeBinTaxonomy(int attribute, double[] thresholds)
+    {
+        for (int i = 1; i < thresholds.length; i++) {
+            if (!(thresholds[i - 1] < thresholds[i])) {
+                throw new IllegalArgumentException
+                              ("The bin thresholds must be strictly " +
+                               "increasing.");
+            }
+        }
+        _attribute  = attribute;
+        _thresholds = thresholds.clone();
+    }
+
+    @Override
+    public int getCategoryCount()
+    {
+        return _thresholds.length + 1;
+    }
+
+    @Override
+    public int getCategory(DoubleMatrix1D x, double y)
+    {
+        double value = x.get(_attribute);
+        int idx = Arrays.binarySearch(_thresholds, value);
+        // A value equal to a threshold belongs to the bin above it.
+        return idx < 0 ? -(idx + 1) : idx + 1;
+    }
+}
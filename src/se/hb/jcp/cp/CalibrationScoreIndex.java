@@ -0,0 +1,296 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.cp;
+
+/**
+ * An index over a sorted set of calibration non-conformity scores for fast
+ * p-value computation.
+ *
+ * Single scores are looked up through a quantized direct-index table that
+ * maps the score range [lower, upper] into equally sized bins. Only the
+ * calibration scores within the bin of the looked up score need to be
+ * searched, which gives O(1) expected lookups for reasonably distributed
+ * scores. Scores outside of the range are clamped to the first or last bin.
+ *
+ * Batches of scores are handled by sorting the batch and merging it with the
+ * calibration scores. The merge gallops over the calibration scores, so
+ * it takes O(m log(n/m + 1)) time after sorting. This is never worse than
+ * O(n+m), and a small batch needs about as few comparisons as looking up
+ * each score on its own.
+ *
+ * The index can cover a sub-range of a larger array, e.g. one category of
+ * Mondrian calibration scores stored in a <tt>MondrianCalibrationScores</tt>.
+ *
+ * The p-values are identical to those computed by
+ * <tt>Util.calculatePValue(double, double[])</tt>.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class CalibrationScoreIndex implements ICalibrationScoreIndex
+{
+    private final double[] _scores;
+    // The calibration scores are _scores[_first.._first+_size).
+    private final int      _first;
+    private final int      _size;
+    // The quantized direct-index table. _binStart[b] is the index of the
+    // first calibration score in bin b or higher. null if the scores cannot
+    // be quantized, e.g. due to infinite or NaN scores.
+    private final int[]  _binStart;
+    private final double _lower;
+    private final double _scale;
+
+    /**
+     * Creates a calibration score index with one bin per calibration score
+     * spanning the range of the calibration scores.
+     *
+     * @param sortedScores  the calibration scores in ascending order. The array is not copied.
+     */
+    public CalibrationScoreIndex(double[] sortedScores)
+    {
+        this(sortedScores, 0, sortedScores.length);
+    }
+
+    /**
+     * Creates a calibration score index over the range [first, last) of an
+     * array with one bin per calibration score spanning the range of the
+     * calibration scores.
+     *
+     * @param scores  an array containing the calibration scores in ascending order in the range [first, last). The array is not copied.
+     * @param first   the index of the first calibration score.
+     * @param last    the index after the last calibration score.
+     */
+    public CalibrationScoreIndex(double[] scores, int first, int last)
+    {
+        this(scores, first, last,
+             last > first ? scores[first] : 0.0,
+             last > first ? scores[last - 1] : 0.0,
+             Math.max(1, last - first));
+    }
+
+    /**
+     * Creates a calibration score index with the specified quantization.
+     * Suitable for bounded non-conformity functions, e.g. hinge loss
+     * where the scores are in [0, 1].
+     *
+     * @param sortedScores  the calibration scores in ascending order. The array is not copied.
+     * @param lower         the lower end of the quantized score range.
+     * @param upper         the upper end of the quantized score range.
+     * @param bins          the number of bins in the quantized table.
+     */
+    public CalibrationScoreIndex(double[] sortedScores,
+                                 double lower, double upper, int bins)
+    {
+        this(sortedScores, 0, sortedScores.length, lower, upper, bins);
+    }
+
+    private CalibrationScoreIndex(double[] scores, int first, int last,
+                                  double lower, double upper, int bins)
+    {
+        if (first < 0 || last < first || last > scores.length) {
+            throw new IllegalArgumentException
+                          ("Invalid calibration score range.");
+        }
+        if (bins < 1) {
+            throw new IllegalArgumentException
+                          ("The number of bins must be positive.");
+        }
+        _scores = scores;
+        _first  = first;
+        _size   = last - first;
+        _lower  = lower;
+        double range = upper - lower;
+        boolean quantizable =
+            !Double.isInfinite(range) && !Double.isNaN(range) &&
+            (_size == 0 ||
+             (!Double.isInfinite(scores[first]) &&
+              !Double.isNaN(scores[last - 1]) &&
+              !Double.isInfinite(scores[last - 1])));
+        if (quantizable) {
+            _scale = range > 0.0 ? bins / range : 0.0;
+            _binStart = new int[bins + 1];
+            int i = first;
+            for (int b = 0; b < bins; b++) {
+                while (i < last && bin(_scores[i], bins) < b) {
+                    i++;
+                }
+                _binStart[b] = i;
+            }
+            _binStart[bins] = last;
+        } else {
+            _scale = 0.0;
+            _binStart = null;
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        return _size;
+    }
+
+    @Override
+    public double calculatePValue(double ncScore)
+    {
+        int first;
+        int last;
+        if (_binStart == null) {
+            first = _first;
+            last  = _first + _size;
+        } else {
+            // All calibration scores equal to ncScore are in the same bin.
+            int b = bin(ncScore, _binStart.length - 1);
+            first = _binStart[b];
+            last  = _binStart[b + 1];
+        }
+        int less = lowerBound(ncScore, first, last);
+        int lessOrEqual = upperBound(ncScore, less, last);
+        return Util.calculatePValue(_first + _size - lessOrEqual,
+                                    lessOrEqual - less,
+                                    _size);
+    }
+
+    /**
+     * Computes the p-values for a batch of non-conformity scores by sorting
+     * the batch and merging it with the calibration scores using galloping
+     * search.
+     *
+     * @param ncScores  the non-conformity scores.
+     * @param pValues   an initialized <tt>double[]</tt> array to store the p-values in.
+     */
+    @Override
+    public void calculatePValues(double[] ncScores, double[] pValues)
+    {
+        int[] order = sortedOrder(ncScores);
+        int last = _first + _size;
+        int less = _first;
+        int lessOrEqual = _first;
+        for (int k = 0; k < order.length; k++) {
+            double score = ncScores[order[k]];
+            if (k == 0 || score != ncScores[order[k - 1]]) {
+                less = gallopLowerBound(score, less, last);
+                lessOrEqual = gallopUpperBound(score, less, last);
+            }
+            pValues[order[k]] =
+                Util.calculatePValue(last - lessOrEqual,
+                                     lessOrEqual - less,
+                                     _size);
+        }
+    }
+
+    private int bin(double score, int bins)
+    {
+        double b = (score - _lower) * _scale;
+        if (!(b >= 0.0)) {
+            return 0;
+        } else if (b >= bins) {
+            return bins - 1;
+        } else {
+            return (int)b;
+        }
+    }
+
+    // Returns the index of the first score in [first, last) not less than
+    // key, or last. Probes at exponentially increasing distances from first
+    // before the binary search, which takes O(log d) time where d is the
+    // distance from first to the result.
+    private int gallopLowerBound(double key, int first, int last)
+    {
+        int step = 1;
+        int probe = first;
+        while (probe < last && _scores[probe] < key) {
+            first = probe + 1;
+            probe = first + step;
+            step <<= 1;
+        }
+        return lowerBound(key, first, Math.min(probe, last));
+    }
+
+    // Returns the index of the first score in [first, last) greater than
+    // key, or last. Gallops like gallopLowerBound().
+    private int gallopUpperBound(double key, int first, int last)
+    {
+        int step = 1;
+        int probe = first;
+        while (probe < last && _scores[probe] <= key) {
+            first = probe + 1;
+            probe = first + step;
+            step <<= 1;
+        }
+        return upperBound(key, first, Math.min(probe, last));
+    }
+
+    // Returns the index of the first score in [first, last) not less than
+    // key, or last.
+    private int lowerBound(double key, int first, int last)
+    {
+        while (first < last) {
+            int mid = (first + last) >>> 1;
+            if (_scores[mid] < key) {
+                first = mid + 1;
+            } else {
+                last = mid;
+            }
+        }
+        return first;
+    }
+
+    // Returns the index of the first score in [first, last) greater than
+    // key, or last.
+    private int upperBound(double key, int first, int last)
+    {
+        while (first < last) {
+            int mid = (first + last) >>> 1;
+            if (_scores[mid] <= key) {
+                first = mid + 1;
+            } else {
+                last = mid;
+            }
+        }
+        return first;
+    }
+
+    // Returns the indices of keys in ascending key order (bottom-up merge
+    // sort).
+    private static int[] sortedOrder(double[] keys)
+    {
+        int[] order  = new int[keys.length];
+        int[] buffer = new int[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        for (int width = 1; width < order.length; width *= 2) {
+            for (int first = 0; first < order.length; first += 2 * width) {
+                int middle = Math.min(first + width, order.length);
+                int last   = Math.min(first + 2 * width, order.length);
+                int i = first;
+                int j = middle;
+                for (int k = first; k < last; k++) {
+                    if (i < middle &&
+                        (j >= last || !(keys[order[j]] < keys[order[i]]))) {
+                        buffer[k] = order[i++];
+                    } else {
+                        buffer[k] = order[j++];
+                    }
+                }
+            }
+            int[] tmp = order;
+            order  = buffer;
+            buffer = tmp;
+        }
+        return order;
+    }
+}
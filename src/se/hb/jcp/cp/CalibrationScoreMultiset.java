@@ -0,0 +1,339 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.cp;
+
+import java.util.Arrays;
+
+/**
+ * A multiset of calibration non-conformity scores that supports adding and
+ * removing scores in O(log n) expected time while keeping the rank
+ * information needed for p-value computation.
+ *
+ * The multiset is a randomized binary search tree (treap) with subtree
+ * sizes stored in primitive arrays. Equal scores share one node.
+ * The p-values are identical to those computed by
+ * <tt>Util.calculatePValue(double, double[])</tt> over the same scores.
+ *
+ * The class is not thread-safe; concurrent updates and lookups must be
+ * synchronized externally.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class CalibrationScoreMultiset
+    implements ICalibrationScoreIndex, java.io.Serializable
+{
+    private static final int NIL = 0;
+
+    // Node storage. Node 0 is the NIL sentinel with size 0.
+    private double[] _key;
+    private int[]    _count;
+    private int[]    _size;
+    private int[]    _left;
+    private int[]    _right;
+    private int[]    _priority;
+    private int      _root;
+    private int      _nodes;
+    // Free nodes are linked through _left.
+    private int      _free;
+    private int      _seed;
+
+    /**
+     * Creates an empty calibration score multiset.
+     */
+    public CalibrationScoreMultiset()
+    {
+        this(16);
+    }
+
+    /**
+     * Creates an empty calibration score multiset.
+     *
+     * @param capacity  the initial number of distinct scores to allocate space for.
+     */
+    public CalibrationScoreMultiset(int capacity)
+    {
+        capacity = Math.max(capacity, 1) + 1;
+        _key      = new double[capacity];
+        _count    = new int[capacity];
+        _size     = new int[capacity];
+        _left     = new int[capacity];
+        _right    = new int[capacity];
+        _priority = new int[capacity];
+        _root  = NIL;
+        _nodes = 1;
+        _free  = NIL;
+        _seed  = 0x2545F491;
+    }
+
+    /**
+     * Adds a non-conformity score to this multiset.
+     *
+     * @param score  the non-conformity score.
+     */
+    public void add(double score)
+    {
+        _root = insert(_root, normalize(score));
+    }
+
+    /**
+     * Removes one occurrence of a non-conformity score from this multiset.
+     *
+     * @param score  the non-conformity score.
+     * @return <tt>true</tt> if the score was present or <tt>false</tt> otherwise.
+     */
+    public boolean remove(double score)
+    {
+        int before = _size[_root];
+        _root = delete(_root, normalize(score));
+        return _size[_root] < before;
+    }
+
+    /**
+     * Returns the number of scores in this multiset less than score.
+     *
+     * @param score  the non-conformity score.
+     * @return the number of scores less than score.
+     */
+    public int countLess(double score)
+    {
+        score = normalize(score);
+        int count = 0;
+        int node = _root;
+        while (node != NIL) {
+            if (Double.compare(_key[node], score) < 0) {
+                count += _size[_left[node]] + _count[node];
+                node = _right[node];
+            } else {
+                node = _left[node];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of scores in this multiset less than or equal to
+     * score.
+     *
+     * @param score  the non-conformity score.
+     * @return the number of scores less than or equal to score.
+     */
+    public int countLessOrEqual(double score)
+    {
+        score = normalize(score);
+        int count = 0;
+        int node = _root;
+        while (node != NIL) {
+            if (Double.compare(_key[node], score) <= 0) {
+                count += _size[_left[node]] + _count[node];
+                node = _right[node];
+            } else {
+                node = _left[node];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the scores in this multiset in ascending order.
+     *
+     * @return a sorted <tt>double[]</tt> array containing the scores.
+     */
+    public double[] toSortedArray()
+    {
+        double[] scores = new double[size()];
+        toSortedArray(_root, scores, 0);
+        return scores;
+    }
+
+    @Override
+    public int size()
+    {
+        return _size[_root];
+    }
+
+    @Override
+    public double calculatePValue(double ncScore)
+    {
+        int less        = countLess(ncScore);
+        int lessOrEqual = countLessOrEqual(ncScore);
+        return Util.calculatePValue(size() - lessOrEqual,
+                                    lessOrEqual - less,
+                                    size());
+    }
+
+    @Override
+    public void calculatePValues(double[] ncScores, double[] pValues)
+    {
+        for (int i = 0; i < ncScores.length; i++) {
+            pValues[i] = calculatePValue(ncScores[i]);
+        }
+    }
+
+    // Maps -0.0 to 0.0 to get the same equality as the == operator used for
+    // the sorted calibration score arrays.
+    private static double normalize(double score)
+    {
+        return score + 0.0;
+    }
+
+    private int insert(int node, double score)
+    {
+        if (node == NIL) {
+            return allocate(score);
+        }
+        int cmp = Double.compare(score, _key[node]);
+        if (cmp == 0) {
+            _count[node]++;
+        } else if (cmp < 0) {
+            // The child is computed first as the recursive call may
+            // replace the node arrays when it allocates a node.
+            int child = insert(_left[node], score);
+            _left[node] = child;
+            if (_priority[child] > _priority[node]) {
+                node = rotateRight(node);
+            }
+        } else {
+            int child = insert(_right[node], score);
+            _right[node] = child;
+            if (_priority[child] > _priority[node]) {
+                node = rotateLeft(node);
+            }
+        }
+        update(node);
+        return node;
+    }
+
+    private int delete(int node, double score)
+    {
+        if (node == NIL) {
+            return NIL;
+        }
+        int cmp = Double.compare(score, _key[node]);
+        if (cmp < 0) {
+            _left[node] = delete(_left[node], score);
+        } else if (cmp > 0) {
+            _right[node] = delete(_right[node], score);
+        } else if (_count[node] > 1) {
+            _count[node]--;
+        } else {
+            return deleteNode(node);
+        }
+        update(node);
+        return node;
+    }
+
+    // Removes node by merging its subtrees.
+    private int deleteNode(int node)
+    {
+        int merged = merge(_left[node], _right[node]);
+        release(node);
+        return merged;
+    }
+
+    // Merges two treaps where all keys in a are less than all keys in b.
+    private int merge(int a, int b)
+    {
+        if (a == NIL) {
+            return b;
+        } else if (b == NIL) {
+            return a;
+        } else if (_priority[a] > _priority[b]) {
+            _right[a] = merge(_right[a], b);
+            update(a);
+            return a;
+        } else {
+            _left[b] = merge(a, _left[b]);
+            update(b);
+            return b;
+        }
+    }
+
+    private int rotateRight(int node)
+    {
+        int left = _left[node];
+        _left[node] = _right[left];
+        _right[left] = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private int rotateLeft(int node)
+    {
+        int right = _right[node];
+        _right[node] = _left[right];
+        _left[right] = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    private void update(int node)
+    {
+        _size[node] = _size[_left[node]] + _count[node] + _size[_right[node]];
+    }
+
+    private int toSortedArray(int node, double[] scores, int next)
+    {
+        if (node != NIL) {
+            next = toSortedArray(_left[node], scores, next);
+            Arrays.fill(scores, next, next + _count[node], _key[node]);
+            next = toSortedArray(_right[node], scores, next + _count[node]);
+        }
+        return next;
+    }
+
+    private int allocate(double score)
+    {
+        int node;
+        if (_free != NIL) {
+            node  = _free;
+            _free = _left[node];
+        } else {
+            if (_nodes == _key.length) {
+                int capacity = 2 * _key.length;
+                _key      = Arrays.copyOf(_key, capacity);
+                _count    = Arrays.copyOf(_count, capacity);
+                _size     = Arrays.copyOf(_size, capacity);
+                _left     = Arrays.copyOf(_left, capacity);
+                _right    = Arrays.copyOf(_right, capacity);
+                _priority = Arrays.copyOf(_priority, capacity);
+            }
+            node = _nodes++;
+        }
+        // Xorshift pseudo-random priorities.
+        _seed ^= _seed << 13;
+        _seed ^= _seed >>> 17;
+        _seed ^= _seed << 5;
+        _key[node]      = score;
+        _count[node]    = 1;
+        _size[node]     = 1;
+        _left[node]     = NIL;
+        _right[node]    = NIL;
+        _priority[node] = _seed;
+        return node;
+    }
+
+    private void release(int node)
+    {
+        _count[node] = 0;
+        _size[node]  = 0;
+        _right[node] = NIL;
+        _left[node]  = _free;
+        _free = node;
+    }
+}
@@ -0,0 +1,320 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.cp;
+
+import java.io.ObjectInputStream;
+
+import java.util.Arrays;
+
+/**
+ * A mergeable quantile sketch of calibration non-conformity scores in
+ * bounded memory. The sketch is a KLL sketch, see [Karnin, Lang, Liberty,
+ * "Optimal Quantile Approximation in Streams", FOCS 2016].
+ *
+ * The sketch retains O(k log(n/k)) scores, where k is the accuracy
+ * parameter. Each retained score at level h represents 2^h calibration
+ * scores. As long as fewer than k scores have been added the sketch
+ * is exact and the p-values are identical to those computed by
+ * <tt>Util.calculatePValue(double, double[])</tt>.
+ *
+ * Rank error bound: with probability at least 1 - delta the estimated rank
+ * of any score is within epsilon * n of the true rank, where
+ * k = O((1/epsilon) sqrt(log(1/delta))). Empirically, k = 200 gives a
+ * normalized rank error below 1.65% with 99% confidence. Since a p-value is
+ * a normalized rank, the p-values computed from the sketch are within about
+ * epsilon of the exact ones. Merging sketches does not increase the error
+ * bound beyond that of a single sketch over all the scores.
+ *
+ * The sketch is not thread-safe for updates; concurrent updates and lookups
+ * must be synchronized externally. Concurrent lookups are safe.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class CalibrationScoreSketch
+    implements ICalibrationScoreIndex, java.io.Serializable
+{
+    /** The default accuracy parameter. */
+    public static final int DEFAULT_K = 200;
+
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+    private static final int    MIN_CAPACITY   = 8;
+
+    private int        _k;
+    private long       _n;
+    private double[][] _levels;
+    private int[]      _levelSizes;
+    private int        _seed;
+    // Sorted view of the retained scores with cumulative weights.
+    // Rebuilt lazily after updates.
+    private transient volatile SortedView _view;
+
+    /**
+     * Creates an empty calibration score sketch with the default accuracy.
+     */
+    public CalibrationScoreSketch()
+    {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * Creates an empty calibration score sketch.
+     *
+     * @param k    the accuracy parameter. Larger is more accurate.
+     */
+    public CalibrationScoreSketch(int k)
+    {
+        if (k < MIN_CAPACITY) {
+            throw new IllegalArgumentException
+                          ("The sketch accuracy parameter must be at least " +
+                           MIN_CAPACITY + ".");
+        }
+        _k = k;
+        _n = 0;
+        _levels = new double[][] { new double[k] };
+        _levelSizes = new int[1];
+        _seed = 0x2545F491;
+    }
+
+    /**
+     * Returns the accuracy parameter of this sketch.
+     *
+     * @return the accuracy parameter.
+     */
+    public int getK()
+    {
+        return _k;
+    }
+
+    /**
+     * Returns the number of scores retained by this sketch.
+     *
+     * @return the number of retained scores.
+     */
+    public int getRetainedCount()
+    {
+        int retained = 0;
+        for (int h = 0; h < _levelSizes.length; h++) {
+            retained += _levelSizes[h];
+        }
+        return retained;
+    }
+
+    /**
+     * Adds a non-conformity score to this sketch.
+     *
+     * @param score  the non-conformity score.
+     */
+    public void add(double score)
+    {
+        append(0, score);
+        _n++;
+        compress();
+        _view = null;
+    }
+
+    /**
+     * Merges the scores represented by another sketch into this sketch.
+     * The other sketch is not modified.
+     *
+     * @param other  the sketch to merge.
+     */
+    public void merge(CalibrationScoreSketch other)
+    {
+        for (int h = 0; h < other._levelSizes.length; h++) {
+            for (int i = 0; i < other._levelSizes[h]; i++) {
+                append(h, other._levels[h][i]);
+            }
+        }
+        _n += other._n;
+        compress();
+        _view = null;
+    }
+
+    @Override
+    public int size()
+    {
+        return (int)_n;
+    }
+
+    @Override
+    public double calculatePValue(double ncScore)
+    {
+        SortedView view = getView();
+        long less        = view.countLess(ncScore);
+        long lessOrEqual = view.countLessOrEqual(ncScore);
+        return Util.calculatePValue((int)(_n - lessOrEqual),
+                                    (int)(lessOrEqual - less),
+                                    (int)_n);
+    }
+
+    @Override
+    public void calculatePValues(double[] ncScores, double[] pValues)
+    {
+        for (int i = 0; i < ncScores.length; i++) {
+            pValues[i] = calculatePValue(ncScores[i]);
+        }
+    }
+
+    private int capacity(int h)
+    {
+        int depth = _levelSizes.length - 1 - h;
+        return Math.max(MIN_CAPACITY,
+                        (int)Math.ceil(_k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    private void append(int h, double score)
+    {
+        if (h >= _levelSizes.length) {
+            _levels = Arrays.copyOf(_levels, h + 1);
+            _levelSizes = Arrays.copyOf(_levelSizes, h + 1);
+            for (int l = 0; l < _levels.length; l++) {
+                if (_levels[l] == null) {
+                    _levels[l] = new double[MIN_CAPACITY];
+                }
+            }
+        }
+        if (_levelSizes[h] == _levels[h].length) {
+            _levels[h] = Arrays.copyOf(_levels[h], 2 * _levels[h].length);
+        }
+        _levels[h][_levelSizes[h]++] = score;
+    }
+
+    // Compacts levels that exceed their capacity. Each compaction sorts the
+    // level and promotes every other score, starting at a random offset,
+    // to the next level where it carries twice the weight.
+    private void compress()
+    {
+        for (int h = 0; h < _levelSizes.length; h++) {
+            if (_levelSizes[h] >= capacity(h)) {
+                double[] level = _levels[h];
+                int size = _levelSizes[h];
+                // Keep one score at this level if the count is odd.
+                int pairs = size / 2;
+                Arrays.sort(level, 0, size);
+                int offset = nextRandomBit();
+                double kept = level[size - 1];
+                for (int i = 0; i < pairs; i++) {
+                    append(h + 1, level[2 * i + offset]);
+                }
+                level = _levels[h]; // append() may have grown _levels.
+                _levelSizes[h] = 0;
+                if (size % 2 == 1) {
+                    level[_levelSizes[h]++] = kept;
+                }
+            }
+        }
+    }
+
+    private int nextRandomBit()
+    {
+        _seed ^= _seed << 13;
+        _seed ^= _seed >>> 17;
+        _seed ^= _seed << 5;
+        return _seed & 1;
+    }
+
+    private SortedView getView()
+    {
+        SortedView view = _view;
+        if (view == null) {
+            view = new SortedView();
+            _view = view;
+        }
+        return view;
+    }
+
+    private void readObject(ObjectInputStream ois)
+        throws ClassNotFoundException, java.io.IOException
+    {
+        ois.defaultReadObject();
+        _view = null;
+    }
+
+    /**
+     * An immutable sorted view of the retained scores.
+     */
+    private class SortedView
+    {
+        final double[] _scores;
+        // _cumulative[i] is the total weight of _scores[0..i).
+        final long[]   _cumulative;
+
+        SortedView()
+        {
+            int retained = getRetainedCount();
+            double[] scores = new double[retained];
+            long[] weights  = new long[retained];
+            int i = 0;
+            for (int h = 0; h < _levelSizes.length; h++) {
+                for (int j = 0; j < _levelSizes[h]; j++) {
+                    scores[i]  = _levels[h][j];
+                    weights[i] = 1L << h;
+                    i++;
+                }
+            }
+            // Sort the (score, weight) pairs by score.
+            Integer[] order = new Integer[retained];
+            for (i = 0; i < retained; i++) {
+                order[i] = i;
+            }
+            final double[] keys = scores;
+            Arrays.sort(order, new java.util.Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer a, Integer b)
+                    {
+                        return Double.compare(keys[a], keys[b]);
+                    }
+                });
+            _scores = new double[retained];
+            _cumulative = new long[retained + 1];
+            for (i = 0; i < retained; i++) {
+                _scores[i] = scores[order[i]];
+                _cumulative[i + 1] = _cumulative[i] + weights[order[i]];
+            }
+        }
+
+        long countLess(double score)
+        {
+            int first = 0;
+            int last  = _scores.length;
+            while (first < last) {
+                int mid = (first + last) >>> 1;
+                if (_scores[mid] < score) {
+                    first = mid + 1;
+                } else {
+                    last = mid;
+                }
+            }
+            return _cumulative[first];
+        }
+
+        long countLessOrEqual(double score)
+        {
+            int first = 0;
+            int last  = _scores.length;
+            while (first < last) {
+                int mid = (first + last) >>> 1;
+                if (_scores[mid] <= score) {
+                    first = mid + 1;
+                } else {
+                    last = mid;
+                }
+            }
+            return _cumulative[first];
+        }
+    }
+}
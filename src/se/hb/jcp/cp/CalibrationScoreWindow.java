@@ -0,0 +1,136 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.cp;
+
+/**
+ * A first-in first-out window of calibration non-conformity scores for
+ * incremental recalibration. The scores are kept in arrival order in a ring
+ * buffer and in order-statistic multisets, one for all scores and, for
+ * Mondrian conformal prediction, one per category.
+ *
+ * The class is not thread-safe; concurrent updates and lookups must be
+ * synchronized externally.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+class CalibrationScoreWindow implements java.io.Serializable
+{
+    private double[] _scores;
+    private int[]    _categories;
+    private int      _head;
+    private int      _size;
+    private CalibrationScoreMultiset   _all;
+    private CalibrationScoreMultiset[] _perCategory;
+
+    /**
+     * Creates an empty calibration score window.
+     *
+     * @param categoryCount  the number of Mondrian categories for which per category multisets should be maintained; or 0.
+     */
+    public CalibrationScoreWindow(int categoryCount)
+    {
+        _scores     = new double[16];
+        _categories = new int[16];
+        _all = new CalibrationScoreMultiset();
+        if (categoryCount > 0) {
+            _perCategory = new CalibrationScoreMultiset[categoryCount];
+            for (int c = 0; c < categoryCount; c++) {
+                _perCategory[c] = new CalibrationScoreMultiset();
+            }
+        }
+    }
+
+    /**
+     * Adds a calibration score last in the window.
+     *
+     * @param score       the non-conformity score.
+     * @param category    the Mondrian category of the calibration instance. Ignored if there are no categories.
+     */
+    public void add(double score, int category)
+    {
+        if (_size == _scores.length) {
+            // Grow the ring buffer and make it contiguous again.
+            int capacity = 2 * _scores.length;
+            double[] scores = new double[capacity];
+            int[] categories = new int[capacity];
+            for (int i = 0; i < _size; i++) {
+                scores[i]     = _scores[(_head + i) % _scores.length];
+                categories[i] = _categories[(_head + i) % _scores.length];
+            }
+            _scores     = scores;
+            _categories = categories;
+            _head = 0;
+        }
+        int tail = (_head + _size) % _scores.length;
+        _scores[tail]     = score;
+        _categories[tail] = category;
+        _size++;
+        _all.add(score);
+        if (_perCategory != null) {
+            _perCategory[category].add(score);
+        }
+    }
+
+    /**
+     * Removes the oldest calibration scores from the window.
+     *
+     * @param count  the number of scores to remove.
+     */
+    public void evict(int count)
+    {
+        count = Math.min(count, _size);
+        for (int i = 0; i < count; i++) {
+            _all.remove(_scores[_head]);
+            if (_perCategory != null) {
+                _perCategory[_categories[_head]].remove(_scores[_head]);
+            }
+            _head = (_head + 1) % _scores.length;
+            _size--;
+        }
+    }
+
+    /**
+     * Returns the number of calibration scores in the window.
+     *
+     * @return the number of calibration scores.
+     */
+    public int size()
+    {
+        return _size;
+    }
+
+    /**
+     * Returns the index over all calibration scores in the window.
+     *
+     * @return the index over all calibration scores.
+     */
+    public ICalibrationScoreIndex getIndex()
+    {
+        return _all;
+    }
+
+    /**
+     * Returns the index over the calibration scores in a Mondrian category.
+     *
+     * @param category  the category.
+     * @return the index over the calibration scores of the category.
+     */
+    public ICalibrationScoreIndex getCategoryIndex(int category)
+    {
+        return _perCategory[category];
+    }
+}
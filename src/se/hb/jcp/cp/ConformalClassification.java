@@ -31,12 +31,29 @@ import cern.colt.matrix.DoubleMatrix1D;
 public class ConformalClassification
 {
     private final IConformalClassifier _source;
+    private final Double[] _labels;
     private final DoubleMatrix1D _pValues;
 
     public ConformalClassification(IConformalClassifier source,
                                    DoubleMatrix1D pValues)
+    {
+        this(source, source.getLabels(), pValues);
+    }
+
+    /**
+     * Creates a conformal classification that need not keep its source
+     * alive.
+     *
+     * @param source     the conformal classifier that made the prediction; or null.
+     * @param labels     the class labels in class order.
+     * @param pValues    the predicted p-values.
+     */
+    protected ConformalClassification(IConformalClassifier source,
+                                      Double[] labels,
+                                      DoubleMatrix1D pValues)
     {
         _source = source;
+        _labels = labels;
         // FIXME: Copy by value to avoid nasty surprises?
         _pValues = pValues;
     }
@@ -81,7 +98,7 @@ public class ConformalClassification
         for (int i = 0; i < _pValues.size(); i++) {
             // FIXME: > or >= for inclusion of a label?
             if (_pValues.get(i) > significanceLevel) {
-                labels.add(_source.getLabels()[i]);
+                labels.add(_labels[i]);
             }
         }
         return labels;
@@ -123,8 +140,8 @@ public class ConformalClassification
     {
         int predictedClass = getClassPointPrediction();
         if (0 <= predictedClass &&
-            predictedClass < _source.getLabels().length) {
-            return _source.getLabels()[predictedClass];
+            predictedClass < _labels.length) {
+            return _labels[predictedClass];
         } else {
             return Double.NaN;
         }
@@ -169,10 +186,20 @@ public class ConformalClassification
         return largestPValue;
     }
 
+    /**
+     * Returns the class labels in class order.
+     *
+     * @return the class labels.
+     */
+    public Double[] getLabels()
+    {
+        return _labels;
+    }
+
     /**
      * Returns the conformal classifier that made this prediction.
      *
-     * @return the conformal classifier that made this prediction.
+     * @return the conformal classifier that made this prediction; or null if it is not known.
      */
     public IConformalClassifier getSource()
     {
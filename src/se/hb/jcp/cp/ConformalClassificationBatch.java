@@ -0,0 +1,303 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.cp;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Represents the predictions made by a conformal classifier for a batch of
+ * instances. The p-values are stored in one flat row-major <tt>double[]</tt>
+ * array and the batch does not keep the conformal classifier alive.
+ *
+ * Per instance <tt>ConformalClassification</tt>s are available as
+ * flyweights over the shared p-value array, either one at a time through
+ * <tt>get(int)</tt> or as a single reused object through <tt>iterator()</tt>.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class ConformalClassificationBatch
+    implements Iterable<ConformalClassification>
+{
+    private final Double[] _labels;
+    private final int      _size;
+    private final double[] _pValues;
+    // Multi-probabilistic point prediction bounds, or null.
+    private final double[] _lower;
+    private final double[] _upper;
+
+    /**
+     * Creates a batch of conformal classifications.
+     *
+     * @param labels     the class labels in class order.
+     * @param pValues    the p-values for all instances in row-major order, i.e. the p-value for class c of instance i is at index i*labels.length + c. The array is not copied.
+     */
+    public ConformalClassificationBatch(Double[] labels, double[] pValues)
+    {
+        this(labels, pValues, null, null);
+    }
+
+    /**
+     * Creates a batch of multi-probabilistic conformal classifications.
+     *
+     * @param labels     the class labels in class order.
+     * @param pValues    the p-values for all instances in row-major order. The array is not copied.
+     * @param lower      the lower ends of the point prediction probability intervals; or null.
+     * @param upper      the upper ends of the point prediction probability intervals; or null.
+     */
+    public ConformalClassificationBatch(Double[] labels, double[] pValues,
+                                        double[] lower, double[] upper)
+    {
+        if (pValues.length % Math.max(1, labels.length) != 0) {
+            throw new IllegalArgumentException
+                          ("The number of p-values must be a multiple of " +
+                           "the number of labels.");
+        }
+        _labels  = labels;
+        _size    = labels.length > 0 ? pValues.length / labels.length : 0;
+        _pValues = pValues;
+        _lower   = lower;
+        _upper   = upper;
+    }
+
+    /**
+     * Creates a batch of conformal classifications from a p-value matrix.
+     *
+     * @param labels     the class labels in class order.
+     * @param pValues    a <tt>DoubleMatrix2D</tt> containing the p-values of each instance as a row. The values are copied.
+     */
+    public ConformalClassificationBatch(Double[] labels, DoubleMatrix2D pValues)
+    {
+        this(labels, toRowMajor(pValues));
+    }
+
+    /**
+     * Returns the number of predictions in this batch.
+     *
+     * @return the number of predictions.
+     */
+    public int size()
+    {
+        return _size;
+    }
+
+    /**
+     * Returns the class labels in class order.
+     *
+     * @return the class labels.
+     */
+    public Double[] getLabels()
+    {
+        return _labels;
+    }
+
+    /**
+     * Returns whether this batch contains multi-probabilistic predictions.
+     *
+     * @return <tt>true</tt> if the predictions have probability bounds or <tt>false</tt> otherwise.
+     */
+    public boolean isMultiProbabilistic()
+    {
+        return _lower != null;
+    }
+
+    /**
+     * Returns the predicted p-value for a class of an instance.
+     *
+     * @param i    the instance index.
+     * @param c    the class index.
+     * @return the predicted p-value.
+     */
+    public double getPValue(int i, int c)
+    {
+        return _pValues[i * _labels.length + c];
+    }
+
+    /**
+     * Returns the flat row-major array of predicted p-values.
+     *
+     * @return the p-values. The array is not copied.
+     */
+    public double[] getPValues()
+    {
+        return _pValues;
+    }
+
+    /**
+     * Returns the prediction for an instance as a flyweight over the
+     * shared p-value array.
+     *
+     * @param i    the instance index.
+     * @return a <tt>ConformalClassification</tt> for the instance.
+     */
+    public ConformalClassification get(int i)
+    {
+        RowView view = new RowView();
+        view.moveTo(i);
+        return createRow(view);
+    }
+
+    /**
+     * Returns an iterator over the predictions in this batch. The iterator
+     * returns the same flyweight <tt>ConformalClassification</tt> object
+     * each time, moved to the next instance. The object must not be retained
+     * past the following call to <tt>next()</tt>.
+     *
+     * @return an iterator over the predictions.
+     */
+    @Override
+    public Iterator<ConformalClassification> iterator()
+    {
+        final RowView view = new RowView();
+        final ConformalClassification row = createRow(view);
+        return new Iterator<ConformalClassification>() {
+            private int _next = 0;
+
+            @Override
+            public boolean hasNext()
+            {
+                return _next < _size;
+            }
+
+            @Override
+            public ConformalClassification next()
+            {
+                if (_next >= _size) {
+                    throw new NoSuchElementException();
+                }
+                view.moveTo(_next++);
+                return row;
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private ConformalClassification createRow(RowView view)
+    {
+        if (isMultiProbabilistic()) {
+            return new MultiProbabilisticRow(view);
+        } else {
+            return new ConformalClassification(null, _labels, view);
+        }
+    }
+
+    private static double[] toRowMajor(DoubleMatrix2D pValues)
+    {
+        int rows = pValues.rows();
+        int columns = pValues.columns();
+        double[] values = new double[rows * columns];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                values[r * columns + c] = pValues.getQuick(r, c);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * A read-only movable view of one row of the p-value array.
+     */
+    private class RowView extends DoubleMatrix1D
+    {
+        private int _row;
+        private int _offset;
+
+        RowView()
+        {
+            setUp(_labels.length);
+        }
+
+        void moveTo(int i)
+        {
+            _row = i;
+            _offset = i * _labels.length;
+        }
+
+        int getRow()
+        {
+            return _row;
+        }
+
+        @Override
+        public double getQuick(int index)
+        {
+            return _pValues[_offset + index];
+        }
+
+        @Override
+        public void setQuick(int index, double value)
+        {
+            throw new UnsupportedOperationException
+                          ("The p-values of a batch are read-only.");
+        }
+
+        @Override
+        public DoubleMatrix1D like(int size)
+        {
+            return new cern.colt.matrix.impl.DenseDoubleMatrix1D(size);
+        }
+
+        @Override
+        public DoubleMatrix2D like2D(int rows, int columns)
+        {
+            return new cern.colt.matrix.impl.DenseDoubleMatrix2D(rows, columns);
+        }
+
+        @Override
+        protected DoubleMatrix1D viewSelectionLike(int[] offsets)
+        {
+            // FIXME: If needed.
+            throw new UnsupportedOperationException("Not implemented");
+        }
+    }
+
+    /**
+     * A flyweight multi-probabilistic prediction reading its probability
+     * bounds from the batch.
+     */
+    private class MultiProbabilisticRow
+        extends ConformalMultiProbabilisticClassification
+    {
+        private final RowView _view;
+
+        MultiProbabilisticRow(RowView view)
+        {
+            super(null, _labels, view, Double.NaN, Double.NaN);
+            _view = view;
+        }
+
+        @Override
+        public double getPointPredictionLowerBoundProbability()
+        {
+            return _lower[_view.getRow()];
+        }
+
+        @Override
+        public double getPointPredictionUpperBoundProbability()
+        {
+            return _upper[_view.getRow()];
+        }
+    }
+}
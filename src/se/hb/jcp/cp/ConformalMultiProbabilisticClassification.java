@@ -44,6 +44,28 @@ public class ConformalMultiProbabilisticClassification
         this.upper = upper;
     }
 
+    /**
+     * Creates a multi-probabilistic conformal classification that need not
+     * keep its source alive.
+     *
+     * @param source     the conformal classifier that made the prediction; or null.
+     * @param labels     the class labels in class order.
+     * @param pValues    the predicted p-values.
+     * @param lower      the lower end of the probabilistic interval.
+     * @param upper      the upper end of the probabilistic interval.
+     */
+    protected ConformalMultiProbabilisticClassification
+                  (IConformalClassifier source,
+                   Double[] labels,
+                   DoubleMatrix1D pValues,
+                   double lower,
+                   double upper)
+    {
+        super(source, labels, pValues);
+        this.lower = lower;
+        this.upper = upper;
+    }
+
     /**
      * Returns the lower end of the probabilistic interval for the class/label
      * point prediction.
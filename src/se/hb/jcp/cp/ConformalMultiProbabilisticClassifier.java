@@ -70,7 +70,8 @@ public class ConformalMultiProbabilisticClassifier
     public void calibrate(DoubleMatrix2D xcal, double[] ycal)
     {
         int n = xcal.rows();
-        ConformalClassification[] calibrationScores = _classifier.predict(xcal);
+        ConformalClassificationBatch calibrationScores =
+            _classifier.predictBatch(xcal);
         RealIndexedMatrix2D<Double> X = new RealIndexedMatrix2D<Double>();
         RealIndexedMatrix2D<Double> W = new RealIndexedMatrix2D<Double>();
 
@@ -127,6 +128,32 @@ public class ConformalMultiProbabilisticClassifier
         return predictions;
     }
 
+    /**
+     * Makes a prediction for each instance in x and returns them in a
+     * compact batch representation.
+     *
+     * @param x             the instances.
+     * @return a <tt>ConformalClassificationBatch</tt> containing the multi-probabilistic predictions.
+     */
+    @Override
+    public ConformalClassificationBatch predictBatch(DoubleMatrix2D x)
+    {
+        ConformalClassificationBatch ys = _classifier.predictBatch(x);
+        double[] lower = new double[ys.size()];
+        double[] upper = new double[ys.size()];
+        double[] bounds = new double[2];
+        int i = 0;
+        for (ConformalClassification y : ys) {
+            computeProbabilityBounds(y, bounds);
+            lower[i] = bounds[0];
+            upper[i] = bounds[1];
+            i++;
+        }
+        return new ConformalClassificationBatch(ys.getLabels(),
+                                                ys.getPValues(),
+                                                lower, upper);
+    }
+
     /**
      * Makes a prediction for the instance x.
      *
@@ -137,6 +164,24 @@ public class ConformalMultiProbabilisticClassifier
     public ConformalMultiProbabilisticClassification predict(DoubleMatrix1D x)
     {
         ConformalClassification y = _classifier.predict(x);
+        double[] bounds = new double[2];
+        computeProbabilityBounds(y, bounds);
+        return new ConformalMultiProbabilisticClassification(this,
+                                                             y.getPValues(),
+                                                             bounds[0],
+                                                             bounds[1]);
+    }
+
+    /**
+     * Computes the probability bounds for the point prediction of the
+     * conformal classification y.
+     *
+     * @param y         the conformal classification.
+     * @param bounds    an initialized <tt>double[2]</tt> array to store the lower and upper bounds in.
+     */
+    private void computeProbabilityBounds(ConformalClassification y,
+                                          double[] bounds)
+    {
         // FIXME: Is the below correct?
         Double pLower = _calibration.getLower(y.getPointPredictionConfidence(),
                                               y.getPointPredictionCredibility());
@@ -149,10 +194,8 @@ public class ConformalMultiProbabilisticClassifier
             System.err.print(" BAD ");
             System.err.println();
         }
-        return new ConformalMultiProbabilisticClassification(this,
-                                                             y.getPValues(),
-                                                             pLower != null ? pLower : 0.0,
-                                                             pUpper != null ? pUpper : 1.0);
+        bounds[0] = pLower != null ? pLower : 0.0;
+        bounds[1] = pUpper != null ? pUpper : 1.0;
     }
 
     @Override
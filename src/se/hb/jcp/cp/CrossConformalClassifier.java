@@ -0,0 +1,666 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.cp;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import se.hb.jcp.nc.IClassificationNonconformityFunction;
+import se.hb.jcp.util.ParallelizedAction;
+import se.hb.jcp.util.SharedRowsMatrix2D;
+
+/**
+ * Represents an instance of a cross-conformal classification algorithm
+ * [Vovk, Cross-conformal predictors, 2015].
+ *
+ * The training set is partitioned into k folds. For each fold a copy of
+ * the non-conformity function is trained on the other folds and used to
+ * compute the calibration scores of the instances in the fold, so all
+ * instances are used both for training and for calibration. The p-value
+ * of a label aggregates, over the folds, the number of calibration scores
+ * of the fold at least as large as the score given by the fold's
+ * non-conformity function. The fold models are trained and evaluated in
+ * parallel.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class CrossConformalClassifier
+    implements IConformalClassifier, java.io.Serializable
+{
+    private static final boolean PARALLEL = true;
+
+    private IClassificationNonconformityFunction _nc;
+    private Double[] _classes;
+    private SortedMap<Double, Integer> _classIndex;
+    private int _folds;
+    // For Mondrian, e.g. label/class-conditional, conformal prediction.
+    private IMondrianTaxonomy _taxonomy;
+    // The trained non-conformity function of each fold.
+    private IClassificationNonconformityFunction[] _foldNCs;
+    // The sorted calibration scores of each fold and category.
+    private double[][][] _foldScores;
+    // The number of calibration scores of each category over all folds.
+    private int[] _categorySizes;
+
+    /**
+      * Creates a cross-conformal classifier using the supplied information.
+      *
+      * @param nc         the untrained non-conformity function to use.
+      * @param targets    the class labels.
+      * @param folds      the number of folds.
+      */
+    public CrossConformalClassifier(IClassificationNonconformityFunction nc,
+                                    double[] targets,
+                                    int      folds)
+    {
+        this(nc, targets, folds, false);
+    }
+
+    /**
+      * Creates a cross-conformal classifier using the supplied information.
+      *
+      * @param nc                     the untrained non-conformity function to use.
+      * @param targets                the class labels.
+      * @param folds                  the number of folds.
+      * @param useLabelConditionalCP  a boolean indicating whether label conditional conformal prediction should be used.
+      */
+    public CrossConformalClassifier(IClassificationNonconformityFunction nc,
+                                    double[] targets,
+                                    int      folds,
+                                    boolean  useLabelConditionalCP)
+    {
+        this(nc, targets, folds,
+             useLabelConditionalCP ? new LabelTaxonomy(targets) : null);
+    }
+
+    /**
+      * Creates a Mondrian cross-conformal classifier using the supplied
+      * information.
+      *
+      * @param nc         the untrained non-conformity function to use.
+      * @param targets    the class labels.
+      * @param folds      the number of folds.
+      * @param taxonomy   the Mondrian taxonomy to use; or null for normal conformal prediction.
+      */
+    public CrossConformalClassifier(IClassificationNonconformityFunction nc,
+                                    double[]          targets,
+                                    int               folds,
+                                    IMondrianTaxonomy taxonomy)
+    {
+        if (folds < 2) {
+            throw new IllegalArgumentException
+                          ("A cross-conformal classifier needs at least " +
+                           "2 folds.");
+        }
+        _nc = nc;
+        _folds = folds;
+        _taxonomy = taxonomy;
+        _classIndex = new TreeMap<Double, Integer>();
+        for (int i = 0; i < targets.length; i++) {
+            _classIndex.put(targets[i], 0);
+        }
+        int c = 0;
+        for (Double label : _classIndex.keySet()) {
+            _classIndex.put(label, c++);
+        }
+        _classes = _classIndex.keySet().toArray(new Double[0]);
+    }
+
+    /**
+     * Trains and calibrates this conformal classifier using the supplied
+     * data. The instances are assigned to the folds at random.
+     *
+     * @param x             the attributes of the training instances.
+     * @param y             the targets of the training instances.
+     */
+    public void fit(DoubleMatrix2D x, double[] y)
+    {
+        fit(x, y, new Random());
+    }
+
+    /**
+     * Trains and calibrates this conformal classifier using the supplied
+     * data. The instances are assigned to the folds using the supplied
+     * random source.
+     *
+     * @param x             the attributes of the training instances.
+     * @param y             the targets of the training instances.
+     * @param random        the random source for the fold assignment.
+     */
+    public void fit(DoubleMatrix2D x, double[] y, Random random)
+    {
+        int n = x.rows();
+        if (n < _folds) {
+            throw new IllegalArgumentException
+                          ("The training set must have at least as many " +
+                           "instances as there are folds.");
+        }
+        int[] permutation = new int[n];
+        for (int i = 0; i < n; i++) {
+            permutation[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = tmp;
+        }
+        int[] categories = new int[n];
+        if (_taxonomy != null) {
+            for (int i = 0; i < n; i++) {
+                categories[i] = _taxonomy.getCategory(x.viewRow(i), y[i]);
+            }
+        }
+
+        IClassificationNonconformityFunction[] foldNCs =
+            new IClassificationNonconformityFunction[_folds];
+        double[][][] foldScores = new double[_folds][][];
+        FitFoldsAction all =
+            new FitFoldsAction(x, y, permutation, categories,
+                               foldNCs, foldScores, 0, _folds);
+        if (!PARALLEL) {
+            for (int f = 0; f < _folds; f++) {
+                all.compute(f);
+            }
+        } else {
+            all.start();
+        }
+        int[] categorySizes = new int[getCategoryCount()];
+        for (int f = 0; f < _folds; f++) {
+            for (int c = 0; c < categorySizes.length; c++) {
+                categorySizes[c] += foldScores[f][c].length;
+            }
+        }
+        _foldNCs = foldNCs;
+        _foldScores = foldScores;
+        _categorySizes = categorySizes;
+    }
+
+    /**
+     * Makes a prediction for each instance in x.
+     * The method is parallellized over the folds and the instances.
+     *
+     * @param x             the instances.
+     * @return an array containing a <tt>ConformalClassification</tt> for each instance.
+     */
+    @Override
+    public ConformalClassification[] predict(DoubleMatrix2D x)
+    {
+        int n = x.rows();
+        ConformalClassification[] predictions = new ConformalClassification[n];
+        DoubleMatrix2D pValues = predictPValues(x);
+        for (int i = 0; i < n; i++) {
+            predictions[i] = new ConformalClassification(this,
+                                                         pValues.viewRow(i));
+        }
+        return predictions;
+    }
+
+    /**
+     * Makes a prediction for each instance in x and returns them in a
+     * compact batch representation.
+     * The method is parallellized over the folds and the instances.
+     *
+     * @param x             the instances.
+     * @return a <tt>ConformalClassificationBatch</tt> containing the predictions.
+     */
+    @Override
+    public ConformalClassificationBatch predictBatch(DoubleMatrix2D x)
+    {
+        return new ConformalClassificationBatch(_classes,
+                                                calculatePValues(x));
+    }
+
+    /**
+     * Makes a prediction for the instance x.
+     *
+     * @param x             the instance.
+     * @return a prediction in the form of a <tt>ConformalClassification</tt>.
+     */
+    @Override
+    public ConformalClassification predict(DoubleMatrix1D x)
+    {
+        return new ConformalClassification(this, predictPValues(x));
+    }
+
+    /**
+     * Computes the predicted p-values for each target and instance in x.
+     * The non-conformity scores of each fold are computed with one batch
+     * call to its non-conformity function, in parallel over the folds, and
+     * the p-values in parallel over the instances.
+     *
+     * @param x             the instances.
+     * @return an <tt>DoubleMatrix2D</tt> containing the predicted p-values for each instance.
+     */
+    @Override
+    public DoubleMatrix2D predictPValues(DoubleMatrix2D x)
+    {
+        int k = _classes.length;
+        double[] pValues = calculatePValues(x);
+        DoubleMatrix2D response = new DenseDoubleMatrix2D(x.rows(), k);
+        for (int i = 0; i < x.rows(); i++) {
+            for (int c = 0; c < k; c++) {
+                response.setQuick(i, c, pValues[i * k + c]);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Computes the predicted p-values for the instance x.
+     *
+     * @param x    the instance.
+     * @return an <tt>DoubleMatrix1D</tt> containing the predicted p-values.
+     */
+    @Override
+    public DoubleMatrix1D predictPValues(DoubleMatrix1D x)
+    {
+        DoubleMatrix1D response = new DenseDoubleMatrix1D(_classes.length);
+        predictPValues(x, response);
+        return response;
+    }
+
+    /**
+     * Computes the predicted p-values for the instance x.
+     * The method is parallellized over the folds.
+     *
+     * @param x          the instance.
+     * @param pValues    an initialized <tt>DoubleMatrix1D</tt> to store the p-values.
+     */
+    @Override
+    public void predictPValues(DoubleMatrix1D x, DoubleMatrix1D pValues)
+    {
+        checkTrained();
+        int k = _classes.length;
+        double[][] foldNCScores = new double[_folds][k];
+        FoldInstanceScoresAction all =
+            new FoldInstanceScoresAction(x, foldNCScores, 0, _folds);
+        if (!PARALLEL) {
+            for (int f = 0; f < _folds; f++) {
+                all.compute(f);
+            }
+        } else {
+            all.start();
+        }
+        for (int c = 0; c < k; c++) {
+            int category =
+                _taxonomy != null ? _taxonomy.getCategory(x, _classes[c]) : 0;
+            pValues.set(c, calculatePValue(foldNCScores, c, category));
+        }
+    }
+
+    /**
+     * Returns the untrained non-conformity function the fold models are
+     * created from.
+     *
+     * @return the associated <tt>IClassificationNonconformityFunction</tt>.
+     */
+    @Override
+    public IClassificationNonconformityFunction getNonconformityFunction()
+    {
+        return _nc;
+    }
+
+    /**
+     * Returns the number of folds.
+     *
+     * @return the number of folds.
+     */
+    public int getFolds()
+    {
+        return _folds;
+    }
+
+    /**
+     * Returns the taxonomy used for Mondrian conformal prediction.
+     *
+     * @return the taxonomy; or null for normal conformal prediction.
+     */
+    public IMondrianTaxonomy getTaxonomy()
+    {
+        return _taxonomy;
+    }
+
+    /**
+     * Returns whether this classifier has been trained and calibrated.
+     *
+     * @return <tt>true</tt> if the classifier has been trained and calibrated or <tt>false</tt> otherwise.
+     */
+    @Override
+    public boolean isTrained()
+    {
+        return _foldNCs != null;
+    }
+
+    @Override
+    public int getAttributeCount()
+    {
+        if (_foldNCs != null) {
+            return _foldNCs[0].getAttributeCount();
+        } else {
+            return -1;
+        }
+    }
+
+    @Override
+    public Double[] getLabels()
+    {
+        return _classes;
+    }
+
+    @Override
+    public DoubleMatrix1D nativeStorageTemplate()
+    {
+        if (getNonconformityFunction() != null) {
+            return getNonconformityFunction().nativeStorageTemplate();
+        } else {
+            return new cern.colt.matrix.impl.SparseDoubleMatrix1D(0);
+        }
+    }
+
+    /**
+     * Computes the p-values for each target and instance in x.
+     *
+     * @param x    the instances.
+     * @return a <tt>double[]</tt> array with the p-values of instance <tt>i</tt> from position <tt>i * getLabels().length</tt>.
+     */
+    private double[] calculatePValues(DoubleMatrix2D x)
+    {
+        checkTrained();
+        int n = x.rows();
+        int k = _classes.length;
+        double[][] foldNCScores = new double[_folds][n * k];
+        FoldScoresAction scores =
+            new FoldScoresAction(x, foldNCScores, 0, _folds);
+        if (!PARALLEL) {
+            for (int f = 0; f < _folds; f++) {
+                scores.compute(f);
+            }
+        } else {
+            scores.start();
+        }
+        double[] pValues = new double[n * k];
+        PValuesAction all =
+            new PValuesAction(x, foldNCScores, pValues, 0, n);
+        if (!PARALLEL) {
+            for (int i = 0; i < n; i++) {
+                all.compute(i);
+            }
+        } else {
+            all.start();
+        }
+        return pValues;
+    }
+
+    /**
+     * Computes the cross-conformal p-value of one target for one instance.
+     *
+     * @param foldNCScores  the non-conformity scores of each fold.
+     * @param position      the position of the score of the target in the arrays of foldNCScores.
+     * @param category      the category of the instance and target.
+     * @return the p-value.
+     */
+    private double calculatePValue(double[][] foldNCScores, int position,
+                                   int category)
+    {
+        int greater = 0;
+        int equal = 0;
+        for (int f = 0; f < _folds; f++) {
+            double[] scores = _foldScores[f][category];
+            double score = foldNCScores[f][position];
+            int first = lowerBound(scores, score);
+            int last = upperBound(scores, score, first);
+            greater += scores.length - last;
+            equal += last - first;
+        }
+        return Util.calculatePValue(greater, equal, _categorySizes[category]);
+    }
+
+    /**
+     * Returns the index of the first element in the sorted array that is
+     * not less than the key.
+     */
+    private static int lowerBound(double[] scores, double key)
+    {
+        int first = 0;
+        int last = scores.length;
+        while (first < last) {
+            int middle = (first + last) >>> 1;
+            if (scores[middle] < key) {
+                first = middle + 1;
+            } else {
+                last = middle;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Returns the index of the first element in the sorted array from
+     * first that is greater than the key.
+     */
+    private static int upperBound(double[] scores, double key, int first)
+    {
+        int last = scores.length;
+        while (first < last) {
+            int middle = (first + last) >>> 1;
+            if (scores[middle] <= key) {
+                first = middle + 1;
+            } else {
+                last = middle;
+            }
+        }
+        return first;
+    }
+
+    private int getCategoryCount()
+    {
+        return _taxonomy != null ? _taxonomy.getCategoryCount() : 1;
+    }
+
+    private void checkTrained()
+    {
+        if (!isTrained()) {
+            throw new UnsupportedOperationException
+                          ("The cross-conformal classifier must be trained " +
+                           "before it can make predictions.");
+        }
+    }
+
+    class FitFoldsAction extends ParallelizedAction
+    {
+        DoubleMatrix2D _x;
+        double[] _y;
+        int[] _permutation;
+        int[] _categories;
+        IClassificationNonconformityFunction[] _foldNCs;
+        double[][][] _foldScores;
+
+        public FitFoldsAction(DoubleMatrix2D x, double[] y,
+                              int[] permutation, int[] categories,
+                              IClassificationNonconformityFunction[] foldNCs,
+                              double[][][] foldScores,
+                              int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _y = y;
+            _permutation = permutation;
+            _categories = categories;
+            _foldNCs = foldNCs;
+            _foldScores = foldScores;
+        }
+
+        @Override
+        protected void compute(int f)
+        {
+            int n = _permutation.length;
+            // Fold f is the slice [start, end) of the permutation.
+            int start = (int)((long)n * f / _folds);
+            int end = (int)((long)n * (f + 1) / _folds);
+            int[] trainingRows = new int[n - (end - start)];
+            int[] calibrationRows = new int[end - start];
+            double[] trainingY = new double[trainingRows.length];
+            int t = 0;
+            for (int j = 0; j < n; j++) {
+                int i = _permutation[j];
+                if (start <= j && j < end) {
+                    calibrationRows[j - start] = i;
+                } else {
+                    trainingRows[t] = i;
+                    trainingY[t] = _y[i];
+                    t++;
+                }
+            }
+            // The fold matrices share the rows of x when possible.
+            IClassificationNonconformityFunction nc =
+                _nc.fitNew(SharedRowsMatrix2D.selectRows(_x, trainingRows),
+                           trainingY);
+
+            int m = calibrationRows.length;
+            int k = _classes.length;
+            double[] ncScores = new double[m * k];
+            nc.calculateNonConformityScores
+                (SharedRowsMatrix2D.selectRows(_x, calibrationRows), ncScores);
+            int[] sizes = new int[getCategoryCount()];
+            for (int j = 0; j < m; j++) {
+                sizes[_categories[calibrationRows[j]]]++;
+            }
+            double[][] scores = new double[sizes.length][];
+            for (int c = 0; c < sizes.length; c++) {
+                scores[c] = new double[sizes[c]];
+            }
+            Arrays.fill(sizes, 0);
+            for (int j = 0; j < m; j++) {
+                int i = calibrationRows[j];
+                int category = _categories[i];
+                scores[category][sizes[category]++] =
+                    ncScores[j * k + _classIndex.get(_y[i])];
+            }
+            for (int c = 0; c < scores.length; c++) {
+                Arrays.sort(scores[c]);
+            }
+            _foldNCs[f] = nc;
+            _foldScores[f] = scores;
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new FitFoldsAction(_x, _y, _permutation, _categories,
+                                      _foldNCs, _foldScores, first, last);
+        }
+    }
+
+    class FoldScoresAction extends ParallelizedAction
+    {
+        DoubleMatrix2D _x;
+        double[][] _foldNCScores;
+
+        public FoldScoresAction(DoubleMatrix2D x, double[][] foldNCScores,
+                                int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _foldNCScores = foldNCScores;
+        }
+
+        @Override
+        protected void compute(int f)
+        {
+            _foldNCs[f].calculateNonConformityScores(_x, _foldNCScores[f]);
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new FoldScoresAction(_x, _foldNCScores, first, last);
+        }
+    }
+
+    class FoldInstanceScoresAction extends ParallelizedAction
+    {
+        DoubleMatrix1D _x;
+        double[][] _foldNCScores;
+
+        public FoldInstanceScoresAction(DoubleMatrix1D x,
+                                        double[][] foldNCScores,
+                                        int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _foldNCScores = foldNCScores;
+        }
+
+        @Override
+        protected void compute(int f)
+        {
+            _foldNCs[f].calculateNonConformityScores(_x, _foldNCScores[f]);
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new FoldInstanceScoresAction(_x, _foldNCScores,
+                                                first, last);
+        }
+    }
+
+    class PValuesAction extends ParallelizedAction
+    {
+        DoubleMatrix2D _x;
+        double[][] _foldNCScores;
+        double[] _pValues;
+
+        public PValuesAction(DoubleMatrix2D x, double[][] foldNCScores,
+                             double[] pValues, int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _foldNCScores = foldNCScores;
+            _pValues = pValues;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            int k = _classes.length;
+            DoubleMatrix1D instance = _taxonomy != null ? _x.viewRow(i) : null;
+            for (int c = 0; c < k; c++) {
+                int category =
+                    _taxonomy != null
+                        ? _taxonomy.getCategory(instance, _classes[c]) : 0;
+                _pValues[i * k + c] =
+                    calculatePValue(_foldNCScores, i * k + c, category);
+            }
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new PValuesAction(_x, _foldNCScores, _pValues,
+                                     first, last);
+        }
+    }
+}
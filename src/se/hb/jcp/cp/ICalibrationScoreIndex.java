@@ -0,0 +1,49 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.cp;
+
+/**
+ * Represents a set of calibration non-conformity scores organized for
+ * computing p-values.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public interface ICalibrationScoreIndex
+{
+    /**
+     * Returns the number of calibration scores in this index.
+     *
+     * @return the number of calibration scores.
+     */
+    public int size();
+
+    /**
+     * Computes the p-value for the non-conformity score ncScore.
+     *
+     * @param ncScore  the non-conformity score.
+     * @return the p-value.
+     */
+    public double calculatePValue(double ncScore);
+
+    /**
+     * Computes the p-values for a batch of non-conformity scores.
+     *
+     * @param ncScores  the non-conformity scores.
+     * @param pValues   an initialized <tt>double[]</tt> array to store the p-values in.
+     */
+    public void calculatePValues(double[] ncScores, double[] pValues);
+}
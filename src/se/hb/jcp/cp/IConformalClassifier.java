@@ -50,6 +50,16 @@ public interface IConformalClassifier
      */
     public ConformalClassification predict(DoubleMatrix1D x);
 
+    /**
+     * Makes a prediction for each instance in x and returns them in a
+     * compact batch representation.
+     * The method is parallellized over the instances.
+     *
+     * @param x             the instances.
+     * @return a <tt>ConformalClassificationBatch</tt> containing the predictions.
+     */
+    public ConformalClassificationBatch predictBatch(DoubleMatrix2D x);
+
     /**
      * Computes the predicted p-values for each target and instance in x.
      * The method is parallellized over the instances.
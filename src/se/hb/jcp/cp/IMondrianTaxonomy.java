@@ -0,0 +1,50 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.cp;
+
+import cern.colt.matrix.DoubleMatrix1D;
+
+/**
+ * Represents a Mondrian taxonomy, i.e. a partition of the (instance, label)
+ * pairs into categories. In Mondrian conformal prediction the p-value of a
+ * test instance with an assumed label is computed only from the calibration
+ * instances in the same category.
+ *
+ * Label conditional conformal prediction uses <tt>LabelTaxonomy</tt>;
+ * <tt>AttributeBinTaxonomy</tt> categorizes instances by the value of an
+ * attribute. Other taxonomies are created by implementing this interface.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public interface IMondrianTaxonomy extends java.io.Serializable
+{
+    /**
+     * Returns the number of categories in this taxonomy.
+     *
+     * @return the number of categories.
+     */
+    public int getCategoryCount();
+
+    /**
+     * Returns the category of the instance x with the label y.
+     *
+     * @param x    the instance.
+     * @param y    the (assumed) label of the instance.
+     * @return the category, in the range [0, <tt>getCategoryCount()</tt>).
+     */
+    public int getCategory(DoubleMatrix1D x, double y);
+}
@@ -28,8 +28,10 @@ import java.io.ObjectOutputStream;
 import java.util.Arrays;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import se.hb.jcp.nc.IClassificationNonconformityFunction;
+import se.hb.jcp.nc.IOutOfBagNonconformityFunction;
 import se.hb.jcp.util.ParallelizedAction;
 
 /**
@@ -46,9 +48,24 @@ public class InductiveConformalClassifier
     private SortedMap<Double, Integer> _classIndex;
     // For normal conformal prediction.
     private double[] _calibrationScores;
-    // For label/class-conditional conformal prediction.
-    private boolean    _useLabelConditionalCP;
-    private double[][] _classCalibrationScores;
+    // For Mondrian, e.g. label/class-conditional, conformal prediction.
+    private IMondrianTaxonomy         _taxonomy;
+    private MondrianCalibrationScores _categoryCalibrationScores;
+    // Lookup structures for the calibration scores. Not serialized.
+    private CalibrationScoreIndex   _calibrationIndex;
+    private CalibrationScoreIndex[] _categoryCalibrationIndices;
+    // For incremental calibration. Replaces the calibration score arrays.
+    private boolean                _useIncrementalCalibration;
+    private CalibrationScoreWindow _calibrationWindow;
+    // For sketch-based calibration. Replaces the calibration score arrays.
+    private int                      _calibrationSketchK;
+    private CalibrationScoreSketch   _calibrationSketch;
+    private CalibrationScoreSketch[] _categoryCalibrationSketches;
+    // Protects the calibration state against concurrent updates.
+    private ReentrantReadWriteLock _calibrationLock;
+    // Optional cache of the non-conformity scores of predicted instances.
+    // Not serialized.
+    private volatile NonconformityScoreCache _ncScoreCache;
 
     /**
       * Creates an inductive conformal classifier using the supplied
@@ -74,15 +91,32 @@ public class InductiveConformalClassifier
     public InductiveConformalClassifier(IClassificationNonconformityFunction nc,
                                         double[] targets,
                                         boolean  useLabelConditionalCP)
+    {
+        this(nc, targets,
+             useLabelConditionalCP ? new LabelTaxonomy(targets) : null);
+    }
+
+    /**
+      * Creates an inductive Mondrian conformal classifier using the supplied
+      * information.
+      *
+      * @param nc         the untrained non-conformity function to use.
+      * @param targets    the class labels.
+      * @param taxonomy   the Mondrian taxonomy to use; or null for normal conformal prediction.
+      */
+    public InductiveConformalClassifier(IClassificationNonconformityFunction nc,
+                                        double[]          targets,
+                                        IMondrianTaxonomy taxonomy)
     {
         _nc = nc;
-        _useLabelConditionalCP = useLabelConditionalCP;
+        _taxonomy = taxonomy;
         _classIndex = new TreeMap<Double, Integer>();
         for (int c = 0; c < targets.length; c++) {
             _classIndex.put(targets[c], c);
         }
         _classes = _classIndex.keySet().toArray(new Double[0]);
         Arrays.sort(_classes); // FIXME: Redundant?
+        _calibrationLock = new ReentrantReadWriteLock();
     }
 
     /**
@@ -97,6 +131,7 @@ public class InductiveConformalClassifier
                     DoubleMatrix2D xcal, double[] ycal)
     {
         _nc.fit(xtr, ytr);
+        clearNonconformityScoreCache();
         calibrate(xcal, ycal);
     }
 
@@ -116,55 +151,425 @@ public class InductiveConformalClassifier
                            "classifier must be trained before the classifier " +
                            "can be calibrated.");
         }
+        if (_useIncrementalCalibration && _calibrationSketchK > 0) {
+            throw new UnsupportedOperationException
+                          ("Incremental calibration and sketch-based " +
+                           "calibration cannot be combined.");
+        }
+        if (_calibrationSketchK > 0) {
+            calibrateSketches(xcal, ycal);
+            return;
+        }
         int n = xcal.rows();
-        _calibrationScores = new double[n];
-        if (_useLabelConditionalCP) {
-            _classCalibrationScores = new double[_classes.length][];
-            for (int c = 0; c < _classes.length; c++) {
-                _classCalibrationScores[c] = new double[n];
-                Arrays.fill(_classCalibrationScores[c], -Double.MAX_VALUE);
+        double[] calibrationScores = new double[n];
+        int[] categories = _taxonomy != null ? new int[n] : null;
+        calculateCalibrationScores(xcal, ycal, calibrationScores, categories);
+        setCalibrationScores(calibrationScores, categories);
+    }
+
+    /**
+     * Trains and calibrates this conformal classifier using the supplied
+     * data for both. The calibration scores are the out-of-bag
+     * non-conformity scores of the training instances, so no instances
+     * need to be set aside for calibration. This requires a non-conformity
+     * function whose underlying model provides out-of-bag estimates, e.g.
+     * one based on <tt>se.hb.jcp.ml.RandomForestClassifier</tt>.
+     *
+     * @param x             the attributes of the training instances.
+     * @param y             the targets of the training instances.
+     */
+    public void fitOutOfBag(DoubleMatrix2D x, double[] y)
+    {
+        if (!(_nc instanceof IOutOfBagNonconformityFunction)) {
+            throw new UnsupportedOperationException
+                          ("The non-conformity function does not support " +
+                           "out-of-bag calibration.");
+        }
+        if (_useIncrementalCalibration && _calibrationSketchK > 0) {
+            throw new UnsupportedOperationException
+                          ("Incremental calibration and sketch-based " +
+                           "calibration cannot be combined.");
+        }
+        IOutOfBagNonconformityFunction nc = (IOutOfBagNonconformityFunction)_nc;
+        nc.fit(x, y);
+        clearNonconformityScoreCache();
+        if (!nc.isOutOfBagSupported()) {
+            throw new UnsupportedOperationException
+                          ("The underlying model of the non-conformity " +
+                           "function does not provide out-of-bag estimates.");
+        }
+        int n = x.rows();
+        double[] calibrationScores = new double[n];
+        nc.calculateOutOfBagNonConformityScores(y, calibrationScores);
+        int[] categories = null;
+        if (_taxonomy != null) {
+            categories = new int[n];
+            for (int i = 0; i < n; i++) {
+                categories[i] = _taxonomy.getCategory(x.viewRow(i), y[i]);
+            }
+        }
+        if (_calibrationSketchK > 0) {
+            CalibrationScoreSketch sketch =
+                new CalibrationScoreSketch(_calibrationSketchK);
+            CalibrationScoreSketch[] categorySketches =
+                createCategorySketches();
+            for (int i = 0; i < n; i++) {
+                sketch.add(calibrationScores[i]);
+                if (categorySketches != null) {
+                    categorySketches[categories[i]].add(calibrationScores[i]);
+                }
+            }
+            setCalibrationSketches(sketch, categorySketches);
+        } else {
+            setCalibrationScores(calibrationScores, categories);
+        }
+    }
+
+    /**
+     * Installs the supplied calibration scores as the calibration of this
+     * conformal classifier in the representation given by the settings.
+     *
+     * @param calibrationScores  the non-conformity scores of the calibration instances.
+     * @param categories         the categories of the calibration instances; or null.
+     */
+    private void setCalibrationScores(double[] calibrationScores,
+                                      int[] categories)
+    {
+        int n = calibrationScores.length;
+        if (_useIncrementalCalibration) {
+            // Keep the scores in arrival order for later eviction.
+            CalibrationScoreWindow window =
+                new CalibrationScoreWindow(getCategoryCount());
+            for (int i = 0; i < n; i++) {
+                window.add(calibrationScores[i],
+                           categories != null ? categories[i] : 0);
+            }
+            _calibrationLock.writeLock().lock();
+            try {
+                _calibrationScores = null;
+                _categoryCalibrationScores = null;
+                _calibrationIndex = null;
+                _categoryCalibrationIndices = null;
+                _calibrationWindow = window;
+                _calibrationSketch = null;
+                _categoryCalibrationSketches = null;
+            } finally {
+                _calibrationLock.writeLock().unlock();
+            }
+            return;
+        }
+        MondrianCalibrationScores categoryCalibrationScores = null;
+        if (_taxonomy != null) {
+            // Bucket the scores by category in a single pass.
+            categoryCalibrationScores =
+                new MondrianCalibrationScores(calibrationScores, categories,
+                                              getCategoryCount());
+            calibrationScores = null;
+            for (int c = 0; c < getCategoryCount(); c++) {
+                System.out.println("Calibration set size for category " + c +
+                                   " is " + categoryCalibrationScores.size(c));
             }
+        } else {
+            Arrays.sort(calibrationScores);
+        }
+        _calibrationLock.writeLock().lock();
+        try {
+            _calibrationScores = calibrationScores;
+            _categoryCalibrationScores = categoryCalibrationScores;
+            _calibrationWindow = null;
+            _calibrationSketch = null;
+            _categoryCalibrationSketches = null;
+            createCalibrationIndices();
+        } finally {
+            _calibrationLock.writeLock().unlock();
         }
+    }
+
+    /**
+     * Computes the non-conformity scores and, for Mondrian conformal
+     * prediction, the categories of the supplied calibration instances.
+     * The method is parallellized over the instances.
+     *
+     * @param xcal          the attributes of the calibration instances.
+     * @param ycal          the targets of the calibration instances.
+     * @param scores        an initialized <tt>double[]</tt> array to store the non-conformity scores in.
+     * @param categories    an initialized <tt>int[]</tt> array to store the categories in; or null.
+     */
+    private void calculateCalibrationScores(DoubleMatrix2D xcal, double[] ycal,
+                                            double[] scores, int[] categories)
+    {
+        int n = xcal.rows();
         if (!PARALLEL) {
             for (int i = 0; i < n; i++) {
                 DoubleMatrix1D instance = xcal.viewRow(i);
-                _calibrationScores[i] =
-                    _nc.calculateNonConformityScore(instance, ycal[i]);
-                if (_useLabelConditionalCP) {
-                    _classCalibrationScores[_classIndex.get(ycal[i])][i] =
-                        _calibrationScores[i];
+                scores[i] = _nc.calculateNonConformityScore(instance, ycal[i]);
+                if (categories != null) {
+                    categories[i] = _taxonomy.getCategory(instance, ycal[i]);
                 }
             }
         } else {
             CalculateNCScoresAction all =
-                new CalculateNCScoresAction(xcal, ycal, _calibrationScores,
-                                            _classCalibrationScores,
+                new CalculateNCScoresAction(xcal, ycal, scores, categories,
                                             0, n);
             all.start();
         }
-        Arrays.sort(_calibrationScores);
-        if (_useLabelConditionalCP) {
-            // FIXME: This is ugly.
-            for (int c = 0; c < _classes.length; c++) {
-                Arrays.sort(_classCalibrationScores[c]);
-                int i = 0;
-                while(i < _classCalibrationScores[c].length &&
-                      _classCalibrationScores[c][i] == -Double.MAX_VALUE) {
-                    i++;
+    }
+
+    /**
+     * Calibrates this conformal classifier into quantile sketches of the
+     * calibration scores. Each parallel task sketches its part of the
+     * calibration set and the partial sketches are merged.
+     *
+     * @param xcal          the attributes of the calibration instances.
+     * @param ycal          the targets of the calibration instances.
+     */
+    private void calibrateSketches(DoubleMatrix2D xcal, double[] ycal)
+    {
+        CalibrationScoreSketch sketch =
+            new CalibrationScoreSketch(_calibrationSketchK);
+        CalibrationScoreSketch[] categorySketches = createCategorySketches();
+        int n = xcal.rows();
+        if (!PARALLEL) {
+            for (int i = 0; i < n; i++) {
+                DoubleMatrix1D instance = xcal.viewRow(i);
+                double score =
+                    _nc.calculateNonConformityScore(instance, ycal[i]);
+                sketch.add(score);
+                if (categorySketches != null) {
+                    int category = _taxonomy.getCategory(instance, ycal[i]);
+                    categorySketches[category].add(score);
                 }
-                if (i < _classCalibrationScores[c].length) {
-                    _classCalibrationScores[c] =
-                        Arrays.copyOfRange(_classCalibrationScores[c],
-                                           i,
-                                           _classCalibrationScores[c].length);
-                } else {
-                    // There were no examples with this class/label.
-                    _classCalibrationScores[c] = new double[0];
+            }
+        } else {
+            CalculateNCSketchAction all =
+                new CalculateNCSketchAction(xcal, ycal,
+                                            sketch, categorySketches,
+                                            0, n);
+            all.start();
+        }
+        setCalibrationSketches(sketch, categorySketches);
+    }
+
+    /**
+     * Creates empty quantile sketches for the categories of the Mondrian
+     * taxonomy.
+     *
+     * @return the sketches; or null if there is no taxonomy.
+     */
+    private CalibrationScoreSketch[] createCategorySketches()
+    {
+        if (_taxonomy == null) {
+            return null;
+        }
+        CalibrationScoreSketch[] categorySketches =
+            new CalibrationScoreSketch[getCategoryCount()];
+        for (int c = 0; c < categorySketches.length; c++) {
+            categorySketches[c] =
+                new CalibrationScoreSketch(_calibrationSketchK);
+        }
+        return categorySketches;
+    }
+
+    /**
+     * Installs the supplied quantile sketches as the calibration of this
+     * conformal classifier.
+     *
+     * @param sketch             the sketch of all calibration scores.
+     * @param categorySketches   the sketches of the calibration scores per category; or null.
+     */
+    private void setCalibrationSketches(CalibrationScoreSketch sketch,
+                                        CalibrationScoreSketch[]
+                                            categorySketches)
+    {
+        _calibrationLock.writeLock().lock();
+        try {
+            _calibrationScores = null;
+            _categoryCalibrationScores = null;
+            _calibrationIndex = null;
+            _categoryCalibrationIndices = null;
+            _calibrationWindow = null;
+            _calibrationSketch = sketch;
+            _categoryCalibrationSketches = categorySketches;
+        } finally {
+            _calibrationLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Enables or disables sketch-based calibration for this conformal
+     * classifier. With sketch-based calibration the calibration scores are
+     * summarized in mergeable quantile sketches of bounded size instead of
+     * being stored, and the p-values are computed from the sketches.
+     * See <tt>CalibrationScoreSketch</tt> for the accuracy guarantees.
+     * The setting takes effect at the next call to <tt>calibrate</tt>.
+     *
+     * @param k    the sketch accuracy parameter, e.g. <tt>CalibrationScoreSketch.DEFAULT_K</tt>; or 0 to store the calibration scores exactly.
+     */
+    public void setCalibrationSketch(int k)
+    {
+        if (k != 0 && k < 8) {
+            throw new IllegalArgumentException
+                          ("The sketch accuracy parameter must be 0 or " +
+                           "at least 8.");
+        }
+        _calibrationSketchK = k;
+    }
+
+    /**
+     * Sets a cache for the non-conformity scores of the instances predicted
+     * by this conformal classifier. Repeated instances are then predicted
+     * without evaluating the non-conformity function. The cache is cleared
+     * when the non-conformity function is retrained or replaced. The cache
+     * is not saved with the conformal classifier.
+     *
+     * @param cache    the cache to use; or null to disable caching.
+     */
+    public void setNonconformityScoreCache(NonconformityScoreCache cache)
+    {
+        if (cache != null) {
+            cache.clear();
+        }
+        _ncScoreCache = cache;
+    }
+
+    /**
+     * Returns the cache for the non-conformity scores of the instances
+     * predicted by this conformal classifier.
+     *
+     * @return the cache; or null if caching is disabled.
+     */
+    public NonconformityScoreCache getNonconformityScoreCache()
+    {
+        return _ncScoreCache;
+    }
+
+    /**
+     * Merges the calibration of another sketch-calibrated conformal
+     * classifier into this one. This allows the calibration set to be
+     * partitioned and calibrated separately, e.g. on different machines,
+     * using copies of the same trained non-conformity function.
+     *
+     * @param other    a sketch-calibrated conformal classifier with the same labels and Mondrian taxonomy.
+     */
+    public void mergeCalibration(InductiveConformalClassifier other)
+    {
+        if (_calibrationSketch == null || other._calibrationSketch == null ||
+            (_taxonomy == null) != (other._taxonomy == null) ||
+            getCategoryCount() != other.getCategoryCount() ||
+            !Arrays.equals(_classes, other._classes)) {
+            throw new UnsupportedOperationException
+                          ("Only sketch-calibrated conformal classifiers " +
+                           "with the same labels and calibration mode " +
+                           "can be merged.");
+        }
+        other._calibrationLock.readLock().lock();
+        _calibrationLock.writeLock().lock();
+        try {
+            _calibrationSketch.merge(other._calibrationSketch);
+            if (_categoryCalibrationSketches != null) {
+                for (int c = 0; c < _categoryCalibrationSketches.length; c++) {
+                    _categoryCalibrationSketches[c].merge
+                        (other._categoryCalibrationSketches[c]);
                 }
-                System.out.println("Calibration set size for class " + c +
-                                   " label " + _classes[c] + " is " +
-                                   _classCalibrationScores[c].length);
             }
+        } finally {
+            _calibrationLock.writeLock().unlock();
+            other._calibrationLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Enables or disables incremental calibration for this conformal
+     * classifier. With incremental calibration the calibration scores are
+     * kept in arrival order in order-statistic structures so that
+     * calibration instances can be added and expired in O(log n) time each
+     * using <tt>addCalibrationInstances</tt> and
+     * <tt>evictCalibrationInstances</tt>.
+     * The setting takes effect at the next call to <tt>calibrate</tt>.
+     *
+     * @param useIncrementalCalibration  a boolean indicating whether incremental calibration should be used.
+     */
+    public void setIncrementalCalibration(boolean useIncrementalCalibration)
+    {
+        _useIncrementalCalibration = useIncrementalCalibration;
+    }
+
+    /**
+     * Adds the supplied instances last to the calibration set of this
+     * incrementally calibrated conformal classifier. The underlying model is
+     * not retrained. Predictions can be made concurrently with the update.
+     *
+     * @param xcal          the attributes of the calibration instances.
+     * @param ycal          the targets of the calibration instances.
+     */
+    public void addCalibrationInstances(DoubleMatrix2D xcal, double[] ycal)
+    {
+        checkIncrementalCalibration();
+        int n = xcal.rows();
+        double[] calibrationScores = new double[n];
+        int[] categories = _taxonomy != null ? new int[n] : null;
+        calculateCalibrationScores(xcal, ycal, calibrationScores, categories);
+        _calibrationLock.writeLock().lock();
+        try {
+            for (int i = 0; i < n; i++) {
+                _calibrationWindow.add(calibrationScores[i],
+                                       categories != null ? categories[i] : 0);
+            }
+        } finally {
+            _calibrationLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the oldest instances from the calibration set of this
+     * incrementally calibrated conformal classifier.
+     * Predictions can be made concurrently with the update.
+     *
+     * @param count         the number of calibration instances to remove.
+     */
+    public void evictCalibrationInstances(int count)
+    {
+        checkIncrementalCalibration();
+        _calibrationLock.writeLock().lock();
+        try {
+            _calibrationWindow.evict(count);
+        } finally {
+            _calibrationLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of instances in the calibration set.
+     *
+     * @return the number of calibration instances or 0 if the classifier has not been calibrated.
+     */
+    public int getCalibrationSetSize()
+    {
+        _calibrationLock.readLock().lock();
+        try {
+            if (_calibrationWindow != null) {
+                return _calibrationWindow.size();
+            } else if (_calibrationSketch != null) {
+                return _calibrationSketch.size();
+            } else if (_calibrationScores != null) {
+                return _calibrationScores.length;
+            } else if (_categoryCalibrationScores != null) {
+                return _categoryCalibrationScores.size();
+            } else {
+                return 0;
+            }
+        } finally {
+            _calibrationLock.readLock().unlock();
+        }
+    }
+
+    private void checkIncrementalCalibration()
+    {
+        if (_calibrationWindow == null) {
+            throw new UnsupportedOperationException
+                          ("The conformal classifier must be calibrated " +
+                           "with incremental calibration enabled before " +
+                           "calibration instances can be added or removed.");
         }
     }
 
@@ -180,19 +585,47 @@ public class InductiveConformalClassifier
     {
         int n = x.rows();
         ConformalClassification[] predictions = new ConformalClassification[n];
-        if (!PARALLEL) {
-            for (int i = 0; i < n; i++) {
-                DoubleMatrix1D instance = x.viewRow(i);
-                predictions[i] = predict(instance);
-            }
-        } else {
-            ClassifyAction all =
-                new ClassifyAction(x, predictions, 0, n);
-            all.start();
+        DoubleMatrix2D pValues = predictPValues(x);
+        for (int i = 0; i < n; i++) {
+            predictions[i] = new ConformalClassification(this,
+                                                         pValues.viewRow(i));
         }
         return predictions;
     }
 
+    /**
+     * Makes a prediction for each instance in x and returns them in a
+     * compact batch representation.
+     * The method is parallellized over the instances.
+     *
+     * @param x             the instances.
+     * @return a <tt>ConformalClassificationBatch</tt> containing the predictions.
+     */
+    @Override
+    public ConformalClassificationBatch predictBatch(DoubleMatrix2D x)
+    {
+        int n = x.rows();
+        int k = _classes.length;
+        int[][] categories = _taxonomy != null ? new int[k][n] : null;
+        double[][] ncScores = calculateNonConformityScores(x, categories);
+        double[] response = new double[n * k];
+        double[] pValues = new double[n];
+        _calibrationLock.readLock().lock();
+        try {
+            for (int c = 0; c < k; c++) {
+                calculatePValues(ncScores[c],
+                                 categories != null ? categories[c] : null,
+                                 pValues);
+                for (int i = 0; i < n; i++) {
+                    response[i * k + c] = pValues[i];
+                }
+            }
+        } finally {
+            _calibrationLock.readLock().unlock();
+        }
+        return new ConformalClassificationBatch(_classes, response);
+    }
+
     /**
      * Makes a prediction for the instance x.
      *
@@ -207,7 +640,9 @@ public class InductiveConformalClassifier
 
     /**
      * Computes the predicted p-values for each target and instance in x.
-     * The method is parallellized over the instances.
+     * The non-conformity scores are computed in parallel over the instances
+     * and the p-values for each target are then computed by merging the
+     * sorted scores with the calibration scores.
      *
      * @param x             the instances.
      * @return an <tt>DoubleMatrix2D</tt> containing the predicted p-values for each instance.
@@ -216,21 +651,72 @@ public class InductiveConformalClassifier
     public DoubleMatrix2D predictPValues(DoubleMatrix2D x)
     {
         int n = x.rows();
+        int[][] categories =
+            _taxonomy != null ? new int[_classes.length][n] : null;
+        double[][] ncScores = calculateNonConformityScores(x, categories);
         DoubleMatrix2D response = new DenseDoubleMatrix2D(n, _classes.length);
-        if (!PARALLEL) {
-            for (int i = 0; i < n; i++) {
-                DoubleMatrix1D instance = x.viewRow(i);
-                DoubleMatrix1D pValues  = response.viewRow(i);
-                predictPValues(instance, pValues);
+        double[] pValues = new double[n];
+        _calibrationLock.readLock().lock();
+        try {
+            for (int c = 0; c < _classes.length; c++) {
+                calculatePValues(ncScores[c],
+                                 categories != null ? categories[c] : null,
+                                 pValues);
+                response.viewColumn(c).assign(pValues);
             }
-        } else {
-            ClassifyPValuesAction all =
-                new ClassifyPValuesAction(x, response, 0, n);
-            all.start();
+        } finally {
+            _calibrationLock.readLock().unlock();
         }
         return response;
     }
 
+    /**
+     * Computes the non-conformity scores and, for Mondrian conformal
+     * prediction, the categories for each target and instance in x.
+     * The non-conformity scores of all instances are computed with one
+     * batch call to the non-conformity function and the categories in
+     * parallel over the instances.
+     *
+     * @param x             the instances.
+     * @param categories    an initialized <tt>int[][]</tt> array to store the categories of all instances for each target in; or null.
+     * @return a <tt>double[][]</tt> array containing the non-conformity scores of all instances for each target.
+     */
+    private double[][] calculateNonConformityScores(DoubleMatrix2D x,
+                                                    int[][] categories)
+    {
+        int n = x.rows();
+        int k = _classes.length;
+        double[] allNCScores = new double[n * k];
+        NonconformityScoreCache cache = _ncScoreCache;
+        if (cache != null) {
+            cache.calculateNonConformityScores(_nc, x, allNCScores);
+        } else {
+            _nc.calculateNonConformityScores(x, allNCScores);
+        }
+        double[][] ncScores = new double[k][n];
+        for (int i = 0; i < n; i++) {
+            for (int c = 0; c < k; c++) {
+                ncScores[c][i] = allNCScores[i * k + c];
+            }
+        }
+        if (categories != null) {
+            if (!PARALLEL) {
+                for (int i = 0; i < n; i++) {
+                    DoubleMatrix1D instance = x.viewRow(i);
+                    for (int c = 0; c < k; c++) {
+                        categories[c][i] =
+                            _taxonomy.getCategory(instance, _classes[c]);
+                    }
+                }
+            } else {
+                CalculateCategoriesAction all =
+                    new CalculateCategoriesAction(x, categories, 0, n);
+                all.start();
+            }
+        }
+        return ncScores;
+    }
+
    /**
      * Computes the predicted p-values for the instance x.
      *
@@ -254,19 +740,185 @@ public class InductiveConformalClassifier
     @Override
     public void predictPValues(DoubleMatrix1D x, DoubleMatrix1D pValues)
     {
-        for (int i = 0; i < _classes.length; i++) {
-            // TODO: The underlying model should really only have to predict
-            //       once per instance.
-            double ncScore = _nc.calculateNonConformityScore(x, _classes[i]);
-            double pValue;
-            if (_useLabelConditionalCP) {
-                pValue = Util.calculatePValue(ncScore,
-                                              _classCalibrationScores[i]);
+        predictPValues(x, pValues, new double[_classes.length]);
+    }
+
+   /**
+     * Computes the predicted p-values for the instance x.
+     * The underlying model is evaluated only once for the instance.
+     *
+     * @param x          the instance.
+     * @param pValues    an initialized <tt>DoubleMatrix1D</tt> to store the p-values.
+     * @param ncScores   an initialized <tt>double[]</tt> array used as scratch space for the non-conformity scores.
+     */
+    private void predictPValues(DoubleMatrix1D x, DoubleMatrix1D pValues,
+                                double[] ncScores)
+    {
+        NonconformityScoreCache cache = _ncScoreCache;
+        if (cache != null) {
+            cache.calculateNonConformityScores(_nc, x, ncScores);
+        } else {
+            _nc.calculateNonConformityScores(x, ncScores);
+        }
+        _calibrationLock.readLock().lock();
+        try {
+            for (int i = 0; i < _classes.length; i++) {
+                int category = _taxonomy != null ?
+                    _taxonomy.getCategory(x, _classes[i]) : 0;
+                pValues.set(i,
+                            getCalibrationIndex(category).
+                                calculatePValue(ncScores[i]));
+            }
+        } finally {
+            _calibrationLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Computes the p-values for the instance x from its non-conformity
+     * scores, which the caller has computed with the non-conformity
+     * function of this classifier. Used by ensembles that evaluate the
+     * underlying models of their members in one pass.
+     *
+     * @param x          the instance.
+     * @param ncScores   the non-conformity scores of the instance, as by <tt>getNonconformityFunction().calculateNonConformityScores(x, ncScores)</tt>.
+     * @param pValues    an initialized <tt>double[]</tt> array to store the p-values in.
+     */
+    void calculatePValues(DoubleMatrix1D x, double[] ncScores,
+                          double[] pValues)
+    {
+        _calibrationLock.readLock().lock();
+        try {
+            for (int i = 0; i < _classes.length; i++) {
+                int category = _taxonomy != null ?
+                    _taxonomy.getCategory(x, _classes[i]) : 0;
+                pValues[i] =
+                    getCalibrationIndex(category).calculatePValue(ncScores[i]);
+            }
+        } finally {
+            _calibrationLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Computes the p-values for a batch of non-conformity scores for one
+     * target. For Mondrian conformal prediction the scores are grouped by
+     * category and each group is looked up among the calibration scores of
+     * its category. The calibration lock must be held by the caller.
+     *
+     * @param ncScores    the non-conformity scores.
+     * @param categories  the category of each non-conformity score; or null.
+     * @param pValues     an initialized <tt>double[]</tt> array to store the p-values in.
+     */
+    private void calculatePValues(double[] ncScores, int[] categories,
+                                  double[] pValues)
+    {
+        if (categories == null) {
+            getCalibrationIndex(0).calculatePValues(ncScores, pValues);
+            return;
+        }
+        int categoryCount = getCategoryCount();
+        int[] offsets = new int[categoryCount + 1];
+        for (int i = 0; i < categories.length; i++) {
+            offsets[categories[i] + 1]++;
+        }
+        for (int c = 0; c < categoryCount; c++) {
+            offsets[c + 1] += offsets[c];
+        }
+        int[] order = new int[categories.length];
+        int[] next  = Arrays.copyOf(offsets, categoryCount);
+        for (int i = 0; i < categories.length; i++) {
+            order[next[categories[i]]++] = i;
+        }
+        for (int c = 0; c < categoryCount; c++) {
+            int size = offsets[c + 1] - offsets[c];
+            if (size > 0) {
+                double[] groupNCScores = new double[size];
+                double[] groupPValues  = new double[size];
+                for (int j = 0; j < size; j++) {
+                    groupNCScores[j] = ncScores[order[offsets[c] + j]];
+                }
+                getCalibrationIndex(c).calculatePValues(groupNCScores,
+                                                        groupPValues);
+                for (int j = 0; j < size; j++) {
+                    pValues[order[offsets[c] + j]] = groupPValues[j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the calibration score index to use for the Mondrian category.
+     *
+     * @param category  the category. Ignored for normal conformal prediction.
+     * @return the calibration score index.
+     */
+    private ICalibrationScoreIndex getCalibrationIndex(int category)
+    {
+        if (_calibrationWindow != null) {
+            if (_taxonomy != null) {
+                return _calibrationWindow.getCategoryIndex(category);
+            } else {
+                return _calibrationWindow.getIndex();
+            }
+        } else if (_calibrationSketch != null) {
+            if (_taxonomy != null) {
+                return _categoryCalibrationSketches[category];
             } else {
-                pValue = Util.calculatePValue(ncScore,
-                                              _calibrationScores);
+                return _calibrationSketch;
             }
-            pValues.set(i, pValue);
+        } else if (_taxonomy != null) {
+            return _categoryCalibrationIndices[category];
+        } else {
+            return _calibrationIndex;
+        }
+    }
+
+    /**
+     * Returns the number of Mondrian categories.
+     *
+     * @return the number of categories or 0 for normal conformal prediction.
+     */
+    private int getCategoryCount()
+    {
+        return _taxonomy != null ? _taxonomy.getCategoryCount() : 0;
+    }
+
+    /**
+     * Returns the Mondrian taxonomy used by this conformal classifier.
+     *
+     * @return the Mondrian taxonomy or null for normal conformal prediction.
+     */
+    public IMondrianTaxonomy getTaxonomy()
+    {
+        return _taxonomy;
+    }
+
+    /**
+     * Creates the calibration score indices from the sorted calibration
+     * scores.
+     */
+    private void createCalibrationIndices()
+    {
+        if (_taxonomy != null) {
+            _calibrationIndex = null;
+            _categoryCalibrationIndices =
+                new CalibrationScoreIndex[getCategoryCount()];
+            for (int c = 0; c < _categoryCalibrationIndices.length; c++) {
+                _categoryCalibrationIndices[c] =
+                    _categoryCalibrationScores.createIndex(c);
+            }
+        } else {
+            _calibrationIndex = new CalibrationScoreIndex(_calibrationScores);
+            _categoryCalibrationIndices = null;
+        }
+    }
+
+    private void clearNonconformityScoreCache()
+    {
+        NonconformityScoreCache cache = _ncScoreCache;
+        if (cache != null) {
+            cache.clear();
         }
     }
 
@@ -286,9 +938,20 @@ public class InductiveConformalClassifier
     public void setNonconformityFunction
                     (IClassificationNonconformityFunction nc)
     {
-        _nc = nc;
-        _calibrationScores = null;
-        _classCalibrationScores = null;
+        _calibrationLock.writeLock().lock();
+        try {
+            _nc = nc;
+            clearNonconformityScoreCache();
+            _calibrationScores = null;
+            _categoryCalibrationScores = null;
+            _calibrationIndex = null;
+            _categoryCalibrationIndices = null;
+            _calibrationWindow = null;
+            _calibrationSketch = null;
+            _categoryCalibrationSketches = null;
+        } finally {
+            _calibrationLock.writeLock().unlock();
+        }
     }
 
     /**
@@ -299,7 +962,9 @@ public class InductiveConformalClassifier
     @Override
     public boolean isTrained()
     {
-        return _calibrationScores != null;
+        return _calibrationScores != null ||
+               _categoryCalibrationScores != null ||
+               _calibrationWindow != null || _calibrationSketch != null;
     }
 
     @Override
@@ -335,8 +1000,18 @@ public class InductiveConformalClassifier
         oos.writeObject(_classes);
         oos.writeObject(_classIndex);
         oos.writeObject(_calibrationScores);
-        oos.writeObject(_useLabelConditionalCP);
-        oos.writeObject(_classCalibrationScores);
+        oos.writeObject(_categoryCalibrationScores);
+        _calibrationLock.readLock().lock();
+        try {
+            oos.writeObject(_useIncrementalCalibration);
+            oos.writeObject(_calibrationWindow);
+            oos.writeObject(_calibrationSketchK);
+            oos.writeObject(_calibrationSketch);
+            oos.writeObject(_categoryCalibrationSketches);
+            oos.writeObject(_taxonomy);
+        } finally {
+            _calibrationLock.readLock().unlock();
+        }
     }
 
     @SuppressWarnings("unchecked") // There is not much to do if the saved
@@ -348,108 +1023,162 @@ public class InductiveConformalClassifier
         _classes = (Double[])ois.readObject();
         _classIndex = (SortedMap<Double, Integer>)ois.readObject();
         _calibrationScores = (double[])ois.readObject();
-        _useLabelConditionalCP = (boolean)ois.readObject();
-        _classCalibrationScores = (double[][])ois.readObject();
+        _categoryCalibrationScores =
+            (MondrianCalibrationScores)ois.readObject();
+        _useIncrementalCalibration = (boolean)ois.readObject();
+        _calibrationWindow = (CalibrationScoreWindow)ois.readObject();
+        _calibrationSketchK = (int)ois.readObject();
+        _calibrationSketch = (CalibrationScoreSketch)ois.readObject();
+        _categoryCalibrationSketches =
+            (CalibrationScoreSketch[])ois.readObject();
+        _taxonomy = (IMondrianTaxonomy)ois.readObject();
+        _calibrationLock = new ReentrantReadWriteLock();
+        if (_calibrationScores != null || _categoryCalibrationScores != null) {
+            createCalibrationIndices();
+        }
     }
 
-    class ClassifyPValuesAction extends se.hb.jcp.util.ParallelizedAction
+    class CalculateCategoriesAction extends se.hb.jcp.util.ParallelizedAction
     {
         DoubleMatrix2D _x;
-        DoubleMatrix2D _response;
+        int[][] _categories;
 
-        public ClassifyPValuesAction(DoubleMatrix2D x,
-                                     DoubleMatrix2D response,
-                                     int first, int last)
+        public CalculateCategoriesAction(DoubleMatrix2D x,
+                                         int[][]        categories,
+                                         int first, int last)
         {
             super(first, last);
             _x = x;
-            _response = response;
+            _categories = categories;
         }
 
         @Override
         protected void compute(int i)
         {
             DoubleMatrix1D instance = _x.viewRow(i);
-            DoubleMatrix1D pValues  = _response.viewRow(i);
-            predictPValues(instance, pValues);
+            for (int c = 0; c < _classes.length; c++) {
+                _categories[c][i] =
+                    _taxonomy.getCategory(instance, _classes[c]);
+            }
         }
 
         @Override
         protected ParallelizedAction createSubtask(int first, int last)
         {
-            return new ClassifyPValuesAction(_x, _response,
-                                             first, last);
+            return new CalculateCategoriesAction(_x, _categories,
+                                                 first, last);
         }
     }
 
-    class ClassifyAction extends se.hb.jcp.util.ParallelizedAction
+    class CalculateNCScoresAction extends se.hb.jcp.util.ParallelizedAction
     {
         DoubleMatrix2D _x;
-        ConformalClassification[] _response;
+        double[] _y;
+        double[] _nonConformityScores;
+        int[] _categories;
 
-        public ClassifyAction(DoubleMatrix2D x,
-                              ConformalClassification[] response,
-                              int first, int last)
+        public CalculateNCScoresAction(DoubleMatrix2D x,
+                                       double[]       y,
+                                       double[]       nonConformityScores,
+                                       int[]          categories,
+                                       int first, int last)
         {
             super(first, last);
             _x = x;
-            _response = response;
+            _y = y;
+            _nonConformityScores = nonConformityScores;
+            _categories = categories;
         }
 
         @Override
         protected void compute(int i)
         {
             DoubleMatrix1D instance = _x.viewRow(i);
-            _response[i] =
-                new ConformalClassification(InductiveConformalClassifier.this,
-                                            predictPValues(instance));
+            _nonConformityScores[i] =
+                _nc.calculateNonConformityScore(instance, _y[i]);
+            if (_categories != null) {
+                _categories[i] = _taxonomy.getCategory(instance, _y[i]);
+            }
         }
 
         @Override
         protected ParallelizedAction createSubtask(int first, int last)
         {
-            return new ClassifyAction(_x, _response,
-                                      first, last);
+            return new CalculateNCScoresAction(_x, _y, _nonConformityScores,
+                                               _categories,
+                                               first, last);
         }
     }
 
-    class CalculateNCScoresAction extends se.hb.jcp.util.ParallelizedAction
+    class CalculateNCSketchAction extends se.hb.jcp.util.ParallelizedAction
     {
         DoubleMatrix2D _x;
         double[] _y;
-        double[] _nonConformityScores;
-        double[][] _classNonConformityScores;
+        CalibrationScoreSketch   _sketch;
+        CalibrationScoreSketch[] _categorySketches;
+        CalibrationScoreSketch   _localSketch;
+        CalibrationScoreSketch[] _localCategorySketches;
 
-        public CalculateNCScoresAction(DoubleMatrix2D x,
-                                       double[]       y,
-                                       double[]       nonConformityScores,
-                                       double[][]     classNonConformityScores,
-                                       int first, int last)
+        public CalculateNCSketchAction
+                   (DoubleMatrix2D           x,
+                    double[]                 y,
+                    CalibrationScoreSketch   sketch,
+                    CalibrationScoreSketch[] categorySketches,
+                    int first, int last)
         {
             super(first, last);
             _x = x;
             _y = y;
-            _nonConformityScores = nonConformityScores;
-            _classNonConformityScores = classNonConformityScores;
+            _sketch = sketch;
+            _categorySketches = categorySketches;
+        }
+
+        @Override
+        protected void initialize(int first, int last)
+        {
+            _localSketch = new CalibrationScoreSketch(_sketch.getK());
+            if (_categorySketches != null) {
+                _localCategorySketches =
+                    new CalibrationScoreSketch[_categorySketches.length];
+                for (int c = 0; c < _categorySketches.length; c++) {
+                    _localCategorySketches[c] =
+                        new CalibrationScoreSketch(_sketch.getK());
+                }
+            }
+        }
+
+        @Override
+        protected void finalize(int first, int last)
+        {
+            synchronized (_sketch) {
+                _sketch.merge(_localSketch);
+                if (_categorySketches != null) {
+                    for (int c = 0; c < _categorySketches.length; c++) {
+                        _categorySketches[c].merge(_localCategorySketches[c]);
+                    }
+                }
+            }
+            _localSketch = null;
+            _localCategorySketches = null;
         }
 
         @Override
         protected void compute(int i)
         {
             DoubleMatrix1D instance = _x.viewRow(i);
-            _nonConformityScores[i] =
-                _nc.calculateNonConformityScore(instance, _y[i]);
-            if (_classNonConformityScores != null) {
-                _classNonConformityScores[_classIndex.get(_y[i])][i] =
-                    _nonConformityScores[i];
+            double score = _nc.calculateNonConformityScore(instance, _y[i]);
+            _localSketch.add(score);
+            if (_localCategorySketches != null) {
+                int category = _taxonomy.getCategory(instance, _y[i]);
+                _localCategorySketches[category].add(score);
             }
         }
 
         @Override
         protected ParallelizedAction createSubtask(int first, int last)
         {
-            return new CalculateNCScoresAction(_x, _y, _nonConformityScores,
-                                               _classNonConformityScores,
+            return new CalculateNCSketchAction(_x, _y,
+                                               _sketch, _categorySketches,
                                                first, last);
         }
     }
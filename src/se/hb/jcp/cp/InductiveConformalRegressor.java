@@ -1,5 +1,6 @@
 // JCP - Java Conformal Prediction framework
 // Copyright (C) 2014  Henrik Linusson
+// Copyright (C) 2026  Anders Gidenstam
 //
 // This library is free software: you can redistribute it and/or modify
 // it under the terms of the GNU Lesser General Public License as published
@@ -16,8 +17,300 @@
 //
 package se.hb.jcp.cp;
 
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+
+import java.util.Arrays;
+
 import se.hb.jcp.nc.IRegressionNonconformityFunction;
+import se.hb.jcp.util.ParallelizedAction;
+
+/**
+ * Represents an instance of a specific inductive conformal regression
+ * algorithm.
+ *
+ * The calibration scores are kept sorted so that the prediction interval
+ * for any significance level is found by indexing and a p-value by a
+ * binary search.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class InductiveConformalRegressor
+    implements java.io.Serializable
+{
+    private static final boolean PARALLEL = true;
 
-public class InductiveConformalRegressor {
     private IRegressionNonconformityFunction _nc;
+    // The calibration scores in increasing order.
+    private double[] _calibrationScores;
+
+    /**
+      * Creates an inductive conformal regressor using the supplied
+      * non-conformity function.
+      *
+      * @param nc         the untrained non-conformity function to use.
+      */
+    public InductiveConformalRegressor(IRegressionNonconformityFunction nc)
+    {
+        _nc = nc;
+    }
+
+    /**
+     * Trains and calibrates this conformal regressor using the supplied data.
+     *
+     * @param xtr           the attributes of the training instances.
+     * @param ytr           the targets of the training instances.
+     * @param xcal          the attributes of the calibration instances.
+     * @param ycal          the targets of the calibration instances.
+     */
+    public void fit(DoubleMatrix2D xtr, double[] ytr,
+                    DoubleMatrix2D xcal, double[] ycal)
+    {
+        _nc.fit(xtr, ytr);
+        calibrate(xcal, ycal);
+    }
+
+    /**
+     * Calibrates this conformal regressor using the supplied data.
+     * The regressor's non-conformity function must have been trained first.
+     * The underlying models are evaluated for all the calibration instances
+     * together using their parallelized batch methods.
+     *
+     * @param xcal          the attributes of the calibration instances.
+     * @param ycal          the targets of the calibration instances.
+     */
+    public void calibrate(DoubleMatrix2D xcal, double[] ycal)
+    {
+        if (_nc == null || !_nc.isTrained()) {
+            throw new UnsupportedOperationException
+                          ("The non-conformity function of the conformal " +
+                           "regressor must be trained before the regressor " +
+                           "can be calibrated.");
+        }
+        double[] calibrationScores = new double[xcal.rows()];
+        _nc.calculateNonConformityScores(xcal, ycal, calibrationScores);
+        Arrays.sort(calibrationScores);
+        _calibrationScores = calibrationScores;
+    }
+
+    /**
+     * Returns the critical non-conformity score for the supplied
+     * significance level, i.e. the largest calibration score that is
+     * admitted into the prediction intervals.
+     *
+     * @param significance  the significance level, in (0, 1).
+     * @return the critical non-conformity score; or <tt>Double.POSITIVE_INFINITY</tt> if the calibration set is too small for the significance level.
+     */
+    public double getCriticalScore(double significance)
+    {
+        checkCalibrated();
+        if (significance <= 0.0 || 1.0 <= significance) {
+            throw new IllegalArgumentException
+                          ("The significance level must be in (0, 1).");
+        }
+        double[] scores = _calibrationScores;
+        int n = scores.length;
+        // The k:th smallest score, k = ceil((1 - significance)(n + 1)).
+        // The small tolerance protects against rounding errors in the
+        // product when (1 - significance)(n + 1) is an integer.
+        int k = (int)Math.ceil((1.0 - significance) * (n + 1) - 1e-9);
+        if (k > n) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return scores[Math.max(k, 1) - 1];
+    }
+
+    /**
+     * Computes the prediction interval for the instance x at the supplied
+     * significance level.
+     *
+     * @param x             the instance.
+     * @param significance  the significance level, in (0, 1).
+     * @return an array containing the lower and upper bound of the interval.
+     */
+    public double[] predictInterval(DoubleMatrix1D x, double significance)
+    {
+        double critical = getCriticalScore(significance);
+        double prediction = _nc.predict(x);
+        double halfWidth  = critical * _nc.predictScale(x);
+        return new double[] { prediction - halfWidth, prediction + halfWidth };
+    }
+
+    /**
+     * Computes the prediction intervals for the instances in x at the
+     * supplied significance level.
+     *
+     * @param x             the instances.
+     * @param significance  the significance level, in (0, 1).
+     * @return a matrix with one row per instance holding the lower and upper bound of its interval.
+     */
+    public DoubleMatrix2D predictIntervals(DoubleMatrix2D x,
+                                           double significance)
+    {
+        return predictIntervals(x, new double[] { significance })[0];
+    }
+
+    /**
+     * Computes the prediction intervals for the instances in x at each of
+     * the supplied significance levels. The underlying models are
+     * evaluated only once for each instance.
+     *
+     * @param x              the instances.
+     * @param significances  the significance levels, each in (0, 1).
+     * @return an array with a matrix for each significance level with one row per instance holding the lower and upper bound of its interval.
+     */
+    public DoubleMatrix2D[] predictIntervals(DoubleMatrix2D x,
+                                             double[] significances)
+    {
+        int n = x.rows();
+        double[] critical = new double[significances.length];
+        for (int s = 0; s < significances.length; s++) {
+            critical[s] = getCriticalScore(significances[s]);
+        }
+        double[] predictions = new double[n];
+        double[] scales = new double[n];
+        _nc.predict(x, predictions, scales);
+
+        DoubleMatrix2D[] intervals = new DoubleMatrix2D[significances.length];
+        for (int s = 0; s < significances.length; s++) {
+            intervals[s] = new DenseDoubleMatrix2D(n, 2);
+        }
+        if (!PARALLEL) {
+            for (int i = 0; i < n; i++) {
+                setIntervals(i, predictions[i], scales[i], critical,
+                             intervals);
+            }
+        } else {
+            SetIntervalsAction all =
+                new SetIntervalsAction(predictions, scales, critical,
+                                       intervals, 0, n);
+            all.start();
+        }
+        return intervals;
+    }
+
+    /**
+     * Computes the p-value for the instance x with the target y.
+     *
+     * @param x    the instance.
+     * @param y    the target.
+     * @return the p-value.
+     */
+    public double predictPValue(DoubleMatrix1D x, double y)
+    {
+        checkCalibrated();
+        double score = _nc.calculateNonConformityScore(x, y);
+        return Util.calculatePValue(score, _calibrationScores);
+    }
+
+    /**
+     * Returns the non-conformity function used by this conformal regressor.
+     *
+     * @return the non-conformity function.
+     */
+    public IRegressionNonconformityFunction getNonconformityFunction()
+    {
+        return _nc;
+    }
+
+    /**
+     * Returns the number of instances in the calibration set.
+     *
+     * @return the number of calibration instances or 0 if the regressor has not been calibrated.
+     */
+    public int getCalibrationSetSize()
+    {
+        return _calibrationScores != null ? _calibrationScores.length : 0;
+    }
+
+    /**
+     * Returns whether this conformal regressor has been trained and
+     * calibrated.
+     *
+     * @return <tt>true</tt> if the regressor is ready for prediction or <tt>false</tt> otherwise.
+     */
+    public boolean isTrained()
+    {
+        return _calibrationScores != null && _nc.isTrained();
+    }
+
+    /**
+     * Returns the number of attributes the conformal regressor expects in
+     * an instance.
+     *
+     * @return the number of attributes or -1 if the regressor has not been trained.
+     */
+    public int getAttributeCount()
+    {
+        return _nc.getAttributeCount();
+    }
+
+    /**
+     * Returns a DoubleMatrix1D instance of the native storage type of the
+     * underlying regressor.
+     *
+     * @return a 1 element instance of the native storage type.
+     */
+    public DoubleMatrix1D nativeStorageTemplate()
+    {
+        return _nc.nativeStorageTemplate();
+    }
+
+    private void checkCalibrated()
+    {
+        if (_calibrationScores == null) {
+            throw new UnsupportedOperationException
+                          ("The conformal regressor must be calibrated " +
+                           "before it can be used for prediction.");
+        }
+    }
+
+    private static void setIntervals(int i,
+                                     double prediction,
+                                     double scale,
+                                     double[] critical,
+                                     DoubleMatrix2D[] intervals)
+    {
+        for (int s = 0; s < critical.length; s++) {
+            double halfWidth = critical[s] * scale;
+            intervals[s].setQuick(i, 0, prediction - halfWidth);
+            intervals[s].setQuick(i, 1, prediction + halfWidth);
+        }
+    }
+
+    class SetIntervalsAction extends ParallelizedAction
+    {
+        double[] _predictions;
+        double[] _scales;
+        double[] _critical;
+        DoubleMatrix2D[] _intervals;
+
+        public SetIntervalsAction(double[] predictions,
+                                  double[] scales,
+                                  double[] critical,
+                                  DoubleMatrix2D[] intervals,
+                                  int first, int last)
+        {
+            super(first, last);
+            _predictions = predictions;
+            _scales = scales;
+            _critical = critical;
+            _intervals = intervals;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            setIntervals(i, _predictions[i], _scales[i], _critical,
+                         _intervals);
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new SetIntervalsAction(_predictions, _scales, _critical,
+                                          _intervals, first, last);
+        }
+    }
 }
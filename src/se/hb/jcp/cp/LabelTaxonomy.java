@@ -0,0 +1,67 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.cp;
+
+import cern.colt.matrix.DoubleMatrix1D;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A Mondrian taxonomy with one category per label. The categories are the
+ * class indices, i.e. the positions of the labels in ascending order.
+ * Gives label/class conditional conformal prediction.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class LabelTaxonomy implements IMondrianTaxonomy
+{
+    private SortedMap<Double, Integer> _classIndex;
+
+    /**
+     * Creates a label taxonomy for the supplied labels.
+     *
+     * @param labels    the class labels.
+     */
+    public LabelTaxonomy(double[] labels)
+    {
+        _classIndex = new TreeMap<Double, Integer>();
+        for (int c = 0; c < labels.length; c++) {
+            _classIndex.put(labels[c], 0);
+        }
+        int c = 0;
+        for (Double label : _classIndex.keySet()) {
+            _classIndex.put(label, c++);
+        }
+    }
+
+    @Override
+    public int getCategoryCount()
+    {
+        return _classIndex.size();
+    }
+
+    @Override
+    public int getCategory(DoubleMatrix1D x, double y)
+    {
+        Integer c = _classIndex.get(y);
+        if (c == null) {
+            throw new IllegalArgumentException("Unknown label " + y + ".");
+        }
+        return c;
+    }
+}
@@ -0,0 +1,140 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.cp;
+
+import java.util.Arrays;
+
+/**
+ * The calibration non-conformity scores of a Mondrian conformal predictor
+ * grouped by category. The scores are stored in compressed sparse row
+ * style: one array holding the scores of all categories, sorted within each
+ * category, and an array of category offsets.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class MondrianCalibrationScores implements java.io.Serializable
+{
+    private double[] _scores;
+    // The scores of category c are _scores[_offsets[c].._offsets[c+1]).
+    private int[]    _offsets;
+
+    /**
+     * Creates the Mondrian calibration scores by bucketing the scores into
+     * their categories in a single pass and then sorting each category.
+     *
+     * @param scores         the calibration scores.
+     * @param categories     the category of each calibration score.
+     * @param categoryCount  the number of categories.
+     */
+    public MondrianCalibrationScores(double[] scores, int[] categories,
+                                     int categoryCount)
+    {
+        _offsets = new int[categoryCount + 1];
+        for (int i = 0; i < categories.length; i++) {
+            _offsets[categories[i] + 1]++;
+        }
+        for (int c = 0; c < categoryCount; c++) {
+            _offsets[c + 1] += _offsets[c];
+        }
+        _scores = new double[scores.length];
+        int[] next = Arrays.copyOf(_offsets, categoryCount);
+        for (int i = 0; i < scores.length; i++) {
+            _scores[next[categories[i]]++] = scores[i];
+        }
+        for (int c = 0; c < categoryCount; c++) {
+            Arrays.sort(_scores, _offsets[c], _offsets[c + 1]);
+        }
+    }
+
+    /**
+     * Creates the Mondrian calibration scores from per category arrays of
+     * sorted scores.
+     *
+     * @param sortedCategoryScores  the sorted calibration scores of each category.
+     */
+    public MondrianCalibrationScores(double[][] sortedCategoryScores)
+    {
+        _offsets = new int[sortedCategoryScores.length + 1];
+        for (int c = 0; c < sortedCategoryScores.length; c++) {
+            _offsets[c + 1] = _offsets[c] + sortedCategoryScores[c].length;
+        }
+        _scores = new double[_offsets[sortedCategoryScores.length]];
+        for (int c = 0; c < sortedCategoryScores.length; c++) {
+            System.arraycopy(sortedCategoryScores[c], 0,
+                             _scores, _offsets[c],
+                             sortedCategoryScores[c].length);
+        }
+    }
+
+    /**
+     * Returns the number of categories.
+     *
+     * @return the number of categories.
+     */
+    public int getCategoryCount()
+    {
+        return _offsets.length - 1;
+    }
+
+    /**
+     * Returns the total number of calibration scores.
+     *
+     * @return the number of calibration scores.
+     */
+    public int size()
+    {
+        return _scores.length;
+    }
+
+    /**
+     * Returns the number of calibration scores in a category.
+     *
+     * @param category  the category.
+     * @return the number of calibration scores in the category.
+     */
+    public int size(int category)
+    {
+        return _offsets[category + 1] - _offsets[category];
+    }
+
+    /**
+     * Returns the sorted calibration scores of a category.
+     *
+     * @param category  the category.
+     * @return a new <tt>double[]</tt> array containing the sorted calibration scores of the category.
+     */
+    public double[] getScores(int category)
+    {
+        return Arrays.copyOfRange(_scores,
+                                  _offsets[category],
+                                  _offsets[category + 1]);
+    }
+
+    /**
+     * Creates a calibration score index for a category. The index shares
+     * the score storage.
+     *
+     * @param category  the category.
+     * @return a <tt>CalibrationScoreIndex</tt> over the scores of the category.
+     */
+    public CalibrationScoreIndex createIndex(int category)
+    {
+        return new CalibrationScoreIndex(_scores,
+                                         _offsets[category],
+                                         _offsets[category + 1]);
+    }
+}
@@ -0,0 +1,420 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.cp;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import se.hb.jcp.nc.IClassificationNonconformityFunction;
+
+/**
+ * A bounded cache of the non-conformity scores of instances for each
+ * label, keyed by the contents of the sparse instance. Repeated instances,
+ * e.g. re-scored records and retries, are then scored without evaluating
+ * the non-conformity function.
+ *
+ * The cache is bounded by a number of entries and, optionally, by the
+ * estimated memory used by the entries. It is divided into segments with
+ * least-recently-used eviction to reduce contention between concurrent
+ * predictions. The cached scores are only valid for the non-conformity
+ * function they were computed with, so the cache must be cleared when that
+ * changes.
+ *
+ * The class is thread-safe.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class NonconformityScoreCache
+{
+    private static final int SEGMENTS = 16;
+    // Use a single segment for small caches to keep the bounds exact.
+    private static final int MIN_SEGMENT_ENTRIES = 64;
+    // The estimated size in bytes of an entry apart from its contents.
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final int  _maxEntries;
+    private final long _maxBytes;
+    private final Segment[] _segments;
+    private final AtomicLong _hits      = new AtomicLong();
+    private final AtomicLong _misses    = new AtomicLong();
+    private final AtomicLong _evictions = new AtomicLong();
+
+    /**
+     * Creates an empty cache bounded by the number of entries.
+     *
+     * @param maxEntries  the maximum number of cached instances.
+     */
+    public NonconformityScoreCache(int maxEntries)
+    {
+        this(maxEntries, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates an empty cache bounded by the number of entries and the
+     * estimated memory used by the entries.
+     *
+     * @param maxEntries  the maximum number of cached instances.
+     * @param maxBytes    the maximum estimated memory in bytes used by the cached instances and scores.
+     */
+    public NonconformityScoreCache(int maxEntries, long maxBytes)
+    {
+        if (maxEntries < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException
+                          ("The cache bounds must be positive.");
+        }
+        _maxEntries = maxEntries;
+        _maxBytes   = maxBytes;
+        int segments =
+            maxEntries >= SEGMENTS * MIN_SEGMENT_ENTRIES ? SEGMENTS : 1;
+        _segments = new Segment[segments];
+        for (int s = 0; s < segments; s++) {
+            _segments[s] = new Segment(maxEntries / segments,
+                                       maxBytes / segments);
+        }
+    }
+
+    /**
+     * Computes the non-conformity scores for the instance x with each of
+     * the labels known by the non-conformity function, using the cached
+     * scores if x has been scored before.
+     *
+     * @param nc        the non-conformity function.
+     * @param x         the instance.
+     * @param ncScores  an initialized <tt>double[]</tt> array to store the non-conformity scores in, in the order of the labels given by <tt>nc.getLabels()</tt>.
+     */
+    public void calculateNonConformityScores
+                    (IClassificationNonconformityFunction nc,
+                     DoubleMatrix1D x,
+                     double[] ncScores)
+    {
+        Key key = new Key(x);
+        if (!get(key, ncScores)) {
+            nc.calculateNonConformityScores(x, ncScores);
+            put(key, ncScores, 0, ncScores.length);
+        }
+    }
+
+    /**
+     * Computes the non-conformity scores for each of the instances in x
+     * with each of the labels known by the non-conformity function, using
+     * the cached scores for the instances that have been scored before.
+     * The remaining instances are scored with one batch call to the
+     * non-conformity function.
+     *
+     * @param nc        the non-conformity function.
+     * @param x         the instances.
+     * @param ncScores  an initialized <tt>double[]</tt> array with at least <tt>x.rows() * nc.getLabels().length</tt> elements to store the non-conformity scores in, as by <tt>nc.calculateNonConformityScores(x, ncScores)</tt>.
+     */
+    public void calculateNonConformityScores
+                    (IClassificationNonconformityFunction nc,
+                     DoubleMatrix2D x,
+                     double[] ncScores)
+    {
+        int n = x.rows();
+        int k = nc.getLabels().length;
+        Key[] keys = new Key[n];
+        int[] missing = new int[n];
+        int missingCount = 0;
+        double[] instanceNCScores = new double[k];
+        for (int i = 0; i < n; i++) {
+            keys[i] = new Key(x.viewRow(i));
+            if (get(keys[i], instanceNCScores)) {
+                System.arraycopy(instanceNCScores, 0, ncScores, i * k, k);
+            } else {
+                missing[missingCount++] = i;
+            }
+        }
+        if (missingCount == 0) {
+            return;
+        }
+        DoubleMatrix2D xm;
+        if (missingCount == n) {
+            xm = x;
+        } else {
+            xm = x.like(missingCount, x.columns());
+            for (int j = 0; j < missingCount; j++) {
+                xm.viewRow(j).assign(x.viewRow(missing[j]));
+            }
+        }
+        double[] missingNCScores = new double[missingCount * k];
+        nc.calculateNonConformityScores(xm, missingNCScores);
+        for (int j = 0; j < missingCount; j++) {
+            System.arraycopy(missingNCScores, j * k,
+                             ncScores, missing[j] * k, k);
+            put(keys[missing[j]], missingNCScores, j * k, k);
+        }
+    }
+
+    /**
+     * Removes all entries from this cache. The counters are not reset.
+     */
+    public void clear()
+    {
+        for (Segment segment : _segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Returns the number of cached instances.
+     *
+     * @return the number of cached instances.
+     */
+    public int size()
+    {
+        int size = 0;
+        for (Segment segment : _segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the estimated memory in bytes used by the cached instances
+     * and scores.
+     *
+     * @return the estimated memory in bytes used by the entries.
+     */
+    public long getEstimatedBytes()
+    {
+        long bytes = 0;
+        for (Segment segment : _segments) {
+            bytes += segment.bytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the maximum number of cached instances.
+     *
+     * @return the maximum number of cached instances.
+     */
+    public int getMaxEntries()
+    {
+        return _maxEntries;
+    }
+
+    /**
+     * Returns the maximum estimated memory in bytes used by the entries.
+     *
+     * @return the maximum estimated memory in bytes; or <tt>Long.MAX_VALUE</tt> if unbounded.
+     */
+    public long getMaxBytes()
+    {
+        return _maxBytes;
+    }
+
+    /**
+     * Returns the number of lookups that found the instance in the cache.
+     *
+     * @return the number of cache hits.
+     */
+    public long getHitCount()
+    {
+        return _hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that did not find the instance in the
+     * cache.
+     *
+     * @return the number of cache misses.
+     */
+    public long getMissCount()
+    {
+        return _misses.get();
+    }
+
+    /**
+     * Returns the number of entries evicted to respect the bounds.
+     *
+     * @return the number of evictions.
+     */
+    public long getEvictionCount()
+    {
+        return _evictions.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        long hits   = getHitCount();
+        long misses = getMissCount();
+        double hitRate = hits + misses > 0 ? (double)hits / (hits + misses)
+                                           : 0.0;
+        return "NonconformityScoreCache: " + hits + " hits, " +
+               misses + " misses (hit rate " + hitRate + "), " +
+               getEvictionCount() + " evictions, " +
+               size() + " entries (~" + getEstimatedBytes() + " bytes)";
+    }
+
+    private boolean get(Key key, double[] ncScores)
+    {
+        double[] scores = segmentFor(key).get(key);
+        if (scores != null) {
+            System.arraycopy(scores, 0, ncScores, 0, scores.length);
+            _hits.incrementAndGet();
+            return true;
+        } else {
+            _misses.incrementAndGet();
+            return false;
+        }
+    }
+
+    private void put(Key key, double[] ncScores, int offset, int length)
+    {
+        _evictions.addAndGet
+            (segmentFor(key).put(key,
+                                 Arrays.copyOfRange(ncScores,
+                                                    offset, offset + length)));
+    }
+
+    private Segment segmentFor(Key key)
+    {
+        // The low bits select the bucket within the segment's hash map.
+        return _segments[(key._hash >>> 24) % _segments.length];
+    }
+
+    /**
+     * A least-recently-used part of the cache.
+     */
+    private static class Segment
+    {
+        private final int  _maxEntries;
+        private final long _maxBytes;
+        private final LinkedHashMap<Key, double[]> _entries;
+        private long _bytes;
+
+        Segment(int maxEntries, long maxBytes)
+        {
+            _maxEntries = Math.max(1, maxEntries);
+            _maxBytes   = Math.max(1, maxBytes);
+            _entries    = new LinkedHashMap<Key, double[]>(16, 0.75f, true);
+        }
+
+        synchronized double[] get(Key key)
+        {
+            return _entries.get(key);
+        }
+
+        /**
+         * Inserts or replaces an entry and evicts the least recently used
+         * entries as needed.
+         *
+         * @return the number of evicted entries.
+         */
+        synchronized int put(Key key, double[] scores)
+        {
+            double[] old = _entries.put(key, scores);
+            if (old != null) {
+                _bytes -= estimateBytes(key, old);
+            }
+            _bytes += estimateBytes(key, scores);
+            int evicted = 0;
+            Iterator<Map.Entry<Key, double[]>> eldest =
+                _entries.entrySet().iterator();
+            // The new entry is kept even if it alone exceeds the bounds.
+            while (_entries.size() > 1 &&
+                   (_entries.size() > _maxEntries || _bytes > _maxBytes)) {
+                Map.Entry<Key, double[]> entry = eldest.next();
+                _bytes -= estimateBytes(entry.getKey(), entry.getValue());
+                eldest.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+
+        synchronized void clear()
+        {
+            _entries.clear();
+            _bytes = 0;
+        }
+
+        synchronized int size()
+        {
+            return _entries.size();
+        }
+
+        synchronized long bytes()
+        {
+            return _bytes;
+        }
+
+        private static long estimateBytes(Key key, double[] scores)
+        {
+            return ENTRY_OVERHEAD + 12L * key._indices.length +
+                   8L * scores.length;
+        }
+    }
+
+    /**
+     * The contents of a sparse instance with a precomputed hash.
+     */
+    private static final class Key
+    {
+        final int      _size;
+        final int[]    _indices;
+        final double[] _values;
+        final int      _hash;
+
+        Key(DoubleMatrix1D x)
+        {
+            IntArrayList    indexList = new IntArrayList();
+            DoubleArrayList valueList = new DoubleArrayList();
+            x.getNonZeros(indexList, valueList);
+            int nnz = indexList.size();
+            _size    = x.size();
+            _indices = Arrays.copyOf(indexList.elements(), nnz);
+            _values  = Arrays.copyOf(valueList.elements(), nnz);
+            // A 64-bit FNV-1a style content hash folded to 32 bits.
+            long hash = 0xcbf29ce484222325L ^ _size;
+            for (int i = 0; i < nnz; i++) {
+                hash = (hash ^ _indices[i]) * 0x100000001b3L;
+                hash = (hash ^ Double.doubleToLongBits(_values[i])) *
+                       0x100000001b3L;
+            }
+            hash ^= hash >>> 29;
+            _hash = (int)(hash ^ (hash >>> 32));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return _hash;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key)other;
+            return _hash == key._hash && _size == key._size &&
+                   Arrays.equals(_indices, key._indices) &&
+                   Arrays.equals(_values, key._values);
+        }
+    }
+}
@@ -24,13 +24,20 @@ import cern.colt.matrix.impl.DenseDoubleMatrix2D;
 
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
 import se.hb.jcp.nc.IClassificationNonconformityFunction;
+import se.hb.jcp.nc.IIncrementalNonconformityFunction;
+import se.hb.jcp.nc.IWarmStartNonconformityFunction;
+import se.hb.jcp.util.BinaryCSRCodec;
+import se.hb.jcp.util.ExactNearestNeighbourIndex;
+import se.hb.jcp.util.INearestNeighbourIndex;
 import se.hb.jcp.util.ParallelizedAction;
+import se.hb.jcp.util.SharedRowsMatrix2D;
 
 public class TransductiveConformalClassifier
     implements IConformalClassifier, java.io.Serializable
@@ -40,10 +47,28 @@ public class TransductiveConformalClassifier
     private IClassificationNonconformityFunction _nc;
     private Double[] _classes;
     private SortedMap<Double, Integer> _classIndex;
-    private boolean _useLabelConditionalCP;
+    // For Mondrian, e.g. label/class-conditional, conformal prediction.
+    private IMondrianTaxonomy _taxonomy;
 
     private DoubleMatrix2D _xtr;   
     private double[] _ytr;
+    // The Mondrian categories of the training instances. Not serialized.
+    private int[] _trainingCategories;
+    // The non-conformity function trained on the training set if it is
+    // incremental. Created on first use. Not serialized.
+    private volatile IIncrementalNonconformityFunction _incrementalNC;
+    // The non-conformity function trained on the training set if it
+    // supports warm-started training. Created on first use. Not serialized.
+    private volatile IWarmStartNonconformityFunction _warmStartNC;
+    // The number of nearest training instances each prediction is made
+    // with in the approximate local mode; or 0 to use the whole training set.
+    private int _localSize;
+    // The nearest neighbour index over the training instances for the
+    // approximate local mode. Not serialized.
+    private INearestNeighbourIndex _neighbourIndex;
+    // Whether the training set is saved with single precision attribute
+    // values.
+    private boolean _singlePrecisionStorage;
 
     /**
       * Creates a transductive conformal classifier using the supplied
@@ -71,9 +96,26 @@ public class TransductiveConformalClassifier
                (IClassificationNonconformityFunction nc,
                 double[] targets,
                 boolean  useLabelConditionalCP)
+    {
+        this(nc, targets,
+             useLabelConditionalCP ? new LabelTaxonomy(targets) : null);
+    }
+
+    /**
+      * Creates a transductive Mondrian conformal classifier using the
+      * supplied information.
+      *
+      * @param nc         the untrained non-conformity function to use.
+      * @param targets    the class labels.
+      * @param taxonomy   the Mondrian taxonomy to use; or null for normal conformal prediction.
+      */
+    public TransductiveConformalClassifier
+               (IClassificationNonconformityFunction nc,
+                double[]          targets,
+                IMondrianTaxonomy taxonomy)
     {
         _nc = nc;
-        _useLabelConditionalCP = useLabelConditionalCP;
+        _taxonomy = taxonomy;
         _classIndex = new TreeMap<Double, Integer>();
         for (int c = 0; c < targets.length; c++) {
             _classIndex.put(targets[c], c);
@@ -92,6 +134,29 @@ public class TransductiveConformalClassifier
     {
         _xtr = xtr;
         _ytr = ytr;
+        _trainingCategories = calculateTrainingCategories();
+        _incrementalNC = null;
+        _warmStartNC = null;
+        _neighbourIndex = createNeighbourIndex();
+    }
+
+    /**
+     * Creates a transductive conformal classifier sharing the configuration
+     * of the parent and trained on the supplied data in exact mode.
+     *
+     * @param parent    the conformal classifier to copy the configuration from.
+     * @param xtr       the attributes of the training instances.
+     * @param ytr       the targets of the training instances.
+     */
+    private TransductiveConformalClassifier
+                (TransductiveConformalClassifier parent,
+                 DoubleMatrix2D xtr, double[] ytr)
+    {
+        _nc = parent._nc;
+        _classes = parent._classes;
+        _classIndex = parent._classIndex;
+        _taxonomy = parent._taxonomy;
+        fit(xtr, ytr);
     }
 
     /**
@@ -108,16 +173,8 @@ public class TransductiveConformalClassifier
         ConformalClassification[] predictions = new ConformalClassification[n];
 
         if (!PARALLEL) {
-            // Create a local copy of the training set with one free slot
-            // for the instance to be predicted.
-            SimpleImmutableEntry<DoubleMatrix2D, double[]> mytr =
-                 createLocalTrainingSet();
-            DoubleMatrix2D myXtr = mytr.getKey();
-            double[] myYtr = mytr.getValue();
-
             for (int i = 0; i < n; i++) {
-                DoubleMatrix1D instance = x.viewRow(i);
-                predictions[i] = predict(instance, myXtr, myYtr);
+                predictions[i] = predict(x.viewRow(i));
             }
         } else {
             ClassifyAllAction all =
@@ -128,32 +185,29 @@ public class TransductiveConformalClassifier
     }
 
     /**
-     * Makes a prediction for the instance x.
+     * Makes a prediction for each instance in x and returns them in a
+     * compact batch representation.
+     * The method is parallellized over the instances.
      *
-     * @param x             the instance.
-     * @return a prediction in the form of a <tt>ConformalClassification</tt>.
+     * @param x             the instances.
+     * @return a <tt>ConformalClassificationBatch</tt> containing the predictions.
      */
     @Override
-    public ConformalClassification predict(DoubleMatrix1D x)
+    public ConformalClassificationBatch predictBatch(DoubleMatrix2D x)
     {
-        return new ConformalClassification(this, predictPValues(x));
+        return new ConformalClassificationBatch(_classes, predictPValues(x));
     }
 
     /**
-     * Makes a prediction for the instance x at the using prepared buffers for
-     * the training set.
+     * Makes a prediction for the instance x.
      *
      * @param x             the instance.
-     * @param xtr           an initialized <tt>DoubleMatrix2D</tt> containing the training instances and, last, one free slot.
-     * @param ytr           an initialized <tt>double[]</tt> array containing the training instances and, last, one free slot.
      * @return a prediction in the form of a <tt>ConformalClassification</tt>.
      */
-    private ConformalClassification predict(DoubleMatrix1D x,
-                                            DoubleMatrix2D xtr, double[] ytr)
+    @Override
+    public ConformalClassification predict(DoubleMatrix1D x)
     {
-        DoubleMatrix1D pValues = new DenseDoubleMatrix1D(_classes.length);
-        predictPValues(x, pValues, xtr, ytr);
-        return new ConformalClassification(this, pValues);
+        return new ConformalClassification(this, predictPValues(x));
     }
 
     /**
@@ -169,17 +223,31 @@ public class TransductiveConformalClassifier
         int n = x.rows();
         DoubleMatrix2D response = new DenseDoubleMatrix2D(n, _classes.length);
         if (!PARALLEL) {
-            // Create a local copy of the training set with one free slot
-            // for the instance to be predicted.
-            SimpleImmutableEntry<DoubleMatrix2D, double[]> mytr =
-                 createLocalTrainingSet();
-            DoubleMatrix2D myXtr = mytr.getKey();
-            double[] myYtr = mytr.getValue();
-
-            for (int i = 0; i < n; i++) {
-                DoubleMatrix1D instance = x.viewRow(i);
-                DoubleMatrix1D pValues  = response.viewRow(i);
-                predictPValues(instance, pValues, myXtr, myYtr);
+            if (isLocal()) {
+                for (int i = 0; i < n; i++) {
+                    createLocalClassifier(x.viewRow(i)).
+                        predictPValuesSerially(x.viewRow(i),
+                                               response.viewRow(i));
+                }
+            } else if (_nc instanceof IIncrementalNonconformityFunction) {
+                IIncrementalNonconformityFunction myNC =
+                    getIncrementalNonconformityFunction().copy();
+                for (int i = 0; i < n; i++) {
+                    predictPValues(x.viewRow(i), response.viewRow(i), myNC);
+                }
+            } else {
+                // Create a local copy of the training set with one free slot
+                // for the instance to be predicted.
+                SimpleImmutableEntry<DoubleMatrix2D, double[]> mytr =
+                    createLocalTrainingSet();
+                DoubleMatrix2D myXtr = mytr.getKey();
+                double[] myYtr = mytr.getValue();
+
+                for (int i = 0; i < n; i++) {
+                    DoubleMatrix1D instance = x.viewRow(i);
+                    DoubleMatrix1D pValues  = response.viewRow(i);
+                    predictPValues(instance, pValues, myXtr, myYtr);
+                }
             }
         } else {
             ClassifyPValuesAction all =
@@ -212,11 +280,40 @@ public class TransductiveConformalClassifier
     @Override
     public void predictPValues(DoubleMatrix1D x, DoubleMatrix1D pValues)
     {
+        if (isLocal()) {
+            createLocalClassifier(x).predictPValues(x, pValues);
+            return;
+        }
+        if (PARALLEL && _classes.length > 1) {
+            // Fan out the per-label non-conformity function fits to reduce
+            // the latency of a single prediction.
+            ClassifyLabelsAction all =
+                new ClassifyLabelsAction(x, pValues, 0, _classes.length);
+            all.start();
+            return;
+        }
+        predictPValuesSerially(x, pValues);
+    }
+
+    /**
+     * Computes the predicted p-values for the instance x in the calling
+     * thread.
+     *
+     * @param x          the instance.
+     * @param pValues    an initialized <tt>DoubleMatrix1D</tt> to store the p-values.
+     */
+    private void predictPValuesSerially(DoubleMatrix1D x,
+                                        DoubleMatrix1D pValues)
+    {
+        if (_nc instanceof IIncrementalNonconformityFunction) {
+            // Extend the already trained non-conformity function with x
+            // instead of retraining it on an (n+1)-sized training set.
+            predictPValues(x, pValues,
+                           getIncrementalNonconformityFunction().copy());
+            return;
+        }
         // FIXME: This creates a whole new (n+1)-sized copy of the training
         //        set which is rather inefficient for a single prediction.
-        // FIXME: Add special handling for nonconformity functions that
-        //        can be trained incrementally, i.e. without retraining from
-        //        the whole (n+1)-sized training set.
 
         // Create a local copy of the training set with one free slot
         // for the instance to be predicted.
@@ -240,23 +337,308 @@ public class TransductiveConformalClassifier
                                 DoubleMatrix1D pValues,
                                 DoubleMatrix2D xtr, double[] ytr)
     {
-        // FIXME: Parallelize over targets and/or calc_nc too?
+        // NOTE: Single predictions are parallelized over the targets by
+        //       ClassifyLabelsAction instead.
+        // FIXME: Parallelize calc_nc too?
         // Set up the training set for this prediction.
         int last = xtr.rows() - 1;
         xtr.viewRow(last).assign(x);
         for (int i = 0; i < _classes.length; i++) {
-            // Set up the target for this prediction.
-            ytr[last] = _classes[i];
+            pValues.set(i, calculatePValue(x, i, xtr, ytr));
+        }
+    }
+
+    /**
+     * Computes the p-value for the instance x and one target
+     * using prepared buffers for the training set.
+     *
+     * @param x        the instance.
+     * @param c        the index of the target.
+     * @param xtr      an initialized <tt>DoubleMatrix2D</tt> containing the training instances and, last, the instance x.
+     * @param ytr      an initialized <tt>double[]</tt> array containing the training instances and, last, one free slot.
+     * @return the p-value for the target.
+     */
+    private double calculatePValue(DoubleMatrix1D x, int c,
+                                   DoubleMatrix2D xtr, double[] ytr)
+    {
+        // Set up the target for this prediction.
+        ytr[ytr.length - 1] = _classes[c];
+        int category =
+            _taxonomy != null ? _taxonomy.getCategory(x, _classes[c]) : -1;
+
+        // Create a nonconformity function instance and predict.
+        SimpleImmutableEntry<Double, double[]> ncScores =
+            calculateNonConformityScore(xtr, ytr, category);
+        return Util.calculatePValue(ncScores.getKey(), ncScores.getValue());
+    }
 
-            // Create a nonconformity function instance and predict.
-            SimpleImmutableEntry<Double, double[]> ncScores =
-                calculateNonConformityScore(xtr, ytr, _useLabelConditionalCP);
-            double pValue  = Util.calculatePValue(ncScores.getKey(),
-                                                  ncScores.getValue());
-            pValues.set(i, pValue);
+    /**
+     * Computes the predicted p-values for the instance x
+     * using an incremental non-conformity function trained on the training
+     * set.
+     *
+     * @param x        the instance.
+     * @param pValues  an initialized <tt>DoubleMatrix1D</tt> to store the p-values.
+     * @param nc       an incremental non-conformity function trained on the training set without an extra instance. Not reentrant.
+     */
+    private void predictPValues(DoubleMatrix1D x,
+                                DoubleMatrix1D pValues,
+                                IIncrementalNonconformityFunction nc)
+    {
+        double[] ncScores = new double[_ytr.length + 1];
+        for (int i = 0; i < _classes.length; i++) {
+            pValues.set(i, calculatePValue(x, i, nc, ncScores));
         }
     }
 
+    /**
+     * Computes the p-value for the instance x and one target
+     * using an incremental non-conformity function trained on the training
+     * set.
+     *
+     * @param x         the instance.
+     * @param c         the index of the target.
+     * @param nc        an incremental non-conformity function trained on the training set without an extra instance. Not reentrant.
+     * @param ncScores  a <tt>double[]</tt> buffer for the non-conformity scores of the training set and the instance.
+     * @return the p-value for the target.
+     */
+    private double calculatePValue(DoubleMatrix1D x, int c,
+                                   IIncrementalNonconformityFunction nc,
+                                   double[] ncScores)
+    {
+        nc.addInstance(x, _classes[c]);
+        nc.calculateTrainingNonConformityScores(ncScores);
+        nc.removeInstance();
+        int category =
+            _taxonomy != null ? _taxonomy.getCategory(x, _classes[c]) : -1;
+        return Util.calculatePValue(ncScores[ncScores.length - 1],
+                                    selectCalibrationScores(ncScores,
+                                                            category));
+    }
+
+    /**
+     * Returns the non-conformity function trained on the training set if it
+     * is incremental. It is trained on first use.
+     *
+     * @return the trained incremental non-conformity function.
+     */
+    private IIncrementalNonconformityFunction
+        getIncrementalNonconformityFunction()
+    {
+        IIncrementalNonconformityFunction nc = _incrementalNC;
+        if (nc == null) {
+            synchronized (this) {
+                nc = _incrementalNC;
+                if (nc == null) {
+                    nc = ((IIncrementalNonconformityFunction)_nc).
+                             fitIncremental(_xtr, _ytr);
+                    _incrementalNC = nc;
+                }
+            }
+        }
+        return nc;
+    }
+
+    /**
+     * Returns whether the non-conformity function supports warm-started
+     * training, i.e., refits seeded from the solution on the training set.
+     *
+     * @return <tt>true</tt> if warm-started training is supported or <tt>false</tt> otherwise.
+     */
+    private boolean isWarmStartSupported()
+    {
+        return _nc instanceof IWarmStartNonconformityFunction &&
+               ((IWarmStartNonconformityFunction)_nc).isWarmStartSupported();
+    }
+
+    /**
+     * Returns the non-conformity function trained on the training set if it
+     * supports warm-started training. It is trained on first use.
+     *
+     * @return the trained warm-start non-conformity function.
+     */
+    private IWarmStartNonconformityFunction
+        getWarmStartNonconformityFunction()
+    {
+        IWarmStartNonconformityFunction nc = _warmStartNC;
+        if (nc == null) {
+            synchronized (this) {
+                nc = _warmStartNC;
+                if (nc == null) {
+                    nc = (IWarmStartNonconformityFunction)_nc.fitNew(_xtr,
+                                                                     _ytr);
+                    _warmStartNC = nc;
+                }
+            }
+        }
+        return nc;
+    }
+
+    /**
+     * Sets the number of nearest training instances each prediction is
+     * made with. In this approximate local mode the transductive
+     * non-conformity functions for an instance are trained only on its
+     * <tt>k</tt> nearest (Euclidean) training instances, which are found
+     * with a neighbour index built when the classifier is trained.
+     * The p-values are then those of a transductive conformal classifier
+     * trained on the local training set. Use
+     * <tt>calculateLocalDeviations()</tt> to assess the approximation.
+     *
+     * @param k    the number of nearest training instances to use; or 0 to use the whole training set.
+     */
+    public void setLocalSize(int k)
+    {
+        if (k < 0) {
+            throw new IllegalArgumentException
+                          ("The local size must be non-negative.");
+        }
+        _localSize = k;
+        _neighbourIndex = createNeighbourIndex();
+    }
+
+    /**
+     * Returns the number of nearest training instances each prediction is
+     * made with.
+     *
+     * @return the local size; or 0 if the whole training set is used.
+     */
+    public int getLocalSize()
+    {
+        return _localSize;
+    }
+
+    /**
+     * Computes the differences between the p-values of the approximate
+     * local mode and those of exact transductive conformal prediction for
+     * each target and instance in x. Since the exact p-values are costly
+     * this is intended for a small sample of instances.
+     *
+     * @param x             the instances.
+     * @return an <tt>DoubleMatrix2D</tt> containing the local minus the exact p-values for each instance.
+     */
+    public DoubleMatrix2D calculateLocalDeviations(DoubleMatrix2D x)
+    {
+        DoubleMatrix2D deviations = predictPValues(x);
+        if (isLocal()) {
+            TransductiveConformalClassifier exact =
+                new TransductiveConformalClassifier(this, _xtr, _ytr);
+            deviations.assign(exact.predictPValues(x),
+                              cern.jet.math.Functions.minus);
+        } else {
+            deviations.assign(0.0);
+        }
+        return deviations;
+    }
+
+    /**
+     * Returns whether predictions are made in the approximate local mode.
+     *
+     * @return <tt>true</tt> if the local mode is used or <tt>false</tt> otherwise.
+     */
+    private boolean isLocal()
+    {
+        return _neighbourIndex != null &&
+               _localSize < _neighbourIndex.size();
+    }
+
+    /**
+     * Creates the neighbour index over the training instances for the
+     * approximate local mode.
+     *
+     * @return the neighbour index; or null if not needed.
+     */
+    private INearestNeighbourIndex createNeighbourIndex()
+    {
+        if (_localSize <= 0 || _xtr == null || _localSize >= _xtr.rows()) {
+            return null;
+        }
+        return new ExactNearestNeighbourIndex(_xtr);
+    }
+
+    /**
+     * Creates a transductive conformal classifier trained on the nearest
+     * training instances of the instance x. Since a classifier cannot be
+     * trained without examples of every label, the nearest training
+     * instance of each label missing among the nearest instances is
+     * added too.
+     *
+     * @param x             the instance.
+     * @return the local transductive conformal classifier.
+     */
+    private TransductiveConformalClassifier
+        createLocalClassifier(DoubleMatrix1D x)
+    {
+        int[] nearest = selectLocalTrainingSet(x);
+        DoubleMatrix2D myXtr = _xtr.like(nearest.length, _xtr.columns());
+        double[] myYtr = new double[nearest.length];
+        for (int i = 0; i < nearest.length; i++) {
+            myXtr.viewRow(i).assign(_xtr.viewRow(nearest[i]));
+            myYtr[i] = _ytr[nearest[i]];
+        }
+        return new TransductiveConformalClassifier(this, myXtr, myYtr);
+    }
+
+    /**
+     * Selects the local training set for the instance x.
+     *
+     * @param x             the instance.
+     * @return an <tt>int[]</tt> array containing the positions of the selected training instances.
+     */
+    private int[] selectLocalTrainingSet(DoubleMatrix1D x)
+    {
+        int k = _localSize;
+        while (true) {
+            int[] nearest = _neighbourIndex.nearest(x, k);
+            // Find the first position of each label.
+            int[] first = new int[_classes.length];
+            Arrays.fill(first, -1);
+            int missing = _classes.length;
+            for (int i = 0; i < nearest.length && missing > 0; i++) {
+                Integer c = _classIndex.get(_ytr[nearest[i]]);
+                if (c != null && first[c] < 0) {
+                    first[c] = i;
+                    missing--;
+                }
+            }
+            if (missing > 0 && nearest.length < _neighbourIndex.size()) {
+                // Look further away for the missing labels.
+                k = (int)Math.min(2L * k, _neighbourIndex.size());
+                continue;
+            }
+            int size = Math.min(_localSize, nearest.length);
+            int[] selected = Arrays.copyOf(nearest, size + _classes.length);
+            for (int c = 0; c < first.length; c++) {
+                if (first[c] >= size) {
+                    selected[size++] = nearest[first[c]];
+                }
+            }
+            return Arrays.copyOf(selected, size);
+        }
+    }
+
+    /**
+     * Sets whether the attribute values of the training set are saved with
+     * single precision when this classifier is serialized. This halves the
+     * size of the values in saved models but loses precision.
+     *
+     * @param singlePrecision  a boolean indicating whether single precision should be used.
+     */
+    public void setSinglePrecisionStorage(boolean singlePrecision)
+    {
+        _singlePrecisionStorage = singlePrecision;
+    }
+
+    /**
+     * Returns whether the attribute values of the training set are saved
+     * with single precision when this classifier is serialized.
+     *
+     * @return <tt>true</tt> if single precision is used or <tt>false</tt> otherwise.
+     */
+    public boolean isSinglePrecisionStorage()
+    {
+        return _singlePrecisionStorage;
+    }
+
     @Override
     public IClassificationNonconformityFunction getNonconformityFunction()
     {
@@ -273,6 +655,8 @@ public class TransductiveConformalClassifier
     public void setNonconformityFunction(IClassificationNonconformityFunction nc)
     {
         _nc = nc;
+        _incrementalNC = null;
+        _warmStartNC = null;
     }
 
     @Override
@@ -307,34 +691,64 @@ public class TransductiveConformalClassifier
         }
     }
 
+    /**
+     * Returns the Mondrian taxonomy used by this conformal classifier.
+     *
+     * @return the Mondrian taxonomy or null for normal conformal prediction.
+     */
+    public IMondrianTaxonomy getTaxonomy()
+    {
+        return _taxonomy;
+    }
+
     /**
      * Computes the non-conformity score of the last instance in xtr and ytr
      * using the rest of xtr and ytr as the calibration set.
      *
      * @param xtr      an <tt>DoubleMatrix2D</tt> containing the training instances and, last, the test instance.
      * @param ytr      an <tt>double[]</tt> array containing the training instances and, last, the assumed label of the test instance.
-     * @param useLabelConditionalCP a <tt>boolean</tt> indicating whether label conditional conformal classification should be used.
+     * @param category the Mondrian category of the test instance, only training instances in this category are used for calibration; or -1 to use all training instances.
      * @return a pair of the test instance's nonconformity score and an <tt>double[]</tt> array containing the sorted nonconformity scores of the calibration set.
      */
     private SimpleImmutableEntry<Double, double[]>
         calculateNonConformityScore(DoubleMatrix2D xtr,
                                     double[]       ytr,
-                                    boolean        useLabelConditionalCP)
+                                    int            category)
     {
         // Create a nonconformity function instance and compute the
         // nonconformity scores for the instance and the calibration set.
-        IClassificationNonconformityFunction ncf =
-            _nc.fitNew(xtr, ytr);
+        // The first rows of xtr are the training set so, if supported,
+        // the training is seeded from the solution on the training set.
+        IClassificationNonconformityFunction ncf;
+        if (isWarmStartSupported()) {
+            ncf = getWarmStartNonconformityFunction().
+                      fitNewWarmStart(xtr, ytr);
+        } else {
+            ncf = _nc.fitNew(xtr, ytr);
+        }
 
         double[] nc = ncf.calc_nc(xtr, ytr);
         double ncScore = nc[nc.length - 1];
+        return new SimpleImmutableEntry<Double, double[]>
+                   (ncScore, selectCalibrationScores(nc, category));
+    }
+
+    /**
+     * Selects the calibration scores for a test instance among the
+     * non-conformity scores of the training instances.
+     *
+     * @param nc       an <tt>double[]</tt> array containing the nonconformity scores of the training instances and, last, the test instance.
+     * @param category the Mondrian category of the test instance, only training instances in this category are used for calibration; or -1 to use all training instances.
+     * @return an <tt>double[]</tt> array containing the sorted nonconformity scores of the calibration set.
+     */
+    private double[] selectCalibrationScores(double[] nc, int category)
+    {
         double[] ncCalibrationScores;
-        if (useLabelConditionalCP) {
+        if (category >= 0) {
             ncCalibrationScores = new double[nc.length - 1];
             int c = 0;
-            double target = ytr[ytr.length-1];
             for (int i = 0; i < nc.length - 1; i++) {
-                if (ytr[i] == target) {
+                if (_trainingCategories[i] == category) {
                     ncCalibrationScores[c++] = nc[i];
                 }
             }
@@ -343,8 +757,24 @@ public class TransductiveConformalClassifier
             ncCalibrationScores = Arrays.copyOf(nc, nc.length - 1);
         }
         Arrays.sort(ncCalibrationScores);
-        return new SimpleImmutableEntry<Double, double[]>(ncScore,
-                                                          ncCalibrationScores);
+        return ncCalibrationScores;
+    }
+
+    /**
+     * Computes the Mondrian categories of the training instances.
+     *
+     * @return an <tt>int[]</tt> array containing the category of each training instance; or null for normal conformal prediction.
+     */
+    private int[] calculateTrainingCategories()
+    {
+        if (_taxonomy == null || _xtr == null) {
+            return null;
+        }
+        int[] categories = new int[_xtr.rows()];
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] = _taxonomy.getCategory(_xtr.viewRow(i), _ytr[i]);
+        }
+        return categories;
     }
 
     /**
@@ -357,17 +787,10 @@ public class TransductiveConformalClassifier
     {
         // Create a local copy of the training set with one free slot
         // for the instance to be predicted.
+        // The training instances are shared with _xtr.
         int n = _xtr.rows();
-        DoubleMatrix2D myXtr = _xtr.like(n + 1, _xtr.columns());
-        double[] myYtr = new double[n + 1];
-        // FIXME: This way to copy the data is probably very inefficient.
-        //        Most of the underlying data-structures are row-oriented
-        //        and this should be used to share the row data.
-        // FIXED for: libsvm.
-        for (int r = 0; r < n; r++) {
-            myXtr.viewRow(r).assign(_xtr.viewRow(r));
-            myYtr[r] = _ytr[r];
-        }
+        DoubleMatrix2D myXtr = SharedRowsMatrix2D.create(_xtr, 1);
+        double[] myYtr = Arrays.copyOf(_ytr, n + 1);
         return new SimpleImmutableEntry<DoubleMatrix2D, double[]>(myXtr, myYtr);
     }
 
@@ -381,24 +804,13 @@ public class TransductiveConformalClassifier
         // Save the targets.
         oos.writeObject(_classes);
         oos.writeObject(_classIndex);
-        oos.writeObject(_useLabelConditionalCP);
-        // Save the training set in a space efficient representation.
-        // FIXME: What representation is space efficient?
-        //        Colt SparseDoubleMatrix2D isn't.
+        // Save the training set in the compact binary CSR encoding.
         // FIXME: The training set is currently always loaded back into the
         //        classifier's preferred representation.
-        DoubleMatrix2D tmp_xtr;
-        if (_xtr instanceof se.hb.jcp.bindings.jlibsvm.SparseDoubleMatrix2D) {
-            tmp_xtr = _xtr;
-        } else {
-            tmp_xtr =
-                new se.hb.jcp.bindings.jlibsvm.SparseDoubleMatrix2D
-                        (_xtr.rows(),
-                         _xtr.columns());
-            tmp_xtr.assign(_xtr);
-        }
-        oos.writeObject(tmp_xtr);
-        oos.writeObject(_ytr);
+        oos.writeObject(BinaryCSRCodec.encode(_xtr, _ytr,
+                                              _singlePrecisionStorage));
+        oos.writeObject(_taxonomy);
+        oos.writeObject(_localSize);
     }
 
     @SuppressWarnings("unchecked") // There is not much to do if the saved
@@ -409,17 +821,27 @@ public class TransductiveConformalClassifier
         _nc = (IClassificationNonconformityFunction)ois.readObject();
         _classes = (Double[])ois.readObject();
         _classIndex = (SortedMap<Double, Integer>)ois.readObject();
-        _useLabelConditionalCP = (boolean)ois.readObject();
-        DoubleMatrix2D tmp_xtr =
-            (DoubleMatrix2D)ois.readObject();
-        if(_nc != null && _nc.getClassifier() != null) {
-            _xtr = _nc.getClassifier().nativeStorageTemplate().
-                       like2D(tmp_xtr.rows(), tmp_xtr.columns());
-            _xtr.assign(tmp_xtr);
+        byte[] trainingSet = (byte[])ois.readObject();
+        // The training set is decoded directly into the classifier's
+        // preferred representation.
+        DoubleMatrix1D template;
+        if (_nc != null && _nc.getClassifier() != null) {
+            template = _nc.getClassifier().nativeStorageTemplate();
         } else {
-            _xtr = tmp_xtr;
+            template = new se.hb.jcp.bindings.jlibsvm.SparseDoubleMatrix1D(0);
         }
-        _ytr = (double[])ois.readObject();
+        ByteBuffer data = ByteBuffer.wrap(trainingSet);
+        _singlePrecisionStorage = BinaryCSRCodec.isSinglePrecision(data);
+        SimpleImmutableEntry<DoubleMatrix2D, double[]> tr =
+            BinaryCSRCodec.decode(data, template);
+        _xtr = tr.getKey();
+        _ytr = tr.getValue();
+        _taxonomy = (IMondrianTaxonomy)ois.readObject();
+        _localSize = (int)ois.readObject();
+        _trainingCategories = calculateTrainingCategories();
+        _incrementalNC = null;
+        _warmStartNC = null;
+        _neighbourIndex = createNeighbourIndex();
     }
 
     abstract class ClassifyAction extends se.hb.jcp.util.ParallelizedAction
@@ -427,6 +849,7 @@ public class TransductiveConformalClassifier
         protected DoubleMatrix2D _x;
         protected DoubleMatrix2D _myXtr;
         protected double[]       _myYtr;
+        protected IIncrementalNonconformityFunction _myNC;
 
         public ClassifyAction(DoubleMatrix2D x,
                               int first, int last)
@@ -439,12 +862,18 @@ public class TransductiveConformalClassifier
         protected void initialize(int first, int last)
         {
             super.initialize(first, last);
-            // Create a local copy of the training set with one free slot
-            // for the instance to be predicted.
-            SimpleImmutableEntry<DoubleMatrix2D, double[]> mytr =
-                 createLocalTrainingSet();
-            _myXtr = mytr.getKey();
-            _myYtr = mytr.getValue();
+            if (isLocal()) {
+                // Each instance gets its own local training set.
+            } else if (_nc instanceof IIncrementalNonconformityFunction) {
+                _myNC = getIncrementalNonconformityFunction().copy();
+            } else {
+                // Create a local copy of the training set with one free slot
+                // for the instance to be predicted.
+                SimpleImmutableEntry<DoubleMatrix2D, double[]> mytr =
+                    createLocalTrainingSet();
+                _myXtr = mytr.getKey();
+                _myYtr = mytr.getValue();
+            }
         }
 
         @Override
@@ -454,6 +883,18 @@ public class TransductiveConformalClassifier
             // Allow faster reclamation.
             _myXtr = null;
             _myYtr = null;
+            _myNC  = null;
+        }
+
+        protected void classify(DoubleMatrix1D x, DoubleMatrix1D pValues)
+        {
+            if (isLocal()) {
+                createLocalClassifier(x).predictPValuesSerially(x, pValues);
+            } else if (_myNC != null) {
+                predictPValues(x, pValues, _myNC);
+            } else {
+                predictPValues(x, pValues, _myXtr, _myYtr);
+            }
         }
     }
 
@@ -472,8 +913,11 @@ public class TransductiveConformalClassifier
         @Override
         protected void compute(int i)
         {
-            DoubleMatrix1D instance = _x.viewRow(i);
-            _response[i] = predict(instance, _myXtr, _myYtr);
+            DoubleMatrix1D pValues = new DenseDoubleMatrix1D(_classes.length);
+            classify(_x.viewRow(i), pValues);
+            _response[i] =
+                new ConformalClassification
+                        (TransductiveConformalClassifier.this, pValues);
         }
 
         @Override
@@ -498,9 +942,7 @@ public class TransductiveConformalClassifier
         @Override
         protected void compute(int i)
         {
-            DoubleMatrix1D instance = _x.viewRow(i);
-            DoubleMatrix1D pValues  = _response.viewRow(i);
-            predictPValues(instance, pValues, _myXtr, _myYtr);
+            classify(_x.viewRow(i), _response.viewRow(i));
         }
 
         @Override
@@ -510,4 +952,72 @@ public class TransductiveConformalClassifier
                                              first, last);
         }
     }
+
+    /**
+     * Computes the p-values of a single instance in parallel over the
+     * targets. Each subtask uses its own training buffers.
+     */
+    class ClassifyLabelsAction extends se.hb.jcp.util.ParallelizedAction
+    {
+        DoubleMatrix1D _x;
+        DoubleMatrix1D _pValues;
+        DoubleMatrix2D _myXtr;
+        double[]       _myYtr;
+        IIncrementalNonconformityFunction _myNC;
+        double[]       _myNCScores;
+
+        public ClassifyLabelsAction(DoubleMatrix1D x,
+                                    DoubleMatrix1D pValues,
+                                    int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _pValues = pValues;
+        }
+
+        @Override
+        protected void initialize(int first, int last)
+        {
+            super.initialize(first, last);
+            if (_nc instanceof IIncrementalNonconformityFunction) {
+                _myNC = getIncrementalNonconformityFunction().copy();
+                _myNCScores = new double[_ytr.length + 1];
+            } else {
+                // Create a local copy of the training set with the
+                // instance to be predicted in the free slot.
+                SimpleImmutableEntry<DoubleMatrix2D, double[]> mytr =
+                    createLocalTrainingSet();
+                _myXtr = mytr.getKey();
+                _myYtr = mytr.getValue();
+                _myXtr.viewRow(_myXtr.rows() - 1).assign(_x);
+            }
+        }
+
+        @Override
+        protected void finalize(int first, int last)
+        {
+            super.finalize(first, last);
+            // Allow faster reclamation.
+            _myXtr = null;
+            _myYtr = null;
+            _myNC  = null;
+            _myNCScores = null;
+        }
+
+        @Override
+        protected void compute(int c)
+        {
+            if (_myNC != null) {
+                _pValues.set(c, calculatePValue(_x, c, _myNC, _myNCScores));
+            } else {
+                _pValues.set(c, calculatePValue(_x, c, _myXtr, _myYtr));
+            }
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new ClassifyLabelsAction(_x, _pValues, first, last);
+        }
+    }
 }
@@ -1,5 +1,6 @@
 // JCP - Java Conformal Prediction framework
 // Copyright (C) 2014  Henrik Linusson
+// Copyright (C) 2026  Anders Gidenstam
 //
 // This library is free software: you can redistribute it and/or modify
 // it under the terms of the GNU Lesser General Public License as published
@@ -16,8 +17,504 @@
 //
 package se.hb.jcp.cp;
 
-import se.hb.jcp.nc.IRegressionNonconformityFunction;
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleFactory2D;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.linalg.CholeskyDecomposition;
 
-public class TransductiveConformalRegressor {
-    private IRegressionNonconformityFunction _nc;
+import java.util.Arrays;
+
+import se.hb.jcp.util.ParallelizedAction;
+
+/**
+ * Represents an instance of the transductive ridge regression confidence
+ * machine.
+ *
+ * The non-conformity score is the absolute residual of ridge regression
+ * trained on the training instances together with the test instance and
+ * its candidate target y. These residuals are affine functions of y, so the
+ * set of targets with a p-value above the significance level is found
+ * exactly by sorting the O(n) points where the ranking of the test
+ * residual changes. No retraining is needed: the inverse of the regularized
+ * Gram matrix of the training set is computed once in <tt>fit</tt> and is
+ * adjusted for each test instance by a Sherman-Morrison rank-one update.
+ *
+ * The model includes an intercept, which is regularized like the other
+ * coefficients. The Gram matrix is dense in the number of attributes, so
+ * the regressor is intended for data sets with a moderate number of
+ * attributes.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class TransductiveConformalRegressor
+    implements java.io.Serializable
+{
+    private static final boolean PARALLEL = true;
+
+    private double _ridge;
+    private int _attributeCount = -1;
+    // The training instances as sparse rows and their targets.
+    private int[][]    _rowIndices;
+    private double[][] _rowValues;
+    private double[]   _targets;
+    // The inverse of X'X + ridge * I for the training instances with the
+    // intercept as attribute _attributeCount.
+    private double[][] _inverseGram;
+    // The ridge regression coefficients and fitted training targets.
+    private double[] _weights;
+    private double[] _fitted;
+
+    /**
+     * Creates a transductive ridge regression confidence machine.
+     *
+     * @param ridge    the ridge regularization parameter, which must be positive.
+     */
+    public TransductiveConformalRegressor(double ridge)
+    {
+        if (!(ridge > 0.0)) {
+            throw new IllegalArgumentException
+                          ("The ridge parameter must be positive.");
+        }
+        _ridge = ridge;
+    }
+
+    /**
+     * Trains this conformal regressor using the supplied data.
+     *
+     * @param x             the attributes of the training instances.
+     * @param y             the targets of the training instances.
+     */
+    public void fit(DoubleMatrix2D x, double[] y)
+    {
+        int n = x.rows();
+        int p = x.columns();
+        int d = p + 1;
+        int[][]    rowIndices = new int[n][];
+        double[][] rowValues  = new double[n][];
+        IntArrayList    indices = new IntArrayList();
+        DoubleArrayList values  = new DoubleArrayList();
+        for (int i = 0; i < n; i++) {
+            x.viewRow(i).getNonZeros(indices, values);
+            rowIndices[i] = Arrays.copyOf(indices.elements(), indices.size());
+            rowValues[i]  = Arrays.copyOf(values.elements(), values.size());
+        }
+
+        // Form X'X + ridge * I and X'y with the intercept attribute.
+        double[][] gram = new double[d][d];
+        double[] xty = new double[d];
+        for (int i = 0; i < n; i++) {
+            int[]    idx = rowIndices[i];
+            double[] val = rowValues[i];
+            for (int j = 0; j < idx.length; j++) {
+                double[] gramRow = gram[idx[j]];
+                for (int k = 0; k < idx.length; k++) {
+                    gramRow[idx[k]] += val[j] * val[k];
+                }
+                gramRow[p] += val[j];
+                gram[p][idx[j]] += val[j];
+                xty[idx[j]] += val[j] * y[i];
+            }
+            gram[p][p] += 1.0;
+            xty[p] += y[i];
+        }
+        for (int j = 0; j < d; j++) {
+            gram[j][j] += _ridge;
+        }
+        DoubleMatrix2D inverse =
+            new CholeskyDecomposition(new DenseDoubleMatrix2D(gram)).
+                solve(DoubleFactory2D.dense.identity(d));
+        double[][] inverseGram = inverse.toArray();
+
+        double[] weights = new double[d];
+        for (int j = 0; j < d; j++) {
+            double sum = 0.0;
+            for (int k = 0; k < d; k++) {
+                sum += inverseGram[j][k] * xty[k];
+            }
+            weights[j] = sum;
+        }
+        double[] fitted = new double[n];
+        for (int i = 0; i < n; i++) {
+            fitted[i] = dot(rowIndices[i], rowValues[i], weights, p);
+        }
+
+        _attributeCount = p;
+        _rowIndices  = rowIndices;
+        _rowValues   = rowValues;
+        _targets     = Arrays.copyOf(y, n);
+        _inverseGram = inverseGram;
+        _weights     = weights;
+        _fitted      = fitted;
+    }
+
+    /**
+     * Computes the prediction interval for the instance x at the supplied
+     * significance level. The interval is the smallest interval containing
+     * all targets with a p-value above the significance level.
+     *
+     * @param x             the instance.
+     * @param significance  the significance level, in (0, 1).
+     * @return an array containing the lower and upper bound of the interval, which may be infinite; or <tt>NaN</tt> bounds if no target has a p-value above the significance level.
+     */
+    public double[] predictInterval(DoubleMatrix1D x, double significance)
+    {
+        checkTrained();
+        double[] lower = new double[1];
+        double[] upper = new double[1];
+        new IntervalCalculator(_targets.length).
+            calculate(x, new double[] { significance }, lower, upper);
+        return new double[] { lower[0], upper[0] };
+    }
+
+    /**
+     * Computes the prediction intervals for the instances in x at each of
+     * the supplied significance levels. The residuals for each instance
+     * are sorted only once for all the significance levels.
+     * The method is parallellized over the instances.
+     *
+     * @param x              the instances.
+     * @param significances  the significance levels, each in (0, 1).
+     * @return an array with a matrix for each significance level with one row per instance holding the lower and upper bound of its interval. See <tt>predictInterval</tt>.
+     */
+    public DoubleMatrix2D[] predictIntervals(DoubleMatrix2D x,
+                                             double[] significances)
+    {
+        checkTrained();
+        int n = x.rows();
+        DoubleMatrix2D[] intervals = new DoubleMatrix2D[significances.length];
+        for (int s = 0; s < significances.length; s++) {
+            intervals[s] = new DenseDoubleMatrix2D(n, 2);
+        }
+        if (!PARALLEL) {
+            IntervalCalculator calculator =
+                new IntervalCalculator(_targets.length);
+            for (int i = 0; i < n; i++) {
+                calculator.calculate(x.viewRow(i), significances,
+                                     intervals, i);
+            }
+        } else {
+            PredictIntervalsAction all =
+                new PredictIntervalsAction(x, significances, intervals, 0, n);
+            all.start();
+        }
+        return intervals;
+    }
+
+    /**
+     * Computes the p-value for the instance x with the target y.
+     *
+     * @param x    the instance.
+     * @param y    the target.
+     * @return the p-value.
+     */
+    public double predictPValue(DoubleMatrix1D x, double y)
+    {
+        checkTrained();
+        int n = _targets.length;
+        double[] a = new double[n];
+        double[] b = new double[n];
+        double prediction = calculateResiduals(x, a, b);
+        double testScore = Math.abs(y - prediction);
+        int greater = 0;
+        int equal = 0;
+        for (int i = 0; i < n; i++) {
+            double score = Math.abs(a[i] + b[i] * y);
+            if (score > testScore) {
+                greater++;
+            } else if (score == testScore) {
+                equal++;
+            }
+        }
+        return Util.calculatePValue(greater, equal, n);
+    }
+
+    /**
+     * Predicts the target for the instance x using ridge regression trained
+     * on the training instances.
+     *
+     * @param x    the instance.
+     * @return the predicted target.
+     */
+    public double predict(DoubleMatrix1D x)
+    {
+        checkTrained();
+        IntArrayList    indices = new IntArrayList();
+        DoubleArrayList values  = new DoubleArrayList();
+        x.getNonZeros(indices, values);
+        return dot(indices.elements(), values.elements(), indices.size(),
+                   _weights, _attributeCount);
+    }
+
+    /**
+     * Returns the ridge regularization parameter.
+     *
+     * @return the ridge regularization parameter.
+     */
+    public double getRidge()
+    {
+        return _ridge;
+    }
+
+    /**
+     * Returns whether this conformal regressor has been trained.
+     *
+     * @return <tt>true</tt> if the regressor has been trained or <tt>false</tt> otherwise.
+     */
+    public boolean isTrained()
+    {
+        return _inverseGram != null;
+    }
+
+    /**
+     * Returns the number of attributes the conformal regressor has been
+     * trained on.
+     *
+     * @return the number of attributes or -1 if the regressor has not been trained.
+     */
+    public int getAttributeCount()
+    {
+        return _attributeCount;
+    }
+
+    private void checkTrained()
+    {
+        if (_inverseGram == null) {
+            throw new UnsupportedOperationException
+                          ("The conformal regressor must be trained " +
+                           "before it can be used for prediction.");
+        }
+    }
+
+    /**
+     * Computes the residuals of the training instances, as affine functions
+     * a[i] + b[i] * y of the candidate target y of the test instance x,
+     * of ridge regression trained on the training instances and x. The
+     * residuals are scaled by a common positive factor such that the
+     * residual of the test instance is y - prediction.
+     *
+     * With K the inverse Gram matrix of the training set, k = K x and
+     * h = x'k the inverse Gram matrix including x is, by Sherman-Morrison,
+     * K - k k' / (1 + h). Multiplying the resulting residuals by (1 + h)
+     * gives a[i] = (1 + h)(y_i - f_i) + (x_i'k) x'w and b[i] = -(x_i'k),
+     * where f_i and w are the fitted targets and the coefficients from
+     * the training set alone.
+     *
+     * @param x    the test instance.
+     * @param a    an initialized <tt>double[]</tt> array to store the constant terms in.
+     * @param b    an initialized <tt>double[]</tt> array to store the coefficients of y in.
+     * @return the prediction for x of ridge regression trained on the training instances.
+     */
+    private double calculateResiduals(DoubleMatrix1D x, double[] a, double[] b)
+    {
+        int p = _attributeCount;
+        int d = p + 1;
+        IntArrayList    indices = new IntArrayList();
+        DoubleArrayList values  = new DoubleArrayList();
+        x.getNonZeros(indices, values);
+        int[]    idx = indices.elements();
+        double[] val = values.elements();
+        int nnz = indices.size();
+
+        double[] k = new double[d];
+        for (int r = 0; r < d; r++) {
+            double[] row = _inverseGram[r];
+            double sum = row[p];
+            for (int j = 0; j < nnz; j++) {
+                sum += row[idx[j]] * val[j];
+            }
+            k[r] = sum;
+        }
+        double h = dot(idx, val, nnz, k, p);
+        double prediction = dot(idx, val, nnz, _weights, p);
+
+        for (int i = 0; i < _targets.length; i++) {
+            double u = dot(_rowIndices[i], _rowValues[i], k, p);
+            a[i] = (1.0 + h) * (_targets[i] - _fitted[i]) + u * prediction;
+            b[i] = -u;
+        }
+        return prediction;
+    }
+
+    private static double dot(int[] idx, double[] val,
+                              double[] weights, int intercept)
+    {
+        return dot(idx, val, idx.length, weights, intercept);
+    }
+
+    private static double dot(int[] idx, double[] val, int nnz,
+                              double[] weights, int intercept)
+    {
+        double sum = weights[intercept];
+        for (int j = 0; j < nnz; j++) {
+            sum += val[j] * weights[idx[j]];
+        }
+        return sum;
+    }
+
+    /**
+     * Computes prediction intervals with reusable buffers. Not reentrant.
+     */
+    private class IntervalCalculator
+    {
+        private final double[] _a;
+        private final double[] _b;
+        // The points where a training residual starts or stops being at
+        // least as large as the test residual.
+        private final double[] _starts;
+        private final double[] _ends;
+
+        IntervalCalculator(int n)
+        {
+            _a = new double[n];
+            _b = new double[n];
+            _starts = new double[n];
+            _ends   = new double[n];
+        }
+
+        void calculate(DoubleMatrix1D x, double[] significances,
+                       DoubleMatrix2D[] intervals, int row)
+        {
+            double[] lower = new double[significances.length];
+            double[] upper = new double[significances.length];
+            calculate(x, significances, lower, upper);
+            for (int s = 0; s < significances.length; s++) {
+                intervals[s].setQuick(row, 0, lower[s]);
+                intervals[s].setQuick(row, 1, upper[s]);
+            }
+        }
+
+        void calculate(DoubleMatrix1D x, double[] significances,
+                       double[] lower, double[] upper)
+        {
+            int n = _a.length;
+            double at = -calculateResiduals(x, _a, _b);
+            // The test residual is |at + y|. Training instance i counts
+            // towards the p-value of y where |a[i] + b[i] y| >= |at + y|,
+            // which is an interval, the complement of an interval or a
+            // half-line.
+            int base = 1; // The test instance itself.
+            int starts = 0;
+            int ends = 0;
+            for (int i = 0; i < n; i++) {
+                double ai = _a[i];
+                double bi = _b[i];
+                if (bi < 0.0) {
+                    ai = -ai;
+                    bi = -bi;
+                }
+                if (bi != 1.0) {
+                    double p1 = (at - ai) / (bi - 1.0);
+                    double p2 = -(ai + at) / (bi + 1.0);
+                    double lo = Math.min(p1, p2);
+                    double hi = Math.max(p1, p2);
+                    if (bi > 1.0) {
+                        base++;
+                        _ends[ends++] = lo;
+                        _starts[starts++] = hi;
+                    } else {
+                        _starts[starts++] = lo;
+                        _ends[ends++] = hi;
+                    }
+                } else if (ai > at) {
+                    _starts[starts++] = -(ai + at) / 2.0;
+                } else if (ai < at) {
+                    base++;
+                    _ends[ends++] = -(ai + at) / 2.0;
+                } else {
+                    base++;
+                }
+            }
+            Arrays.sort(_starts, 0, starts);
+            Arrays.sort(_ends, 0, ends);
+
+            for (int s = 0; s < significances.length; s++) {
+                // y is in the prediction set where count / (n + 1) > eps.
+                double threshold = significances[s] * (n + 1);
+                double lo = Double.NaN;
+                double hi = Double.NaN;
+                int count = base;
+                if (count > threshold) {
+                    lo = Double.NEGATIVE_INFINITY;
+                }
+                int si = 0;
+                int ei = 0;
+                while (si < starts || ei < ends) {
+                    double t = (ei >= ends ||
+                                (si < starts && _starts[si] <= _ends[ei]))
+                        ? _starts[si] : _ends[ei];
+                    while (si < starts && _starts[si] == t) {
+                        count++;
+                        si++;
+                    }
+                    // The count at t includes the intervals closed at t.
+                    if (count > threshold) {
+                        if (Double.isNaN(lo)) {
+                            lo = t;
+                        }
+                        hi = t;
+                    }
+                    while (ei < ends && _ends[ei] == t) {
+                        count--;
+                        ei++;
+                    }
+                }
+                if (count > threshold) {
+                    hi = Double.POSITIVE_INFINITY;
+                    if (Double.isNaN(lo)) {
+                        lo = Double.NEGATIVE_INFINITY;
+                    }
+                }
+                lower[s] = lo;
+                upper[s] = hi;
+            }
+        }
+    }
+
+    class PredictIntervalsAction extends ParallelizedAction
+    {
+        DoubleMatrix2D _x;
+        double[] _significances;
+        DoubleMatrix2D[] _intervals;
+        IntervalCalculator _calculator;
+
+        public PredictIntervalsAction(DoubleMatrix2D x,
+                                      double[] significances,
+                                      DoubleMatrix2D[] intervals,
+                                      int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _significances = significances;
+            _intervals = intervals;
+        }
+
+        @Override
+        protected void initialize(int first, int last)
+        {
+            _calculator = new IntervalCalculator(_targets.length);
+        }
+
+        @Override
+        protected void finalize(int first, int last)
+        {
+            _calculator = null;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            _calculator.calculate(_x.viewRow(i), _significances,
+                                  _intervals, i);
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new PredictIntervalsAction(_x, _significances, _intervals,
+                                              first, last);
+        }
+    }
 }
@@ -26,13 +26,13 @@ public class Util
 
     public static double calculatePValue(double nc_pred, double[] nc_cal)
     {
-        double p_value;
         int idx = Arrays.binarySearch(nc_cal, nc_pred);
         if (idx < 0) {
             // The key was not found, idx == -insertion_idx - 1 where
             // insertion_idx is the the index of the first element
             // greater than the search key.
-            p_value = (nc_cal.length + (idx + 1) + 1) / (nc_cal.length + 1.0);
+            return calculatePValue(nc_cal.length + (idx + 1), 0,
+                                   nc_cal.length);
         } else {
             // idx == one index containing the search key.
             // Count the number of scores equal to nc_pred in nc_cal for
@@ -50,17 +50,31 @@ public class Util
                 count++;
                 idx = j;
             }
-            if (USE_SMOOTHING) {
-                // Smoothed p-value according to [Vovk, ALRW WP#5, 2012].
-                double theta = ThreadLocalRandom.current().nextDouble(1.0);
-                p_value =
-                    ((nc_cal.length - idx - count) + theta * (count + 1))
-                    / (nc_cal.length + 1.0);
-            } else {
-                // Unsmoothed p-value.
-                p_value = (nc_cal.length - idx + 1) / (nc_cal.length + 1.0);
-            }
+            return calculatePValue(nc_cal.length - idx - count, count,
+                                   nc_cal.length);
+        }
+    }
+
+    /**
+     * Computes the p-value of a non-conformity score given the number of
+     * calibration scores that are greater than and equal to it.
+     *
+     * @param greater  the number of calibration scores greater than the score.
+     * @param equal    the number of calibration scores equal to the score.
+     * @param n        the total number of calibration scores.
+     * @return the p-value.
+     */
+    static double calculatePValue(int greater, int equal, int n)
+    {
+        if (equal == 0) {
+            return (greater + 1) / (n + 1.0);
+        } else if (USE_SMOOTHING) {
+            // Smoothed p-value according to [Vovk, ALRW WP#5, 2012].
+            double theta = ThreadLocalRandom.current().nextDouble(1.0);
+            return (greater + theta * (equal + 1)) / (n + 1.0);
+        } else {
+            // Unsmoothed p-value.
+            return (greater + equal + 1) / (n + 1.0);
         }
-        return p_value;
     }
 }
@@ -17,6 +17,7 @@
 package se.hb.jcp.cp.measures;
 
 import se.hb.jcp.cp.ConformalClassification;
+import se.hb.jcp.cp.ConformalClassificationBatch;
 
 /**
  * Maintains running averages for a set of observed measures.
@@ -75,6 +76,21 @@ public class AggregatedObservedMeasures
         }
     }
 
+    /**
+     * Adds the supplied batch of conformal predictions to the aggregated
+     * measures.
+     * @param predictions  a <tt>ConformalClassificationBatch</tt>.
+     * @param trueLabels   the true labels of the instances.
+     */
+    public void add(ConformalClassificationBatch predictions,
+                    double[] trueLabels)
+    {
+        int i = 0;
+        for (ConformalClassification prediction : predictions) {
+            add(prediction, trueLabels[i++]);
+        }
+    }
+
     /**
      * Gets one of the aggregated observed measures in this set.
      * @param i the index (0 to size()-1) of the measure.
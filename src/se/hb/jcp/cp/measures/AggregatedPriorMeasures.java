@@ -17,6 +17,7 @@
 package se.hb.jcp.cp.measures;
 
 import se.hb.jcp.cp.ConformalClassification;
+import se.hb.jcp.cp.ConformalClassificationBatch;
 
 /**
  * Maintains running averages for a set of prior measures.
@@ -80,6 +81,18 @@ public class AggregatedPriorMeasures
         }
     }
 
+    /**
+     * Adds the supplied batch of conformal predictions to the aggregated
+     * prior measures.
+     * @param predictions  a <tt>ConformalClassificationBatch</tt>.
+     */
+    public void add(ConformalClassificationBatch predictions)
+    {
+        for (ConformalClassification prediction : predictions) {
+            add(prediction);
+        }
+    }
+
     /**
      * Gets one of the aggregated prior measures in this set.
      * @param i the index (0 to size()-1) of the measure.
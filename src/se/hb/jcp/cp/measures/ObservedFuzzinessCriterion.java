@@ -42,7 +42,7 @@ public class ObservedFuzzinessCriterion implements IObservedMeasure
     public double compute(ConformalClassification prediction,
                           double trueLabel)
     {
-        Double[] labels = prediction.getSource().getLabels();
+        Double[] labels = prediction.getLabels();
         double sum = 0.0;
         for (int i = 0; i < labels.length; i++) {
             if (labels[i] != trueLabel) {
@@ -0,0 +1,76 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.io;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An input stream reading from a byte buffer, e.g. a memory-mapped file.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+
+public class ByteBufferInputStream
+    extends InputStream
+{
+    private final ByteBuffer _buffer;
+
+    /**
+     * Creates an input stream reading the remaining bytes of the buffer.
+     *
+     * @param buffer   the buffer to read from. Its position is advanced by the reads.
+     */
+    public ByteBufferInputStream(ByteBuffer buffer)
+    {
+        _buffer = buffer;
+    }
+
+    @Override
+    public int read()
+    {
+        return _buffer.hasRemaining() ? (_buffer.get() & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length)
+    {
+        if (length == 0) {
+            return 0;
+        }
+        if (!_buffer.hasRemaining()) {
+            return -1;
+        }
+        length = Math.min(length, _buffer.remaining());
+        _buffer.get(bytes, offset, length);
+        return length;
+    }
+
+    @Override
+    public long skip(long n)
+    {
+        int skipped = (int)Math.max(0, Math.min(n, _buffer.remaining()));
+        _buffer.position(_buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available()
+    {
+        return _buffer.remaining();
+    }
+}
@@ -20,13 +20,15 @@ import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.StringTokenizer;
-import java.util.ArrayList;
 
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
 import cern.colt.matrix.DoubleMatrix1D;
-import cern.colt.matrix.DoubleFactory2D;
 
 import se.hb.jcp.cp.DataSet;
+import se.hb.jcp.util.CSRMatrices;
 
 /**
  * Data set reader for the libsvm sparse data format.
@@ -43,18 +45,19 @@ public class libsvmReader
         throws IOException
     {
         DataSet p;
-        // Read through the entire data set file and collect the information
-        // needed to instantiate the x and y matrices.
-        // FIXME: This is not very memory efficient.
+        // Read through the entire data set file and collect the
+        // attributes in compressed sparse row (CSR) form so that x can be
+        // created in one go.
         try (BufferedReader br = new BufferedReader(new InputStreamReader(source))) {
-            // Read through the entire data set file and collect the information
-            // needed to instantiate the x and y matrices.
-            // FIXME: This is not very memory efficient.
             int rows = 0;
             int columns = 0;
-            ArrayList<Double>   vy = new ArrayList<Double>();
-            ArrayList<int[]>    vxi = new ArrayList<int[]>();
-            ArrayList<double[]> vxv = new ArrayList<double[]>();
+            DoubleArrayList vy = new DoubleArrayList();
+            IntArrayList    rowPointers = new IntArrayList();
+            IntArrayList    indices = new IntArrayList();
+            DoubleArrayList values = new DoubleArrayList();
+            int[]    xi = new int[0];
+            double[] xv = new double[0];
+            rowPointers.add(0);
             while(true) {
                 String line = br.readLine();
                 if(line == null) break;
@@ -63,45 +66,83 @@ public class libsvmReader
 
                 vy.add(parseDouble(st.nextToken()));
                 int m = st.countTokens()/2;
-                int[]    xi = new int[m];
-                double[] xv = new double[m];
+                if (m > xi.length) {
+                    xi = new int[m];
+                    xv = new double[m];
+                }
+                boolean ascending = true;
                 for (int j=0; j<m; j++) {
-                    xi[j] = parseInt(st.nextToken());
+                    xi[j] = parseInt(st.nextToken()) - 1;
                     xv[j] = parseDouble(st.nextToken());
+                    if (xi[j] < 0) {
+                        throw new IOException
+                            ("Attribute index " + (xi[j] + 1) +
+                             " out of range in input data file.");
+                    }
+                    columns = Math.max(columns, xi[j] + 1);
+                    ascending = ascending && (j == 0 || xi[j-1] < xi[j]);
+                }
+                if (!ascending) {
+                    m = sortRow(xi, xv, m);
                 }
-                if (m > 0) {
-                    columns = Math.max(columns, xi[m-1]);
+                for (int j=0; j<m; j++) {
+                    // Zeros are not stored, as with DoubleMatrix2D.set().
+                    if (xv[j] != 0.0) {
+                        indices.add(xi[j]);
+                        values.add(xv[j]);
+                    }
                 }
-                vxi.add(xi);
-                vxv.add(xv);
+                rowPointers.add(indices.size());
                 rows++;
             }   p = new DataSet();
             // Create and initialize y.
-            p.y = new double[rows];
-            //p.y = DoubleFactory1D.dense.make(rows);
-            for (int r = 0; r < p.y.length; r++) {
-                p.y[r] = vy.get(r);
-                //p.y.set(r, vy.get(r));
-            }   // Create and initialize x.
-            if (template != null) {
-                p.x = template.like2D(rows, columns);
-            } else {
+            vy.trimToSize();
+            p.y = vy.elements();
+            // Create and initialize x.
+            if (template == null) {
                 // Default to libsvm data storage.
-                //p.x = new se.hb.jcp.bindings.libsvm.SparseDoubleMatrix2D(rows, columns);
+                //template = new se.hb.jcp.bindings.libsvm.SparseDoubleMatrix1D(0);
                 // Default to colt data storage.
-                p.x = DoubleFactory2D.sparse.make(rows, columns);
-            }   for (int r = 0; r < p.x.rows(); r++) {
-                int[]    xi = vxi.get(r);
-                double[] xv = vxv.get(r);
-                for (int a = 0; a < xi.length; a++) {
-                    p.x.set(r, xi[a] - 1, xv[a]);
-                }
+                template = new cern.colt.matrix.impl.SparseDoubleMatrix1D(0);
             }
+            rowPointers.trimToSize();
+            indices.trimToSize();
+            values.trimToSize();
+            p.x = CSRMatrices.create(template, columns,
+                                     rowPointers.elements(),
+                                     indices.elements(),
+                                     values.elements());
         }
 
         return p;
     }
 
+    // Sorts the first m attributes of a row by index. For repeated
+    // indices the last value is kept. Returns the new number of attributes.
+    private static int sortRow(int[] xi, double[] xv, int m)
+    {
+        long[] keys = new long[m];
+        for (int j = 0; j < m; j++) {
+            keys[j] = ((long)xi[j] << 32) | j;
+        }
+        Arrays.sort(keys);
+        int[]    indices = new int[m];
+        double[] values  = new double[m];
+        int n = 0;
+        for (int j = 0; j < m; j++) {
+            int position = (int)(keys[j] & 0xFFFFFFFFL);
+            if (n > 0 && indices[n-1] == xi[position]) {
+                n--;
+            }
+            indices[n] = xi[position];
+            values[n]  = xv[position];
+            n++;
+        }
+        System.arraycopy(indices, 0, xi, 0, n);
+        System.arraycopy(values, 0, xv, 0, n);
+        return n;
+    }
+
     private static double parseDouble(String s)
         throws IOException
     {
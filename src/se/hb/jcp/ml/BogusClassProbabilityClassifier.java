@@ -25,7 +25,8 @@ import cern.colt.matrix.DoubleMatrix2D;
  */
 public class BogusClassProbabilityClassifier
     extends ClassifierBase
-    implements IClassProbabilityClassifier
+    implements IClassProbabilityClassifier,
+               IWarmStartClassifier
 {
     private IClassifier _classifier;
     private double[]    _classes;
@@ -59,8 +60,40 @@ public class BogusClassProbabilityClassifier
     @Override
     public IClassifier fitNew(DoubleMatrix2D x, double[] y)
     {
-        return new BogusClassProbabilityClassifier(_classifier.fitNew(x, y),
-                                                   _classes);
+        return wrapTrained(_classifier.fitNew(x, y));
+    }
+
+    /**
+     * Returns whether the underlying classifier supports warm-started
+     * training.
+     *
+     * @return <tt>true</tt> if warm-started training is supported or <tt>false</tt> otherwise.
+     */
+    @Override
+    public boolean isWarmStartSupported()
+    {
+        return _classifier instanceof IWarmStartClassifier &&
+               ((IWarmStartClassifier)_classifier).isWarmStartSupported();
+    }
+
+    /**
+     * Trains and returns a copy of this classifier using the supplied data
+     * with the training of the underlying classifier seeded from its
+     * solution, if supported.
+     *
+     * @param x             the attributes of the instances.
+     * @param y             the targets of the instances.
+     * @return a new <tt>IClassifier</tt> instance trained with the supplied data and using the same algorithm and parameter settings as the parent instance.
+     */
+    @Override
+    public IClassifier fitNewWarmStart(DoubleMatrix2D x, double[] y)
+    {
+        if (isWarmStartSupported()) {
+            return wrapTrained(((IWarmStartClassifier)_classifier).
+                                   fitNewWarmStart(x, y));
+        } else {
+            return fitNew(x, y);
+        }
     }
 
     /**
@@ -87,21 +120,70 @@ public class BogusClassProbabilityClassifier
                           double[] probabilityEstimates)
     {
         double prediction = _classifier.predict(instance);
+        setProbabilityEstimates(prediction, probabilityEstimates, 0);
+        return prediction;
+    }
+
+    /**
+     * Predicts the targets for the supplied instances.
+     *
+     * @param x             the instances.
+     * @param predictions   an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the predicted targets in.
+     */
+    @Override
+    public void predict(DoubleMatrix2D x, double[] predictions)
+    {
+        _classifier.predict(x, predictions);
+    }
+
+    /**
+     * Predicts the targets and the target probabilities for the supplied
+     * instances.
+     *
+     * @param x                      the instances.
+     * @param predictions            an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the predicted targets in.
+     * @param probabilityEstimates   an initialized <tt>double[]</tt> array with at least <tt>x.rows() * getLabels().length</tt> elements to store the predicted probabilities in.
+     */
+    @Override
+    public void predict(DoubleMatrix2D x,
+                        double[] predictions,
+                        double[] probabilityEstimates)
+    {
+        _classifier.predict(x, predictions);
+        for (int i = 0; i < x.rows(); i++) {
+            setProbabilityEstimates(predictions[i], probabilityEstimates,
+                                    i * _classes.length);
+        }
+    }
+
+    private BogusClassProbabilityClassifier wrapTrained(IClassifier trained)
+    {
+        // The wrapper must report the underlying classifier as trained.
+        BogusClassProbabilityClassifier result =
+            new BogusClassProbabilityClassifier(trained, _classes);
+        result.setClassifierInformation(trained);
+        return result;
+    }
+
+    private void setProbabilityEstimates(double prediction,
+                                         double[] probabilityEstimates,
+                                         int offset)
+    {
         switch (_classes.length) {
         case 1:
             // FIXME: Assumes 1 class labelled 1.0.
-            probabilityEstimates[0] = Math.min(0.0, Math.max(prediction, 1.0));
+            probabilityEstimates[offset] =
+                Math.min(0.0, Math.max(prediction, 1.0));
             break;
         case 2:
             // FIXME: Probability hack. Assumes 2 classes labelled -1.0 and 1.0.
-            probabilityEstimates[0] = 0.5 - 0.5*prediction;
-            probabilityEstimates[1] = 0.5 + 0.5*prediction;
+            probabilityEstimates[offset]     = 0.5 - 0.5*prediction;
+            probabilityEstimates[offset + 1] = 0.5 + 0.5*prediction;
             break;
         default:
             throw new UnsupportedOperationException
                           ("Unsupported number of classes.");
         }
-        return prediction;
     }
 
     /**
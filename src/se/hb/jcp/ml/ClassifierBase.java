@@ -21,6 +21,8 @@ import java.util.TreeSet;
 
 import cern.colt.matrix.DoubleMatrix2D;
 
+import se.hb.jcp.util.ParallelizedAction;
+
 /**
  * Base class for classifiers that provide implementations of some of the
  * generic IClassifierInformation methods.
@@ -29,6 +31,8 @@ public abstract class ClassifierBase
     implements IClassifier,
                java.io.Serializable
 {
+    private static final boolean PARALLEL = true;
+
     private int _attributeCount = -1;
     private Double[] _labels = null;
 
@@ -67,5 +71,68 @@ public abstract class ClassifierBase
         return _labels;
     }
 
+    /**
+     * Predicts the targets for the supplied instances.
+     * This generic implementation predicts the instances one at a time in
+     * parallel. Subclasses should override it if the underlying library
+     * can predict a block of instances in one call.
+     *
+     * @param x             the instances.
+     * @param predictions   an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the predicted targets in.
+     */
+    @Override
+    public void predict(DoubleMatrix2D x, double[] predictions)
+    {
+        if (!PARALLEL) {
+            for (int i = 0; i < x.rows(); i++) {
+                predictions[i] = predict(x.viewRow(i));
+            }
+        } else {
+            PredictAction all = new PredictAction(x, predictions, 0, x.rows());
+            all.start();
+        }
+    }
+
     protected abstract void internalFit(DoubleMatrix2D x, double[] y);
+
+    /**
+     * Sets up the classifier information of this classifier from that of
+     * an already trained classifier. This is intended for classifiers that
+     * wrap an underlying classifier trained by other means than
+     * <tt>fit()</tt>, e.g., one returned by <tt>fitNew()</tt>.
+     *
+     * @param trained       the trained classifier to take the information from.
+     */
+    protected final void setClassifierInformation(IClassifierInformation trained)
+    {
+        _attributeCount = trained.getAttributeCount();
+        _labels         = trained.getLabels();
+    }
+
+    class PredictAction extends ParallelizedAction
+    {
+        DoubleMatrix2D _x;
+        double[] _predictions;
+
+        public PredictAction(DoubleMatrix2D x,
+                             double[] predictions,
+                             int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _predictions = predictions;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            _predictions[i] = predict(_x.viewRow(i));
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new PredictAction(_x, _predictions, first, last);
+        }
+    }
 }
@@ -34,7 +34,8 @@ public final class ClassifierFactory
             "se.hb.jcp.bindings.jlibsvm.SVMClassifier",
             "se.hb.jcp.bindings.jliblinear.LinearClassifier",
             "se.hb.jcp.bindings.opencv.SVMClassifier",
-            "se.hb.jcp.bindings.opencv.RandomForestClassifier"
+            "se.hb.jcp.bindings.opencv.RandomForestClassifier",
+            "se.hb.jcp.ml.RandomForestClassifier"
         };
 
     private ClassifierFactory()
@@ -65,6 +66,8 @@ public final class ClassifierFactory
             return new se.hb.jcp.bindings.opencv.SVMClassifier(config);
         case 4:
             return new se.hb.jcp.bindings.opencv.RandomForestClassifier(config);
+        case 5:
+            return new se.hb.jcp.ml.RandomForestClassifier(config);
         default:
             throw new UnsupportedOperationException("Unknown classifier type.");
         }
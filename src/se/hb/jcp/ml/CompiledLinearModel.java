@@ -0,0 +1,185 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.ml;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import se.hb.jcp.util.ParallelizedAction;
+
+/**
+ * A linear model w'x + b in a form suitable for fast evaluation: a dense
+ * primitive weight vector and a bias. The score of an instance is computed
+ * over the non-zero attributes of the instance only, so the cost is
+ * proportional to the number of non-zeros rather than to the number of
+ * attributes. Linear models from the different machine learning libraries
+ * are compiled into this form by their bindings.
+ *
+ * Attributes beyond the weight vector have weight 0.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public final class CompiledLinearModel
+    implements java.io.Serializable
+{
+    private final double[] _w;
+    private final double _b;
+
+    /**
+     * Creates a linear model with the supplied weights and bias.
+     * The weight array is not copied.
+     *
+     * @param w    the weights of the attributes.
+     * @param b    the bias.
+     */
+    public CompiledLinearModel(double[] w, double b)
+    {
+        _w = w;
+        _b = b;
+    }
+
+    /**
+     * Returns the weight of the attribute with the supplied index.
+     *
+     * @param index    the attribute index.
+     * @return the weight; or 0 if the index is beyond the weight vector.
+     */
+    public double weight(int index)
+    {
+        return index < _w.length ? _w[index] : 0.0;
+    }
+
+    /**
+     * Returns the bias of this linear model.
+     *
+     * @return the bias.
+     */
+    public double getBias()
+    {
+        return _b;
+    }
+
+    /**
+     * Returns the number of attributes with a weight in this linear model.
+     *
+     * @return the length of the weight vector.
+     */
+    public int getAttributeCount()
+    {
+        return _w.length;
+    }
+
+    /**
+     * Computes the score w'x + b for the instance given by its non-zero
+     * attributes.
+     *
+     * @param indices  the indices of the non-zero attributes.
+     * @param values   the values of the non-zero attributes.
+     * @param nnz      the number of non-zero attributes.
+     * @return the score of the instance.
+     */
+    public double score(int[] indices, double[] values, int nnz)
+    {
+        double score = _b;
+        for (int i = 0; i < nnz; i++) {
+            int index = indices[i];
+            if (index < _w.length) {
+                score += _w[index] * values[i];
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Computes the score w'x + b for the instance.
+     *
+     * @param instance the instance.
+     * @return the score of the instance.
+     */
+    public double score(DoubleMatrix1D instance)
+    {
+        IntArrayList    indexList = new IntArrayList();
+        DoubleArrayList valueList = new DoubleArrayList();
+        return score(instance, indexList, valueList);
+    }
+
+    /**
+     * Computes the score w'x + b for each of the instances.
+     * The method is parallellized over the instances.
+     *
+     * @param x        the instances.
+     * @param scores   an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the scores in.
+     */
+    public void score(DoubleMatrix2D x, double[] scores)
+    {
+        ScoreAction all = new ScoreAction(x, scores, 0, x.rows());
+        all.start();
+    }
+
+    private double score(DoubleMatrix1D instance,
+                         IntArrayList indexList, DoubleArrayList valueList)
+    {
+        instance.getNonZeros(indexList, valueList);
+        return score(indexList.elements(), valueList.elements(),
+                     indexList.size());
+    }
+
+    class ScoreAction extends ParallelizedAction
+    {
+        DoubleMatrix2D _x;
+        double[] _scores;
+        IntArrayList    _indexList;
+        DoubleArrayList _valueList;
+
+        public ScoreAction(DoubleMatrix2D x,
+                           double[] scores,
+                           int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _scores = scores;
+        }
+
+        @Override
+        protected void initialize(int first, int last)
+        {
+            _indexList = new IntArrayList();
+            _valueList = new DoubleArrayList();
+        }
+
+        @Override
+        protected void finalize(int first, int last)
+        {
+            _indexList = null;
+            _valueList = null;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            _scores[i] = score(_x.viewRow(i), _indexList, _valueList);
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new ScoreAction(_x, _scores, first, last);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package se.hb.jcp.ml;
 
 import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
 
 /**
  * Represents an instance of a specific machine learning classification
@@ -37,4 +38,19 @@ public interface IClassProbabilityClassifier
      */
     public double predict(DoubleMatrix1D instance,
                           double[] probabilityEstimates);
+
+    /**
+     * Predicts the targets and the target probabilities for the supplied
+     * instances. The probabilities of instance <tt>i</tt> are stored at
+     * positions <tt>i * getLabels().length</tt> and onwards in
+     * <tt>probabilityEstimates</tt>, in the same order as by
+     * <tt>predict(DoubleMatrix1D, double[])</tt>.
+     *
+     * @param x                      the instances.
+     * @param predictions            an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the predicted targets in.
+     * @param probabilityEstimates   an initialized <tt>double[]</tt> array with at least <tt>x.rows() * getLabels().length</tt> elements to store the predicted probabilities in.
+     */
+    public void predict(DoubleMatrix2D x,
+                        double[] predictions,
+                        double[] probabilityEstimates);
 }
@@ -54,4 +54,14 @@ public interface IClassifier
      * @return the predicted target of the instance.
      */
     public double predict(DoubleMatrix1D instance);
+
+    /**
+     * Predicts the targets for the supplied instances.
+     * Implementations for native classifiers should process the instances
+     * in as few calls into the underlying library as possible.
+     *
+     * @param x             the instances.
+     * @param predictions   an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the predicted targets in.
+     */
+    public void predict(DoubleMatrix2D x, double[] predictions);
 }
@@ -0,0 +1,42 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.ml;
+
+/**
+ * Specifies an interface for ensemble classifiers that provide out-of-bag
+ * class probability estimates for their training instances, i.e.
+ * estimates made by the members of the ensemble that were not trained on
+ * the instance. Such estimates can be used in place of the estimates for
+ * a separate calibration set.
+ *
+ * Contract for JCP use:
+ * 1. The methods implemented for this interface must be reentrant.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public interface IOutOfBagClassifier
+    extends IClassProbabilityClassifier
+{
+    /**
+     * Returns the out-of-bag class probability estimates for the instances
+     * this classifier was last trained on. The estimates are not saved
+     * with the classifier.
+     *
+     * @return a <tt>double[]</tt> array with the probability estimates of training instance <tt>i</tt> from position <tt>i * getLabels().length</tt> in the order assumed by JCP; or null if they are not available.
+     */
+    public double[] getOutOfBagProbabilityEstimates();
+}
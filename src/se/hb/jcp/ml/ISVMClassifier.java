@@ -17,6 +17,7 @@
 package se.hb.jcp.ml;
 
 import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
 
 /**
  * Specifies an interface for SVM classifiers giving access to internal SVM
@@ -38,4 +39,13 @@ public interface ISVMClassifier
      */
     public double distanceFromSeparatingPlane(DoubleMatrix1D instance);
 
+    /**
+     * Computes the signed distance between the separating hyperplane and
+     * each of the supplied instances.
+     *
+     * @param x          the instances.
+     * @param distances  an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the signed distances in.
+     */
+    public void distanceFromSeparatingPlane(DoubleMatrix2D x,
+                                            double[] distances);
 }
@@ -0,0 +1,56 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.ml;
+
+import cern.colt.matrix.DoubleMatrix2D;
+
+/**
+ * Specifies an interface for classifiers that can seed the training of a
+ * new classifier with their own solution, e.g. for transductive conformal
+ * prediction where a classifier trained on n instances is refitted on the
+ * same n instances plus one.
+ *
+ * Contract for JCP use:
+ * 1. The methods implemented for this interface must be reentrant.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public interface IWarmStartClassifier
+    extends IClassifier
+{
+    /**
+     * Returns whether the algorithm and parameter settings of this
+     * classifier support warm-started training.
+     *
+     * @return <tt>true</tt> if warm-started training is supported or <tt>false</tt> otherwise.
+     */
+    public boolean isWarmStartSupported();
+
+    /**
+     * Trains and returns a copy of this classifier using the supplied data
+     * with the training seeded from the solution of this trained
+     * classifier. The first rows of <tt>x</tt> and <tt>y</tt> must be the
+     * instances this classifier was trained on, in the same order.
+     * If the solution of this classifier cannot be used the copy is
+     * trained from scratch as by <tt>fitNew()</tt>.
+     *
+     * @param x             the attributes of the instances.
+     * @param y             the targets of the instances.
+     * @return a new <tt>IClassifier</tt> instance trained with the supplied data and using the same algorithm and parameter settings as the parent instance.
+     */
+    public IClassifier fitNewWarmStart(DoubleMatrix2D x, double[] y);
+}
@@ -0,0 +1,969 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.ml;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.SparseDoubleMatrix1D;
+
+import org.json.JSONObject;
+
+import se.hb.jcp.util.ParallelizedAction;
+
+/**
+ * A random forest classifier implemented in Java.
+ *
+ * The trees are built in parallel on bootstrap samples of the training
+ * set, which is first copied into primitive column-major dense or CSR
+ * arrays depending on its density. Each split is chosen by the Gini
+ * impurity among randomly drawn attributes; for sparse training sets only
+ * attributes that are non-zero for some instance in the node are drawn.
+ * Each trained tree is flattened into parallel node arrays where the two
+ * children of a node are adjacent, so that inference only needs a
+ * comparison and an addition per level.
+ *
+ * The class probability estimates are the averages over the trees of the
+ * class frequencies in the leaves. The out-of-bag estimates for the
+ * training instances are computed after training.
+ *
+ * The JSON parameters are <tt>max_num_of_trees</tt> (default 100),
+ * <tt>max_depth</tt> (default unlimited), <tt>min_sample_count</tt>
+ * (the smallest node that is split, default 2), <tt>nactive_vars</tt>
+ * (the number of attributes drawn per split, default the square root of
+ * the number of attributes) and <tt>seed</tt> (default random).
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class RandomForestClassifier
+    extends ClassifierBase
+    implements IOutOfBagClassifier,
+               java.io.Serializable
+{
+    private static final boolean PARALLEL = true;
+    private static final SparseDoubleMatrix1D _storageTemplate =
+        new SparseDoubleMatrix1D(0);
+    // Training sets with at most this fraction of non-zeros are stored in
+    // CSR format.
+    private static final double MAX_SPARSE_DENSITY = 0.25;
+
+    private int     _numberOfTrees = 100;
+    private int     _maxDepth = Integer.MAX_VALUE;
+    private int     _minSampleCount = 2;
+    private int     _activeVariables = 0;
+    private boolean _hasSeed = false;
+    private long    _seed;
+
+    private double[] _classes;
+    private Tree[] _trees;
+    // The out-of-bag class probability estimates. Not serialized.
+    private transient double[] _outOfBagProbabilities;
+    // Per-thread buffers for the scattered instances. Not serialized.
+    private transient volatile ThreadLocal<double[]> _buffers;
+
+    public RandomForestClassifier()
+    {
+    }
+
+    public RandomForestClassifier(JSONObject parameters)
+    {
+        this();
+        if (parameters.has("max_num_of_trees")) {
+            _numberOfTrees = parameters.getInt("max_num_of_trees");
+        }
+        if (parameters.has("max_depth")) {
+            _maxDepth = parameters.getInt("max_depth");
+        }
+        if (parameters.has("min_sample_count")) {
+            _minSampleCount = parameters.getInt("min_sample_count");
+        }
+        if (parameters.has("nactive_vars")) {
+            _activeVariables = parameters.getInt("nactive_vars");
+        }
+        if (parameters.has("seed")) {
+            _hasSeed = true;
+            _seed = parameters.getLong("seed");
+        }
+        if (_numberOfTrees < 1 || _maxDepth < 1 || _activeVariables < 0) {
+            throw new IllegalArgumentException
+                          ("se.hb.jcp.ml.RandomForestClassifier: " +
+                           "Invalid parameters '" + parameters + "'.");
+        }
+    }
+
+    private RandomForestClassifier(RandomForestClassifier parent)
+    {
+        _numberOfTrees   = parent._numberOfTrees;
+        _maxDepth        = parent._maxDepth;
+        _minSampleCount  = parent._minSampleCount;
+        _activeVariables = parent._activeVariables;
+        _hasSeed         = parent._hasSeed;
+        _seed            = parent._seed;
+    }
+
+    protected void internalFit(DoubleMatrix2D x, double[] y)
+    {
+        TrainingData data = new TrainingData(x);
+        double[] classes = y.clone();
+        Arrays.sort(classes);
+        int k = 0;
+        for (int i = 0; i < classes.length; i++) {
+            if (k == 0 || classes[i] != classes[k - 1]) {
+                classes[k++] = classes[i];
+            }
+        }
+        classes = Arrays.copyOf(classes, k);
+        int[] labels = new int[y.length];
+        for (int i = 0; i < y.length; i++) {
+            labels[i] = Arrays.binarySearch(classes, y[i]);
+        }
+        int activeVariables = _activeVariables > 0
+            ? Math.min(_activeVariables, data._p)
+            : Math.max(1, (int)Math.sqrt(data._p));
+        long seed = _hasSeed ? _seed : new Random().nextLong();
+
+        Tree[] trees = new Tree[_numberOfTrees];
+        long[][] inBag = new long[_numberOfTrees][];
+        BuildTreesAction build =
+            new BuildTreesAction(data, labels, classes.length,
+                                 activeVariables, seed, trees, inBag,
+                                 0, _numberOfTrees);
+        if (!PARALLEL) {
+            build.initialize(0, _numberOfTrees);
+            for (int t = 0; t < _numberOfTrees; t++) {
+                build.compute(t);
+            }
+        } else {
+            build.start();
+        }
+        _classes = classes;
+        _trees = trees;
+        _buffers = null;
+
+        double[] outOfBag = new double[y.length * classes.length];
+        OutOfBagAction oob =
+            new OutOfBagAction(data, inBag, outOfBag, 0, y.length);
+        oob.start();
+        _outOfBagProbabilities = outOfBag;
+    }
+
+    public IClassifier fitNew(DoubleMatrix2D x, double[] y)
+    {
+        RandomForestClassifier clone = new RandomForestClassifier(this);
+        clone.fit(x, y);
+        return clone;
+    }
+
+    public double predict(DoubleMatrix1D instance)
+    {
+        return predict(instance, new double[_classes.length]);
+    }
+
+    public double predict(DoubleMatrix1D instance,
+                          double[] probabilityEstimates)
+    {
+        double[] buffer = getBuffer();
+        IntArrayList    indexList = new IntArrayList();
+        DoubleArrayList valueList = new DoubleArrayList();
+        instance.getNonZeros(indexList, valueList);
+        int[]    indices = indexList.elements();
+        double[] values  = valueList.elements();
+        int nnz = indexList.size();
+        for (int j = 0; j < nnz; j++) {
+            if (indices[j] < buffer.length) {
+                buffer[indices[j]] = values[j];
+            }
+        }
+        double prediction = predict(buffer, probabilityEstimates, 0);
+        for (int j = 0; j < nnz; j++) {
+            if (indices[j] < buffer.length) {
+                buffer[indices[j]] = 0.0;
+            }
+        }
+        return prediction;
+    }
+
+    /**
+     * Predicts the targets for the supplied instances.
+     * The method is parallellized over the instances.
+     *
+     * @param x             the instances.
+     * @param predictions   an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the predicted targets in.
+     */
+    @Override
+    public void predict(DoubleMatrix2D x, double[] predictions)
+    {
+        PredictAction all =
+            new PredictAction(x, predictions, null, 0, x.rows());
+        all.start();
+    }
+
+    /**
+     * Predicts the targets and the target probabilities for the supplied
+     * instances.
+     * The method is parallellized over the instances.
+     *
+     * @param x                      the instances.
+     * @param predictions            an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the predicted targets in.
+     * @param probabilityEstimates   an initialized <tt>double[]</tt> array with at least <tt>x.rows() * getLabels().length</tt> elements to store the predicted probabilities in.
+     */
+    @Override
+    public void predict(DoubleMatrix2D x,
+                        double[] predictions,
+                        double[] probabilityEstimates)
+    {
+        PredictAction all =
+            new PredictAction(x, predictions, probabilityEstimates,
+                              0, x.rows());
+        all.start();
+    }
+
+    @Override
+    public double[] getOutOfBagProbabilityEstimates()
+    {
+        return _outOfBagProbabilities;
+    }
+
+    public DoubleMatrix1D nativeStorageTemplate()
+    {
+        return _storageTemplate;
+    }
+
+    /**
+     * Predicts the target and the class probabilities of a scattered
+     * instance.
+     *
+     * @param x                      the instance as a dense array.
+     * @param probabilityEstimates   an array to store the class probabilities in.
+     * @param offset                 the position of the first class probability.
+     * @return the predicted target.
+     */
+    private double predict(double[] x, double[] probabilityEstimates,
+                           int offset)
+    {
+        int k = _classes.length;
+        Arrays.fill(probabilityEstimates, offset, offset + k, 0.0);
+        for (Tree tree : _trees) {
+            int leaf = tree.leaf(x);
+            for (int c = 0; c < k; c++) {
+                probabilityEstimates[offset + c] += tree._distribution[leaf + c];
+            }
+        }
+        int best = 0;
+        for (int c = 0; c < k; c++) {
+            probabilityEstimates[offset + c] /= _trees.length;
+            if (probabilityEstimates[offset + c] >
+                probabilityEstimates[offset + best]) {
+                best = c;
+            }
+        }
+        return _classes[best];
+    }
+
+    private double[] getBuffer()
+    {
+        ThreadLocal<double[]> buffers = _buffers;
+        if (buffers == null) {
+            final int size = getAttributeCount();
+            buffers = new ThreadLocal<double[]>() {
+                    @Override
+                    protected double[] initialValue()
+                    {
+                        return new double[size];
+                    }
+                };
+            _buffers = buffers;
+        }
+        return buffers.get();
+    }
+
+    /**
+     * A trained tree as parallel node arrays. For an inner node
+     * <tt>_feature</tt> is the attribute tested and <tt>_child</tt> the
+     * index of the left child; the right child follows it. Instances with
+     * a value larger than <tt>_threshold</tt> go right. For a leaf
+     * <tt>_feature</tt> is -1 and <tt>_child</tt> the position of its class
+     * frequencies in <tt>_distribution</tt>.
+     */
+    static final class Tree
+        implements java.io.Serializable
+    {
+        final int[]    _feature;
+        final double[] _threshold;
+        final int[]    _child;
+        final double[] _distribution;
+
+        Tree(int[] feature, double[] threshold, int[] child,
+             double[] distribution)
+        {
+            _feature = feature;
+            _threshold = threshold;
+            _child = child;
+            _distribution = distribution;
+        }
+
+        /**
+         * Returns the position of the class frequencies of the leaf the
+         * instance falls into.
+         *
+         * @param x    the instance as a dense array.
+         * @return the position in <tt>_distribution</tt>.
+         */
+        int leaf(double[] x)
+        {
+            int node = 0;
+            int feature;
+            while ((feature = _feature[node]) >= 0) {
+                node = _child[node] + (x[feature] > _threshold[node] ? 1 : 0);
+            }
+            return _child[node];
+        }
+    }
+
+    /**
+     * The training instances in primitive arrays: column-major dense or,
+     * for sparse data, CSR.
+     */
+    private static final class TrainingData
+    {
+        final int _n;
+        final int _p;
+        final double[] _dense;
+        final int[]    _rowPointers;
+        final int[]    _indices;
+        final double[] _values;
+
+        TrainingData(DoubleMatrix2D x)
+        {
+            _n = x.rows();
+            _p = x.columns();
+            IntArrayList    indexList = new IntArrayList();
+            DoubleArrayList valueList = new DoubleArrayList();
+            int[][]    rowIndices = new int[_n][];
+            double[][] rowValues  = new double[_n][];
+            long nnz = 0;
+            for (int i = 0; i < _n; i++) {
+                x.viewRow(i).getNonZeros(indexList, valueList);
+                rowIndices[i] = Arrays.copyOf(indexList.elements(),
+                                              indexList.size());
+                rowValues[i]  = Arrays.copyOf(valueList.elements(),
+                                              valueList.size());
+                nnz += indexList.size();
+            }
+            if (nnz > MAX_SPARSE_DENSITY * _n * _p) {
+                _dense = new double[_n * _p];
+                for (int i = 0; i < _n; i++) {
+                    for (int j = 0; j < rowIndices[i].length; j++) {
+                        _dense[rowIndices[i][j] * _n + i] = rowValues[i][j];
+                    }
+                }
+                _rowPointers = null;
+                _indices = null;
+                _values = null;
+            } else {
+                _dense = null;
+                _rowPointers = new int[_n + 1];
+                _indices = new int[(int)nnz];
+                _values = new double[(int)nnz];
+                int position = 0;
+                for (int i = 0; i < _n; i++) {
+                    // The indices must be increasing for the binary search.
+                    int[] order = sortedOrder(rowIndices[i]);
+                    for (int j = 0; j < order.length; j++) {
+                        _indices[position] = rowIndices[i][order[j]];
+                        _values[position]  = rowValues[i][order[j]];
+                        position++;
+                    }
+                    _rowPointers[i + 1] = position;
+                }
+            }
+        }
+
+        boolean isSparse()
+        {
+            return _dense == null;
+        }
+
+        double get(int i, int feature)
+        {
+            if (_dense != null) {
+                return _dense[feature * _n + i];
+            }
+            int position = Arrays.binarySearch(_indices, _rowPointers[i],
+                                               _rowPointers[i + 1], feature);
+            return position >= 0 ? _values[position] : 0.0;
+        }
+
+        void scatter(int i, double[] buffer)
+        {
+            if (_dense != null) {
+                for (int f = 0; f < _p; f++) {
+                    buffer[f] = _dense[f * _n + i];
+                }
+            } else {
+                for (int j = _rowPointers[i]; j < _rowPointers[i + 1]; j++) {
+                    buffer[_indices[j]] = _values[j];
+                }
+            }
+        }
+
+        void clear(int i, double[] buffer)
+        {
+            if (_dense != null) {
+                Arrays.fill(buffer, 0, _p, 0.0);
+            } else {
+                for (int j = _rowPointers[i]; j < _rowPointers[i + 1]; j++) {
+                    buffer[_indices[j]] = 0.0;
+                }
+            }
+        }
+
+        private static int[] sortedOrder(int[] indices)
+        {
+            int[] order = new int[indices.length];
+            double[] keys = new double[indices.length];
+            for (int j = 0; j < indices.length; j++) {
+                order[j] = j;
+                keys[j] = indices[j];
+            }
+            sort(keys, order, 0, indices.length);
+            return order;
+        }
+    }
+
+    /**
+     * Builds trees on bootstrap samples of the training data. The buffers
+     * are reused between the trees built by the same builder.
+     */
+    private static final class TreeBuilder
+    {
+        private final TrainingData _data;
+        private final int[] _labels;
+        private final int _k;
+        private final int _activeVariables;
+        private final int _maxDepth;
+        private final int _minSampleCount;
+
+        private final int[] _samples;
+        private final double[] _keys;
+        private final int[] _keyLabels;
+        private final int[] _candidates;
+        private final int[] _marks;
+        private int _mark;
+        private final int[] _counts;
+        private final int[] _leftCounts;
+        private final int[] _stack;
+
+        // The growing node arrays of the tree being built.
+        private int[]    _feature;
+        private double[] _threshold;
+        private int[]    _child;
+        private double[] _distribution;
+        private int _nodes;
+        private int _distributionSize;
+
+        TreeBuilder(TrainingData data, int[] labels, int k,
+                    int activeVariables, int maxDepth, int minSampleCount)
+        {
+            _data = data;
+            _labels = labels;
+            _k = k;
+            _activeVariables = activeVariables;
+            _maxDepth = maxDepth;
+            _minSampleCount = minSampleCount;
+            _samples = new int[data._n];
+            _keys = new double[data._n];
+            _keyLabels = new int[data._n];
+            _candidates = new int[data._p];
+            _marks = data.isSparse() ? new int[data._p] : null;
+            _counts = new int[k];
+            _leftCounts = new int[k];
+            // Node, first sample, last sample and depth per entry.
+            _stack = new int[4 * (2 * Math.min(maxDepth, data._n) + 2)];
+        }
+
+        /**
+         * Builds a tree.
+         *
+         * @param random   the random source for the tree.
+         * @param inBag    a bitmap to mark the instances in the bootstrap sample in.
+         * @return the tree.
+         */
+        Tree build(Random random, long[] inBag)
+        {
+            int n = _data._n;
+            for (int j = 0; j < n; j++) {
+                int i = random.nextInt(n);
+                _samples[j] = i;
+                inBag[i >>> 6] |= 1L << (i & 63);
+            }
+            _feature = new int[64];
+            _threshold = new double[64];
+            _child = new int[64];
+            _distribution = new double[64 * _k];
+            _nodes = 1;
+            _distributionSize = 0;
+
+            int top = 0;
+            top = push(top, 0, 0, n, 0);
+            while (top > 0) {
+                top -= 4;
+                int node  = _stack[top];
+                int first = _stack[top + 1];
+                int last  = _stack[top + 2];
+                int depth = _stack[top + 3];
+                if (!split(node, first, last, depth, random)) {
+                    makeLeaf(node, first, last);
+                    continue;
+                }
+                int feature = _feature[node];
+                double threshold = _threshold[node];
+                // Partition the samples of the node.
+                int i = first;
+                int j = last - 1;
+                while (i <= j) {
+                    if (_data.get(_samples[i], feature) <= threshold) {
+                        i++;
+                    } else {
+                        int tmp = _samples[i];
+                        _samples[i] = _samples[j];
+                        _samples[j] = tmp;
+                        j--;
+                    }
+                }
+                int left = _nodes;
+                ensureNodeCapacity(_nodes + 2);
+                _nodes += 2;
+                _child[node] = left;
+                top = push(top, left + 1, i, last, depth + 1);
+                top = push(top, left, first, i, depth + 1);
+            }
+            return new Tree(Arrays.copyOf(_feature, _nodes),
+                            Arrays.copyOf(_threshold, _nodes),
+                            Arrays.copyOf(_child, _nodes),
+                            Arrays.copyOf(_distribution, _distributionSize));
+        }
+
+        private int push(int top, int node, int first, int last, int depth)
+        {
+            _stack[top]     = node;
+            _stack[top + 1] = first;
+            _stack[top + 2] = last;
+            _stack[top + 3] = depth;
+            return top + 4;
+        }
+
+        /**
+         * Finds the best split of a node by the Gini impurity and stores it
+         * in the node.
+         *
+         * @return <tt>true</tt> if a split was found or <tt>false</tt> if the node is a leaf.
+         */
+        private boolean split(int node, int first, int last, int depth,
+                              Random random)
+        {
+            int m = last - first;
+            Arrays.fill(_counts, 0);
+            for (int j = first; j < last; j++) {
+                _counts[_labels[_samples[j]]]++;
+            }
+            int nonEmpty = 0;
+            long sumOfSquares = 0;
+            for (int c = 0; c < _k; c++) {
+                if (_counts[c] > 0) {
+                    nonEmpty++;
+                }
+                sumOfSquares += (long)_counts[c] * _counts[c];
+            }
+            if (depth >= _maxDepth || m < _minSampleCount || nonEmpty < 2) {
+                return false;
+            }
+
+            // Only the attributes that are non-zero for some instance in
+            // the node can split a sparse node.
+            int candidates = 0;
+            if (_marks != null) {
+                _mark++;
+                for (int j = first; j < last; j++) {
+                    int i = _samples[j];
+                    for (int q = _data._rowPointers[i];
+                         q < _data._rowPointers[i + 1]; q++) {
+                        int f = _data._indices[q];
+                        if (_marks[f] != _mark) {
+                            _marks[f] = _mark;
+                            _candidates[candidates++] = f;
+                        }
+                    }
+                }
+            } else {
+                for (int f = 0; f < _data._p; f++) {
+                    _candidates[f] = f;
+                }
+                candidates = _data._p;
+            }
+
+            // Maximize sum_c L_c^2 / |L| + sum_c R_c^2 / |R|, which
+            // minimizes the weighted Gini impurity of the children.
+            double parent = (double)sumOfSquares / m;
+            double bestScore = parent * (1.0 + 1e-12);
+            int bestFeature = -1;
+            double bestThreshold = 0.0;
+            int evaluated = 0;
+            for (int d = 0;
+                 d < candidates && evaluated < _activeVariables; d++) {
+                int r = d + random.nextInt(candidates - d);
+                int feature = _candidates[r];
+                _candidates[r] = _candidates[d];
+                _candidates[d] = feature;
+
+                for (int j = 0; j < m; j++) {
+                    int i = _samples[first + j];
+                    _keys[j] = _data.get(i, feature);
+                    _keyLabels[j] = _labels[i];
+                }
+                sort(_keys, _keyLabels, 0, m);
+                if (_keys[0] == _keys[m - 1]) {
+                    // Constant attributes do not count.
+                    continue;
+                }
+                evaluated++;
+                Arrays.fill(_leftCounts, 0);
+                long leftSquares = 0;
+                long rightSquares = sumOfSquares;
+                for (int j = 0; j < m - 1; j++) {
+                    int c = _keyLabels[j];
+                    leftSquares  += 2L * _leftCounts[c] + 1;
+                    rightSquares -= 2L * (_counts[c] - _leftCounts[c]) - 1;
+                    _leftCounts[c]++;
+                    if (_keys[j] < _keys[j + 1]) {
+                        double score = (double)leftSquares / (j + 1) +
+                                       (double)rightSquares / (m - j - 1);
+                        if (score > bestScore) {
+                            bestScore = score;
+                            bestFeature = feature;
+                            double threshold = (_keys[j] + _keys[j + 1]) / 2;
+                            if (!(threshold < _keys[j + 1])) {
+                                threshold = _keys[j];
+                            }
+                            bestThreshold = threshold;
+                        }
+                    }
+                }
+            }
+            if (bestFeature < 0) {
+                return false;
+            }
+            _feature[node] = bestFeature;
+            _threshold[node] = bestThreshold;
+            return true;
+        }
+
+        private void makeLeaf(int node, int first, int last)
+        {
+            Arrays.fill(_counts, 0);
+            for (int j = first; j < last; j++) {
+                _counts[_labels[_samples[j]]]++;
+            }
+            if (_distributionSize + _k > _distribution.length) {
+                _distribution = Arrays.copyOf(_distribution,
+                                              2 * _distribution.length + _k);
+            }
+            int m = last - first;
+            for (int c = 0; c < _k; c++) {
+                _distribution[_distributionSize + c] = (double)_counts[c] / m;
+            }
+            _feature[node] = -1;
+            _threshold[node] = 0.0;
+            _child[node] = _distributionSize;
+            _distributionSize += _k;
+        }
+
+        private void ensureNodeCapacity(int size)
+        {
+            if (size > _feature.length) {
+                int capacity = Math.max(size, 2 * _feature.length);
+                _feature   = Arrays.copyOf(_feature, capacity);
+                _threshold = Arrays.copyOf(_threshold, capacity);
+                _child     = Arrays.copyOf(_child, capacity);
+            }
+        }
+    }
+
+    /**
+     * Sorts keys[first, last) in increasing order and permutes payload in
+     * the same way.
+     */
+    private static void sort(double[] keys, int[] payload,
+                             int first, int last)
+    {
+        while (last - first > 16) {
+            int middle = (first + last) >>> 1;
+            // Median of three as pivot.
+            if (keys[middle] < keys[first]) {
+                swap(keys, payload, middle, first);
+            }
+            if (keys[last - 1] < keys[first]) {
+                swap(keys, payload, last - 1, first);
+            }
+            if (keys[last - 1] < keys[middle]) {
+                swap(keys, payload, last - 1, middle);
+            }
+            double pivot = keys[middle];
+            int i = first;
+            int j = last - 1;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, payload, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the smaller part to bound the stack depth.
+            if (j + 1 - first < last - i) {
+                sort(keys, payload, first, j + 1);
+                first = i;
+            } else {
+                sort(keys, payload, i, last);
+                last = j + 1;
+            }
+        }
+        for (int i = first + 1; i < last; i++) {
+            double key = keys[i];
+            int value = payload[i];
+            int j = i - 1;
+            while (j >= first && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                payload[j + 1] = payload[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            payload[j + 1] = value;
+        }
+    }
+
+    private static void swap(double[] keys, int[] payload, int i, int j)
+    {
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        int value = payload[i];
+        payload[i] = payload[j];
+        payload[j] = value;
+    }
+
+    class BuildTreesAction extends ParallelizedAction
+    {
+        TrainingData _data;
+        int[] _labels;
+        int _k;
+        int _activeVariables;
+        long _seed;
+        Tree[] _trees;
+        long[][] _inBag;
+        TreeBuilder _builder;
+
+        public BuildTreesAction(TrainingData data, int[] labels, int k,
+                                int activeVariables, long seed,
+                                Tree[] trees, long[][] inBag,
+                                int first, int last)
+        {
+            super(first, last);
+            _data = data;
+            _labels = labels;
+            _k = k;
+            _activeVariables = activeVariables;
+            _seed = seed;
+            _trees = trees;
+            _inBag = inBag;
+        }
+
+        @Override
+        protected void initialize(int first, int last)
+        {
+            _builder = new TreeBuilder(_data, _labels, _k, _activeVariables,
+                                       _maxDepth, _minSampleCount);
+        }
+
+        @Override
+        protected void finalize(int first, int last)
+        {
+            _builder = null;
+        }
+
+        @Override
+        protected void compute(int t)
+        {
+            // Each tree has its own random source so that the forest only
+            // depends on the seed.
+            Random random = new Random(_seed + 0x9E3779B97F4A7C15L * t);
+            _inBag[t] = new long[(_data._n + 63) >>> 6];
+            _trees[t] = _builder.build(random, _inBag[t]);
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new BuildTreesAction(_data, _labels, _k, _activeVariables,
+                                        _seed, _trees, _inBag, first, last);
+        }
+    }
+
+    class OutOfBagAction extends ParallelizedAction
+    {
+        TrainingData _data;
+        long[][] _inBag;
+        double[] _probabilities;
+        double[] _buffer;
+
+        public OutOfBagAction(TrainingData data, long[][] inBag,
+                              double[] probabilities,
+                              int first, int last)
+        {
+            super(first, last);
+            _data = data;
+            _inBag = inBag;
+            _probabilities = probabilities;
+        }
+
+        @Override
+        protected void initialize(int first, int last)
+        {
+            _buffer = new double[_data._p];
+        }
+
+        @Override
+        protected void finalize(int first, int last)
+        {
+            _buffer = null;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            int k = _classes.length;
+            int offset = i * k;
+            int count = 0;
+            _data.scatter(i, _buffer);
+            for (int t = 0; t < _trees.length; t++) {
+                if ((_inBag[t][i >>> 6] & (1L << (i & 63))) == 0) {
+                    int leaf = _trees[t].leaf(_buffer);
+                    for (int c = 0; c < k; c++) {
+                        _probabilities[offset + c] +=
+                            _trees[t]._distribution[leaf + c];
+                    }
+                    count++;
+                }
+            }
+            _data.clear(i, _buffer);
+            for (int c = 0; c < k; c++) {
+                // An instance that is in every bootstrap sample gets the
+                // uniform distribution.
+                _probabilities[offset + c] =
+                    count > 0 ? _probabilities[offset + c] / count : 1.0 / k;
+            }
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new OutOfBagAction(_data, _inBag, _probabilities,
+                                      first, last);
+        }
+    }
+
+    class PredictAction extends ParallelizedAction
+    {
+        DoubleMatrix2D _x;
+        double[] _predictions;
+        double[] _probabilityEstimates;
+        double[] _probability;
+        double[] _buffer;
+        IntArrayList    _indexList;
+        DoubleArrayList _valueList;
+
+        public PredictAction(DoubleMatrix2D x,
+                             double[] predictions,
+                             double[] probabilityEstimates,
+                             int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _predictions = predictions;
+            _probabilityEstimates = probabilityEstimates;
+        }
+
+        @Override
+        protected void initialize(int first, int last)
+        {
+            _probability = new double[_classes.length];
+            _buffer = new double[getAttributeCount()];
+            _indexList = new IntArrayList();
+            _valueList = new DoubleArrayList();
+        }
+
+        @Override
+        protected void finalize(int first, int last)
+        {
+            _probability = null;
+            _buffer = null;
+            _indexList = null;
+            _valueList = null;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            _x.viewRow(i).getNonZeros(_indexList, _valueList);
+            int[]    indices = _indexList.elements();
+            double[] values  = _valueList.elements();
+            int nnz = _indexList.size();
+            for (int j = 0; j < nnz; j++) {
+                if (indices[j] < _buffer.length) {
+                    _buffer[indices[j]] = values[j];
+                }
+            }
+            if (_probabilityEstimates != null) {
+                _predictions[i] = predict(_buffer, _probabilityEstimates,
+                                          i * _classes.length);
+            } else {
+                _predictions[i] = predict(_buffer, _probability, 0);
+            }
+            for (int j = 0; j < nnz; j++) {
+                if (indices[j] < _buffer.length) {
+                    _buffer[indices[j]] = 0.0;
+                }
+            }
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new PredictAction(_x, _predictions, _probabilityEstimates,
+                                     first, last);
+        }
+    }
+}
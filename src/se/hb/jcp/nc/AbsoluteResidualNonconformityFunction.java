@@ -0,0 +1,54 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.nc;
+
+import cern.colt.matrix.DoubleMatrix1D;
+
+import se.hb.jcp.ml.IClassifier;
+
+/**
+ * Regression nonconformity function based on the absolute residual
+ * |y - h(x)| of a regressor h.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class AbsoluteResidualNonconformityFunction
+    extends RegressorNonconformityFunctionBase
+{
+    /**
+     * Creates a new absolute residual nonconformity function using the
+     * supplied regressor.
+     *
+     * @param regressor  the untrained regressor to use.
+     */
+    public AbsoluteResidualNonconformityFunction(IClassifier regressor)
+    {
+        super(regressor);
+    }
+
+    @Override
+    public double calculateNonConformityScore(DoubleMatrix1D x, double y)
+    {
+        return Math.abs(y - _model.predict(x));
+    }
+
+    @Override
+    public double predictScale(DoubleMatrix1D x)
+    {
+        return 1.0;
+    }
+}
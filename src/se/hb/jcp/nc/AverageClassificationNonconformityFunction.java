@@ -24,7 +24,7 @@ import java.util.Map;
 import java.util.TreeMap;
 
 public class AverageClassificationNonconformityFunction
-    implements IClassificationNonconformityFunction, java.io.Serializable
+    implements IIncrementalNonconformityFunction, java.io.Serializable
 {
     int[] _class_count;
     int _n_classes;
@@ -32,6 +32,10 @@ public class AverageClassificationNonconformityFunction
     Map<Double, Integer> _class_index = new TreeMap<Double, Integer>();
     int _n_instances;
     int _attributeCount = -1;
+    // For incremental use: the class indices of the base training instances
+    // and of the extra instance, or -1 if there is none.
+    int[] _training_class_indices;
+    int   _extra_class_index = -1;
 
     public AverageClassificationNonconformityFunction(double[] classes)
     {
@@ -87,6 +91,74 @@ public class AverageClassificationNonconformityFunction
         return nc;
     }
 
+    @Override
+    public IIncrementalNonconformityFunction fitIncremental(DoubleMatrix2D x,
+                                                            double[] y)
+    {
+        AverageClassificationNonconformityFunction nc =
+            new AverageClassificationNonconformityFunction(_classes);
+        nc.fit(x, y);
+        nc._training_class_indices = new int[y.length];
+        for (int i = 0; i < y.length; i++) {
+            nc._training_class_indices[i] = _class_index.get(y[i]);
+        }
+        return nc;
+    }
+
+    @Override
+    public IIncrementalNonconformityFunction copy()
+    {
+        AverageClassificationNonconformityFunction nc =
+            new AverageClassificationNonconformityFunction(_classes);
+        System.arraycopy(_class_count, 0, nc._class_count, 0, _n_classes);
+        nc._n_instances = _n_instances;
+        nc._attributeCount = _attributeCount;
+        nc._training_class_indices = _training_class_indices;
+        if (_extra_class_index != -1) {
+            nc._class_count[_extra_class_index]--;
+            nc._n_instances--;
+        }
+        return nc;
+    }
+
+    @Override
+    public void addInstance(DoubleMatrix1D x, double y)
+    {
+        if (_training_class_indices == null || _extra_class_index != -1) {
+            throw new UnsupportedOperationException
+                          ("The non-conformity function must be trained " +
+                           "with fitIncremental() and have no extra " +
+                           "instance.");
+        }
+        _extra_class_index = _class_index.get(y);
+        _class_count[_extra_class_index]++;
+        _n_instances++;
+    }
+
+    @Override
+    public void removeInstance()
+    {
+        if (_extra_class_index != -1) {
+            _class_count[_extra_class_index]--;
+            _n_instances--;
+            _extra_class_index = -1;
+        }
+    }
+
+    @Override
+    public void calculateTrainingNonConformityScores(double[] ncScores)
+    {
+        for (int i = 0; i < _training_class_indices.length; i++) {
+            ncScores[i] =
+                1 - (double)_class_count[_training_class_indices[i]] /
+                    _n_instances;
+        }
+        if (_extra_class_index != -1) {
+            ncScores[_training_class_indices.length] =
+                1 - (double)_class_count[_extra_class_index] / _n_instances;
+        }
+    }
+
     @Deprecated
     @Override
     public double[] calc_nc(DoubleMatrix2D x, double[] y)
@@ -122,6 +194,29 @@ public class AverageClassificationNonconformityFunction
         return nc;
     }
 
+    @Override
+    public void calculateNonConformityScores(DoubleMatrix1D x,
+                                             double[] ncScores)
+    {
+        int c = 0;
+        for (int index : _class_index.values()) {
+            ncScores[c++] = 1 - (double)_class_count[index] / _n_instances;
+        }
+    }
+
+    @Override
+    public void calculateNonConformityScores(DoubleMatrix2D x,
+                                             double[] ncScores)
+    {
+        // The scores do not depend on the instance.
+        for (int i = 0; i < x.rows(); i++) {
+            int c = i * _n_classes;
+            for (int index : _class_index.values()) {
+                ncScores[c++] = 1 - (double)_class_count[index] / _n_instances;
+            }
+        }
+    }
+
     @Override
     public se.hb.jcp.ml.IClassifier getClassifier()
     {
@@ -20,6 +20,7 @@ import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
 import se.hb.jcp.ml.IClassProbabilityClassifier;
+import se.hb.jcp.ml.IOutOfBagClassifier;
 
 /**
  * A base class for nonconformity functions based on the predicted class
@@ -29,7 +30,8 @@ import se.hb.jcp.ml.IClassProbabilityClassifier;
  */
 public abstract class ClassProbabilityNonconformityFunctionBase
     extends ClassifierNonconformityFunctionBase
-    implements java.io.Serializable
+    implements IOutOfBagNonconformityFunction,
+               java.io.Serializable
 {
 
     public ClassProbabilityNonconformityFunctionBase
@@ -46,7 +48,7 @@ public abstract class ClassProbabilityNonconformityFunctionBase
         double label =
             ((IClassProbabilityClassifier)_model).predict(x, probability);
 
-        double nc = computeNCScore(x, y, probability);
+        double nc = computeNCScore(y, probability);
         if (DEBUG) {
             System.err.println("  instance (" + x + ") target " + y +
                                ": " + nc);
@@ -63,61 +65,107 @@ public abstract class ClassProbabilityNonconformityFunctionBase
         return nc;
     }
 
-    /**
-     * Step in the calculateNonConformityScore template method for computing
-     * the non-conformity score of an instance based on its assumed label and
-     * its class probabilities.
-     *
-     * @param x            the attributes of the instance.
-     * @param y            the assumed label of the instance.
-     * @param probability  an double[] array with the instance's class probabilities.
-     * @return  the non-conformity score of the instance.
-     */
-    abstract double computeNCScore(DoubleMatrix1D x, double y,
-                                   double[] probability);
-
     @Override
-    CalcNCActionBase createNewCalcNCAction(DoubleMatrix2D x,
-                                           double[] y,
-                                           double[] nc,
-                                           int first, int last)
+    public final void calculateNonConformityScores(DoubleMatrix1D x,
+                                                   double[] ncScores)
     {
-        return new CalcNCAction(x, y, nc, first, last);
+        double[] probability = new double[_n_classes];
+        ((IClassProbabilityClassifier)_model).predict(x, probability);
+
+        int c = 0;
+        for (double label : _class_index.keySet()) {
+            ncScores[c++] = computeNCScore(label, probability);
+        }
     }
 
-    class CalcNCAction extends CalcNCActionBase
+    @Override
+    public final void calculateNonConformityScores(DoubleMatrix2D x,
+                                                   double[] ncScores)
     {
-        double[] _probability;
-
-        public CalcNCAction(DoubleMatrix2D x,
-                            double[] y,
-                            double[] nc,
-                            int first, int last)
-        {
-            super(x, y, nc, first, last);
+        int n = x.rows();
+        double[] probabilities = predictProbabilities(x);
+        double[] probability = new double[_n_classes];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(probabilities, i * _n_classes,
+                             probability, 0, _n_classes);
+            int c = i * _n_classes;
+            for (double label : _class_index.keySet()) {
+                ncScores[c++] = computeNCScore(label, probability);
+            }
         }
+    }
 
-        @Override
-        protected final void initialize(int first, int last)
-        {
-            _probability = new double[_n_classes];
+    @Deprecated
+    @Override
+    public final double[] calc_nc(DoubleMatrix2D x, double[] y)
+    {
+        double[] nc = new double[y.length];
+        double[] probabilities = predictProbabilities(x);
+        double[] probability = new double[_n_classes];
+        for (int i = 0; i < nc.length; i++) {
+            System.arraycopy(probabilities, i * _n_classes,
+                             probability, 0, _n_classes);
+            nc[i] = computeNCScore(y[i], probability);
         }
+        return nc;
+    }
 
-        @Override
-        protected final void finalize(int first, int last)
-        {
-            _probability = null;
-        }
+    @Override
+    public boolean isOutOfBagSupported()
+    {
+        return _model instanceof IOutOfBagClassifier &&
+               ((IOutOfBagClassifier)_model).getOutOfBagProbabilityEstimates()
+                   != null;
+    }
 
-        @Override
-        protected final void compute(int i)
-        {
-            // Overriden with inlined computation to avoid reallocating the
-            // _probability array for each instance.
-            DoubleMatrix1D instance = _x.viewRow(i);
-            ((IClassProbabilityClassifier)_model).predict(instance,
-                                                          _probability);
-            _nc[i] = computeNCScore(instance, _y[i], _probability);
+    @Override
+    public void calculateOutOfBagNonConformityScores(double[] y,
+                                                     double[] ncScores)
+    {
+        if (!isOutOfBagSupported()) {
+            throw new UnsupportedOperationException
+                          ("The classifier does not provide out-of-bag " +
+                           "class probability estimates.");
+        }
+        double[] probabilities =
+            ((IOutOfBagClassifier)_model).getOutOfBagProbabilityEstimates();
+        if (probabilities.length != y.length * _n_classes) {
+            throw new IllegalArgumentException
+                          ("The targets do not match the training set of " +
+                           "the classifier.");
+        }
+        double[] probability = new double[_n_classes];
+        for (int i = 0; i < y.length; i++) {
+            System.arraycopy(probabilities, i * _n_classes,
+                             probability, 0, _n_classes);
+            ncScores[i] = computeNCScore(y[i], probability);
         }
     }
+
+    /**
+     * Predicts the class probabilities of the instances in x with one
+     * batch call to the classifier.
+     *
+     * @param x    the instances.
+     * @return a <tt>double[]</tt> array with the class probabilities of instance <tt>i</tt> from position <tt>i * _n_classes</tt>.
+     */
+    private double[] predictProbabilities(DoubleMatrix2D x)
+    {
+        int n = x.rows();
+        double[] probabilities = new double[n * _n_classes];
+        ((IClassProbabilityClassifier)_model).predict(x, new double[n],
+                                                      probabilities);
+        return probabilities;
+    }
+
+    /**
+     * Step in the calculateNonConformityScore template method for computing
+     * the non-conformity score of an instance based on its assumed label and
+     * its class probabilities.
+     *
+     * @param y            the assumed label of the instance.
+     * @param probability  an double[] array with the instance's class probabilities.
+     * @return  the non-conformity score of the instance.
+     */
+    abstract double computeNCScore(double y, double[] probability);
 }
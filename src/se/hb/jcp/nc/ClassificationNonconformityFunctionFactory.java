@@ -35,8 +35,13 @@ public final class ClassificationNonconformityFunctionFactory
         {
             "hinge loss nonconformity function",
             "SVM distance nonconformity function",
-            "attribute average nonconformity function"
+            "attribute average nonconformity function",
+            "k-nearest neighbours nonconformity function",
+            "approximate (HNSW) k-nearest neighbours nonconformity function"
         };
+    // The number of neighbours used by the k-nearest neighbours
+    // nonconformity functions.
+    private static final int NEIGHBOURS = 5;
 
     private ClassificationNonconformityFunctionFactory()
     {
@@ -74,6 +79,14 @@ public final class ClassificationNonconformityFunctionFactory
             }
         case 2:
             return new AverageClassificationNonconformityFunction(classes);
+        case 3:
+            return new KNearestNeighboursNonconformityFunction
+                           (classes, NEIGHBOURS,
+                            new se.hb.jcp.util.ExactNearestNeighbourIndex());
+        case 4:
+            return new KNearestNeighboursNonconformityFunction
+                           (classes, NEIGHBOURS,
+                            new se.hb.jcp.util.HNSWNearestNeighbourIndex());
         default:
             throw new UnsupportedOperationException
                 ("Unknown nonconformity function type.");
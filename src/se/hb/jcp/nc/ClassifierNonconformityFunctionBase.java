@@ -16,6 +16,7 @@
 //
 package se.hb.jcp.nc;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -23,7 +24,9 @@ import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
 import se.hb.jcp.ml.IClassifier;
+import se.hb.jcp.ml.IWarmStartClassifier;
 import se.hb.jcp.util.ParallelizedAction;
+import se.hb.jcp.util.SharedRowsMatrix2D;
 
 /**
  * Base class for nonconformity functions that use a classifier.
@@ -31,7 +34,7 @@ import se.hb.jcp.util.ParallelizedAction;
  * @author anders.gidenstam(at)hb.se
  */
 public abstract class ClassifierNonconformityFunctionBase
-    implements IClassificationNonconformityFunction,
+    implements IWarmStartNonconformityFunction,
                java.io.Serializable
 {
     static final boolean DEBUG = false;
@@ -72,27 +75,73 @@ public abstract class ClassifierNonconformityFunctionBase
         fitNew(DoubleMatrix2D xtr, double[] ytr,
                DoubleMatrix1D xtest, double ytest)
     {
+        // The training instances are shared with xtr.
         int n = xtr.rows();
-        DoubleMatrix2D trainingX = xtr.like(n + 1, xtr.columns());
-        double[]       trainingY = new double[n + 1];
-        // FIXME: This way to copy the data is probably very inefficient.
-        //        Most of the underlying data-structures are row-oriented
-        //        and this should be used to share the row data.
-        // FIXED for: libsvm
-        for (int r = 0; r < n; r++) {
-            trainingX.viewRow(r).assign(xtr.viewRow(r));
-            trainingY[r] = ytr[r];
-        }
+        DoubleMatrix2D trainingX = SharedRowsMatrix2D.create(xtr, 1);
+        double[]       trainingY = Arrays.copyOf(ytr, n + 1);
         trainingX.viewRow(n).assign(xtest);
         trainingY[n] = ytest;
 
         return fitNew(trainingX, trainingY);
     }
 
+    @Override
+    public boolean isWarmStartSupported()
+    {
+        return _model instanceof IWarmStartClassifier &&
+               ((IWarmStartClassifier)_model).isWarmStartSupported() &&
+               createNew(_model) != null;
+    }
+
+    @Override
+    public IClassificationNonconformityFunction
+        fitNewWarmStart(DoubleMatrix2D x, double[] y)
+    {
+        if (_model.isTrained() && isWarmStartSupported()) {
+            return createNew(((IWarmStartClassifier)_model).
+                                 fitNewWarmStart(x, y));
+        } else {
+            return fitNew(x, y);
+        }
+    }
+
     @Override
     public abstract double calculateNonConformityScore(DoubleMatrix1D x,
                                                        double y);
 
+    @Override
+    public void calculateNonConformityScores(DoubleMatrix1D x,
+                                             double[] ncScores)
+    {
+        // Generic fallback that evaluates the model once per label.
+        // Subclasses should override this to evaluate the model only once.
+        int c = 0;
+        for (double label : _class_index.keySet()) {
+            ncScores[c++] = calculateNonConformityScore(x, label);
+        }
+    }
+
+    @Override
+    public void calculateNonConformityScores(DoubleMatrix2D x,
+                                             double[] ncScores)
+    {
+        // Generic fallback that evaluates the model once per instance.
+        // Subclasses should override this to use the batch methods of the
+        // classifier.
+        if (!PARALLEL) {
+            double[] instanceNCScores = new double[_n_classes];
+            for (int i = 0; i < x.rows(); i++) {
+                calculateNonConformityScores(x.viewRow(i), instanceNCScores);
+                System.arraycopy(instanceNCScores, 0,
+                                 ncScores, i * _n_classes, _n_classes);
+            }
+        } else {
+            CalcAllNCScoresAction all =
+                new CalcAllNCScoresAction(x, ncScores, 0, x.rows());
+            all.start();
+        }
+    }
+
     @Deprecated
     @Override
     public double[] calc_nc(DoubleMatrix2D x, double[] y)
@@ -165,6 +214,19 @@ public abstract class ClassifierNonconformityFunctionBase
         return _model.nativeStorageTemplate();
     }
 
+    /**
+     * Creates a new non-conformity function of the same type and with the
+     * same parameters as this one using the supplied trained classifier.
+     * Subclasses override this to support warm-started training.
+     *
+     * @param model    the classifier.
+     * @return a new non-conformity function or <tt>null</tt> if not supported.
+     */
+    IClassificationNonconformityFunction createNew(IClassifier model)
+    {
+        return null;
+    }
+
     CalcNCActionBase createNewCalcNCAction(DoubleMatrix2D x,
                                            double[] y,
                                            double[] nc,
@@ -203,4 +265,46 @@ public abstract class ClassifierNonconformityFunctionBase
             return createNewCalcNCAction(_x, _y, _nc, first, last);
         }
     }
+
+    class CalcAllNCScoresAction extends se.hb.jcp.util.ParallelizedAction
+    {
+        DoubleMatrix2D _x;
+        double[] _ncScores;
+        double[] _instanceNCScores;
+
+        public CalcAllNCScoresAction(DoubleMatrix2D x,
+                                     double[] ncScores,
+                                     int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _ncScores = ncScores;
+        }
+
+        @Override
+        protected void initialize(int first, int last)
+        {
+            _instanceNCScores = new double[_n_classes];
+        }
+
+        @Override
+        protected void finalize(int first, int last)
+        {
+            _instanceNCScores = null;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            calculateNonConformityScores(_x.viewRow(i), _instanceNCScores);
+            System.arraycopy(_instanceNCScores, 0,
+                             _ncScores, i * _n_classes, _n_classes);
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new CalcAllNCScoresAction(_x, _ncScores, first, last);
+        }
+    }
 }
@@ -20,6 +20,7 @@ import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
 import se.hb.jcp.ml.IClassProbabilityClassifier;
+import se.hb.jcp.ml.IClassifier;
 
 /**
  * A hinge loss nonconformity function based on the predicted class
@@ -46,15 +47,19 @@ public class HingeLossNonconformityFunction
     @Override
     public IClassificationNonconformityFunction fitNew(DoubleMatrix2D x,
                                                        double[] y)
+    {
+        return createNew(_model.fitNew(x, y));
+    }
+
+    @Override
+    IClassificationNonconformityFunction createNew(IClassifier model)
     {
         return new HingeLossNonconformityFunction
-                       (_classes,
-                        (IClassProbabilityClassifier)_model.fitNew(x, y));
+                       (_classes, (IClassProbabilityClassifier)model);
     }
 
     @Override
-    double computeNCScore(DoubleMatrix1D x, double y,
-                          double[] probability)
+    double computeNCScore(double y, double[] probability)
     {
         return 1.0 - probability[_class_index.get(y)];
     }
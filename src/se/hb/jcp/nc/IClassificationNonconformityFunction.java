@@ -29,8 +29,8 @@ import se.hb.jcp.ml.IClassifierInformation;
  * Contract for JCP use:
  * 1. The non-conformity function must be serializable, both as untrained and
  *    as trained.
- * 2. The fitNew, calculateNonConformityScore and calc_nc methods of the
- *    non-conformity function must be reentrant.
+ * 2. The fitNew, calculateNonConformityScore, calculateNonConformityScores
+ *    and calc_nc methods of the non-conformity function must be reentrant.
  */
 public interface IClassificationNonconformityFunction
     extends IClassifierInformation, java.io.Serializable
@@ -86,6 +86,29 @@ public interface IClassificationNonconformityFunction
      */
     public double calculateNonConformityScore(DoubleMatrix1D x, double y);
 
+    /**
+     * Computes the non-conformity scores for the instance x with each of the
+     * targets/classes/labels known by this non-conformity function.
+     * The underlying model is evaluated only once for the instance.
+     *
+     * @param x         the instance.
+     * @param ncScores  an initialized <tt>double[]</tt> array to store the non-conformity scores in, in the order of the labels given by <tt>getLabels()</tt>.
+     */
+    public void calculateNonConformityScores(DoubleMatrix1D x,
+                                             double[] ncScores);
+
+    /**
+     * Computes the non-conformity scores for each of the instances in x
+     * with each of the targets/classes/labels known by this non-conformity
+     * function. The underlying model is evaluated for all the instances
+     * together where possible.
+     *
+     * @param x         the instances.
+     * @param ncScores  an initialized <tt>double[]</tt> array with at least <tt>x.rows() * getLabels().length</tt> elements to store the non-conformity scores in. The scores of instance <tt>i</tt> are stored from position <tt>i * getLabels().length</tt> in the order of the labels given by <tt>getLabels()</tt>.
+     */
+    public void calculateNonConformityScores(DoubleMatrix2D x,
+                                             double[] ncScores);
+
     /**
      * Returns the classifier used by this non-conformity function.
      *
@@ -0,0 +1,89 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.nc;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+/**
+ * Represents a non-conformity function for conformal classification that
+ * can be trained once on a base training set and then be extended with one
+ * extra instance at a time without retraining. This is what transductive
+ * conformal classification needs: the training set extended with the test
+ * instance under each possible label.
+ *
+ * Contract for JCP use, in addition to that of
+ * <tt>IClassificationNonconformityFunction</tt>:
+ * 1. The non-conformity scores computed by
+ *    <tt>calculateTrainingNonConformityScores</tt> with an extra instance
+ *    (x, y) added must be identical to those computed by
+ *    <tt>calc_nc(X, Y)</tt> of the function returned by
+ *    <tt>fitNew(X, Y)</tt> where X and Y are the base training set with
+ *    (x, y) appended last.
+ * 2. <tt>addInstance</tt>, <tt>removeInstance</tt> and
+ *    <tt>calculateTrainingNonConformityScores</tt> need not be reentrant.
+ *    Use <tt>copy</tt> to get one instance per thread.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public interface IIncrementalNonconformityFunction
+    extends IClassificationNonconformityFunction
+{
+    /**
+     * Returns a new incremental non-conformity function based on the same
+     * parameters as the current one trained on the supplied base training
+     * set and prepared for extra instances to be added.
+     *
+     * @param x    the base training instances.
+     * @param y    the targets/classes/labels of the base training instances.
+     * @return a new incremental non-conformity function.
+     */
+    public IIncrementalNonconformityFunction fitIncremental(DoubleMatrix2D x,
+                                                            double[] y);
+
+    /**
+     * Returns a copy of this incremental non-conformity function without an
+     * extra instance. The copy may share the base training state with this
+     * one and is intended for use by another thread.
+     *
+     * @return a copy of this non-conformity function.
+     */
+    public IIncrementalNonconformityFunction copy();
+
+    /**
+     * Adds an extra instance last to the training set. Only one extra
+     * instance can be present at a time.
+     *
+     * @param x    the instance.
+     * @param y    the (assumed) target/class/label of the instance.
+     */
+    public void addInstance(DoubleMatrix1D x, double y);
+
+    /**
+     * Removes the extra instance from the training set.
+     */
+    public void removeInstance();
+
+    /**
+     * Computes the non-conformity scores of the training instances, i.e.
+     * the base training instances followed by the extra instance if there
+     * is one.
+     *
+     * @param ncScores  an initialized <tt>double[]</tt> array to store the non-conformity scores in.
+     */
+    public void calculateTrainingNonConformityScores(double[] ncScores);
+}
@@ -0,0 +1,53 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.nc;
+
+/**
+ * Represents a non-conformity function for conformal classification whose
+ * underlying model can provide out-of-bag non-conformity scores for its
+ * own training instances. An inductive conformal classifier can calibrate
+ * on these scores instead of on a separate calibration set, so that all
+ * instances are used for training.
+ *
+ * Contract for JCP use, in addition to that of
+ * <tt>IClassificationNonconformityFunction</tt>:
+ * 1. The out-of-bag score of a training instance must not depend on the
+ *    members of the underlying ensemble that were trained on it.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public interface IOutOfBagNonconformityFunction
+    extends IClassificationNonconformityFunction
+{
+    /**
+     * Returns whether the trained underlying model of this non-conformity
+     * function provides out-of-bag estimates for its training instances.
+     *
+     * @return <tt>true</tt> if out-of-bag scores are available or <tt>false</tt> otherwise.
+     */
+    public boolean isOutOfBagSupported();
+
+    /**
+     * Computes the out-of-bag non-conformity scores of the instances the
+     * non-conformity function was last trained on.
+     *
+     * @param y         the targets/classes/labels of the training instances, in the order they were trained on.
+     * @param ncScores  an initialized <tt>double[]</tt> array with at least <tt>y.length</tt> elements to store the non-conformity scores in.
+     */
+    public void calculateOutOfBagNonConformityScores(double[] y,
+                                                     double[] ncScores);
+}
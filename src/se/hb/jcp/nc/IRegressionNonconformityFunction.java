@@ -1,5 +1,6 @@
 // JCP - Java Conformal Prediction framework
 // Copyright (C) 2014  Henrik Linusson
+// Copyright (C) 2026  Anders Gidenstam
 //
 // This library is free software: you can redistribute it and/or modify
 // it under the terms of the GNU Lesser General Public License as published
@@ -16,9 +17,114 @@
 //
 package se.hb.jcp.nc;
 
+import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
-import cern.colt.matrix.impl.AbstractMatrix2D;
 
-public interface IRegressionNonconformityFunction {
-    public DoubleMatrix2D predict(AbstractMatrix2D x, double significance);
+/**
+ * Represents an instance of a specific non-conformity function for
+ * conformal regression.
+ *
+ * The non-conformity score of an instance x with the target y must be of
+ * the form |y - predict(x)| / predictScale(x), i.e. a residual normalized
+ * by a positive scale that does not depend on y. This allows the
+ * prediction intervals to be computed directly from the calibration
+ * scores.
+ *
+ * Contract for JCP use:
+ * 1. The non-conformity function must be serializable, both as untrained and
+ *    as trained.
+ * 2. The calculateNonConformityScore, calculateNonConformityScores and
+ *    predict methods of the non-conformity function must be reentrant.
+ */
+public interface IRegressionNonconformityFunction
+    extends java.io.Serializable
+{
+    /**
+     * Initializes this non-conformity function with the supplied data.
+     *
+     * @param x    the instances.
+     * @param y    the targets of the instances.
+     */
+    public void fit(DoubleMatrix2D x, double[] y);
+
+    /**
+     * Computes the non-conformity score for the instance x with the target y.
+     *
+     * @param x    the instance.
+     * @param y    the target.
+     * @return the non-conformity score. Large means less conforming.
+     */
+    public double calculateNonConformityScore(DoubleMatrix1D x, double y);
+
+    /**
+     * Computes the non-conformity scores for the instances in x with the
+     * targets in y. The underlying models are evaluated for all the
+     * instances together where possible.
+     *
+     * @param x         the instances.
+     * @param y         the targets of the instances.
+     * @param ncScores  an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the non-conformity scores in.
+     */
+    public void calculateNonConformityScores(DoubleMatrix2D x,
+                                             double[] y,
+                                             double[] ncScores);
+
+    /**
+     * Predicts the target for the supplied instance.
+     *
+     * @param x    the instance.
+     * @return the predicted target.
+     */
+    public double predict(DoubleMatrix1D x);
+
+    /**
+     * Predicts the scale of the residual for the supplied instance.
+     *
+     * @param x    the instance.
+     * @return the positive scale the residual is divided by.
+     */
+    public double predictScale(DoubleMatrix1D x);
+
+    /**
+     * Predicts the targets and the scales of the residuals for the
+     * supplied instances. The underlying models are evaluated for all the
+     * instances together where possible.
+     *
+     * @param x            the instances.
+     * @param predictions  an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the predicted targets in.
+     * @param scales       an initialized <tt>double[]</tt> array with at least <tt>x.rows()</tt> elements to store the predicted scales in.
+     */
+    public void predict(DoubleMatrix2D x,
+                        double[] predictions,
+                        double[] scales);
+
+    /**
+     * Returns the regressor used by this non-conformity function.
+     *
+     * @return the regressor used by this non-conformity function; or null if there isn't one.
+     */
+    public se.hb.jcp.ml.IClassifier getClassifier();
+
+    /**
+     * Returns whether this non-conformity function has been trained.
+     *
+     * @return <tt>true</tt> if the non-conformity function has been trained or <tt>false</tt> otherwise.
+     */
+    public boolean isTrained();
+
+    /**
+     * Returns the number of attributes the non-conformity function
+     * expects in an instance.
+     *
+     * @return the number of attributes or -1 if the non-conformity function has not been trained.
+     */
+    public int getAttributeCount();
+
+    /**
+     * Returns a DoubleMatrix1D instance of the native storage type of the
+     * underlying regressor.
+     *
+     * @return a 1 element instance of the native storage type.
+     */
+    public DoubleMatrix1D nativeStorageTemplate();
 }
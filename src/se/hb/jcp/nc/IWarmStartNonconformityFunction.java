@@ -0,0 +1,59 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.nc;
+
+import cern.colt.matrix.DoubleMatrix2D;
+
+/**
+ * Represents a non-conformity function for conformal classification whose
+ * underlying model can seed the training of a new model with its own
+ * solution. This is what transductive conformal classification can use
+ * when refitting on the training set extended with the test instance.
+ *
+ * Contract for JCP use, in addition to that of
+ * <tt>IClassificationNonconformityFunction</tt>:
+ * 1. The non-conformity function returned by <tt>fitNewWarmStart(X, Y)</tt>
+ *    must be equivalent, up to the tolerance of the training algorithm, to
+ *    that returned by <tt>fitNew(X, Y)</tt>.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public interface IWarmStartNonconformityFunction
+    extends IClassificationNonconformityFunction
+{
+    /**
+     * Returns whether the underlying model of this non-conformity function
+     * supports warm-started training.
+     *
+     * @return <tt>true</tt> if warm-started training is supported or <tt>false</tt> otherwise.
+     */
+    public boolean isWarmStartSupported();
+
+    /**
+     * Returns a new non-conformity function based on the same parameters as
+     * the current one trained on the supplied data with the training seeded
+     * from the solution of the current, trained, one. The first rows of
+     * <tt>x</tt> and <tt>y</tt> must be the instances the current function
+     * was trained on, in the same order.
+     *
+     * @param x    the training instances.
+     * @param y    the targets/classes/labels of the training instances.
+     * @return a new non-conformity function.
+     */
+    public IClassificationNonconformityFunction
+        fitNewWarmStart(DoubleMatrix2D x, double[] y);
+}
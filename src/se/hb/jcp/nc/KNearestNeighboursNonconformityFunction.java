@@ -0,0 +1,769 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.nc;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import se.hb.jcp.util.ExactNearestNeighbourIndex;
+import se.hb.jcp.util.INearestNeighbourIndex;
+import se.hb.jcp.util.ParallelizedAction;
+
+/**
+ * The k-nearest neighbours non-conformity function. The non-conformity
+ * score of an instance with the label y is the sum of the Euclidean
+ * distances to its k nearest training instances with the label y divided by
+ * the sum of the distances to its k nearest training instances with other
+ * labels. For a training instance the instance itself is not counted as a
+ * neighbour.
+ *
+ * The nearest neighbours are found with one nearest neighbour index per
+ * label, created from the index given to the constructor. An
+ * <tt>ExactNearestNeighbourIndex</tt> gives the exact scores while, e.g.,
+ * a <tt>HNSWNearestNeighbourIndex</tt> gives approximate scores much faster
+ * for large training sets.
+ *
+ * The function is incremental: after <tt>fitIncremental</tt> the k nearest
+ * same and other label distances of each training instance are kept, so
+ * adding an extra instance only requires its distances to the training
+ * instances, O(n) instead of the O(n^2) of retraining.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class KNearestNeighboursNonconformityFunction
+    implements IIncrementalNonconformityFunction, java.io.Serializable
+{
+    private static final boolean PARALLEL = true;
+
+    int _k;
+    int _n_classes;
+    double[] _classes;
+    Map<Double, Integer> _class_index = new TreeMap<Double, Integer>();
+    int _attributeCount = -1;
+    // The training set in compact sparse form with ascending indices.
+    int[][]    _indices;
+    double[][] _values;
+    int[]      _training_class_indices;
+    // The untrained index the per-label neighbour indices are created from.
+    INearestNeighbourIndex _index;
+    // For each label: the neighbour index over the training instances with
+    // the label and the training instance at each position in it.
+    INearestNeighbourIndex[] _labelIndices;
+    int[][]                  _labelInstances;
+    // The training set the function was last fitted with. Not serialized.
+    transient DoubleMatrix2D _xtr;
+    // For incremental use: the ascending distances from each training
+    // instance to its (at most) k nearest other training instances with the
+    // same and with other labels. Not serialized.
+    transient double[][] _sameDistances;
+    transient double[][] _otherDistances;
+    // The extra instance and its distances to the training instances.
+    // Kept after removal to be reused if the same instance is added again.
+    transient int[]    _extraIndices;
+    transient double[] _extraValues;
+    transient double[] _extraDistances;
+    transient int      _extra_class_index = -1;
+
+    /**
+     * Creates a k-nearest neighbours non-conformity function using exact
+     * nearest neighbour search.
+     *
+     * @param classes    the class labels.
+     * @param k          the number of neighbours.
+     */
+    public KNearestNeighboursNonconformityFunction(double[] classes, int k)
+    {
+        this(classes, k, new ExactNearestNeighbourIndex());
+    }
+
+    /**
+     * Creates a k-nearest neighbours non-conformity function.
+     *
+     * @param classes    the class labels.
+     * @param k          the number of neighbours.
+     * @param index      an empty nearest neighbour index with the parameter settings to use for the per-label indices.
+     */
+    public KNearestNeighboursNonconformityFunction
+               (double[] classes, int k, INearestNeighbourIndex index)
+    {
+        if (k < 1) {
+            throw new IllegalArgumentException
+                          ("The number of neighbours must be positive.");
+        }
+        _k = k;
+        _index = index;
+        _n_classes = classes.length;
+        _classes = classes;
+        for (int i = 0; i < _n_classes; i++) {
+            _class_index.put(_classes[i], i);
+        }
+    }
+
+    /**
+     * Returns the number of neighbours.
+     *
+     * @return the number of neighbours.
+     */
+    public int getK()
+    {
+        return _k;
+    }
+
+    @Override
+    public void fit(DoubleMatrix2D x, double[] y)
+    {
+        int n = x.rows();
+        int[][]    indices = new int[n][];
+        double[][] values  = new double[n][];
+        int[]      classIndices = new int[n];
+        IntArrayList    indexList = new IntArrayList();
+        DoubleArrayList valueList = new DoubleArrayList();
+        for (int i = 0; i < n; i++) {
+            x.viewRow(i).getNonZeros(indexList, valueList);
+            indices[i] = new int[indexList.size()];
+            values[i]  = new double[indexList.size()];
+            toCompact(indexList, valueList, indices[i], values[i]);
+            classIndices[i] = _class_index.get(y[i]);
+        }
+        _indices = indices;
+        _values  = values;
+        _training_class_indices = classIndices;
+        _attributeCount = x.columns();
+        _xtr = x;
+        _labelIndices   = new INearestNeighbourIndex[_n_classes];
+        _labelInstances = new int[_n_classes][];
+        if (!PARALLEL) {
+            for (int c = 0; c < _n_classes; c++) {
+                buildLabelIndex(c);
+            }
+        } else {
+            LabelIndexAction all = new LabelIndexAction(0, _n_classes);
+            all.start();
+        }
+        _sameDistances  = null;
+        _otherDistances = null;
+        _extraIndices   = null;
+        _extraValues    = null;
+        _extraDistances = null;
+        _extra_class_index = -1;
+    }
+
+    @Override
+    public IClassificationNonconformityFunction fitNew(DoubleMatrix2D x,
+                                                       double[] y)
+    {
+        KNearestNeighboursNonconformityFunction nc =
+            new KNearestNeighboursNonconformityFunction(_classes, _k, _index);
+        nc.fit(x, y);
+        return nc;
+    }
+
+    @Override
+    public IClassificationNonconformityFunction
+        fitNew(DoubleMatrix2D xtr, double[] ytr,
+               DoubleMatrix1D xtest, double ytest)
+    {
+        IIncrementalNonconformityFunction nc = fitIncremental(xtr, ytr);
+        nc.addInstance(xtest, ytest);
+        return nc;
+    }
+
+    @Override
+    public IIncrementalNonconformityFunction fitIncremental(DoubleMatrix2D x,
+                                                            double[] y)
+    {
+        KNearestNeighboursNonconformityFunction nc =
+            new KNearestNeighboursNonconformityFunction(_classes, _k, _index);
+        nc.fit(x, y);
+        int n = x.rows();
+        nc._sameDistances  = new double[n][];
+        nc._otherDistances = new double[n][];
+        if (!PARALLEL) {
+            for (int i = 0; i < n; i++) {
+                nc.calculateNeighbourDistances(i);
+            }
+        } else {
+            NeighbourDistancesAction all =
+                nc.new NeighbourDistancesAction(0, n);
+            all.start();
+        }
+        return nc;
+    }
+
+    @Override
+    public IIncrementalNonconformityFunction copy()
+    {
+        KNearestNeighboursNonconformityFunction nc =
+            new KNearestNeighboursNonconformityFunction(_classes, _k, _index);
+        nc._attributeCount = _attributeCount;
+        nc._indices = _indices;
+        nc._values  = _values;
+        nc._training_class_indices = _training_class_indices;
+        nc._labelIndices   = _labelIndices;
+        nc._labelInstances = _labelInstances;
+        nc._xtr = _xtr;
+        nc._sameDistances  = _sameDistances;
+        nc._otherDistances = _otherDistances;
+        return nc;
+    }
+
+    @Override
+    public void addInstance(DoubleMatrix1D x, double y)
+    {
+        if (_sameDistances == null || _extra_class_index != -1) {
+            throw new UnsupportedOperationException
+                          ("The non-conformity function must be trained " +
+                           "with fitIncremental() and have no extra " +
+                           "instance.");
+        }
+        IntArrayList    indexList = new IntArrayList();
+        DoubleArrayList valueList = new DoubleArrayList();
+        x.getNonZeros(indexList, valueList);
+        int[]    indices = new int[indexList.size()];
+        double[] values  = new double[indexList.size()];
+        toCompact(indexList, valueList, indices, values);
+        if (_extraDistances == null ||
+            !Arrays.equals(indices, _extraIndices) ||
+            !Arrays.equals(values, _extraValues)) {
+            // A new instance, typically the previous one had another label.
+            _extraIndices = indices;
+            _extraValues  = values;
+            _extraDistances = new double[_indices.length];
+            for (int i = 0; i < _indices.length; i++) {
+                _extraDistances[i] = distance(_indices[i], _values[i],
+                                              indices, values);
+            }
+        }
+        _extra_class_index = _class_index.get(y);
+    }
+
+    @Override
+    public void removeInstance()
+    {
+        _extra_class_index = -1;
+    }
+
+    @Override
+    public void calculateTrainingNonConformityScores(double[] ncScores)
+    {
+        int n = _indices.length;
+        for (int i = 0; i < n; i++) {
+            double same;
+            double other;
+            if (_extra_class_index == -1) {
+                same  = sum(_sameDistances[i]);
+                other = sum(_otherDistances[i]);
+            } else if (_extra_class_index == _training_class_indices[i]) {
+                same  = sum(_sameDistances[i], _extraDistances[i]);
+                other = sum(_otherDistances[i]);
+            } else {
+                same  = sum(_sameDistances[i]);
+                other = sum(_otherDistances[i], _extraDistances[i]);
+            }
+            ncScores[i] = score(same, other);
+        }
+        if (_extra_class_index != -1) {
+            double[] same  = new double[_k];
+            double[] other = new double[_k];
+            int sameSize  = 0;
+            int otherSize = 0;
+            for (int i = 0; i < n; i++) {
+                if (_training_class_indices[i] == _extra_class_index) {
+                    sameSize = insert(same, sameSize, _extraDistances[i]);
+                } else {
+                    otherSize = insert(other, otherSize, _extraDistances[i]);
+                }
+            }
+            ncScores[n] = score(sum(same, sameSize), sum(other, otherSize));
+        }
+    }
+
+    /**
+     * Computes the non-conformity scores for the instances in x.
+     * If x is the training set of this non-conformity function each
+     * instance is excluded from its own neighbours.
+     *
+     * @param x    the instances.
+     * @param y    the targets/classes/labels of the instances.
+     * @return a <tt>double[]</tt> array containing the non-conformity scores.
+     */
+    @Deprecated
+    @Override
+    public double[] calc_nc(DoubleMatrix2D x, double[] y)
+    {
+        double[] nc = new double[y.length];
+        if (!PARALLEL) {
+            for (int i = 0; i < nc.length; i++) {
+                nc[i] = calculateNonConformityScore(x, y, i);
+            }
+        } else {
+            CalcNCAction all = new CalcNCAction(x, y, nc, 0, nc.length);
+            all.start();
+        }
+        return nc;
+    }
+
+    @Override
+    public double[] calc_nc(DoubleMatrix2D xtr, double[] ytr,
+                            DoubleMatrix1D xtest, double ytest)
+    {
+        double[] nc = new double[ytr.length + 1];
+        if (xtr == _xtr && _extra_class_index != -1) {
+            calculateTrainingNonConformityScores(nc);
+        } else {
+            double[] nctr = calc_nc(xtr, ytr);
+            System.arraycopy(nctr, 0, nc, 0, nctr.length);
+            nc[nctr.length] = calculateNonConformityScore(xtest, ytest);
+        }
+        return nc;
+    }
+
+    /**
+     * Computes the non-conformity score for the instance i in x. If x is
+     * the training set the instance is excluded from its own neighbours.
+     *
+     * @param x    the instances.
+     * @param y    the targets/classes/labels of the instances.
+     * @param i    the index of the instance.
+     * @return the non-conformity score.
+     */
+    private double calculateNonConformityScore(DoubleMatrix2D x, double[] y,
+                                               int i)
+    {
+        if (x == _xtr) {
+            double[][] distances = findNeighbourDistances(i);
+            return score(sum(distances[0]), sum(distances[1]));
+        } else {
+            return calculateNonConformityScore(x.viewRow(i), y[i]);
+        }
+    }
+
+    @Override
+    public double calculateNonConformityScore(DoubleMatrix1D x, double y)
+    {
+        double[][] nearest = new double[_n_classes][_k];
+        int[] sizes = calculateNearestDistances(x, nearest);
+        int c = _class_index.get(y);
+        return score(sum(nearest[c], sizes[c]),
+                     sumOther(nearest, sizes, c));
+    }
+
+    @Override
+    public void calculateNonConformityScores(DoubleMatrix1D x,
+                                             double[] ncScores)
+    {
+        double[][] nearest = new double[_n_classes][_k];
+        int[] sizes = calculateNearestDistances(x, nearest);
+        int i = 0;
+        for (int c : _class_index.values()) {
+            ncScores[i++] = score(sum(nearest[c], sizes[c]),
+                                  sumOther(nearest, sizes, c));
+        }
+    }
+
+    @Override
+    public void calculateNonConformityScores(DoubleMatrix2D x,
+                                             double[] ncScores)
+    {
+        if (!PARALLEL) {
+            double[] instanceNCScores = new double[_n_classes];
+            for (int i = 0; i < x.rows(); i++) {
+                calculateNonConformityScores(x.viewRow(i), instanceNCScores);
+                System.arraycopy(instanceNCScores, 0,
+                                 ncScores, i * _n_classes, _n_classes);
+            }
+        } else {
+            CalcAllNCScoresAction all =
+                new CalcAllNCScoresAction(x, ncScores, 0, x.rows());
+            all.start();
+        }
+    }
+
+    @Override
+    public se.hb.jcp.ml.IClassifier getClassifier()
+    {
+        return null;
+    }
+
+    @Override
+    public final boolean isTrained()
+    {
+        return getAttributeCount() != -1;
+    }
+
+    @Override
+    public final int getAttributeCount()
+    {
+        return _attributeCount;
+    }
+
+    @Override
+    public final Double[] getLabels()
+    {
+        return _class_index.keySet().toArray(new Double[0]);
+    }
+
+    @Override
+    public DoubleMatrix1D nativeStorageTemplate()
+    {
+        return new cern.colt.matrix.impl.SparseDoubleMatrix1D(0);
+    }
+
+    /**
+     * Computes the at most k smallest distances from the instance x to the
+     * training instances of each class.
+     *
+     * @param x        the instance.
+     * @param nearest  an initialized <tt>double[][]</tt> array to store the ascending distances for each class in.
+     * @return an <tt>int[]</tt> array containing the number of distances for each class.
+     */
+    private int[] calculateNearestDistances(DoubleMatrix1D x,
+                                            double[][] nearest)
+    {
+        int[] sizes = new int[_n_classes];
+        int[] positions = new int[_k];
+        for (int c = 0; c < _n_classes; c++) {
+            sizes[c] = _labelIndices[c].nearest(x, _k, positions, nearest[c]);
+        }
+        return sizes;
+    }
+
+    /**
+     * Computes the k nearest same and other label distances of the
+     * training instance i.
+     *
+     * @param i    the training instance index.
+     */
+    private void calculateNeighbourDistances(int i)
+    {
+        double[][] distances = findNeighbourDistances(i);
+        _sameDistances[i]  = distances[0];
+        _otherDistances[i] = distances[1];
+    }
+
+    /**
+     * Finds the k nearest same and other label distances of the training
+     * instance i, excluding the instance itself.
+     *
+     * @param i    the training instance index.
+     * @return a <tt>double[][]</tt> array containing the ascending same label distances and the ascending other label distances.
+     */
+    private double[][] findNeighbourDistances(int i)
+    {
+        DoubleMatrix1D x = _xtr.viewRow(i);
+        int c = _training_class_indices[i];
+        int[]    positions = new int[_k + 1];
+        double[] distances = new double[_k + 1];
+
+        // One extra neighbour is needed as the instance itself is found
+        // among the same label instances.
+        int count = _labelIndices[c].nearest(x, _k + 1, positions, distances);
+        double[] same = new double[_k];
+        int sameSize  = 0;
+        boolean found = false;
+        for (int j = 0; j < count && sameSize < _k; j++) {
+            if (!found && _labelInstances[c][positions[j]] == i) {
+                found = true;
+            } else {
+                same[sameSize++] = distances[j];
+            }
+        }
+
+        double[] other = new double[_k];
+        int otherSize = 0;
+        for (int c2 = 0; c2 < _n_classes; c2++) {
+            if (c2 != c) {
+                count = _labelIndices[c2].nearest(x, _k, positions, distances);
+                for (int j = 0; j < count; j++) {
+                    otherSize = insert(other, otherSize, distances[j]);
+                }
+            }
+        }
+        return new double[][] { Arrays.copyOf(same, sameSize),
+                                Arrays.copyOf(other, otherSize) };
+    }
+
+    /**
+     * Builds the neighbour index over the training instances with the
+     * label c.
+     *
+     * @param c    the label index.
+     */
+    private void buildLabelIndex(int c)
+    {
+        int count = 0;
+        for (int i = 0; i < _training_class_indices.length; i++) {
+            if (_training_class_indices[i] == c) {
+                count++;
+            }
+        }
+        INearestNeighbourIndex index = _index.createNew();
+        int[] instances = new int[count];
+        for (int i = 0; i < _training_class_indices.length; i++) {
+            if (_training_class_indices[i] == c) {
+                instances[index.add(_xtr.viewRow(i))] = i;
+            }
+        }
+        _labelIndices[c]   = index;
+        _labelInstances[c] = instances;
+    }
+
+    private double sumOther(double[][] nearest, int[] sizes, int c)
+    {
+        double[] other = new double[_k];
+        int otherSize = 0;
+        for (int c2 = 0; c2 < _n_classes; c2++) {
+            if (c2 != c) {
+                for (int j = 0; j < sizes[c2]; j++) {
+                    otherSize = insert(other, otherSize, nearest[c2][j]);
+                }
+            }
+        }
+        return sum(other, otherSize);
+    }
+
+    private static double score(double same, double other)
+    {
+        if (other > 0.0) {
+            return same / other;
+        } else if (same > 0.0) {
+            return Double.POSITIVE_INFINITY;
+        } else {
+            return 0.0;
+        }
+    }
+
+    private static double sum(double[] distances)
+    {
+        return sum(distances, distances.length);
+    }
+
+    private static double sum(double[] distances, int size)
+    {
+        double sum = 0.0;
+        for (int i = 0; i < size; i++) {
+            sum += distances[i];
+        }
+        return sum;
+    }
+
+    // Returns the sum of the k smallest of the ascending distances and d.
+    private double sum(double[] distances, double d)
+    {
+        double sum = 0.0;
+        int count = 0;
+        boolean added = false;
+        for (int i = 0; i < distances.length && count < _k; i++) {
+            if (!added && d < distances[i]) {
+                sum += d;
+                count++;
+                added = true;
+                if (count == _k) {
+                    break;
+                }
+            }
+            sum += distances[i];
+            count++;
+        }
+        if (!added && count < _k) {
+            sum += d;
+        }
+        return sum;
+    }
+
+    // Inserts d into the ascending list of the list.length smallest values
+    // seen so far. Returns the new size of the list.
+    private static int insert(double[] list, int size, double d)
+    {
+        if (size == list.length) {
+            if (!(d < list[size - 1])) {
+                return size;
+            }
+            size--;
+        }
+        int i = size;
+        while (i > 0 && list[i - 1] > d) {
+            list[i] = list[i - 1];
+            i--;
+        }
+        list[i] = d;
+        return size + 1;
+    }
+
+    // Returns the Euclidean distance between two compact sparse vectors.
+    // The terms are summed in ascending index order, which makes the
+    // distance exactly symmetric.
+    private static double distance(int[] ai, double[] av,
+                                   int[] bi, double[] bv)
+    {
+        double sum = 0.0;
+        int i = 0;
+        int j = 0;
+        while (i < ai.length && j < bi.length) {
+            if (ai[i] == bi[j]) {
+                double d = av[i++] - bv[j++];
+                sum += d * d;
+            } else if (ai[i] < bi[j]) {
+                sum += av[i] * av[i];
+                i++;
+            } else {
+                sum += bv[j] * bv[j];
+                j++;
+            }
+        }
+        for (; i < ai.length; i++) {
+            sum += av[i] * av[i];
+        }
+        for (; j < bi.length; j++) {
+            sum += bv[j] * bv[j];
+        }
+        return Math.sqrt(sum);
+    }
+
+    // Copies the non-zeros into index ascending compact arrays.
+    private static void toCompact(IntArrayList indexList,
+                                  DoubleArrayList valueList,
+                                  int[] indices, double[] values)
+    {
+        long[] keys = new long[indices.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ((long)indexList.getQuick(i) << 32) | i;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < keys.length; i++) {
+            int position = (int)(keys[i] & 0xFFFFFFFFL);
+            indices[i] = indexList.getQuick(position);
+            values[i]  = valueList.getQuick(position);
+        }
+    }
+
+    class LabelIndexAction extends se.hb.jcp.util.ParallelizedAction
+    {
+        public LabelIndexAction(int first, int last)
+        {
+            super(first, last);
+        }
+
+        @Override
+        protected void compute(int c)
+        {
+            buildLabelIndex(c);
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new LabelIndexAction(first, last);
+        }
+    }
+
+    class CalcNCAction extends se.hb.jcp.util.ParallelizedAction
+    {
+        DoubleMatrix2D _x;
+        double[] _y;
+        double[] _nc;
+
+        public CalcNCAction(DoubleMatrix2D x, double[] y, double[] nc,
+                            int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _y = y;
+            _nc = nc;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            _nc[i] = calculateNonConformityScore(_x, _y, i);
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new CalcNCAction(_x, _y, _nc, first, last);
+        }
+    }
+
+    class CalcAllNCScoresAction extends se.hb.jcp.util.ParallelizedAction
+    {
+        DoubleMatrix2D _x;
+        double[] _ncScores;
+        double[] _instanceNCScores;
+
+        public CalcAllNCScoresAction(DoubleMatrix2D x,
+                                     double[] ncScores,
+                                     int first, int last)
+        {
+            super(first, last);
+            _x = x;
+            _ncScores = ncScores;
+        }
+
+        @Override
+        protected void initialize(int first, int last)
+        {
+            _instanceNCScores = new double[_n_classes];
+        }
+
+        @Override
+        protected void finalize(int first, int last)
+        {
+            _instanceNCScores = null;
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            calculateNonConformityScores(_x.viewRow(i), _instanceNCScores);
+            System.arraycopy(_instanceNCScores, 0,
+                             _ncScores, i * _n_classes, _n_classes);
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new CalcAllNCScoresAction(_x, _ncScores, first, last);
+        }
+    }
+
+    class NeighbourDistancesAction extends se.hb.jcp.util.ParallelizedAction
+    {
+        public NeighbourDistancesAction(int first, int last)
+        {
+            super(first, last);
+        }
+
+        @Override
+        protected void compute(int i)
+        {
+            calculateNeighbourDistances(i);
+        }
+
+        @Override
+        protected ParallelizedAction createSubtask(int first, int last)
+        {
+            return new NeighbourDistancesAction(first, last);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.nc;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import se.hb.jcp.ml.IClassifier;
+
+/**
+ * Regression nonconformity function based on the residual |y - h(x)| of a
+ * regressor h normalized by the estimated difficulty of the instance,
+ * i.e. |y - h(x)| / (exp(g(x)) + beta), where the regressor g is trained
+ * on the logarithm of the absolute residuals of h on the training set.
+ * The resulting prediction intervals are tighter for easy instances and
+ * wider for difficult ones.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class NormalizedResidualNonconformityFunction
+    extends RegressorNonconformityFunctionBase
+{
+    // Lower bound for the residuals before the logarithm is taken.
+    private static final double MIN_RESIDUAL = 1e-8;
+
+    private IClassifier _scaleModel;
+    private double _beta;
+
+    /**
+     * Creates a new normalized residual nonconformity function using the
+     * supplied regressors.
+     *
+     * @param regressor       the untrained regressor for the target.
+     * @param scaleRegressor  the untrained regressor for the difficulty.
+     * @param beta            the sensitivity parameter; a non-negative value added to the estimated difficulty. Larger values make the intervals less adaptive.
+     */
+    public NormalizedResidualNonconformityFunction(IClassifier regressor,
+                                                   IClassifier scaleRegressor,
+                                                   double      beta)
+    {
+        super(regressor);
+        if (beta < 0.0) {
+            throw new IllegalArgumentException
+                          ("The sensitivity parameter beta must be " +
+                           "non-negative.");
+        }
+        _scaleModel = scaleRegressor;
+        _beta = beta;
+    }
+
+    @Override
+    public void fit(DoubleMatrix2D x,
+                    double[] y)
+    {
+        _model.fit(x, y);
+        int n = x.rows();
+        double[] residuals = new double[n];
+        _model.predict(x, residuals);
+        for (int i = 0; i < n; i++) {
+            residuals[i] =
+                Math.log(Math.max(Math.abs(y[i] - residuals[i]),
+                                  MIN_RESIDUAL));
+        }
+        _scaleModel.fit(x, residuals);
+    }
+
+    @Override
+    public double predictScale(DoubleMatrix1D x)
+    {
+        return Math.exp(_scaleModel.predict(x)) + _beta;
+    }
+
+    @Override
+    public void predict(DoubleMatrix2D x,
+                        double[] predictions,
+                        double[] scales)
+    {
+        _model.predict(x, predictions);
+        _scaleModel.predict(x, scales);
+        for (int i = 0; i < x.rows(); i++) {
+            scales[i] = Math.exp(scales[i]) + _beta;
+        }
+    }
+
+    /**
+     * Returns the regressor for the difficulty used by this non-conformity
+     * function.
+     *
+     * @return the regressor for the difficulty.
+     */
+    public IClassifier getScaleClassifier()
+    {
+        return _scaleModel;
+    }
+
+    @Override
+    public boolean isTrained()
+    {
+        return _model.isTrained() && _scaleModel.isTrained();
+    }
+}
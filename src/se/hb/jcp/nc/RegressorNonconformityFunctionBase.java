@@ -0,0 +1,110 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.nc;
+
+import java.util.Arrays;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import se.hb.jcp.ml.IClassifier;
+
+/**
+ * Base class for regression nonconformity functions that use a regressor.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public abstract class RegressorNonconformityFunctionBase
+    implements IRegressionNonconformityFunction
+{
+    IClassifier _model;
+
+    public RegressorNonconformityFunctionBase(IClassifier regressor)
+    {
+        _model = regressor;
+    }
+
+    @Override
+    public void fit(DoubleMatrix2D x,
+                    double[] y)
+    {
+        _model.fit(x, y);
+    }
+
+    @Override
+    public double calculateNonConformityScore(DoubleMatrix1D x, double y)
+    {
+        return Math.abs(y - _model.predict(x)) / predictScale(x);
+    }
+
+    @Override
+    public void calculateNonConformityScores(DoubleMatrix2D x,
+                                             double[] y,
+                                             double[] ncScores)
+    {
+        int n = x.rows();
+        double[] predictions = new double[n];
+        double[] scales = new double[n];
+        predict(x, predictions, scales);
+        for (int i = 0; i < n; i++) {
+            ncScores[i] = Math.abs(y[i] - predictions[i]) / scales[i];
+        }
+    }
+
+    @Override
+    public double predict(DoubleMatrix1D x)
+    {
+        return _model.predict(x);
+    }
+
+    @Override
+    public abstract double predictScale(DoubleMatrix1D x);
+
+    @Override
+    public void predict(DoubleMatrix2D x,
+                        double[] predictions,
+                        double[] scales)
+    {
+        // The batch methods of the regressor are parallelized.
+        _model.predict(x, predictions);
+        Arrays.fill(scales, 0, x.rows(), 1.0);
+    }
+
+    @Override
+    public se.hb.jcp.ml.IClassifier getClassifier()
+    {
+        return _model;
+    }
+
+    @Override
+    public boolean isTrained()
+    {
+        return _model.isTrained();
+    }
+
+    @Override
+    public final int getAttributeCount()
+    {
+        return _model.getAttributeCount();
+    }
+
+    @Override
+    public DoubleMatrix1D nativeStorageTemplate()
+    {
+        return _model.nativeStorageTemplate();
+    }
+}
@@ -19,6 +19,7 @@ package se.hb.jcp.nc;
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 
+import se.hb.jcp.ml.IClassifier;
 import se.hb.jcp.ml.ISVMClassifier;
 
 /**
@@ -54,10 +55,14 @@ public class SVMDistanceNonconformityFunction
     public IClassificationNonconformityFunction fitNew(DoubleMatrix2D x,
                                                        double[] y)
     {
-        SVMDistanceNonconformityFunction ncf =
-            new SVMDistanceNonconformityFunction
-                    (_classes, (ISVMClassifier)_model.fitNew(x, y));
-        return ncf;
+        return createNew(_model.fitNew(x, y));
+    }
+
+    @Override
+    IClassificationNonconformityFunction createNew(IClassifier model)
+    {
+        return new SVMDistanceNonconformityFunction(_classes,
+                                                    (ISVMClassifier)model);
     }
 
     @Override
@@ -65,4 +70,42 @@ public class SVMDistanceNonconformityFunction
     {
         return -y * ((ISVMClassifier)_model).distanceFromSeparatingPlane(x);
     }
+
+    @Override
+    public void calculateNonConformityScores(DoubleMatrix1D x,
+                                             double[] ncScores)
+    {
+        double distance =
+            ((ISVMClassifier)_model).distanceFromSeparatingPlane(x);
+        int c = 0;
+        for (double label : _class_index.keySet()) {
+            ncScores[c++] = -label * distance;
+        }
+    }
+
+    @Override
+    public void calculateNonConformityScores(DoubleMatrix2D x,
+                                             double[] ncScores)
+    {
+        double[] distances = new double[x.rows()];
+        ((ISVMClassifier)_model).distanceFromSeparatingPlane(x, distances);
+        int c = 0;
+        for (int i = 0; i < distances.length; i++) {
+            for (double label : _class_index.keySet()) {
+                ncScores[c++] = -label * distances[i];
+            }
+        }
+    }
+
+    @Deprecated
+    @Override
+    public double[] calc_nc(DoubleMatrix2D x, double[] y)
+    {
+        double[] nc = new double[y.length];
+        ((ISVMClassifier)_model).distanceFromSeparatingPlane(x, nc);
+        for (int i = 0; i < nc.length; i++) {
+            nc[i] = -y[i] * nc[i];
+        }
+        return nc;
+    }
 }
@@ -0,0 +1,92 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import se.hb.jcp.cp.CalibrationScoreMultiset;
+import se.hb.jcp.cp.Util;
+
+/**
+ * Regression check for <tt>CalibrationScoreMultiset</tt>. A sliding window
+ * of hundreds of distinct scores is maintained by adding and removing
+ * scores, and after each step the size, the sorted contents and the
+ * p-values are compared with a full recalibration over the same scores.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class CalibrationScoreMultisetTest
+{
+    public static void main(String[] args)
+    {
+        int window = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int steps  = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+        Random random = new Random(4711);
+        CalibrationScoreMultiset multiset = new CalibrationScoreMultiset();
+        ArrayDeque<Double> scores = new ArrayDeque<Double>();
+        int failures = 0;
+
+        for (int step = 0; step < steps; step++) {
+            // Distinct scores, plus some repeated ones.
+            double score = (step % 10 == 0 && !scores.isEmpty())
+                ? scores.peekLast() : random.nextDouble();
+            multiset.add(score);
+            scores.addLast(score);
+            if (scores.size() > window) {
+                if (!multiset.remove(scores.removeFirst())) {
+                    failures++;
+                    System.err.println("Step " + step + ": remove failed.");
+                }
+            }
+
+            double[] expected = new double[scores.size()];
+            int i = 0;
+            for (double s : scores) {
+                expected[i++] = s;
+            }
+            Arrays.sort(expected);
+            if (multiset.size() != expected.length ||
+                !Arrays.equals(multiset.toSortedArray(), expected)) {
+                failures++;
+                System.err.println("Step " + step + ": size " +
+                                   multiset.size() + " expected " +
+                                   expected.length + ".");
+                continue;
+            }
+            // Test scores that do not tie with the calibration scores
+            // have deterministic p-values.
+            for (int t = 0; t < 10; t++) {
+                double test = random.nextDouble();
+                double actual = multiset.calculatePValue(test);
+                double full   = Util.calculatePValue(test, expected);
+                if (actual != full) {
+                    failures++;
+                    System.err.println("Step " + step + ": p-value " +
+                                       actual + " expected " + full + ".");
+                }
+            }
+        }
+        System.out.println("CalibrationScoreMultisetTest: " +
+                           (failures == 0 ? "passed." :
+                            failures + " failures."));
+        if (failures != 0) {
+            System.exit(1);
+        }
+    }
+}
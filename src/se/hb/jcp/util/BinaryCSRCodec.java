@@ -0,0 +1,249 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.util;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap.SimpleImmutableEntry;
+
+/**
+ * Compact binary encoding of a sparse data set, i.e. a matrix of
+ * attributes and, optionally, the targets. The rows are stored in
+ * compressed sparse row (CSR) order with the column indices of each row
+ * delta-encoded as variable length integers and the values stored as
+ * 64-bit or, optionally, 32-bit floating point numbers.
+ *
+ * The layout is: the magic number, the version and flag bytes, the number
+ * of rows and columns (int), the number of non-zeros (long), the targets
+ * (double) and then, for each row, its number of non-zeros, its index
+ * deltas and its values. All multi-byte numbers are big-endian, which is
+ * the default for <tt>java.nio.ByteBuffer</tt>, so an encoded data set can
+ * be decoded directly from a memory-mapped file.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public final class BinaryCSRCodec
+{
+    private static final int  MAGIC   = 0x4A435352; // "JCSR"
+    private static final byte VERSION = 1;
+    private static final int  SINGLE_PRECISION = 0x1;
+    private static final int  HAS_TARGETS      = 0x2;
+
+    private BinaryCSRCodec()
+    {
+    }
+
+    /**
+     * Encodes the data set.
+     *
+     * @param x                the attributes of the instances.
+     * @param y                the targets of the instances; or null.
+     * @param singlePrecision  a boolean indicating whether the attribute values should be stored as 32-bit floating point numbers.
+     * @return an <tt>byte[]</tt> array containing the encoded data set.
+     */
+    public static byte[] encode(DoubleMatrix2D x, double[] y,
+                                boolean singlePrecision)
+    {
+        if (y != null && y.length != x.rows()) {
+            throw new IllegalArgumentException
+                          ("The number of targets must match the number " +
+                           "of instances.");
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        IntArrayList indexList = new IntArrayList();
+        DoubleArrayList valueList = new DoubleArrayList();
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte((singlePrecision ? SINGLE_PRECISION : 0) |
+                          (y != null ? HAS_TARGETS : 0));
+            out.writeInt(x.rows());
+            out.writeInt(x.columns());
+            out.writeLong(0L); // The number of non-zeros is patched below.
+            if (y != null) {
+                for (int i = 0; i < y.length; i++) {
+                    out.writeDouble(y[i]);
+                }
+            }
+            long nnz = 0;
+            for (int r = 0; r < x.rows(); r++) {
+                x.viewRow(r).getNonZeros(indexList, valueList);
+                int[] indices = new int[indexList.size()];
+                double[] values = new double[indexList.size()];
+                CompactRowStore.toCompact(indexList, valueList,
+                                          indices, values);
+                writeVarInt(out, indices.length);
+                int previous = 0;
+                for (int i = 0; i < indices.length; i++) {
+                    writeVarInt(out, indices[i] - previous);
+                    previous = indices[i];
+                }
+                for (int i = 0; i < values.length; i++) {
+                    if (singlePrecision) {
+                        out.writeFloat((float)values[i]);
+                    } else {
+                        out.writeDouble(values[i]);
+                    }
+                }
+                nnz += indices.length;
+            }
+            out.flush();
+            byte[] result = bytes.toByteArray();
+            ByteBuffer.wrap(result).putLong(14, nnz);
+            return result;
+        } catch (IOException e) {
+            // Cannot happen for a ByteArrayOutputStream.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns whether the encoded data set stores the attribute values as
+     * 32-bit floating point numbers.
+     *
+     * @param data     a buffer positioned at the start of the encoded data set. The position is not changed.
+     * @return <tt>true</tt> if the values have single precision or <tt>false</tt> otherwise.
+     */
+    public static boolean isSinglePrecision(ByteBuffer data)
+    {
+        checkHeader(data);
+        return (data.get(data.position() + 5) & SINGLE_PRECISION) != 0;
+    }
+
+    /**
+     * Decodes the data set. The buffer is advanced past the encoded data
+     * set.
+     *
+     * @param data     a buffer positioned at the start of the encoded data set, e.g. a memory-mapped file.
+     * @param template a <tt>DoubleMatrix1D</tt> of the type to store the attributes in; or null for a colt <tt>SparseDoubleMatrix2D</tt>.
+     * @return a pair of a <tt>DoubleMatrix2D</tt> containing the attributes and a <tt>double[]</tt> array containing the targets, or null if no targets were stored.
+     */
+    public static SimpleImmutableEntry<DoubleMatrix2D, double[]>
+        decode(ByteBuffer data, DoubleMatrix1D template)
+    {
+        checkHeader(data);
+        try {
+            data.getInt();
+            data.get();
+            int flags = data.get();
+            int rows = data.getInt();
+            int columns = data.getInt();
+            long nnz = data.getLong();
+            boolean singlePrecision = (flags & SINGLE_PRECISION) != 0;
+            if (nnz < 0 || nnz > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException
+                              ("The encoded data set has too many " +
+                               "non-zero elements.");
+            }
+
+            double[] y = null;
+            if ((flags & HAS_TARGETS) != 0) {
+                y = new double[rows];
+                for (int i = 0; i < rows; i++) {
+                    y[i] = data.getDouble();
+                }
+            }
+            if (template == null) {
+                template = new cern.colt.matrix.impl.SparseDoubleMatrix1D(0);
+            }
+            // The rows are decoded into CSR arrays so that matrix types
+            // supporting bulk ingestion can build x in one go.
+            int[]    rowPointers = new int[rows + 1];
+            int[]    indices = new int[(int)nnz];
+            double[] values = new double[(int)nnz];
+            int position = 0;
+            for (int r = 0; r < rows; r++) {
+                int count = readVarInt(data);
+                if (count < 0 || count > nnz - position) {
+                    throw new IllegalArgumentException
+                                  ("The encoded data set is corrupt.");
+                }
+                int index = 0;
+                for (int i = 0; i < count; i++) {
+                    index += readVarInt(data);
+                    indices[position + i] = index;
+                }
+                for (int i = 0; i < count; i++) {
+                    values[position + i] = singlePrecision ? data.getFloat()
+                                                           : data.getDouble();
+                }
+                position += count;
+                rowPointers[r + 1] = position;
+            }
+            DoubleMatrix2D x = CSRMatrices.create(template, columns,
+                                                  rowPointers,
+                                                  indices, values);
+            return new SimpleImmutableEntry<DoubleMatrix2D, double[]>(x, y);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException
+                          ("The encoded data set is truncated.");
+        }
+    }
+
+    private static void checkHeader(ByteBuffer data)
+    {
+        if (data.remaining() < 22 ||
+            data.getInt(data.position()) != MAGIC) {
+            throw new IllegalArgumentException
+                          ("The data is not a binary CSR encoded data set.");
+        }
+        if (data.get(data.position() + 4) != VERSION) {
+            throw new IllegalArgumentException
+                          ("Unsupported binary CSR encoding version " +
+                           data.get(data.position() + 4) + ".");
+        }
+    }
+
+    // Writes a non-negative int as an unsigned LEB128 variable length
+    // integer.
+    private static void writeVarInt(DataOutputStream out, int value)
+        throws IOException
+    {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuffer data)
+    {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = data.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            if (shift > 28) {
+                throw new IllegalArgumentException
+                              ("Malformed variable length integer.");
+            }
+        }
+    }
+}
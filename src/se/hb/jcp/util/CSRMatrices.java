@@ -0,0 +1,104 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.util;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+/**
+ * Utility methods for creating matrices from data in the compressed
+ * sparse row (CSR) format. See <tt>IBulkRowMatrix2D</tt>.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public final class CSRMatrices
+{
+    private CSRMatrices()
+    {
+    }
+
+    /**
+     * Creates a matrix of the type corresponding to the template with the
+     * contents given in CSR format. Matrix types implementing
+     * <tt>IBulkRowMatrix2D</tt> are built in one go; other types are
+     * filled element by element.
+     *
+     * @param template     a <tt>DoubleMatrix1D</tt> of the type to store the matrix rows in.
+     * @param columns      the number of columns the matrix shall have.
+     * @param rowPointers  the start of each row followed by the end of the last row.
+     * @param indices      the column indices of the elements.
+     * @param values       the values of the elements.
+     * @return a new matrix with <tt>rowPointers.length - 1</tt> rows.
+     */
+    public static DoubleMatrix2D create(DoubleMatrix1D template, int columns,
+                                        int[] rowPointers, int[] indices,
+                                        double[] values)
+    {
+        int rows = rowPointers.length - 1;
+        check(rows, columns, rowPointers, indices, values);
+        DoubleMatrix2D prototype = template.like2D(0, columns);
+        if (prototype instanceof IBulkRowMatrix2D) {
+            return ((IBulkRowMatrix2D)prototype).
+                likeFromCSR(columns, rowPointers, indices, values);
+        }
+        DoubleMatrix2D x = template.like2D(rows, columns);
+        for (int r = 0; r < rows; r++) {
+            for (int i = rowPointers[r]; i < rowPointers[r + 1]; i++) {
+                x.setQuick(r, indices[i], values[i]);
+            }
+        }
+        return x;
+    }
+
+    /**
+     * Verifies that the arrays describe a valid matrix in CSR format.
+     *
+     * @param rows         the number of rows.
+     * @param columns      the number of columns.
+     * @param rowPointers  the start of each row followed by the end of the last row.
+     * @param indices      the column indices of the elements.
+     * @param values       the values of the elements.
+     * @throws IllegalArgumentException if the arrays are inconsistent or the indices of a row are not strictly increasing and within bounds.
+     */
+    public static void check(int rows, int columns, int[] rowPointers,
+                             int[] indices, double[] values)
+    {
+        if (rowPointers.length != rows + 1 || rowPointers[0] != 0 ||
+            rowPointers[rows] > indices.length ||
+            indices.length != values.length) {
+            throw new IllegalArgumentException
+                          ("Inconsistent CSR matrix arrays.");
+        }
+        for (int r = 0; r < rows; r++) {
+            if (rowPointers[r + 1] < rowPointers[r]) {
+                throw new IllegalArgumentException
+                              ("Decreasing CSR row pointers at row " + r +
+                               ".");
+            }
+            int previous = -1;
+            for (int i = rowPointers[r]; i < rowPointers[r + 1]; i++) {
+                if (indices[i] <= previous || indices[i] >= columns) {
+                    throw new IllegalArgumentException
+                                  ("Column index " + indices[i] +
+                                   " out of order or out of bounds " +
+                                   "in row " + r + ".");
+                }
+                previous = indices[i];
+            }
+        }
+    }
+}
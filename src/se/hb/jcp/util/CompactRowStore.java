@@ -0,0 +1,235 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.util;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+
+import java.util.Arrays;
+
+/**
+ * Append-only store of sparse rows in contiguous primitive arrays, i.e.
+ * compressed sparse row (CSR) form with ascending column indices.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+final class CompactRowStore
+    implements java.io.Serializable
+{
+    private int[]    _rowStart = new int[17];
+    private int[]    _columns  = new int[16];
+    private double[] _values   = new double[16];
+    private double[] _norms    = new double[16];
+    private int      _rows;
+
+    /**
+     * Returns the number of rows in this store.
+     *
+     * @return the number of rows.
+     */
+    int rows()
+    {
+        return _rows;
+    }
+
+    /**
+     * Appends a row.
+     *
+     * @param x    the row in compact form.
+     * @return the position of the new row.
+     */
+    int add(CompactRow x)
+    {
+        int start = _rowStart[_rows];
+        int end   = start + x.indices.length;
+        if (_rows + 2 > _rowStart.length) {
+            _rowStart = Arrays.copyOf(_rowStart, 2 * _rowStart.length);
+        }
+        if (end > _columns.length) {
+            int capacity = Math.max(end, 2 * _columns.length);
+            _columns = Arrays.copyOf(_columns, capacity);
+            _values  = Arrays.copyOf(_values, capacity);
+        }
+        System.arraycopy(x.indices, 0, _columns, start, x.indices.length);
+        System.arraycopy(x.values, 0, _values, start, x.values.length);
+        if (_rows == _norms.length) {
+            _norms = Arrays.copyOf(_norms, 2 * _norms.length);
+        }
+        _norms[_rows] = x.squaredNorm();
+        _rowStart[++_rows] = end;
+        return _rows - 1;
+    }
+
+    /**
+     * Returns the squared Euclidean distance between a stored row and x.
+     *
+     * @param row  the position of the stored row.
+     * @param x    the other row in compact form.
+     * @return the squared Euclidean distance.
+     */
+    double squaredDistance(int row, CompactRow x)
+    {
+        return squaredDistance(_columns, _values,
+                               _rowStart[row], _rowStart[row + 1],
+                               x.indices, x.values, 0, x.indices.length);
+    }
+
+    /**
+     * Returns the squared Euclidean distance between a stored row and x
+     * computed as |r|^2 + |x|^2 - 2 r.x, which is faster but less accurate
+     * than <tt>squaredDistance(int, CompactRow)</tt>.
+     *
+     * @param row  the position of the stored row.
+     * @param x    the other row in dense form.
+     * @return the squared Euclidean distance.
+     */
+    double squaredDistance(int row, DenseRow x)
+    {
+        double[] dense = x.values;
+        double dot = 0.0;
+        for (int i = _rowStart[row]; i < _rowStart[row + 1]; i++) {
+            int column = _columns[i];
+            if (column < dense.length) {
+                dot += _values[i] * dense[column];
+            }
+        }
+        return Math.max(0.0, _norms[row] + x.norm - 2.0 * dot);
+    }
+
+    /**
+     * Returns the squared Euclidean distance between two stored rows.
+     *
+     * @param a    the position of the first row.
+     * @param b    the position of the second row.
+     * @return the squared Euclidean distance.
+     */
+    double squaredDistance(int a, int b)
+    {
+        return squaredDistance(_columns, _values,
+                               _rowStart[a], _rowStart[a + 1],
+                               _columns, _values,
+                               _rowStart[b], _rowStart[b + 1]);
+    }
+
+    // Returns the squared Euclidean distance between two index ascending
+    // compact sparse vectors. The terms are summed in ascending index
+    // order, which makes the distance exactly symmetric.
+    static double squaredDistance(int[] ai, double[] av, int i, int aEnd,
+                                  int[] bi, double[] bv, int j, int bEnd)
+    {
+        double sum = 0.0;
+        while (i < aEnd && j < bEnd) {
+            if (ai[i] == bi[j]) {
+                double d = av[i++] - bv[j++];
+                sum += d * d;
+            } else if (ai[i] < bi[j]) {
+                sum += av[i] * av[i];
+                i++;
+            } else {
+                sum += bv[j] * bv[j];
+                j++;
+            }
+        }
+        for (; i < aEnd; i++) {
+            sum += av[i] * av[i];
+        }
+        for (; j < bEnd; j++) {
+            sum += bv[j] * bv[j];
+        }
+        return sum;
+    }
+
+    // Copies the non-zeros into index ascending compact arrays.
+    static void toCompact(IntArrayList indexList,
+                          DoubleArrayList valueList,
+                          int[] indices, double[] values)
+    {
+        long[] keys = new long[indices.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ((long)indexList.getQuick(i) << 32) | i;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < keys.length; i++) {
+            int position = (int)(keys[i] & 0xFFFFFFFFL);
+            indices[i] = indexList.getQuick(position);
+            values[i]  = valueList.getQuick(position);
+        }
+    }
+
+    /**
+     * A sparse vector in compact form with ascending indices.
+     */
+    static final class CompactRow
+    {
+        final int[]    indices;
+        final double[] values;
+
+        CompactRow(DoubleMatrix1D x)
+        {
+            IntArrayList    indexList = new IntArrayList();
+            DoubleArrayList valueList = new DoubleArrayList();
+            x.getNonZeros(indexList, valueList);
+            indices = new int[indexList.size()];
+            values  = new double[indexList.size()];
+            toCompact(indexList, valueList, indices, values);
+        }
+
+        double squaredNorm()
+        {
+            double sum = 0.0;
+            for (int i = 0; i < values.length; i++) {
+                sum += values[i] * values[i];
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * A sparse vector scattered into a dense array for fast repeated
+     * distance computations.
+     */
+    static final class DenseRow
+    {
+        // Above this number of columns the dense form is not used.
+        static final int MAX_COLUMNS = 1 << 16;
+
+        final double[] values;
+        final double   norm;
+
+        DenseRow(CompactRow x)
+        {
+            int columns =
+                x.indices.length > 0 ? x.indices[x.indices.length - 1] + 1
+                                     : 0;
+            values = new double[columns];
+            for (int i = 0; i < x.indices.length; i++) {
+                values[x.indices[i]] = x.values[i];
+            }
+            norm = x.squaredNorm();
+        }
+
+        /**
+         * Returns whether x is narrow enough for the dense form.
+         */
+        static boolean isSuitable(CompactRow x)
+        {
+            return x.indices.length == 0 ||
+                   x.indices[x.indices.length - 1] < MAX_COLUMNS;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.util;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import java.util.BitSet;
+
+import se.hb.jcp.util.CompactRowStore.CompactRow;
+
+/**
+ * Exact Euclidean nearest neighbour index. The instances are stored in
+ * contiguous compact sparse arrays and each query scans all of them.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class ExactNearestNeighbourIndex
+    implements INearestNeighbourIndex, java.io.Serializable
+{
+    private final CompactRowStore _rows = new CompactRowStore();
+    private final BitSet _removed = new BitSet();
+    private int _size;
+
+    /**
+     * Creates an empty index.
+     */
+    public ExactNearestNeighbourIndex()
+    {
+    }
+
+    /**
+     * Creates an index over the rows of x.
+     *
+     * @param x    the instances to index.
+     */
+    public ExactNearestNeighbourIndex(DoubleMatrix2D x)
+    {
+        for (int i = 0; i < x.rows(); i++) {
+            add(x.viewRow(i));
+        }
+    }
+
+    @Override
+    public INearestNeighbourIndex createNew()
+    {
+        return new ExactNearestNeighbourIndex();
+    }
+
+    @Override
+    public int add(DoubleMatrix1D x)
+    {
+        _size++;
+        return _rows.add(new CompactRow(x));
+    }
+
+    @Override
+    public void remove(int position)
+    {
+        if (position < 0 || position >= _rows.rows()) {
+            throw new IllegalArgumentException("No such position.");
+        }
+        if (!_removed.get(position)) {
+            _removed.set(position);
+            _size--;
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        return _size;
+    }
+
+    @Override
+    public int[] nearest(DoubleMatrix1D x, int k)
+    {
+        k = Math.max(0, Math.min(k, _size));
+        int[] positions = new int[k];
+        nearest(x, k, positions, new double[k]);
+        return positions;
+    }
+
+    @Override
+    public int nearest(DoubleMatrix1D x, int k,
+                       int[] positions, double[] distances)
+    {
+        CompactRow query = new CompactRow(x);
+        k = Math.min(k, _size);
+        // The k nearest instances so far in ascending order of distance.
+        // Ties are resolved in favour of the earlier instance.
+        int size = 0;
+        for (int i = 0; i < _rows.rows() && k > 0; i++) {
+            if (_removed.get(i)) {
+                continue;
+            }
+            double d = _rows.squaredDistance(i, query);
+            if (size == k && d >= distances[k - 1]) {
+                continue;
+            }
+            int j = size < k ? size++ : k - 1;
+            while (j > 0 && distances[j - 1] > d) {
+                distances[j] = distances[j - 1];
+                positions[j] = positions[j - 1];
+                j--;
+            }
+            distances[j] = d;
+            positions[j] = i;
+        }
+        for (int i = 0; i < size; i++) {
+            distances[i] = Math.sqrt(distances[i]);
+        }
+        return size;
+    }
+}
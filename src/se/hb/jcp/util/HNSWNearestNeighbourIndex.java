@@ -0,0 +1,531 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.util;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import se.hb.jcp.util.CompactRowStore.CompactRow;
+import se.hb.jcp.util.CompactRowStore.DenseRow;
+
+/**
+ * Approximate Euclidean nearest neighbour index based on hierarchical
+ * navigable small world (HNSW) graphs, see Malkov and Yashunin, "Efficient
+ * and robust approximate nearest neighbor search using Hierarchical
+ * Navigable Small World graphs", IEEE TPAMI 42(4), 2020.
+ *
+ * Each instance is linked to (at most) M of its near neighbours on each
+ * of the layers it is on, and to 2M on the bottom layer. The level of an
+ * instance is drawn from an exponentially decaying distribution with a
+ * seeded random number generator, so the index is deterministic for a
+ * given insertion order. Removed instances are kept in the graph for
+ * navigation but excluded from the query results.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class HNSWNearestNeighbourIndex
+    implements INearestNeighbourIndex, java.io.Serializable
+{
+    public static final int  DEFAULT_M               = 16;
+    public static final int  DEFAULT_EF_CONSTRUCTION = 100;
+    public static final int  DEFAULT_EF_SEARCH       = 50;
+    public static final long DEFAULT_SEED            = 42L;
+
+    private final int    _m;
+    private final int    _efConstruction;
+    private final int    _efSearch;
+    private final long   _seed;
+    private final double _levelFactor;
+    private final Random _random;
+
+    private final CompactRowStore _rows = new CompactRowStore();
+    private final BitSet _removed = new BitSet();
+    private int _size;
+    // The neighbours of each instance on each of its layers and their
+    // number.
+    private int[][][] _links = new int[16][][];
+    private int[][]   _linkCounts = new int[16][];
+    private int _entryPoint = -1;
+    private int _maxLevel = -1;
+
+    /**
+     * Creates an empty index with the default parameter settings.
+     */
+    public HNSWNearestNeighbourIndex()
+    {
+        this(DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH,
+             DEFAULT_SEED);
+    }
+
+    /**
+     * Creates an empty index.
+     *
+     * @param m               the number of neighbours each instance is linked to on each layer above the bottom one.
+     * @param efConstruction  the size of the candidate list when instances are added.
+     * @param efSearch        the minimum size of the candidate list for queries. Larger values improve the recall at the cost of speed.
+     * @param seed            the seed of the random level generator.
+     */
+    public HNSWNearestNeighbourIndex(int m, int efConstruction, int efSearch,
+                                     long seed)
+    {
+        if (m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException
+                          ("Illegal HNSW parameter settings.");
+        }
+        _m = m;
+        _efConstruction = efConstruction;
+        _efSearch = efSearch;
+        _seed = seed;
+        _levelFactor = 1.0 / Math.log(m);
+        _random = new Random(seed);
+    }
+
+    /**
+     * Creates an index with the default parameter settings over the rows
+     * of x.
+     *
+     * @param x    the instances to index.
+     */
+    public HNSWNearestNeighbourIndex(DoubleMatrix2D x)
+    {
+        this();
+        for (int i = 0; i < x.rows(); i++) {
+            add(x.viewRow(i));
+        }
+    }
+
+    @Override
+    public INearestNeighbourIndex createNew()
+    {
+        return new HNSWNearestNeighbourIndex(_m, _efConstruction, _efSearch,
+                                             _seed);
+    }
+
+    @Override
+    public int add(DoubleMatrix1D x)
+    {
+        CompactRow compact = new CompactRow(x);
+        int node = _rows.add(compact);
+        Query row = new Query(compact);
+        _size++;
+        if (node >= _links.length) {
+            _links = Arrays.copyOf(_links, 2 * _links.length);
+            _linkCounts = Arrays.copyOf(_linkCounts, 2 * _linkCounts.length);
+        }
+        int level = randomLevel();
+        _links[node] = new int[level + 1][];
+        _linkCounts[node] = new int[level + 1];
+        for (int l = 0; l <= level; l++) {
+            _links[node][l] = new int[maxConnections(l)];
+        }
+        if (_entryPoint < 0) {
+            _entryPoint = node;
+            _maxLevel = level;
+            return node;
+        }
+
+        int entry = _entryPoint;
+        for (int l = _maxLevel; l > level; l--) {
+            entry = greedyClosest(row, entry, l);
+        }
+        for (int l = Math.min(level, _maxLevel); l >= 0; l--) {
+            DistanceHeap candidates =
+                searchLayer(row, entry, _efConstruction, l);
+            int count = candidates.size();
+            int[] nodes = new int[count];
+            double[] distances = new double[count];
+            candidates.drainAscending(nodes, distances);
+            int selected = selectNeighbours(nodes, distances, count, _m);
+            System.arraycopy(nodes, 0, _links[node][l], 0, selected);
+            _linkCounts[node][l] = selected;
+            for (int i = 0; i < selected; i++) {
+                connect(nodes[i], node, l);
+            }
+            entry = nodes[0];
+        }
+        if (level > _maxLevel) {
+            _maxLevel = level;
+            _entryPoint = node;
+        }
+        return node;
+    }
+
+    @Override
+    public void remove(int position)
+    {
+        if (position < 0 || position >= _rows.rows()) {
+            throw new IllegalArgumentException("No such position.");
+        }
+        if (!_removed.get(position)) {
+            _removed.set(position);
+            _size--;
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        return _size;
+    }
+
+    @Override
+    public int[] nearest(DoubleMatrix1D x, int k)
+    {
+        k = Math.max(0, Math.min(k, _size));
+        int[] positions = new int[k];
+        int count = nearest(x, k, positions, new double[k]);
+        return Arrays.copyOf(positions, count);
+    }
+
+    @Override
+    public int nearest(DoubleMatrix1D x, int k,
+                       int[] positions, double[] distances)
+    {
+        k = Math.min(k, _size);
+        if (k <= 0) {
+            return 0;
+        }
+        Query query = new Query(new CompactRow(x));
+        int entry = _entryPoint;
+        for (int l = _maxLevel; l > 0; l--) {
+            entry = greedyClosest(query, entry, l);
+        }
+        DistanceHeap candidates =
+            searchLayer(query, entry, Math.max(_efSearch, k), 0);
+        int count = candidates.size();
+        int[] nodes = new int[count];
+        double[] squaredDistances = new double[count];
+        candidates.drainAscending(nodes, squaredDistances);
+        int found = 0;
+        for (int i = 0; i < count && found < k; i++) {
+            if (!_removed.get(nodes[i])) {
+                positions[found] = nodes[i];
+                distances[found] = Math.sqrt(squaredDistances[i]);
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private int maxConnections(int layer)
+    {
+        return layer == 0 ? 2 * _m : _m;
+    }
+
+    private int randomLevel()
+    {
+        // 1 - nextDouble() is in (0, 1].
+        return (int)(-Math.log(1.0 - _random.nextDouble()) * _levelFactor);
+    }
+
+    /**
+     * Greedily moves from the entry point to the neighbour closest to the
+     * query until no neighbour on the layer is closer.
+     */
+    private int greedyClosest(Query query, int entry, int layer)
+    {
+        int best = entry;
+        double bestDistance = query.squaredDistance(best);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] links = _links[best][layer];
+            int count = _linkCounts[best][layer];
+            for (int i = 0; i < count; i++) {
+                double d = query.squaredDistance(links[i]);
+                if (d < bestDistance) {
+                    bestDistance = d;
+                    best = links[i];
+                    changed = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Searches the layer for the ef instances closest to the query starting
+     * from the entry point.
+     *
+     * @return a max-heap of the closest instances found.
+     */
+    private DistanceHeap searchLayer(Query query, int entry,
+                                     int ef, int layer)
+    {
+        IntSet visited = new IntSet();
+        DistanceHeap candidates = new DistanceHeap(false);
+        DistanceHeap results = new DistanceHeap(true);
+        double d = query.squaredDistance(entry);
+        visited.add(entry);
+        candidates.push(entry, d);
+        results.push(entry, d);
+        while (candidates.size() > 0) {
+            double candidateDistance = candidates.peekDistance();
+            int candidate = candidates.pop();
+            if (candidateDistance > results.peekDistance() &&
+                results.size() >= ef) {
+                break;
+            }
+            int[] links = _links[candidate][layer];
+            int count = _linkCounts[candidate][layer];
+            for (int i = 0; i < count; i++) {
+                int neighbour = links[i];
+                if (visited.add(neighbour)) {
+                    double nd = query.squaredDistance(neighbour);
+                    if (results.size() < ef || nd < results.peekDistance()) {
+                        candidates.push(neighbour, nd);
+                        results.push(neighbour, nd);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Selects (at most) m diverse neighbours among ascending candidates
+     * with the heuristic of Malkov and Yashunin: a candidate is skipped if
+     * it is closer to an already selected neighbour than to the base
+     * instance. Skipped candidates fill up any remaining slots. The
+     * selected neighbours are moved to the start of the arrays.
+     *
+     * @return the number of selected neighbours.
+     */
+    private int selectNeighbours(int[] nodes, double[] distances,
+                                 int count, int m)
+    {
+        int[] skipped = new int[count];
+        double[] skippedDistances = new double[count];
+        int selected = 0;
+        int skippedCount = 0;
+        for (int i = 0; i < count; i++) {
+            boolean diverse = selected < m;
+            for (int j = 0; j < selected && diverse; j++) {
+                if (_rows.squaredDistance(nodes[i], nodes[j]) <
+                    distances[i]) {
+                    diverse = false;
+                }
+            }
+            if (diverse) {
+                nodes[selected] = nodes[i];
+                distances[selected] = distances[i];
+                selected++;
+            } else {
+                skipped[skippedCount] = nodes[i];
+                skippedDistances[skippedCount] = distances[i];
+                skippedCount++;
+            }
+        }
+        for (int i = 0; i < skippedCount && selected < m; i++) {
+            nodes[selected] = skipped[i];
+            distances[selected] = skippedDistances[i];
+            selected++;
+        }
+        return Math.min(selected, m);
+    }
+
+    /**
+     * Links the node to the new neighbour on the layer. If the node
+     * already has the maximum number of neighbours they are reselected.
+     */
+    private void connect(int node, int neighbour, int layer)
+    {
+        int[] links = _links[node][layer];
+        int count = _linkCounts[node][layer];
+        if (count < links.length) {
+            links[count] = neighbour;
+            _linkCounts[node][layer] = count + 1;
+            return;
+        }
+        int[] nodes = new int[count + 1];
+        double[] distances = new double[count + 1];
+        DistanceHeap candidates = new DistanceHeap(false);
+        for (int i = 0; i < count; i++) {
+            candidates.push(links[i], _rows.squaredDistance(node, links[i]));
+        }
+        candidates.push(neighbour, _rows.squaredDistance(node, neighbour));
+        for (int i = 0; i <= count; i++) {
+            distances[i] = candidates.peekDistance();
+            nodes[i] = candidates.pop();
+        }
+        int selected = selectNeighbours(nodes, distances, count + 1,
+                                        links.length);
+        System.arraycopy(nodes, 0, links, 0, selected);
+        _linkCounts[node][layer] = selected;
+    }
+
+    /**
+     * A query instance in the fastest form suitable for it.
+     */
+    private final class Query
+    {
+        private final CompactRow _compact;
+        private final DenseRow   _dense;
+
+        Query(CompactRow x)
+        {
+            _compact = x;
+            _dense = DenseRow.isSuitable(x) ? new DenseRow(x) : null;
+        }
+
+        double squaredDistance(int row)
+        {
+            if (_dense != null) {
+                return _rows.squaredDistance(row, _dense);
+            } else {
+                return _rows.squaredDistance(row, _compact);
+            }
+        }
+    }
+
+    /**
+     * Binary heap of instances ordered by distance.
+     */
+    private static final class DistanceHeap
+    {
+        private final boolean _max;
+        private int[]    _nodes     = new int[16];
+        private double[] _distances = new double[16];
+        private int      _size;
+
+        DistanceHeap(boolean max)
+        {
+            _max = max;
+        }
+
+        int size()
+        {
+            return _size;
+        }
+
+        double peekDistance()
+        {
+            return _distances[0];
+        }
+
+        void push(int node, double distance)
+        {
+            if (_size == _nodes.length) {
+                _nodes = Arrays.copyOf(_nodes, 2 * _size);
+                _distances = Arrays.copyOf(_distances, 2 * _size);
+            }
+            int i = _size++;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!before(distance, _distances[parent])) {
+                    break;
+                }
+                _nodes[i] = _nodes[parent];
+                _distances[i] = _distances[parent];
+                i = parent;
+            }
+            _nodes[i] = node;
+            _distances[i] = distance;
+        }
+
+        int pop()
+        {
+            int top = _nodes[0];
+            int node = _nodes[--_size];
+            double distance = _distances[_size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= _size) {
+                    break;
+                }
+                if (child + 1 < _size &&
+                    before(_distances[child + 1], _distances[child])) {
+                    child++;
+                }
+                if (!before(_distances[child], distance)) {
+                    break;
+                }
+                _nodes[i] = _nodes[child];
+                _distances[i] = _distances[child];
+                i = child;
+            }
+            _nodes[i] = node;
+            _distances[i] = distance;
+            return top;
+        }
+
+        // Empties the heap into the arrays in ascending order of distance.
+        void drainAscending(int[] nodes, double[] distances)
+        {
+            int n = _size;
+            for (int i = 0; i < n; i++) {
+                int j = _max ? n - 1 - i : i;
+                distances[j] = peekDistance();
+                nodes[j] = pop();
+            }
+        }
+
+        private boolean before(double a, double b)
+        {
+            return _max ? a > b : a < b;
+        }
+    }
+
+    /**
+     * Open addressing hash set of non-negative ints.
+     */
+    private static final class IntSet
+    {
+        private int[] _slots = new int[64];
+        private int   _size;
+
+        IntSet()
+        {
+            Arrays.fill(_slots, -1);
+        }
+
+        // Returns true if the value was not in the set.
+        boolean add(int value)
+        {
+            if (2 * (_size + 1) > _slots.length) {
+                int[] old = _slots;
+                _slots = new int[2 * old.length];
+                Arrays.fill(_slots, -1);
+                _size = 0;
+                for (int v : old) {
+                    if (v >= 0) {
+                        add(v);
+                    }
+                }
+            }
+            int mask = _slots.length - 1;
+            int i = (value * 0x9E3779B9) & mask;
+            while (_slots[i] >= 0) {
+                if (_slots[i] == value) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            _slots[i] = value;
+            _size++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.util;
+
+import cern.colt.matrix.DoubleMatrix2D;
+
+/**
+ * Interface for row-oriented matrices that can be filled a row or a whole
+ * matrix at a time, in the compressed sparse row (CSR) format, instead of
+ * element by element. For the matrix bindings this avoids reallocating
+ * the native row for each element set.
+ *
+ * The column indices of each row must be strictly increasing and in the
+ * range <tt>[0, columns())</tt>.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public interface IBulkRowMatrix2D
+{
+    /**
+     * Replaces one row of the matrix.
+     *
+     * @param row      the row to replace.
+     * @param indices  the indices to be filled in the new row.
+     * @param values   the values to be filled into the new row.
+     */
+    public void setRow(int row, int[] indices, double[] values);
+
+    /**
+     * Constructs and returns a new matrix <i>of the same dynamic type</i>
+     * as the receiver with the contents given in CSR format. Row
+     * <tt>r</tt> consists of the elements at positions
+     * <tt>rowPointers[r]</tt> to <tt>rowPointers[r+1] - 1</tt> of
+     * <tt>indices</tt> and <tt>values</tt>.
+     *
+     * @param columns      the number of columns the matrix shall have.
+     * @param rowPointers  the start of each row followed by the end of the last row.
+     * @param indices      the column indices of the elements.
+     * @param values       the values of the elements.
+     * @return a new matrix with <tt>rowPointers.length - 1</tt> rows.
+     */
+    public DoubleMatrix2D likeFromCSR(int columns, int[] rowPointers,
+                                      int[] indices, double[] values);
+}
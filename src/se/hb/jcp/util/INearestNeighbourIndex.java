@@ -0,0 +1,91 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.util;
+
+import cern.colt.matrix.DoubleMatrix1D;
+
+/**
+ * Specifies an interface for indices over a set of instances that can find
+ * the instances nearest to a query instance in Euclidean distance.
+ * Instances are identified by their position, i.e. the order in which they
+ * were added, which is not reused after removal.
+ *
+ * Contract for JCP use:
+ * 1. The query methods implemented for this interface must be reentrant.
+ * 2. <tt>add()</tt> and <tt>remove()</tt> must not be called concurrently
+ *    with any other method.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public interface INearestNeighbourIndex
+{
+    /**
+     * Creates a new empty index using the same parameter settings as this
+     * index.
+     *
+     * @return a new empty <tt>INearestNeighbourIndex</tt>.
+     */
+    public INearestNeighbourIndex createNew();
+
+    /**
+     * Adds the instance x to this index.
+     *
+     * @param x    the instance.
+     * @return the position of the instance.
+     */
+    public int add(DoubleMatrix1D x);
+
+    /**
+     * Removes the instance at the position from this index. Removed
+     * instances are excluded from the results of later queries.
+     *
+     * @param position the position of the instance.
+     */
+    public void remove(int position);
+
+    /**
+     * Returns the number of instances in this index.
+     *
+     * @return the number of indexed instances, excluding removed ones.
+     */
+    public int size();
+
+    /**
+     * Returns the positions of the <tt>k</tt> indexed instances nearest to
+     * the instance x in ascending order of distance. If the index contains
+     * fewer than <tt>k</tt> instances all of them are returned.
+     *
+     * @param x    the query instance.
+     * @param k    the number of neighbours.
+     * @return an <tt>int[]</tt> array containing the positions of the nearest instances.
+     */
+    public int[] nearest(DoubleMatrix1D x, int k);
+
+    /**
+     * Finds the <tt>k</tt> indexed instances nearest to the instance x in
+     * ascending order of distance. If the index contains fewer than
+     * <tt>k</tt> instances all of them are found.
+     *
+     * @param x          the query instance.
+     * @param k          the number of neighbours.
+     * @param positions  an <tt>int[]</tt> array of at least size <tt>k</tt> to store the positions of the nearest instances in.
+     * @param distances  a <tt>double[]</tt> array of at least size <tt>k</tt> to store the distances to the nearest instances in.
+     * @return the number of instances found.
+     */
+    public int nearest(DoubleMatrix1D x, int k,
+                       int[] positions, double[] distances);
+}
@@ -0,0 +1,40 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.util;
+
+import cern.colt.matrix.DoubleMatrix2D;
+
+/**
+ * Interface for row-oriented matrices that can create a new matrix of the
+ * same dynamic type consisting of a selection of the rows of the receiver,
+ * sharing their row data.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public interface IRowSelectingMatrix2D
+{
+    /**
+     * Constructs and returns a new matrix <i>of the same dynamic type</i>
+     * as the receiver where row <tt>i</tt> shares the row data of row
+     * <tt>rows[i]</tt> of the receiver. A row may be selected more than
+     * once. The shared rows must not be modified through either matrix.
+     *
+     * @param rows  the indices of the selected rows.
+     * @return a new matrix sharing the selected rows of the receiver.
+     */
+    public DoubleMatrix2D likeSelectingRows(int[] rows);
+}
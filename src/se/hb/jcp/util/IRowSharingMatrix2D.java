@@ -0,0 +1,40 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.util;
+
+import cern.colt.matrix.DoubleMatrix2D;
+
+/**
+ * Interface for row-oriented matrices that can create a new matrix of the
+ * same dynamic type which shares the row data of the receiver.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public interface IRowSharingMatrix2D
+{
+    /**
+     * Constructs and returns a new matrix <i>of the same dynamic type</i>
+     * as the receiver with <tt>rows() + extraRows</tt> rows. The first
+     * <tt>rows()</tt> rows share the row data of the receiver and must
+     * not be modified through either matrix. The extra rows are owned by
+     * the new matrix and are initially <tt>0</tt>.
+     *
+     * @param extraRows  the number of extra rows.
+     * @return a new matrix sharing the rows of the receiver.
+     */
+    public DoubleMatrix2D likeSharingRows(int extraRows);
+}
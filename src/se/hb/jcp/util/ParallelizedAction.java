@@ -102,7 +102,7 @@ public abstract class ParallelizedAction
     private ParallelizedAction createSubtask(int first, int last, int depth)
     {
         ParallelizedAction a = createSubtask(first, last);
-        _depth = depth;
+        a._depth = depth;
         return a;
     }
 
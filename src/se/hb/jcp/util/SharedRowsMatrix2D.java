@@ -0,0 +1,175 @@
+// JCP - Java Conformal Prediction framework
+// Copyright (C) 2026  Anders Gidenstam
+//
+// This library is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published
+// by the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+package se.hb.jcp.util;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+
+/**
+ * A 2-d matrix consisting of the rows of a base matrix followed by a
+ * number of extra rows owned by this matrix. The rows of the base matrix
+ * are shared, not copied, and must not be modified through either matrix.
+ *
+ * This is the generic fallback for colt matrices. The matrix bindings
+ * implement <tt>IRowSharingMatrix2D</tt> to share their rows in the format
+ * expected by their classifiers. Use <tt>create(DoubleMatrix2D, int)</tt>
+ * to get the most suitable representation.
+ *
+ * @author anders.gidenstam(at)hb.se
+ */
+public class SharedRowsMatrix2D extends DoubleMatrix2D
+    implements IRowSharingMatrix2D
+{
+    private final DoubleMatrix2D _base;
+    private final DoubleMatrix2D _extra;
+    private final int _baseRows;
+
+    /**
+     * Constructs a matrix sharing the rows of a base matrix followed by
+     * a number of extra rows which are initially <tt>0</tt>.
+     *
+     * @param base       the matrix whose rows are shared.
+     * @param extraRows  the number of extra rows.
+     */
+    public SharedRowsMatrix2D(DoubleMatrix2D base, int extraRows)
+    {
+        setUp(base.rows() + extraRows, base.columns());
+        _base     = base;
+        _baseRows = base.rows();
+        _extra    = base.like(extraRows, base.columns());
+    }
+
+    /**
+     * Creates a matrix with the rows of a base matrix followed by a number
+     * of extra rows which are initially <tt>0</tt>. The rows of the base
+     * matrix are shared if its type supports that and copied otherwise.
+     *
+     * @param base       the matrix whose rows are shared.
+     * @param extraRows  the number of extra rows.
+     * @return a new matrix with <tt>base.rows() + extraRows</tt> rows.
+     */
+    public static DoubleMatrix2D create(DoubleMatrix2D base, int extraRows)
+    {
+        if (base instanceof IRowSharingMatrix2D) {
+            return ((IRowSharingMatrix2D)base).likeSharingRows(extraRows);
+        } else if (base instanceof cern.colt.matrix.impl.DenseDoubleMatrix2D ||
+                   base instanceof cern.colt.matrix.impl.SparseDoubleMatrix2D) {
+            return new SharedRowsMatrix2D(base, extraRows);
+        } else {
+            // Other matrix types, e.g. the native OpenCV binding, are
+            // required as is by their classifiers. Copy the rows.
+            int n = base.rows();
+            DoubleMatrix2D result = base.like(n + extraRows, base.columns());
+            for (int r = 0; r < n; r++) {
+                result.viewRow(r).assign(base.viewRow(r));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Creates a matrix consisting of the selected rows of a base matrix.
+     * The rows of the base matrix are shared if its type supports that and
+     * copied otherwise.
+     *
+     * @param base       the matrix whose rows are selected.
+     * @param rows       the indices of the selected rows.
+     * @return a new matrix with <tt>rows.length</tt> rows.
+     */
+    public static DoubleMatrix2D selectRows(DoubleMatrix2D base, int[] rows)
+    {
+        if (base instanceof IRowSelectingMatrix2D) {
+            return ((IRowSelectingMatrix2D)base).likeSelectingRows(rows);
+        } else if (base instanceof cern.colt.matrix.impl.DenseDoubleMatrix2D ||
+                   base instanceof cern.colt.matrix.impl.SparseDoubleMatrix2D) {
+            return base.viewSelection(rows, null);
+        } else {
+            // Other matrix types are required as is by their classifiers.
+            // Copy the rows.
+            DoubleMatrix2D result = base.like(rows.length, base.columns());
+            for (int r = 0; r < rows.length; r++) {
+                result.viewRow(r).assign(base.viewRow(rows[r]));
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public DoubleMatrix2D likeSharingRows(int extraRows)
+    {
+        return new SharedRowsMatrix2D(this, extraRows);
+    }
+
+    @Override
+    public double getQuick(int row, int column)
+    {
+        if (row < _baseRows) {
+            return _base.getQuick(row, column);
+        } else {
+            return _extra.getQuick(row - _baseRows, column);
+        }
+    }
+
+    @Override
+    public void setQuick(int row, int column, double value)
+    {
+        if (row < _baseRows) {
+            throw new UnsupportedOperationException
+                          ("The shared rows are read-only.");
+        } else {
+            _extra.setQuick(row - _baseRows, column, value);
+        }
+    }
+
+    @Override
+    public DoubleMatrix1D viewRow(int row)
+    {
+        checkRow(row);
+        if (row < _baseRows) {
+            return _base.viewRow(row);
+        } else {
+            return _extra.viewRow(row - _baseRows);
+        }
+    }
+
+    @Override
+    public DoubleMatrix2D like(int rows, int columns)
+    {
+        return _base.like(rows, columns);
+    }
+
+    @Override
+    public DoubleMatrix1D like1D(int size)
+    {
+        return _base.like1D(size);
+    }
+
+    @Override
+    protected DoubleMatrix1D like1D(int size, int zero, int stride)
+    {
+        // FIXME: If needed.
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    protected DoubleMatrix2D viewSelectionLike(int[] rowOffsets,
+                                               int[] columnOffsets)
+    {
+        // FIXME: If needed.
+        throw new UnsupportedOperationException("Not implemented");
+    }
+}